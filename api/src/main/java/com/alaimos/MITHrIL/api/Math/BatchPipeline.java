@@ -0,0 +1,311 @@
+package com.alaimos.MITHrIL.api.Math;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Run the batches of an algorithm through three pipelined stages: the generation of the input of a batch, its
+ * multiplication by the operators of the algorithm, and the accumulation of the products into the results. The
+ * generation and the multiplication run on two threads of an executor, and the accumulation runs on the calling
+ * thread, so while a batch is multiplied, the next one is generated and the previous one is accumulated.
+ * <p>
+ * The stages are connected by queues, and each batch in flight owns a slot, which the stages use to select their
+ * buffers (for example, by appending the slot to the name of a {@link MatrixBufferPool} buffer). A slot is released
+ * only when its batch is accumulated, so the number of slots bounds the memory used by the pipeline: with two slots,
+ * the batch and product buffers are double-buffered. The batches are accumulated on the calling thread in the same
+ * order as they are generated, so the results are the same as those of a sequential loop, provided that each batch
+ * depends only on its index.
+ * <p>
+ * {@link #run()} returns only when both stages have finished, even when it is stopped early or by an error, so the
+ * buffers of the stages can be released as soon as it returns. The executor is created by the pipeline and shut down by
+ * {@link #close()}, unless it is provided by the caller. An executor shared by pipelines that run concurrently must be
+ * able to run two tasks for each of them (see {@link #newExecutor()}).
+ *
+ * @param <B> the type of a batch
+ * @param <P> the type of the products of a batch
+ */
+public class BatchPipeline<B, P> implements Closeable {
+
+    public static final int DEFAULT_SLOTS = 2;
+    private static final int STOP = -1;
+
+    private final int slots;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Generator<B> generator;
+    private final Multiplier<B, P> multiplier;
+    private final Accumulator<B, P> accumulator;
+
+    /**
+     * Create a pipeline
+     *
+     * @param slots       the maximum number of batches in flight
+     * @param executor    the executor that runs the generation and multiplication stages (null to create one that is
+     *                    shut down when the pipeline is closed)
+     * @param generator   the generation stage
+     * @param multiplier  the multiplication stage
+     * @param accumulator the accumulation stage
+     */
+    public BatchPipeline(
+            int slots, @Nullable ExecutorService executor, @NotNull Generator<B> generator,
+            @NotNull Multiplier<B, P> multiplier, @NotNull Accumulator<B, P> accumulator
+    ) {
+        if (slots <= 0) throw new IllegalArgumentException("The number of slots must be positive");
+        this.slots        = slots;
+        this.ownsExecutor = executor == null;
+        this.executor     = ownsExecutor ? newExecutor() : executor;
+        this.generator    = generator;
+        this.multiplier   = multiplier;
+        this.accumulator  = accumulator;
+    }
+
+    /**
+     * Create a pipeline with its own executor
+     *
+     * @param slots       the maximum number of batches in flight
+     * @param generator   the generation stage
+     * @param multiplier  the multiplication stage
+     * @param accumulator the accumulation stage
+     */
+    public BatchPipeline(
+            int slots, @NotNull Generator<B> generator, @NotNull Multiplier<B, P> multiplier,
+            @NotNull Accumulator<B, P> accumulator
+    ) {
+        this(slots, null, generator, multiplier, accumulator);
+    }
+
+    /**
+     * Create a double-buffered pipeline with its own executor
+     *
+     * @param generator   the generation stage
+     * @param multiplier  the multiplication stage
+     * @param accumulator the accumulation stage
+     */
+    public BatchPipeline(
+            @NotNull Generator<B> generator, @NotNull Multiplier<B, P> multiplier,
+            @NotNull Accumulator<B, P> accumulator
+    ) {
+        this(DEFAULT_SLOTS, null, generator, multiplier, accumulator);
+    }
+
+    /**
+     * Create an executor for the stages of one or more pipelines. The executor uses daemon threads, which are created
+     * on demand and reused, so it can be shared by any number of pipelines running concurrently.
+     *
+     * @return a new executor
+     */
+    public static @NotNull ExecutorService newExecutor() {
+        return Executors.newCachedThreadPool(r -> {
+            var thread = new Thread(r, "batch-pipeline");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Run the pipeline until the generator has no more batches or the accumulator stops it. An exception thrown by a
+     * stage stops the pipeline, and it is thrown again by this method. In any case, the method returns only after both
+     * the generation and the multiplication stages have finished.
+     */
+    public synchronized void run() {
+        if (executor.isShutdown()) throw new IllegalStateException("The pipeline was closed");
+        var stopped = new AtomicBoolean(false);
+        var free = new LinkedBlockingQueue<Integer>();
+        for (var i = 0; i < slots; i++) free.add(i);
+        var generated = new LinkedBlockingQueue<Item<B, P>>();
+        var multiplied = new LinkedBlockingQueue<Item<B, P>>();
+        var generation = executor.submit(() -> generate(stopped, free, generated));
+        Future<?> multiplication;
+        try {
+            multiplication = executor.submit(() -> multiply(stopped, generated, multiplied));
+        } catch (RuntimeException e) {
+            stop(stopped, free, generated);
+            await(generation);
+            throw e;
+        }
+        Throwable error = null;
+        try {
+            for (var index = 0; ; index++) {
+                var item = multiplied.take();
+                if (item.batch == null) {
+                    error = item.error;
+                    break;
+                }
+                var proceed = accumulator.accumulate(index, item.batch, item.products);
+                free.add(item.slot);
+                if (!proceed) break;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = e;
+        } catch (Throwable e) {
+            error = e;
+        }
+        stop(stopped, free, generated);
+        await(generation);
+        await(multiplication);
+        if (error != null) rethrow(error);
+    }
+
+    /**
+     * Shut down the executor if it was created by this pipeline
+     */
+    @Override
+    public void close() {
+        if (!ownsExecutor) return;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                throw new IllegalStateException("The stages of the pipeline did not terminate");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the pipeline to terminate", e);
+        }
+    }
+
+    /**
+     * The generation stage: generate batches until the generator has no more of them or the pipeline is stopped
+     */
+    private void generate(
+            @NotNull AtomicBoolean stopped, @NotNull BlockingQueue<Integer> free,
+            @NotNull BlockingQueue<Item<B, P>> generated
+    ) {
+        try {
+            for (var index = 0; ; index++) {
+                int slot = free.take();
+                if (slot == STOP || stopped.get()) return;
+                var batch = generator.generate(index, slot);
+                if (batch == null) {
+                    generated.add(new Item<>(STOP, null, null, null));
+                    return;
+                }
+                generated.add(new Item<>(slot, batch, null, null));
+            }
+        } catch (Throwable e) {
+            generated.add(new Item<>(STOP, null, null, e));
+        }
+    }
+
+    /**
+     * The multiplication stage: multiply the generated batches until the end marker is received or the pipeline is
+     * stopped
+     */
+    private void multiply(
+            @NotNull AtomicBoolean stopped, @NotNull BlockingQueue<Item<B, P>> generated,
+            @NotNull BlockingQueue<Item<B, P>> multiplied
+    ) {
+        try {
+            while (true) {
+                var item = generated.take();
+                if (item.batch == null) {
+                    multiplied.add(item);
+                    return;
+                }
+                if (stopped.get()) return;
+                multiplied.add(new Item<>(item.slot, item.batch, multiplier.multiply(item.batch, item.slot), null));
+            }
+        } catch (Throwable e) {
+            multiplied.add(new Item<>(STOP, null, null, e));
+        }
+    }
+
+    /**
+     * Stop the stages. A stage that is running finishes its current batch, and then it returns; a stage that is
+     * waiting for a batch is woken up by an end marker.
+     */
+    private static <B, P> void stop(
+            @NotNull AtomicBoolean stopped, @NotNull BlockingQueue<Integer> free,
+            @NotNull BlockingQueue<Item<B, P>> generated
+    ) {
+        stopped.set(true);
+        free.add(STOP);
+        generated.add(new Item<>(STOP, null, null, null));
+    }
+
+    /**
+     * Wait for a stage to finish. The stages never throw, since their errors are passed along the queues, and they
+     * always return after the pipeline is stopped. Therefore, the wait is not interruptible: an interruption is
+     * recorded and restored once the stage has finished, so that its buffers are never released while it is running.
+     */
+    private static void await(@NotNull Future<?> stage) {
+        var interrupted = false;
+        try {
+            while (true) {
+                try {
+                    stage.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("A stage of the pipeline failed unexpectedly", e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void rethrow(@NotNull Throwable error) {
+        if (error instanceof RuntimeException e) throw e;
+        if (error instanceof Error e) throw e;
+        throw new RuntimeException(error);
+    }
+
+    /**
+     * A batch in flight. A batch equal to null marks the end of the pipeline, possibly caused by an error.
+     */
+    private record Item<B, P>(int slot, @Nullable B batch, @Nullable P products, @Nullable Throwable error) {
+    }
+
+    @FunctionalInterface
+    public interface Generator<B> {
+
+        /**
+         * Generate the input of a batch. The batches are generated sequentially by a single thread.
+         *
+         * @param index the index of the batch
+         * @param slot  the slot owned by the batch
+         * @return the batch, or null if there are no more batches
+         */
+        @Nullable B generate(int index, int slot);
+    }
+
+    @FunctionalInterface
+    public interface Multiplier<B, P> {
+
+        /**
+         * Compute the products of a batch. The batches are multiplied sequentially by a single thread.
+         *
+         * @param batch the batch
+         * @param slot  the slot owned by the batch
+         * @return the products
+         */
+        P multiply(@NotNull B batch, int slot);
+    }
+
+    @FunctionalInterface
+    public interface Accumulator<B, P> {
+
+        /**
+         * Accumulate the products of a batch into the results. The batches are accumulated in order on the thread that
+         * runs the pipeline.
+         *
+         * @param index    the index of the batch
+         * @param batch    the batch
+         * @param products the products of the batch
+         * @return true to continue, false to stop the pipeline
+         */
+        boolean accumulate(int index, @NotNull B batch, P products);
+    }
+}
@@ -0,0 +1,338 @@
+package com.alaimos.MITHrIL.api.Math;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Invert a square matrix by exploiting its block-triangular structure. The non-zero pattern of the matrix is read as a
+ * graph, where each non-zero element (v, u) outside the diagonal is an edge u -> v. The graph is condensed into its
+ * strongly connected components, which are sorted topologically. In this order the matrix is block lower-triangular:
+ * only the diagonal blocks (one for each component) are inverted with the matrix factory, and each column of the
+ * inverse is computed by a forward substitution that visits only the components reachable from the column. The
+ * diagonal blocks and the columns are independent, and they are computed in parallel on a fork-join pool.
+ * <p>
+ * The matrix of a metapathway is mostly acyclic, with a few small components. Therefore, this is much faster than a
+ * dense inversion. The result is the exact inverse if all the diagonal blocks are invertible. Otherwise, a singular
+ * block is replaced by the inverse computed by the factory (usually a pseudo-inverse), and the result may differ from
+ * the one of {@link MatrixInterface#invertInPlace()}.
+ */
+public class BlockTriangularInverter {
+
+    private final MatrixFactoryInterface<?> factory;
+    private int threads = -1;
+
+    public BlockTriangularInverter(@NotNull MatrixFactoryInterface<?> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Set the number of threads used to compute the inverse
+     *
+     * @param threads the number of threads (zero or negative to use the common pool)
+     * @return this object for a fluent interface
+     */
+    public BlockTriangularInverter threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Invert a matrix
+     *
+     * @param matrix a square matrix
+     * @return a new matrix built by the factory
+     */
+    public MatrixInterface<?> invert(@NotNull MatrixInterface<?> matrix) {
+        var n = matrix.rows();
+        if (n != matrix.columns()) throw new IllegalArgumentException("The matrix must be square");
+        return factory.of(invert(matrix.raw1D(), n), n, n);
+    }
+
+    /**
+     * Invert a matrix stored by rows
+     *
+     * @param data the elements of the matrix stored by rows
+     * @param n    the number of rows (and columns) of the matrix
+     * @return the elements of the inverse stored by rows
+     */
+    public double[] invert(double @NotNull [] data, int n) {
+        if (data.length != n * n) throw new IllegalArgumentException("Incompatible matrix size");
+        var structure = new Structure(data, n);
+        var inverses = new double[structure.count][];
+        var result = new double[n * n];
+        var workspace = ThreadLocal.withInitial(() -> new Workspace(n, structure.count, structure.maxSize));
+        parallel(structure.count, c -> inverses[c] = invertBlock(data, n, structure, c));
+        parallel(n, j -> solveColumn(data, n, structure, inverses, j, workspace.get(), result));
+        return result;
+    }
+
+    /**
+     * Run a task for each index in [0, size) on the fork-join pool
+     *
+     * @param size the number of tasks
+     * @param task the task
+     */
+    private void parallel(int size, IntConsumer task) {
+        if (threads > 0) {
+            try (var pool = new ForkJoinPool(threads)) {
+                pool.submit(() -> IntStream.range(0, size).parallel().forEach(task)).get();
+            } catch (ExecutionException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            IntStream.range(0, size).parallel().forEach(task);
+        }
+    }
+
+    /**
+     * Invert the diagonal block of a component
+     *
+     * @param data      the elements of the matrix
+     * @param n         the size of the matrix
+     * @param structure the components of the matrix
+     * @param c         the component
+     * @return the elements of the inverse of the block stored by rows
+     */
+    private double @NotNull [] invertBlock(double[] data, int n, @NotNull Structure structure, int c) {
+        var first = structure.start[c];
+        var s = structure.start[c + 1] - first;
+        if (s == 1) {
+            var d = data[structure.members[first] * n + structure.members[first]];
+            return new double[]{d == 0.0 ? 0.0 : 1.0 / d};
+        }
+        var block = new double[s * s];
+        for (var a = 0; a < s; a++) {
+            var row = structure.members[first + a] * n;
+            for (var b = 0; b < s; b++) {
+                block[a * s + b] = data[row + structure.members[first + b]];
+            }
+        }
+        try (var m = factory.of(block, s, s)) {
+            m.invertInPlace();
+            return m.raw1D();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Compute a column of the inverse by forward substitution over the components in topological order. The
+     * workspace holds the right-hand side of the components not yet solved, and it is cleared before returning.
+     *
+     * @param data      the elements of the matrix
+     * @param n         the size of the matrix
+     * @param structure the components of the matrix
+     * @param inverses  the inverses of the diagonal blocks
+     * @param j         the column
+     * @param w         the workspace of the current thread
+     * @param result    the elements of the inverse
+     */
+    private static void solveColumn(
+            double[] data, int n, @NotNull Structure structure, double[][] inverses, int j, @NotNull Workspace w,
+            double[] result
+    ) {
+        var x = w.x;
+        var first = structure.component[j];
+        x[j] = 1.0;
+        w.activate(first);
+        for (var c = first; c < structure.count; c++) {
+            if (!w.active[c]) continue;
+            var from = structure.start[c];
+            var to = structure.start[c + 1];
+            var inverse = inverses[c];
+            if (to - from == 1) {
+                x[structure.members[from]] *= inverse[0];
+            } else {
+                var s = to - from;
+                var local = w.local;
+                for (var a = 0; a < s; a++) {
+                    var sum = 0.0;
+                    for (var b = 0; b < s; b++) {
+                        sum += inverse[a * s + b] * x[structure.members[from + b]];
+                    }
+                    local[a] = sum;
+                }
+                for (var a = 0; a < s; a++) {
+                    x[structure.members[from + a]] = local[a];
+                }
+            }
+            for (var k = from; k < to; k++) {
+                var u = structure.members[k];
+                var xu = x[u];
+                if (xu == 0.0) continue;
+                result[u * n + j] = xu;
+                for (var e = structure.outStart[u]; e < structure.outStart[u + 1]; e++) {
+                    var v = structure.outTarget[e];
+                    var cv = structure.component[v];
+                    if (cv == c) continue;
+                    x[v] -= data[v * n + u] * xu;
+                    w.activate(cv);
+                }
+            }
+        }
+        w.clear(structure);
+    }
+
+    /**
+     * The condensation of the graph of a matrix: the edges of each node and the strongly connected components sorted
+     * topologically.
+     */
+    private static final class Structure {
+
+        /**
+         * The outgoing edges of each node (u -> v for each non-zero element (v, u) with v != u)
+         */
+        private final int[] outStart;
+        private final int[] outTarget;
+        /**
+         * The topological index of the component of each node
+         */
+        private final int[] component;
+        /**
+         * The nodes of each component: the nodes of component c are members[start[c]] ... members[start[c + 1] - 1]
+         */
+        private final int[] start;
+        private final int[] members;
+        private final int count;
+        private final int maxSize;
+
+        Structure(double[] data, int n) {
+            outStart = new int[n + 1];
+            for (var v = 0; v < n; v++) {
+                for (var u = 0; u < n; u++) {
+                    if (u != v && data[v * n + u] != 0.0) outStart[u + 1]++;
+                }
+            }
+            for (var u = 0; u < n; u++) {
+                outStart[u + 1] += outStart[u];
+            }
+            outTarget = new int[outStart[n]];
+            var position = Arrays.copyOf(outStart, n);
+            for (var v = 0; v < n; v++) {
+                for (var u = 0; u < n; u++) {
+                    if (u != v && data[v * n + u] != 0.0) outTarget[position[u]++] = v;
+                }
+            }
+            component = new int[n];
+            count     = tarjan(n);
+            // Tarjan's algorithm finds the components in reverse topological order
+            for (var u = 0; u < n; u++) {
+                component[u] = count - 1 - component[u];
+            }
+            start = new int[count + 1];
+            for (var u = 0; u < n; u++) {
+                start[component[u] + 1]++;
+            }
+            var max = 0;
+            for (var c = 0; c < count; c++) {
+                max = Math.max(max, start[c + 1]);
+                start[c + 1] += start[c];
+            }
+            maxSize = max;
+            members = new int[n];
+            position = Arrays.copyOf(start, count);
+            for (var u = 0; u < n; u++) {
+                members[position[component[u]]++] = u;
+            }
+        }
+
+        /**
+         * Find the strongly connected components with an iterative implementation of Tarjan's algorithm
+         *
+         * @param n the number of nodes
+         * @return the number of components
+         */
+        private int tarjan(int n) {
+            var index = new int[n];
+            var low = new int[n];
+            var onStack = new boolean[n];
+            var stack = new int[n];
+            var callStack = new int[n];
+            var edge = new int[n];
+            Arrays.fill(index, -1);
+            int sp = 0, next = 0, found = 0;
+            for (var root = 0; root < n; root++) {
+                if (index[root] >= 0) continue;
+                var depth = 0;
+                callStack[0]  = root;
+                edge[root]    = outStart[root];
+                index[root]   = low[root] = next++;
+                stack[sp++]   = root;
+                onStack[root] = true;
+                while (depth >= 0) {
+                    var u = callStack[depth];
+                    if (edge[u] < outStart[u + 1]) {
+                        var v = outTarget[edge[u]++];
+                        if (index[v] < 0) {
+                            index[v]           = low[v] = next++;
+                            edge[v]            = outStart[v];
+                            stack[sp++]        = v;
+                            onStack[v]         = true;
+                            callStack[++depth] = v;
+                        } else if (onStack[v]) {
+                            low[u] = Math.min(low[u], index[v]);
+                        }
+                    } else {
+                        if (low[u] == index[u]) {
+                            int v;
+                            do {
+                                v            = stack[--sp];
+                                onStack[v]   = false;
+                                component[v] = found;
+                            } while (v != u);
+                            found++;
+                        }
+                        if (--depth >= 0) {
+                            var parent = callStack[depth];
+                            low[parent] = Math.min(low[parent], low[u]);
+                        }
+                    }
+                }
+            }
+            return found;
+        }
+    }
+
+    /**
+     * The arrays used by a thread to compute a column of the inverse
+     */
+    private static final class Workspace {
+
+        private final double[] x;
+        private final double[] local;
+        private final boolean[] active;
+        private final int[] touched;
+        private int touchedCount = 0;
+
+        Workspace(int n, int count, int maxSize) {
+            x       = new double[n];
+            local   = new double[maxSize];
+            active  = new boolean[count];
+            touched = new int[count];
+        }
+
+        void activate(int c) {
+            if (active[c]) return;
+            active[c]               = true;
+            touched[touchedCount++] = c;
+        }
+
+        void clear(@NotNull Structure structure) {
+            for (var i = 0; i < touchedCount; i++) {
+                var c = touched[i];
+                active[c] = false;
+                for (var k = structure.start[c]; k < structure.start[c + 1]; k++) {
+                    x[structure.members[k]] = 0.0;
+                }
+            }
+            touchedCount = 0;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.alaimos.MITHrIL.api.Math;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.stream.IntStream;
+
+/**
+ * A read-only view of a dense matrix stored in a file as raw little-endian doubles, ordered by rows. The file region is
+ * memory-mapped, so the elements are loaded lazily by the operating system and the page cache is shared by all the
+ * processes that map the same file. Since a single mapping cannot exceed 2GB, the matrix is split into chunks made of
+ * whole rows.
+ * <p>
+ * The mapping stays valid after the channel is closed, and it is released when this object is garbage collected.
+ * Matrix factories can use {@link MatrixFactoryInterface#of(MappedMatrix)} to wrap the mapped region or to copy it into
+ * their own storage with bulk operations.
+ */
+public final class MappedMatrix {
+
+    /**
+     * The alignment of the matrix data inside a file
+     */
+    public static final int PAGE_SIZE = 4096;
+    private static final long MAX_CHUNK_SIZE = Integer.MAX_VALUE;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private final int rows;
+    private final int columns;
+    private final int rowsPerChunk;
+    private final DoubleBuffer[] chunks;
+
+    private MappedMatrix(int rows, int columns, int rowsPerChunk, DoubleBuffer[] chunks) {
+        this.rows         = rows;
+        this.columns      = columns;
+        this.rowsPerChunk = rowsPerChunk;
+        this.chunks       = chunks;
+    }
+
+    /**
+     * Align a position of a file to the next page boundary
+     *
+     * @param position the position
+     * @return the aligned position
+     */
+    public static long align(long position) {
+        return (position + PAGE_SIZE - 1) & -PAGE_SIZE;
+    }
+
+    /**
+     * Get the number of bytes needed to store a matrix
+     *
+     * @param rows    the number of rows
+     * @param columns the number of columns
+     * @return the number of bytes
+     */
+    public static long size(int rows, int columns) {
+        return (long) rows * columns * Double.BYTES;
+    }
+
+    private static int rowsPerChunk(int columns) {
+        if (columns == 0) return Integer.MAX_VALUE;
+        return (int) Math.max(1, MAX_CHUNK_SIZE / ((long) columns * Double.BYTES));
+    }
+
+    /**
+     * Map a matrix stored in a file
+     *
+     * @param channel the channel of the file
+     * @param offset  the position of the first element of the matrix in the file
+     * @param rows    the number of rows
+     * @param columns the number of columns
+     * @return the mapped matrix
+     * @throws IOException if an I/O error occurs
+     */
+    public static @NotNull MappedMatrix map(
+            @NotNull FileChannel channel, long offset, int rows, int columns
+    ) throws IOException {
+        if (rows < 0 || columns < 0) throw new IllegalArgumentException("Invalid matrix size");
+        if (channel.size() < offset + size(rows, columns)) throw new IOException("The matrix file is truncated");
+        var rowsPerChunk = rowsPerChunk(columns);
+        var numberOfChunks = (rows == 0) ? 0 : (int) ((rows + (long) rowsPerChunk - 1) / rowsPerChunk);
+        var chunks = new DoubleBuffer[numberOfChunks];
+        for (var c = 0; c < numberOfChunks; c++) {
+            var firstRow = (long) c * rowsPerChunk;
+            var chunkRows = Math.min(rowsPerChunk, rows - firstRow);
+            var chunk = channel.map(
+                    FileChannel.MapMode.READ_ONLY, offset + firstRow * columns * Double.BYTES,
+                    chunkRows * columns * Double.BYTES
+            );
+            chunks[c] = chunk.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        }
+        return new MappedMatrix(rows, columns, rowsPerChunk, chunks);
+    }
+
+    /**
+     * Write a matrix into a file as raw little-endian doubles, ordered by rows
+     *
+     * @param channel the channel of the file
+     * @param offset  the position of the first element of the matrix in the file
+     * @param matrix  the matrix
+     * @throws IOException if an I/O error occurs
+     */
+    public static void write(
+            @NotNull FileChannel channel, long offset, @NotNull MatrixInterface<?> matrix
+    ) throws IOException {
+        var columns = matrix.columns();
+        var buffer = ByteBuffer.allocateDirect(Math.max(WRITE_BUFFER_SIZE, columns * Double.BYTES))
+                               .order(ByteOrder.LITTLE_ENDIAN);
+        var doubles = buffer.asDoubleBuffer();
+        var position = offset;
+        for (var i = 0; i < matrix.rows(); i++) {
+            if (doubles.remaining() < columns) {
+                position = flush(channel, buffer, doubles, position);
+            }
+            doubles.put(matrix.row(i));
+        }
+        flush(channel, buffer, doubles, position);
+    }
+
+    private static long flush(
+            @NotNull FileChannel channel, @NotNull ByteBuffer buffer, @NotNull DoubleBuffer doubles, long position
+    ) throws IOException {
+        buffer.limit(doubles.position() * Double.BYTES).position(0);
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        buffer.clear();
+        doubles.clear();
+        return position;
+    }
+
+    /**
+     * Get the number of rows
+     *
+     * @return the number of rows
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Get the number of columns
+     *
+     * @return the number of columns
+     */
+    public int columns() {
+        return columns;
+    }
+
+    /**
+     * Get the number of chunks
+     *
+     * @return the number of chunks
+     */
+    public int chunks() {
+        return chunks.length;
+    }
+
+    /**
+     * Get the number of rows stored in each chunk (the last chunk may contain fewer rows)
+     *
+     * @return the number of rows
+     */
+    public int rowsPerChunk() {
+        return rowsPerChunk;
+    }
+
+    /**
+     * Get a chunk of the matrix. The chunk contains the rows starting from {@code c * rowsPerChunk()}.
+     *
+     * @param c the chunk number
+     * @return a read-only buffer positioned at the first element of the chunk
+     */
+    public DoubleBuffer chunk(int c) {
+        return chunks[c].duplicate();
+    }
+
+    /**
+     * Get the value of a cell
+     *
+     * @param i the row
+     * @param j the column
+     * @return the value
+     */
+    public double val(int i, int j) {
+        return chunks[i / rowsPerChunk].get((i % rowsPerChunk) * columns + j);
+    }
+
+    /**
+     * Copy a row of the matrix into an array
+     *
+     * @param i           the row number
+     * @param destination the destination array
+     * @param offset      the position of the first element in the destination array
+     */
+    public void row(int i, double @NotNull [] destination, int offset) {
+        chunks[i / rowsPerChunk].get((i % rowsPerChunk) * columns, destination, offset, columns);
+    }
+
+    /**
+     * Copy the matrix into an array ordered by rows. Rows are copied in parallel.
+     *
+     * @param destination the destination array
+     */
+    public void copyTo(double @NotNull [] destination) {
+        if (destination.length != rows * columns) throw new IllegalArgumentException("Incompatible matrix size");
+        IntStream.range(0, rows).parallel().forEach(i -> row(i, destination, i * columns));
+    }
+
+    /**
+     * Copy the matrix into an array ordered by rows, converting the elements to single precision. Rows are copied in
+     * parallel.
+     *
+     * @param destination the destination array
+     */
+    public void copyTo(float @NotNull [] destination) {
+        if (destination.length != rows * columns) throw new IllegalArgumentException("Incompatible matrix size");
+        IntStream.range(0, rows).parallel().forEach(i -> {
+            var chunk = chunks[i / rowsPerChunk];
+            var offset = (i % rowsPerChunk) * columns;
+            for (int j = 0, k = i * columns; j < columns; j++, k++) {
+                destination[k] = (float) chunk.get(offset + j);
+            }
+        });
+    }
+
+    /**
+     * Get a copy of the matrix as a 1D array ordered by rows
+     *
+     * @return the array
+     */
+    public double[] toArray() {
+        var result = new double[rows * columns];
+        copyTo(result);
+        return result;
+    }
+
+    /**
+     * Get a copy of the matrix as a 2D array (array of rows)
+     *
+     * @return the array
+     */
+    public double[][] toArray2D() {
+        var result = new double[rows][columns];
+        IntStream.range(0, rows).parallel().forEach(i -> row(i, result[i], 0));
+        return result;
+    }
+}
@@ -0,0 +1,88 @@
+package com.alaimos.MITHrIL.api.Math;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A pool of named matrices and arrays that are reused across the iterations of an algorithm. A buffer is allocated the
+ * first time it is requested, and it is allocated again only if the requested size changes (for example, for the last
+ * batch of a run). Matrices returned by the pool are owned by the pool: they must not be closed by the caller, and
+ * their content is only valid until the next request for the same buffer.
+ * <p>
+ * The pool can be shared by multiple threads, provided that each buffer is used by one thread at a time (for example,
+ * the stages of a {@link BatchPipeline} use different buffers for each slot).
+ */
+public class MatrixBufferPool implements Closeable {
+
+    private final MatrixFactoryInterface<?> factory;
+    private final Map<String, MatrixInterface<?>> matrices = new HashMap<>();
+    private final Map<String, double[]> arrays = new HashMap<>();
+
+    public MatrixBufferPool(@NotNull MatrixFactoryInterface<?> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Get a matrix buffer. The content of the matrix is undefined, and it should be filled by the caller.
+     *
+     * @param name    the name of the buffer
+     * @param rows    the number of rows
+     * @param columns the number of columns
+     * @return the matrix
+     */
+    public synchronized MatrixInterface<?> matrix(@NotNull String name, int rows, int columns) {
+        var matrix = matrices.get(name);
+        if (matrix != null && matrix.rows() == rows && matrix.columns() == columns) return matrix;
+        if (matrix != null) closeQuietly(matrices.remove(name));
+        matrix = factory.of(new double[rows * columns], rows, columns);
+        if (!matrix.supportsFill()) {
+            closeQuietly(matrix);
+            throw new UnsupportedOperationException(
+                    "The matrix implementation " + matrix.getClass().getName() + " cannot be used as a buffer since " +
+                    "it does not support in-place filling"
+            );
+        }
+        matrices.put(name, matrix);
+        return matrix;
+    }
+
+    /**
+     * Get an array buffer filled with zeros
+     *
+     * @param name the name of the buffer
+     * @param size the size of the array
+     * @return the array
+     */
+    public synchronized double[] array(@NotNull String name, int size) {
+        var array = arrays.get(name);
+        if (array == null || array.length != size) {
+            array = new double[size];
+            arrays.put(name, array);
+        } else {
+            Arrays.fill(array, 0.0);
+        }
+        return array;
+    }
+
+    private static void closeQuietly(@NotNull MatrixInterface<?> matrix) {
+        try {
+            matrix.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    /**
+     * Releases all the buffers of the pool
+     */
+    @Override
+    public synchronized void close() {
+        matrices.values().forEach(MatrixBufferPool::closeQuietly);
+        matrices.clear();
+        arrays.clear();
+    }
+}
@@ -20,6 +20,31 @@ public interface MatrixFactoryInterface<E extends MatrixInterface<E>> extends Ex
      */
     void setMaxThreads(int maxThreads);
 
+    /**
+     * Get a factory that enables or disables the single precision (float32) mode. In single precision mode, the
+     * matrices created by the factory store their elements as floats, and multiplications and subtractions are
+     * performed in single precision. Inversion, rank, and determinant are always computed in double precision.
+     * <p>
+     * Factories are shared by the whole application, so this factory is never modified: a configured copy is returned
+     * instead. This operation is not supported by all implementations, which return this factory as it is. Use
+     * {@link #singlePrecision()} on the returned factory to check if the mode has been enabled.
+     *
+     * @param singlePrecision true to enable the single precision mode
+     * @return a factory with the requested precision
+     */
+    default MatrixFactoryInterface<E> withSinglePrecision(boolean singlePrecision) {
+        return this;
+    }
+
+    /**
+     * Check if the single precision mode is enabled
+     *
+     * @return true if the matrices created by this factory use single precision
+     */
+    default boolean singlePrecision() {
+        return false;
+    }
+
     /**
      * Create a new matrix from a 2D array
      *
@@ -59,4 +84,30 @@ public interface MatrixFactoryInterface<E extends MatrixInterface<E>> extends Ex
      */
     E of(MatrixInterface<?> matrix);
 
+    /**
+     * Create a new matrix from a memory-mapped matrix file. Implementations that can use the mapped region as their
+     * storage should wrap it without copying. The default implementation copies the mapped elements into a new array.
+     *
+     * @param matrix the mapped matrix
+     * @return a new matrix
+     */
+    default E of(MappedMatrix matrix) {
+        return of(matrix.toArray(), matrix.rows(), matrix.columns());
+    }
+
+    /**
+     * Convert a matrix to the precision used by this factory. The matrix is returned as it is if its precision already
+     * matches the one of this factory; otherwise, a copy created by this factory is returned. This method is useful to
+     * convert the matrices built by an inversion factory once, instead of converting them at each multiplication.
+     * Sparse operands are always returned as they are, since the dense implementations read their non-zero elements
+     * through the kernels of {@link SparseOperand}, and converting them would build a dense copy.
+     *
+     * @param matrix the matrix to convert
+     * @return the matrix itself or a new matrix
+     */
+    default MatrixInterface<?> withPrecision(MatrixInterface<?> matrix) {
+        if (matrix instanceof SparseOperand<?> || matrix.singlePrecision() == singlePrecision()) return matrix;
+        return of(matrix);
+    }
+
 }
@@ -1,7 +1,11 @@
 package com.alaimos.MITHrIL.api.Math;
 
+import org.jetbrains.annotations.NotNull;
+
 import java.io.Closeable;
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 
 /**
  * This interface defines the interface of a nearly immutable matrix with some common operations. The matrix is nearly
@@ -22,6 +26,15 @@ public interface MatrixInterface<E extends MatrixInterface<?>> extends Closeable
      */
     void transposeInPlace();
 
+    /**
+     * Check if the elements of this matrix are stored in single precision (float32)
+     *
+     * @return true if the matrix uses single precision
+     */
+    default boolean singlePrecision() {
+        return false;
+    }
+
     /**
      * Invert the matrix. It uses the Moore-Penrose pseudo-inverse to invert the matrix.
      *
@@ -79,6 +92,18 @@ public interface MatrixInterface<E extends MatrixInterface<?>> extends Closeable
      */
     E postMultiply(MatrixInterface<?> matrix);
 
+    /**
+     * Post-multiply this matrix by a sparse matrix. That is, the operation is performed as this * matrix. Each column
+     * of the result is a weighted sum of the few columns of this matrix corresponding to the non-empty rows of the
+     * sparse matrix. Implementations should override this method to avoid touching the other columns.
+     *
+     * @param matrix the sparse matrix
+     * @return a new matrix
+     */
+    default E postMultiplySparse(SparseOperand<?> matrix) {
+        return postMultiply(matrix);
+    }
+
     /**
      * Post-multiply this matrix by a vector.
      *
@@ -113,6 +138,94 @@ public interface MatrixInterface<E extends MatrixInterface<?>> extends Closeable
      */
     E subtract(double value);
 
+    /**
+     * Replace the content of this matrix with the values in the array. The array stores the matrix by rows. That is,
+     * given the element (i,j) of the matrix, the corresponding element in the array is data[i * columns() + j]. This
+     * operation is used to reuse the same matrix across multiple iterations of an algorithm.
+     *
+     * @param data the new content of the matrix
+     * @throws UnsupportedOperationException if the matrix cannot be modified in place (see {@link #supportsFill()})
+     */
+    default void fill(double[] data) {
+        throw new UnsupportedOperationException(
+                "The matrix implementation " + getClass().getName() + " does not support in-place filling"
+        );
+    }
+
+    /**
+     * Replace the content of a row of this matrix with the values in the array. Implementations should override this
+     * method to write the row directly in their storage, since the default one replaces the whole matrix.
+     *
+     * @param i    the row number
+     * @param data the new content of the row, which must contain columns() elements
+     * @throws UnsupportedOperationException if the matrix cannot be modified in place (see {@link #supportsFill()})
+     */
+    default void fillRow(int i, double @NotNull [] data) {
+        var columns = columns();
+        if (data.length != columns) throw new IllegalArgumentException("Incompatible row size");
+        var content = raw1D();
+        System.arraycopy(data, 0, content, i * columns, columns);
+        fill(content);
+    }
+
+    /**
+     * Check if the content of this matrix can be replaced in place with {@link #fill(double[])} and
+     * {@link #fillRow(int, double[])}. Only such matrices can
+     * be used as the destination of the operations that store their result in another matrix (for example,
+     * {@link #preMultiplyInto(MatrixInterface, MatrixInterface)}) and as buffers of a {@link MatrixBufferPool}.
+     *
+     * @return true if {@link #fill(double[])} is supported
+     */
+    default boolean supportsFill() {
+        return false;
+    }
+
+    /**
+     * Pre-multiply this matrix by another matrix, storing the result in the destination matrix. That is, the operation
+     * is performed as destination = matrix * this. The destination must have the correct size. Implementations should
+     * override this method to write the result directly in the storage of the destination.
+     *
+     * @param matrix      the other matrix
+     * @param destination the destination matrix
+     */
+    default void preMultiplyInto(MatrixInterface<?> matrix, @NotNull MatrixInterface<?> destination) {
+        try (var result = preMultiply(matrix)) {
+            destination.fill(result.raw1D());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Post-multiply this matrix by a sparse matrix, storing the result in the destination matrix. That is, the operation
+     * is performed as destination = this * matrix. The destination must have the correct size.
+     *
+     * @param matrix      the sparse matrix
+     * @param destination the destination matrix
+     */
+    default void postMultiplySparseInto(SparseOperand<?> matrix, @NotNull MatrixInterface<?> destination) {
+        try (var result = postMultiplySparse(matrix)) {
+            destination.fill(result.raw1D());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Subtract a matrix from this matrix, storing the result in the destination matrix. That is, the operation is
+     * performed as destination = this - matrix. The destination must have the correct size.
+     *
+     * @param matrix      the matrix
+     * @param destination the destination matrix
+     */
+    default void subtractInto(MatrixInterface<?> matrix, @NotNull MatrixInterface<?> destination) {
+        try (var result = subtract(matrix)) {
+            destination.fill(result.raw1D());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     /**
      * Get the value of a cell
      *
@@ -130,6 +243,16 @@ public interface MatrixInterface<E extends MatrixInterface<?>> extends Closeable
      */
     double[] row(int i);
 
+    /**
+     * Copy a row of the matrix into an array, without allocating a new one for each row
+     *
+     * @param i           the row number
+     * @param destination the array, which must contain at least columns() elements
+     */
+    default void rowInto(int i, double @NotNull [] destination) {
+        System.arraycopy(row(i), 0, destination, 0, columns());
+    }
+
     /**
      * Get a column of the matrix
      *
@@ -159,6 +282,29 @@ public interface MatrixInterface<E extends MatrixInterface<?>> extends Closeable
      */
     double[][] raw2D();
 
+    /**
+     * Get the raw matrix as a 2D array. If the direction is ROW, the first index is the row number (as in
+     * {@link #raw2D()}). If the direction is COLUMN, the first index is the column number. Copying all the columns at
+     * once is much cheaper than calling {@link #column(int)} for each column, since the storage is traversed only once.
+     *
+     * @param direction the direction of the result
+     * @return the raw matrix
+     */
+    default double[][] raw2D(@NotNull Direction direction) {
+        if (direction == Direction.ROW) return raw2D();
+        var rows = rows();
+        var columns = columns();
+        var data = raw1D();
+        var result = new double[columns][rows];
+        for (var i = 0; i < rows; i++) {
+            var offset = i * columns;
+            for (var j = 0; j < columns; j++) {
+                result[j][i] = data[offset + j];
+            }
+        }
+        return result;
+    }
+
     /**
      * Get the raw matrix as a 1D array
      *
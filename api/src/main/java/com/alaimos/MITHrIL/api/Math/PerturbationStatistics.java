@@ -0,0 +1,136 @@
+package com.alaimos.MITHrIL.api.Math;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The running statistics of the perturbations of a set of elements (for example, the nodes or the pathways of a
+ * metapathway) across the runs of a simulation: the mean, the sum of squared differences from the mean, and the number
+ * of runs where each element is activated (perturbation greater than epsilon) or inhibited (perturbation less than
+ * -epsilon). The statistics are stored as a structure of arrays, with one primitive array for each statistic, so that
+ * they can be updated by the {@link RowStreamingAccumulator} and finalized with tight loops. The number of runs where
+ * an element is unchanged is not stored, since it is the number of runs minus the other two counters.
+ */
+public class PerturbationStatistics {
+
+    public static final double LOG_0_5 = -0.6931471805599453;
+    final double epsilon;
+    final double[] mean;
+    final double[] m2;
+    final int[] activations;
+    final int[] inhibitions;
+    int count = 0;
+    private double[] standardDeviation = null;
+
+    /**
+     * Create the statistics of a set of elements
+     *
+     * @param size     the number of elements
+     * @param epsilon  the threshold used to count activations and inhibitions
+     * @param counters if false, activations and inhibitions are not counted
+     */
+    public PerturbationStatistics(int size, double epsilon, boolean counters) {
+        this.epsilon = epsilon;
+        mean         = new double[size];
+        m2           = new double[size];
+        activations  = counters ? new int[size] : null;
+        inhibitions  = counters ? new int[size] : null;
+    }
+
+    public int size() {
+        return mean.length;
+    }
+
+    /**
+     * Get the number of runs accumulated so far
+     *
+     * @return the number of runs
+     */
+    public int count() {
+        return count;
+    }
+
+    public double[] mean() {
+        return mean;
+    }
+
+    public boolean hasCounters() {
+        return activations != null;
+    }
+
+    /**
+     * Get the standard deviation of each element. Once it is computed, no other run can be accumulated.
+     *
+     * @return the standard deviations
+     */
+    public double[] standardDeviation() {
+        if (standardDeviation == null) {
+            var nm1 = count - 1;
+            for (var i = 0; i < m2.length; i++) {
+                m2[i] = Math.sqrt(m2[i] / nm1);
+            }
+            standardDeviation = m2;
+        }
+        return standardDeviation;
+    }
+
+    /**
+     * Check if the statistics can still be updated
+     *
+     * @return true if the standard deviation was not computed yet
+     */
+    boolean isOpen() {
+        return standardDeviation == null;
+    }
+
+    /**
+     * Compute the activity score of each element. The probabilities of activation, inhibition, and no change are
+     * estimated from the counters with a small prior, and the score is the log-odds of the most likely outcome (zero if
+     * the element is unchanged, NaN if no outcome has a probability greater than 0.5). Since each counter is an integer
+     * between zero and the number of runs, the log-probabilities and the log-odds are computed once for each possible
+     * value, and the scores are obtained with table lookups.
+     *
+     * @return the activity scores
+     */
+    public double @NotNull [] activityScores() {
+        if (!hasCounters()) throw new IllegalStateException("Activations and inhibitions were not counted");
+        var n = count;
+        var prior = 1d / (n * 1000d);
+        var countTotal = Math.log(n + 3 * prior);
+        var logProbability = new double[n + 1];
+        var logOdds = new double[n + 1];
+        for (var c = 0; c <= n; c++) {
+            logProbability[c] = Math.log(c + prior) - countTotal;
+            logOdds[c]        = logProbability[c] - Math.log1p(-1 - Math.expm1(logProbability[c]));
+        }
+        var scores = new double[mean.length];
+        int a, b;
+        for (var i = 0; i < scores.length; i++) {
+            a = activations[i];
+            b = inhibitions[i];
+            if (logProbability[a] > LOG_0_5) {
+                scores[i] = logOdds[a];
+            } else if (logProbability[b] > LOG_0_5) {
+                scores[i] = -logOdds[b];
+            } else if (logProbability[n - a - b] > LOG_0_5) {
+                scores[i] = 0;
+            } else {
+                scores[i] = Double.NaN;
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Get the counters of each element as an array of (activations, inhibitions, no change) triples
+     *
+     * @return the counters
+     */
+    public int @NotNull [] @NotNull [] counters() {
+        if (!hasCounters()) throw new IllegalStateException("Activations and inhibitions were not counted");
+        var result = new int[mean.length][];
+        for (var i = 0; i < result.length; i++) {
+            result[i] = new int[]{activations[i], inhibitions[i], count - activations[i] - inhibitions[i]};
+        }
+        return result;
+    }
+}
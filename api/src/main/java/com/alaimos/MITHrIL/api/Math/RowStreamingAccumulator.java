@@ -0,0 +1,177 @@
+package com.alaimos.MITHrIL.api.Math;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.stream.IntStream;
+
+/**
+ * Fold a batch of runs into the running {@link PerturbationStatistics} of the groups they belong to. The batch is a
+ * matrix stored by rows, where each row is an element (for example, a node), and each column is a run. The columns of
+ * a group are contiguous, so each row is read in a single sequential pass, and the statistics of the group are computed
+ * on a contiguous segment of the row. The partial statistics are merged into the running ones with Chan's formula for
+ * the parallel computation of the variance.
+ * <p>
+ * The rows are split into ranges that are processed in parallel on the current fork-join pool. Since each range updates
+ * a different set of elements of the running statistics, no synchronization is needed.
+ */
+public final class RowStreamingAccumulator {
+
+    /**
+     * The number of row ranges for each thread
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private RowStreamingAccumulator() {
+    }
+
+    /**
+     * Find the segments of contiguous columns that belong to the same group
+     *
+     * @param columnToGroup the group of each column
+     * @return the boundaries of the segments: segment k contains the columns from result[k] (inclusive) to result[k +
+     * 1] (exclusive)
+     */
+    @Contract(pure = true)
+    public static int @NotNull [] segments(int @NotNull [] columnToGroup) {
+        var count = columnToGroup.length == 0 ? 0 : 1;
+        for (var j = 1; j < columnToGroup.length; j++) {
+            if (columnToGroup[j] != columnToGroup[j - 1]) count++;
+        }
+        var result = new int[count + 1];
+        var k = 1;
+        for (var j = 1; j < columnToGroup.length; j++) {
+            if (columnToGroup[j] != columnToGroup[j - 1]) result[k++] = j;
+        }
+        result[count] = columnToGroup.length;
+        return result;
+    }
+
+    /**
+     * Fold a batch into the running statistics. Each target must appear in a single segment.
+     *
+     * @param data        the batch stored by rows
+     * @param rows        the number of rows of the batch
+     * @param columns     the number of columns of the batch
+     * @param segments    the boundaries of the segments (see {@link #segments(int[])})
+     * @param targets     the running statistics of each segment
+     * @param parallelism the number of threads
+     */
+    public static void accumulate(
+            double @NotNull [] data, int rows, int columns, int @NotNull [] segments,
+            PerturbationStatistics @NotNull [] targets, int parallelism
+    ) {
+        if (data.length != rows * columns) throw new IllegalArgumentException("Incompatible matrix size");
+        accumulate(rows, segments, targets, parallelism, (from, to) -> {
+            for (var row = from; row < to; row++) {
+                for (var k = 0; k < targets.length; k++) {
+                    accumulate(data, row * columns, segments[k], segments[k + 1], row, targets[k]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Fold a batch into the running statistics. Each target must appear in a single segment. The rows are copied one
+     * at a time into a buffer owned by each range, so the batch is never copied as a whole.
+     *
+     * @param matrix      the batch
+     * @param segments    the boundaries of the segments (see {@link #segments(int[])})
+     * @param targets     the running statistics of each segment
+     * @param parallelism the number of threads
+     */
+    public static void accumulate(
+            @NotNull MatrixInterface<?> matrix, int @NotNull [] segments, PerturbationStatistics @NotNull [] targets,
+            int parallelism
+    ) {
+        var columns = matrix.columns();
+        if (segments.length > 0 && segments[segments.length - 1] > columns) {
+            throw new IllegalArgumentException("Incompatible segments");
+        }
+        accumulate(matrix.rows(), segments, targets, parallelism, (from, to) -> {
+            var buffer = new double[columns];
+            for (var row = from; row < to; row++) {
+                matrix.rowInto(row, buffer);
+                for (var k = 0; k < targets.length; k++) {
+                    accumulate(buffer, 0, segments[k], segments[k + 1], row, targets[k]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Check the targets, split the rows into ranges that are processed in parallel, and update the number of runs of
+     * each target
+     *
+     * @param rows        the number of rows of the batch
+     * @param segments    the boundaries of the segments
+     * @param targets     the running statistics of each segment
+     * @param parallelism the number of threads
+     * @param range       the function that folds a range of rows, from the first (inclusive) to the last (exclusive)
+     */
+    private static void accumulate(
+            int rows, int @NotNull [] segments, PerturbationStatistics @NotNull [] targets, int parallelism,
+            @NotNull RangeConsumer range
+    ) {
+        if (segments.length != targets.length + 1) throw new IllegalArgumentException("Incompatible segments");
+        for (var target : targets) {
+            if (target.size() != rows) throw new IllegalArgumentException("Incompatible statistics size");
+            if (!target.isOpen()) throw new IllegalStateException("The statistics are already finalized");
+        }
+        if (rows == 0 || targets.length == 0) return;
+        var chunks = Math.min(rows, CHUNKS_PER_THREAD * Math.max(1, parallelism));
+        var chunkSize = (rows + chunks - 1) / chunks;
+        IntStream.range(0, (rows + chunkSize - 1) / chunkSize)
+                 .parallel()
+                 .forEach(c -> range.accept(c * chunkSize, Math.min(rows, (c + 1) * chunkSize)));
+        for (var k = 0; k < targets.length; k++) {
+            targets[k].count += segments[k + 1] - segments[k];
+        }
+    }
+
+    /**
+     * Fold a segment of a row into the running statistics of an element
+     *
+     * @param data    the batch stored by rows
+     * @param offset  the position of the first element of the row
+     * @param from    the first column of the segment (inclusive)
+     * @param to      the last column of the segment (exclusive)
+     * @param element the element (that is, the row)
+     * @param target  the running statistics
+     */
+    private static void accumulate(
+            double[] data, int offset, int from, int to, int element, @NotNull PerturbationStatistics target
+    ) {
+        var n = to - from;
+        var sum = 0.0;
+        for (var j = offset + from; j < offset + to; j++) {
+            sum += data[j];
+        }
+        var mean = sum / n;
+        var m2 = 0.0;
+        var epsilon = target.epsilon;
+        int activations = 0, inhibitions = 0;
+        double value, delta;
+        for (var j = offset + from; j < offset + to; j++) {
+            value = data[j];
+            delta = value - mean;
+            m2 += delta * delta;
+            activations += value > epsilon ? 1 : 0;
+            inhibitions += value < -epsilon ? 1 : 0;
+        }
+        var count = target.count;
+        var total = count + n;
+        delta = mean - target.mean[element];
+        target.mean[element] += delta * n / total;
+        target.m2[element] += m2 + delta * delta * ((double) count * n / total);
+        if (target.activations != null) {
+            target.activations[element] += activations;
+            target.inhibitions[element] += inhibitions;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RangeConsumer {
+        void accept(int from, int to);
+    }
+}
@@ -0,0 +1,726 @@
+package com.alaimos.MITHrIL.api.Math.SparseMatrix;
+
+import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+import com.alaimos.MITHrIL.api.Math.SparseOperand;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Serial;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+/**
+ * A sparse matrix stored in Compressed Sparse Row (CSR) format. The non-zero values of row i are stored in
+ * values[rowPointers[i]..rowPointers[i+1]), and their column indices in the same positions of columnIndices. Column
+ * indices of each row are sorted. The internal arrays are never modified after construction, therefore they can be
+ * safely shared between matrices.
+ * <p>
+ * This implementation is meant for matrices with very few non-zero elements, such as the repository (node x pathway)
+ * matrix. Products with dense matrices are computed by the dense implementation through the
+ * {@link #preMultiplyRaw(double[], int)} and {@link #postMultiplyRaw(double[], int)} kernels. Operations that
+ * produce dense results (inversion, subtraction, ...) are supported, but they are computed on a dense copy of the
+ * matrix.
+ */
+public class SparseMatrix implements SparseOperand<SparseMatrix> {
+
+    @Serial
+    private static final long serialVersionUID = 2213405178632395207L;
+
+    private int rows;
+    private int columns;
+    private int[] rowPointers;
+    private int[] columnIndices;
+    private double[] values;
+
+    private SparseMatrix(int rows, int columns, int[] rowPointers, int[] columnIndices, double[] values) {
+        this.rows          = rows;
+        this.columns       = columns;
+        this.rowPointers   = rowPointers;
+        this.columnIndices = columnIndices;
+        this.values        = values;
+    }
+
+    public SparseMatrix(double[][] matrix) {
+        this(matrix, Direction.ROW);
+    }
+
+    public SparseMatrix(double[][] matrix, @NotNull MatrixInterface.Direction direction) {
+        var byRow = direction == Direction.ROW;
+        rows    = byRow ? matrix.length : matrix[0].length;
+        columns = byRow ? matrix[0].length : matrix.length;
+        compress((i, j) -> byRow ? matrix[i][j] : matrix[j][i]);
+    }
+
+    public SparseMatrix(double[] matrix, int rows, int columns) {
+        this.rows    = rows;
+        this.columns = columns;
+        compress((i, j) -> matrix[i * columns + j]);
+    }
+
+    public SparseMatrix(@NotNull MatrixInterface<?> matrix) {
+        if (matrix instanceof SparseMatrix sm) {
+            rows          = sm.rows;
+            columns       = sm.columns;
+            rowPointers   = sm.rowPointers;
+            columnIndices = sm.columnIndices;
+            values        = sm.values;
+        } else {
+            rows    = matrix.rows();
+            columns = matrix.columns();
+            var raw = matrix.raw1D();
+            compress((i, j) -> raw[i * columns + j]);
+        }
+    }
+
+    /**
+     * Build a sparse matrix from a list of (row, column, value) triplets. Duplicate entries are summed.
+     *
+     * @param rows          the number of rows
+     * @param columns       the number of columns
+     * @param rowIndices    the row index of each entry
+     * @param columnIndices the column index of each entry
+     * @param values        the value of each entry
+     * @param size          the number of entries in the arrays
+     * @return a new matrix
+     */
+    public static @NotNull SparseMatrix fromTriplets(
+            int rows, int columns, int @NotNull [] rowIndices, int @NotNull [] columnIndices,
+            double @NotNull [] values, int size
+    ) {
+        var pointers = new int[rows + 1];
+        for (var k = 0; k < size; k++) {
+            pointers[rowIndices[k] + 1]++;
+        }
+        for (var i = 0; i < rows; i++) {
+            pointers[i + 1] += pointers[i];
+        }
+        var next = Arrays.copyOf(pointers, rows);
+        var tmpColumns = new int[size];
+        var tmpValues = new double[size];
+        for (var k = 0; k < size; k++) {
+            var p = next[rowIndices[k]]++;
+            tmpColumns[p] = columnIndices[k];
+            tmpValues[p]  = values[k];
+        }
+        // Sort each row by column index and merge duplicates. Rows are sorted on a packed key (the column index in the
+        // upper 32 bits and the position in the lower ones), so no object is allocated and the sort is stable.
+        var newPointers = new int[rows + 1];
+        var newColumns = new int[size];
+        var newValues = new double[size];
+        var keys = new long[size];
+        var nnz = 0;
+        for (var i = 0; i < rows; i++) {
+            var start = pointers[i];
+            var end = pointers[i + 1];
+            var sorted = true;
+            for (var p = start; p < end; p++) {
+                keys[p] = ((long) tmpColumns[p] << 32) | p;
+                if (p > start && tmpColumns[p] < tmpColumns[p - 1]) sorted = false;
+            }
+            if (!sorted) Arrays.sort(keys, start, end);
+            for (var k = start; k < end; k++) {
+                var p = (int) keys[k];
+                if (nnz > newPointers[i] && newColumns[nnz - 1] == tmpColumns[p]) {
+                    newValues[nnz - 1] += tmpValues[p];
+                } else {
+                    newColumns[nnz]  = tmpColumns[p];
+                    newValues[nnz++] = tmpValues[p];
+                }
+            }
+            newPointers[i + 1] = nnz;
+        }
+        return new SparseMatrix(
+                rows, columns, newPointers, Arrays.copyOf(newColumns, nnz), Arrays.copyOf(newValues, nnz)
+        );
+    }
+
+    /**
+     * Compress a dense matrix, whose elements are provided by the accessor, into the CSR arrays of this object
+     *
+     * @param accessor a function that returns the element (i,j) of the dense matrix
+     */
+    private void compress(@NotNull ElementAccessor accessor) {
+        var nnz = 0;
+        for (var i = 0; i < rows; i++) {
+            for (var j = 0; j < columns; j++) {
+                if (accessor.get(i, j) != 0.0) nnz++;
+            }
+        }
+        rowPointers   = new int[rows + 1];
+        columnIndices = new int[nnz];
+        values        = new double[nnz];
+        var p = 0;
+        double v;
+        for (var i = 0; i < rows; i++) {
+            for (var j = 0; j < columns; j++) {
+                v = accessor.get(i, j);
+                if (v != 0.0) {
+                    columnIndices[p] = j;
+                    values[p++]      = v;
+                }
+            }
+            rowPointers[i + 1] = p;
+        }
+    }
+
+    /**
+     * Get the number of non-zero elements stored in the matrix
+     *
+     * @return the number of non-zero elements
+     */
+    public int nonZeros() {
+        return values.length;
+    }
+
+    /**
+     * Transpose the matrix
+     *
+     * @return a new matrix
+     */
+    @Override
+    public SparseMatrix transpose() {
+        var nnz = values.length;
+        var tPointers = new int[columns + 1];
+        var tColumns = new int[nnz];
+        var tValues = new double[nnz];
+        for (var p = 0; p < nnz; p++) {
+            tPointers[columnIndices[p] + 1]++;
+        }
+        for (var j = 0; j < columns; j++) {
+            tPointers[j + 1] += tPointers[j];
+        }
+        var next = Arrays.copyOf(tPointers, columns);
+        for (var i = 0; i < rows; i++) {
+            for (var p = rowPointers[i]; p < rowPointers[i + 1]; p++) {
+                var q = next[columnIndices[p]]++;
+                tColumns[q] = i;
+                tValues[q]  = values[p];
+            }
+        }
+        return new SparseMatrix(columns, rows, tPointers, tColumns, tValues);
+    }
+
+    /**
+     * Transpose the matrix in place
+     */
+    @Override
+    public void transposeInPlace() {
+        var t = transpose();
+        rows          = t.rows;
+        columns       = t.columns;
+        rowPointers   = t.rowPointers;
+        columnIndices = t.columnIndices;
+        values        = t.values;
+    }
+
+    /**
+     * Invert the matrix. It uses the Moore-Penrose pseudo-inverse to invert the matrix. The inversion is computed on a
+     * dense copy of the matrix.
+     *
+     * @return a new matrix
+     */
+    @Override
+    public SparseMatrix invert() {
+        var svd = new SingularValueDecomposition(new Array2DRowRealMatrix(raw2D(), false));
+        return new SparseMatrix(svd.getSolver().getInverse().getData());
+    }
+
+    /**
+     * Invert the matrix in place. It uses the Moore-Penrose pseudo-inverse to invert the matrix. The inversion is
+     * computed on a dense copy of the matrix.
+     */
+    @Override
+    public void invertInPlace() {
+        var inverse = invert();
+        rows          = inverse.rows;
+        columns       = inverse.columns;
+        rowPointers   = inverse.rowPointers;
+        columnIndices = inverse.columnIndices;
+        values        = inverse.values;
+    }
+
+    /**
+     * Get the rank of the matrix
+     *
+     * @return the rank
+     */
+    @Override
+    public int rank() {
+        return new SingularValueDecomposition(new Array2DRowRealMatrix(raw2D(), false)).getRank();
+    }
+
+    /**
+     * Get the determinant of the matrix
+     *
+     * @return the determinant
+     */
+    @Override
+    public double determinant() {
+        return new LUDecomposition(new Array2DRowRealMatrix(raw2D(), false)).getDeterminant();
+    }
+
+    /**
+     * Check if the matrix is invertible
+     *
+     * @return true if the matrix is invertible
+     */
+    @Override
+    public boolean invertible() {
+        return rank() == Math.min(rows, columns);
+    }
+
+    /**
+     * Get the indices of the rows containing at least one non-zero element
+     *
+     * @return the sorted indices of the non-empty rows
+     */
+    @Override
+    public int @NotNull [] nonEmptyRows() {
+        return IntStream.range(0, rows).filter(i -> rowPointers[i + 1] > rowPointers[i]).toArray();
+    }
+
+    /**
+     * Get a dense copy of a subset of rows of this matrix. When the subset contains all the non-empty rows, the
+     * product of the corresponding columns of a dense matrix with this copy is equal to the product with the whole
+     * sparse matrix. This is the kernel used by dense implementations to compute a product with a sparse right-hand
+     * side as a gather of few columns followed by a small dense product.
+     *
+     * @param subset the indices of the rows
+     * @return the rows stored by rows, a (subset.length x columns()) matrix
+     */
+    @Override
+    public double @NotNull [] compactRows(int @NotNull [] subset) {
+        var result = new double[subset.length * columns];
+        compactRowsInto(subset, DoubleBuffer.wrap(result));
+        return result;
+    }
+
+    /**
+     * Write a dense copy of a subset of rows of this matrix into a buffer, for example a view of native memory. Only
+     * the non-zero elements are written, so the buffer must be filled with zeros.
+     *
+     * @param subset      the indices of the rows
+     * @param destination the buffer, which will contain a (subset.length x columns()) matrix stored by rows
+     */
+    @Override
+    public void compactRowsInto(int @NotNull [] subset, @NotNull DoubleBuffer destination) {
+        if (destination.capacity() < subset.length * columns) {
+            throw new IllegalArgumentException("Incompatible buffer size");
+        }
+        for (var r = 0; r < subset.length; r++) {
+            var i = subset[r];
+            for (var p = rowPointers[i]; p < rowPointers[i + 1]; p++) {
+                destination.put(r * columns + columnIndices[p], values[p]);
+            }
+        }
+    }
+
+    /**
+     * Compute the product matrix * this, where matrix is a dense matrix stored by rows. This is the kernel used by
+     * dense implementations to multiply by a sparse matrix without converting it. Only the columns of the dense matrix
+     * corresponding to non-empty rows of this matrix are read.
+     *
+     * @param matrix the dense matrix stored by rows (element (i,j) is matrix[i * rows() + j])
+     * @param rows   the number of rows of the dense matrix
+     * @return the result stored by rows, a (rows x columns()) matrix
+     */
+    public double @NotNull [] preMultiplyRaw(double @NotNull [] matrix, int rows) {
+        var inner = this.rows;
+        if (matrix.length != rows * inner) throw new IllegalArgumentException("Incompatible matrix size");
+        var nonEmptyRows = nonEmptyRows();
+        var result = new double[rows * columns];
+        IntStream.range(0, rows).parallel().forEach(i -> {
+            var inOffset = i * inner;
+            var outOffset = i * columns;
+            double a;
+            for (var k : nonEmptyRows) {
+                a = matrix[inOffset + k];
+                if (a == 0.0) continue;
+                for (var p = rowPointers[k]; p < rowPointers[k + 1]; p++) {
+                    result[outOffset + columnIndices[p]] += a * values[p];
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Compute the product this * matrix, where matrix is a dense matrix stored by rows. This is the kernel used by
+     * dense implementations to multiply by a sparse matrix without converting it.
+     *
+     * @param matrix  the dense matrix stored by rows (element (i,j) is matrix[i * columns + j])
+     * @param columns the number of columns of the dense matrix
+     * @return the result stored by rows, a (rows() x columns) matrix
+     */
+    public double @NotNull [] postMultiplyRaw(double @NotNull [] matrix, int columns) {
+        if (matrix.length != this.columns * columns) throw new IllegalArgumentException("Incompatible matrix size");
+        var result = new double[rows * columns];
+        IntStream.range(0, rows).parallel().forEach(i -> {
+            var outOffset = i * columns;
+            int inOffset;
+            double v;
+            for (var p = rowPointers[i]; p < rowPointers[i + 1]; p++) {
+                v        = values[p];
+                inOffset = columnIndices[p] * columns;
+                for (var j = 0; j < columns; j++) {
+                    result[outOffset + j] += v * matrix[inOffset + j];
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Compute the product this * matrix, where matrix is a dense matrix stored as an array of rows, and write the
+     * result in the rows of the destination. This is the kernel used by dense implementations that store their content
+     * as an array of rows, so that the product is computed without copying the operand or allocating the result.
+     *
+     * @param matrix      the dense matrix stored as an array of rows, a (columns() x n) matrix
+     * @param destination the array of rows where the result is stored, a (rows() x n) matrix
+     */
+    public void postMultiplyRawInto(double @NotNull [][] matrix, double @NotNull [][] destination) {
+        if (matrix.length != columns || destination.length != rows) {
+            throw new IllegalArgumentException("Incompatible matrix size");
+        }
+        IntStream.range(0, rows).parallel().forEach(i -> {
+            var out = destination[i];
+            Arrays.fill(out, 0.0);
+            double v;
+            double[] in;
+            for (var p = rowPointers[i]; p < rowPointers[i + 1]; p++) {
+                v  = values[p];
+                in = matrix[columnIndices[p]];
+                if (in.length != out.length) throw new IllegalArgumentException("Incompatible matrix size");
+                for (var j = 0; j < out.length; j++) {
+                    out[j] += v * in[j];
+                }
+            }
+        });
+    }
+
+    /**
+     * Compute the product left * right between two sparse matrices
+     *
+     * @param left  the left matrix
+     * @param right the right matrix
+     * @return a new matrix
+     */
+    @Contract("_, _ -> new")
+    private static @NotNull SparseMatrix multiply(@NotNull SparseMatrix left, @NotNull SparseMatrix right) {
+        if (left.columns != right.rows) throw new IllegalArgumentException("Incompatible matrix size");
+        var outColumns = right.columns;
+        var rowColumns = new int[left.rows][];
+        var rowValues = new double[left.rows][];
+        IntStream.range(0, left.rows).parallel().forEach(i -> {
+            var accumulator = new double[outColumns];
+            var used = new boolean[outColumns];
+            var count = 0;
+            for (var p = left.rowPointers[i]; p < left.rowPointers[i + 1]; p++) {
+                var k = left.columnIndices[p];
+                var v = left.values[p];
+                for (var q = right.rowPointers[k]; q < right.rowPointers[k + 1]; q++) {
+                    var j = right.columnIndices[q];
+                    if (!used[j]) {
+                        used[j] = true;
+                        count++;
+                    }
+                    accumulator[j] += v * right.values[q];
+                }
+            }
+            var cols = new int[count];
+            var vals = new double[count];
+            var c = 0;
+            for (var j = 0; j < outColumns && c < count; j++) {
+                if (used[j]) {
+                    cols[c]   = j;
+                    vals[c++] = accumulator[j];
+                }
+            }
+            rowColumns[i] = cols;
+            rowValues[i]  = vals;
+        });
+        var pointers = new int[left.rows + 1];
+        for (var i = 0; i < left.rows; i++) {
+            pointers[i + 1] = pointers[i] + rowColumns[i].length;
+        }
+        var columnIndices = new int[pointers[left.rows]];
+        var values = new double[pointers[left.rows]];
+        for (var i = 0; i < left.rows; i++) {
+            System.arraycopy(rowColumns[i], 0, columnIndices, pointers[i], rowColumns[i].length);
+            System.arraycopy(rowValues[i], 0, values, pointers[i], rowValues[i].length);
+        }
+        return new SparseMatrix(left.rows, outColumns, pointers, columnIndices, values);
+    }
+
+    /**
+     * Pre-multiply this matrix by another matrix. That is, the operation is performed as matrix * this.
+     *
+     * @param matrix the other matrix
+     * @return a new matrix
+     */
+    @Override
+    public SparseMatrix preMultiply(MatrixInterface<?> matrix) {
+        if (matrix instanceof SparseMatrix sm) {
+            return multiply(sm, this);
+        } else {
+            return new SparseMatrix(preMultiplyRaw(matrix.raw1D(), matrix.rows()), matrix.rows(), columns);
+        }
+    }
+
+    /**
+     * Pre-multiply this matrix by a vector. That is, the operation is performed as vector * this.
+     *
+     * @param vector the vector
+     * @return a new vector
+     */
+    @Override
+    public double[] preMultiply(double[] vector) {
+        return preMultiplyRaw(vector, 1);
+    }
+
+    /**
+     * Post-multiply this matrix by another matrix. That is, the operation is performed as this * matrix.
+     *
+     * @param matrix the other matrix
+     * @return a new matrix
+     */
+    @Override
+    public SparseMatrix postMultiply(MatrixInterface<?> matrix) {
+        if (matrix instanceof SparseMatrix sm) {
+            return multiply(this, sm);
+        } else {
+            return new SparseMatrix(postMultiplyRaw(matrix.raw1D(), matrix.columns()), rows, matrix.columns());
+        }
+    }
+
+    /**
+     * Post-multiply this matrix by a vector.
+     *
+     * @param vector the vector
+     * @return a new vector
+     */
+    @Override
+    public double[] postMultiply(double[] vector) {
+        return postMultiplyRaw(vector, 1);
+    }
+
+    /**
+     * Subtract a matrix from this matrix
+     *
+     * @param matrix the matrix
+     * @return a new matrix
+     */
+    @Override
+    public SparseMatrix subtract(MatrixInterface<?> matrix) {
+        var result = raw1D();
+        var other = matrix.raw1D();
+        for (var i = 0; i < result.length; i++) {
+            result[i] -= other[i];
+        }
+        return new SparseMatrix(result, rows, columns);
+    }
+
+    /**
+     * Given a vector, it returns a new matrix obtained by subtracting the vector from each row or column of the matrix.
+     * The direction parameter specifies if the vector is subtracted from rows or columns.
+     *
+     * @param vector    the vector
+     * @param direction the direction
+     * @return a new matrix
+     */
+    @Override
+    public SparseMatrix subtract(double[] vector, Direction direction) {
+        var result = raw1D();
+        for (var i = 0; i < rows; i++) {
+            for (var j = 0; j < columns; j++) {
+                result[i * columns + j] -= (direction == Direction.ROW) ? vector[j] : vector[i];
+            }
+        }
+        return new SparseMatrix(result, rows, columns);
+    }
+
+    /**
+     * Subtract a value from each element of the matrix
+     *
+     * @param value the value
+     * @return a new matrix
+     */
+    @Override
+    public SparseMatrix subtract(double value) {
+        var result = raw1D();
+        for (var i = 0; i < result.length; i++) {
+            result[i] -= value;
+        }
+        return new SparseMatrix(result, rows, columns);
+    }
+
+    /**
+     * Replace the content of this matrix with the values in the array. The array stores the matrix by rows.
+     *
+     * @param data the new content of the matrix
+     */
+    @Override
+    public void fill(double @NotNull [] data) {
+        if (data.length != rows * columns) throw new IllegalArgumentException("Incompatible matrix size");
+        compress((i, j) -> data[i * columns + j]);
+    }
+
+    /**
+     * Check if the content of this matrix can be replaced in place with {@link #fill(double[])}
+     *
+     * @return always true
+     */
+    @Override
+    public boolean supportsFill() {
+        return true;
+    }
+
+    /**
+     * Get the value of a cell
+     *
+     * @param i the row
+     * @param j the column
+     * @return the value
+     */
+    @Override
+    public double val(int i, int j) {
+        var p = Arrays.binarySearch(columnIndices, rowPointers[i], rowPointers[i + 1], j);
+        return (p >= 0) ? values[p] : 0.0;
+    }
+
+    /**
+     * Get a row of the matrix
+     *
+     * @param i the row number
+     * @return the row
+     */
+    @Override
+    public double[] row(int i) {
+        var row = new double[columns];
+        for (var p = rowPointers[i]; p < rowPointers[i + 1]; p++) {
+            row[columnIndices[p]] = values[p];
+        }
+        return row;
+    }
+
+    /**
+     * Get a column of the matrix
+     *
+     * @param j the column number
+     * @return the column
+     */
+    @Override
+    public double[] column(int j) {
+        var column = new double[rows];
+        for (var i = 0; i < rows; i++) {
+            column[i] = val(i, j);
+        }
+        return column;
+    }
+
+    /**
+     * Get the number of rows
+     *
+     * @return the number of rows
+     */
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Get the number of columns
+     *
+     * @return the number of columns
+     */
+    @Override
+    public int columns() {
+        return columns;
+    }
+
+    /**
+     * Get the raw matrix as a 2D array
+     *
+     * @return the raw matrix
+     */
+    @Override
+    public double[][] raw2D() {
+        var result = new double[rows][];
+        for (var i = 0; i < rows; i++) {
+            result[i] = row(i);
+        }
+        return result;
+    }
+
+    /**
+     * Get the raw matrix as a 1D array
+     *
+     * @return the raw matrix
+     */
+    @Override
+    public double[] raw1D() {
+        var result = new double[rows * columns];
+        for (var i = 0; i < rows; i++) {
+            for (var p = rowPointers[i]; p < rowPointers[i + 1]; p++) {
+                result[i * columns + columnIndices[p]] = values[p];
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public double[] applyFunction(VectorToScalarFunction function, Direction direction) {
+        var size = direction == Direction.ROW ? rows() : columns();
+        return IntStream.range(0, size)
+                        .parallel()
+                        .mapToDouble(i -> function.apply(direction == Direction.ROW ? row(i) : column(i), i))
+                        .toArray();
+    }
+
+    @Override
+    public MatrixInterface<?> applyFunction(ElementwiseFunction function) {
+        var result = new double[rows][columns];
+        IntStream.range(0, rows).parallel().forEach(i -> {
+            var row = row(i);
+            for (var j = 0; j < columns; j++) {
+                result[i][j] = function.apply(row[j], i, j);
+            }
+        });
+        return new SparseMatrix(result);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o instanceof MatrixInterface<?> mi)
+            return rows() == mi.rows() && columns() == mi.columns() && Arrays.equals(raw1D(), mi.raw1D());
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        Object tmp = raw1D();
+        return Objects.hash(tmp, rows(), columns());
+    }
+
+    /**
+     * Releases all resources associated with this matrix. For this implementation, it is not necessary to call this
+     * method.
+     */
+    @Override
+    public void close() {
+        rowPointers   = null;
+        columnIndices = null;
+        values        = null;
+    }
+
+    @FunctionalInterface
+    private interface ElementAccessor {
+        double get(int i, int j);
+    }
+}
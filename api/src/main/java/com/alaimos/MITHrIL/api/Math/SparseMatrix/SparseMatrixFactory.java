@@ -0,0 +1,82 @@
+package com.alaimos.MITHrIL.api.Math.SparseMatrix;
+
+import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
+import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+
+public class SparseMatrixFactory implements MatrixFactoryInterface<SparseMatrix> {
+
+    /**
+     * Get the name of the matrix implementation
+     *
+     * @return the name
+     */
+    @Override
+    public String name() {
+        return "sparse";
+    }
+
+    @Override
+    public String description() {
+        return "A sparse matrix implementation (CSR format) for matrices with very few non-zero elements";
+    }
+
+    /**
+     * Set the maximum number of threads to use for the operations. The operation is NOT SUPPORTED by this
+     * implementation. Parallel operations use the common fork-join pool.
+     *
+     * @param maxThreads the maximum number of threads
+     */
+    @Override
+    public void setMaxThreads(int maxThreads) {
+    }
+
+    /**
+     * Create a new matrix from a 2D array
+     *
+     * @param matrix the 2D array (array of rows that is the first index is the row number)
+     * @return a new matrix
+     */
+    @Override
+    public SparseMatrix of(double[][] matrix) {
+        return new SparseMatrix(matrix);
+    }
+
+    /**
+     * Create a new matrix from a 1D array. The array stores the matrix by rows. That is, given the element (i,j) of the
+     * matrix, the corresponding element in the array is matrix[i * columns + j].
+     *
+     * @param matrix  the 1D array
+     * @param rows    the number of rows
+     * @param columns the number of columns
+     * @return a new matrix
+     */
+    @Override
+    public SparseMatrix of(double[] matrix, int rows, int columns) {
+        return new SparseMatrix(matrix, rows, columns);
+    }
+
+    /**
+     * Create a new matrix from a 2D array.
+     *
+     * @param matrix    the 2D array
+     * @param direction the direction of the array (ROW: the array stores the matrix by rows, COLUMN: the array stores
+     *                  the matrix by columns)
+     * @return a new matrix
+     */
+    @Override
+    public SparseMatrix of(double[][] matrix, MatrixInterface.Direction direction) {
+        return new SparseMatrix(matrix, direction);
+    }
+
+    /**
+     * Create a new matrix from a matrix of another type. If the matrix is already sparse, its internal storage is
+     * shared.
+     *
+     * @param matrix the matrix to convert
+     * @return a new matrix
+     */
+    @Override
+    public SparseMatrix of(MatrixInterface<?> matrix) {
+        return new SparseMatrix(matrix);
+    }
+}
@@ -0,0 +1,42 @@
+package com.alaimos.MITHrIL.api.Math;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * A matrix with very few non-empty rows that can be used as the right-hand side of a product with a dense matrix. Dense
+ * implementations compute the product as a gather of the few columns corresponding to the non-empty rows, followed by
+ * a small dense product with a compact copy of those rows. The interface only exposes the kernels needed for this
+ * operation, so that dense implementations do not depend on the storage format of the sparse matrix.
+ *
+ * @param <E> the type of the matrix
+ */
+public interface SparseOperand<E extends SparseOperand<E>> extends MatrixInterface<E> {
+
+    /**
+     * Get the indices of the rows containing at least one non-zero element
+     *
+     * @return the sorted indices of the non-empty rows
+     */
+    int @NotNull [] nonEmptyRows();
+
+    /**
+     * Get a dense copy of a subset of rows of this matrix. When the subset contains all the non-empty rows, the
+     * product of the corresponding columns of a dense matrix with this copy is equal to the product with the whole
+     * sparse matrix.
+     *
+     * @param subset the indices of the rows
+     * @return the rows stored by rows, a (subset.length x columns()) matrix
+     */
+    double @NotNull [] compactRows(int @NotNull [] subset);
+
+    /**
+     * Write a dense copy of a subset of rows of this matrix into a buffer, for example a view of native memory. Only
+     * the non-zero elements are written, so the buffer must be filled with zeros.
+     *
+     * @param subset      the indices of the rows
+     * @param destination the buffer, which will contain a (subset.length x columns()) matrix stored by rows
+     */
+    void compactRowsInto(int @NotNull [] subset, @NotNull DoubleBuffer destination);
+}
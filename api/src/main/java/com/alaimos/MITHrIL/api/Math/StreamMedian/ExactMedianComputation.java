@@ -79,7 +79,8 @@ public class ExactMedianComputation implements StreamMedianComputationInterface
             throw new IllegalArgumentException("The number of elements is greater than the maximum allowed");
         }
         if (firstAvailableIndex == 0 && start == 0 && values.length == this.values.length) {
-            this.values = values;
+            this.values         = values;
+            firstAvailableIndex = values.length;
             return;
         }
         if ((values.length - start) <= (this.values.length - firstAvailableIndex)) {
@@ -98,14 +99,34 @@ public class ExactMedianComputation implements StreamMedianComputationInterface
     }
 
     /**
-     * Get the current median value
+     * Add a range of elements coming from the stream. The elements are always copied, since the array might be shared.
+     *
+     * @param values the values of the elements
+     * @param start  the index of the first element to add
+     * @param end    the index of the last element to add (exclusive)
+     */
+    @Override
+    public void addElements(double @NotNull [] values, int start, int end) {
+        init();
+        var toCopy = end - start;
+        if (toCopy > this.values.length - firstAvailableIndex) {
+            throw new IllegalStateException("The number of elements is greater than the maximum allowed");
+        }
+        System.arraycopy(values, start, this.values, firstAvailableIndex, toCopy);
+        firstAvailableIndex += toCopy;
+    }
+
+    /**
+     * Get the current median value. If the stream was stopped before reaching its size, only the elements added so far
+     * are considered.
      *
      * @return the current median value
      */
     @Override
     public double currentValue() {
         init();
-        return MEDIAN.evaluate(values);
+        if (firstAvailableIndex == 0) return MEDIAN.evaluate(values);
+        return MEDIAN.evaluate(values, 0, firstAvailableIndex);
     }
 
     /**
@@ -68,6 +68,18 @@ public class PSquaredMedianComputation implements StreamMedianComputationInterfa
         median.incrementAll(values, start, values.length - start);
     }
 
+    /**
+     * Add a range of elements coming from the stream
+     *
+     * @param values the values of the elements
+     * @param start  the index of the first element to add
+     * @param end    the index of the last element to add (exclusive)
+     */
+    @Override
+    public void addElements(double[] values, int start, int end) {
+        median.incrementAll(values, start, end - start);
+    }
+
     /**
      * Get the current median value
      *
@@ -51,6 +51,19 @@ public interface StreamMedianComputationInterface extends ExtensionInterface {
      */
     void addElements(double[] values, int start);
 
+    /**
+     * Add a range of elements coming from the stream
+     *
+     * @param values the values of the elements
+     * @param start  the index of the first element to add
+     * @param end    the index of the last element to add (exclusive)
+     */
+    default void addElements(double[] values, int start, int end) {
+        for (var i = start; i < end; i++) {
+            addElement(values[i]);
+        }
+    }
+
     /**
      * Get the current median value
      *
@@ -0,0 +1,145 @@
+package com.alaimos.MITHrIL.api.Math;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchPipelineTest {
+
+    private static void run(BatchPipeline<Integer, Integer> pipeline) {
+        try (pipeline) {
+            pipeline.run();
+        }
+    }
+
+    @Test
+    void run() {
+        var slots = 2;
+        var inFlight = new AtomicInteger();
+        var maxInFlight = new AtomicInteger();
+        var slotOwners = new int[slots];
+        var results = new ArrayList<Integer>();
+        try (var pipeline = new BatchPipeline<Integer, Integer>(
+                slots,
+                (index, slot) -> {
+                    if (index == 50) return null;
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    slotOwners[slot] = index;
+                    return index;
+                },
+                (batch, slot) -> {
+                    assertEquals(batch, slotOwners[slot]);
+                    return batch * batch;
+                },
+                (index, batch, products) -> {
+                    assertEquals(index, batch);
+                    assertEquals(index * index, products);
+                    results.add(products);
+                    inFlight.decrementAndGet();
+                    return true;
+                }
+        )) {
+            pipeline.run();
+        }
+        assertEquals(50, results.size());
+        for (var i = 0; i < 50; i++) assertEquals(i * i, results.get(i));
+        assertTrue(maxInFlight.get() <= slots);
+    }
+
+    @Test
+    void stop() {
+        var accumulated = new AtomicInteger();
+        var running = new AtomicInteger();
+        try (var pipeline = new BatchPipeline<Integer, Integer>(
+                (index, slot) -> index,
+                (batch, slot) -> {
+                    running.incrementAndGet();
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    running.decrementAndGet();
+                    return batch;
+                },
+                (index, batch, products) -> accumulated.incrementAndGet() < 10
+        )) {
+            pipeline.run();
+            // The multiplication of the next batch was in progress when the pipeline was stopped
+            assertEquals(0, running.get());
+            assertEquals(10, accumulated.get());
+            accumulated.set(0);
+            pipeline.run();
+            assertEquals(10, accumulated.get());
+            pipeline.close();
+            assertThrows(IllegalStateException.class, pipeline::run);
+        }
+    }
+
+    @Test
+    void sharedExecutor() throws InterruptedException {
+        var executor = BatchPipeline.newExecutor();
+        var threads = 4;
+        var sums = new long[threads];
+        var runners = new Thread[threads];
+        for (var t = 0; t < threads; t++) {
+            var thread = t;
+            runners[t] = new Thread(() -> {
+                try (var pipeline = new BatchPipeline<Integer, Integer>(
+                        BatchPipeline.DEFAULT_SLOTS, executor,
+                        (index, slot) -> index < 100 ? index : null,
+                        (batch, slot) -> batch * 2,
+                        (index, batch, products) -> {
+                            sums[thread] += products;
+                            return true;
+                        }
+                )) {
+                    pipeline.run();
+                }
+            });
+            runners[t].start();
+        }
+        for (var runner : runners) runner.join();
+        for (var sum : sums) assertEquals(9900, sum);
+        // The executor is owned by the caller, so it is not shut down by the pipelines
+        assertFalse(executor.isShutdown());
+        executor.shutdown();
+    }
+
+    @Test
+    void errors() {
+        var generatorError = assertThrows(IllegalStateException.class, () -> run(new BatchPipeline<Integer, Integer>(
+                (index, slot) -> {
+                    if (index == 3) throw new IllegalStateException("generator");
+                    return index;
+                },
+                (batch, slot) -> batch,
+                (index, batch, products) -> true
+        )));
+        assertEquals("generator", generatorError.getMessage());
+        var multiplierError = assertThrows(IllegalStateException.class, () -> run(new BatchPipeline<Integer, Integer>(
+                (index, slot) -> index,
+                (batch, slot) -> {
+                    if (batch == 5) throw new IllegalStateException("multiplier");
+                    return batch;
+                },
+                (index, batch, products) -> true
+        )));
+        assertEquals("multiplier", multiplierError.getMessage());
+        var accumulatorError = assertThrows(IllegalStateException.class, () -> run(new BatchPipeline<Integer, Integer>(
+                (index, slot) -> index,
+                (batch, slot) -> batch,
+                (index, batch, products) -> {
+                    if (index == 7) throw new IllegalStateException("accumulator");
+                    return true;
+                }
+        )));
+        assertEquals("accumulator", accumulatorError.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> new BatchPipeline<Integer, Integer>(
+                0, (index, slot) -> null, (batch, slot) -> batch, (index, batch, products) -> true
+        ));
+    }
+}
@@ -0,0 +1,66 @@
+package com.alaimos.MITHrIL.api.Math;
+
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrixFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockTriangularInverterTest {
+
+    protected static final double DELTA = 1e-9;
+    protected SparseMatrixFactory factory = new SparseMatrixFactory();
+
+    /**
+     * Build a random (I - W) matrix whose graph is acyclic, except for a few cycles among consecutive nodes
+     */
+    private static double[] metapathwayLikeMatrix(int n, long seed) {
+        var random = new Random(seed);
+        var data = new double[n * n];
+        for (var u = 0; u < n; u++) {
+            for (var e = 0; e < 3; e++) {
+                var v = u + 1 + random.nextInt(Math.max(1, n / 4));
+                if (v < n) data[v * n + u] = -random.nextDouble() / 3.0;
+            }
+            if (u % 7 == 3 && u > 2) data[(u - 2) * n + u] = -random.nextDouble() / 3.0;
+            data[u * n + u] = 1.0;
+        }
+        return data;
+    }
+
+    @Test
+    void invert() {
+        var n = 60;
+        var data = metapathwayLikeMatrix(n, 42);
+        try (
+                var matrix = factory.of(data, n, n);
+                var expected = factory.of(data, n, n);
+                var inverse = new BlockTriangularInverter(factory).invert(matrix)
+        ) {
+            expected.invertInPlace();
+            assertArrayEquals(expected.raw1D(), inverse.raw1D(), DELTA);
+            try (var identity = matrix.postMultiply(inverse)) {
+                for (var i = 0; i < n; i++) {
+                    for (var j = 0; j < n; j++) {
+                        assertEquals(i == j ? 1.0 : 0.0, identity.val(i, j), DELTA);
+                    }
+                }
+            }
+        } catch (java.io.IOException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    void invertWithThreads() {
+        var data = new double[]{1, -0.5, 0, 0, -0.5, 1, 0, 0, -0.2, 0, 1, 0, 0, 0, -0.3, 1};
+        var expected = new BlockTriangularInverter(factory).invert(data, 4);
+        var parallel = new BlockTriangularInverter(factory).threads(2).invert(data, 4);
+        assertArrayEquals(expected, parallel, DELTA);
+        assertEquals(4.0 / 3.0, expected[0], DELTA);
+        assertEquals(0.2 * 4.0 / 3.0, expected[8], DELTA);
+        assertEquals(0.0, expected[2], DELTA);
+        assertThrows(IllegalArgumentException.class, () -> new BlockTriangularInverter(factory).invert(data, 3));
+    }
+}
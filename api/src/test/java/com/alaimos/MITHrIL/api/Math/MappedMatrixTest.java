@@ -0,0 +1,53 @@
+package com.alaimos.MITHrIL.api.Math;
+
+import com.alaimos.MITHrIL.api.Commons.Utils;
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrix;
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrixFactory;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedMatrixTest {
+
+    protected static final double[] M2 = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12};
+
+    @Test
+    void writeAndMap() throws IOException {
+        var file = new File(Utils.getAppDir(), "test-mapped.mtx");
+        var offset = MappedMatrix.align(17);
+        assertEquals(MappedMatrix.PAGE_SIZE, offset);
+        try {
+            try (var channel = FileChannel.open(
+                    file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE
+            )) {
+                MappedMatrix.write(channel, offset, new SparseMatrix(M2, 3, 4));
+            }
+            assertEquals(offset + MappedMatrix.size(3, 4), file.length());
+            MappedMatrix mapped;
+            try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                mapped = MappedMatrix.map(channel, offset, 3, 4);
+                assertThrows(IOException.class, () -> MappedMatrix.map(channel, offset, 4, 4));
+            }
+            assertEquals(3, mapped.rows());
+            assertEquals(4, mapped.columns());
+            assertEquals(1, mapped.chunks());
+            assertEquals(7, mapped.val(1, 2));
+            assertArrayEquals(M2, mapped.toArray());
+            assertArrayEquals(new double[]{9, 10, 11, 12}, mapped.toArray2D()[2]);
+            var single = new float[12];
+            mapped.copyTo(single);
+            assertEquals(12.0f, single[11]);
+            try (var m = new SparseMatrixFactory().of(mapped)) {
+                assertArrayEquals(M2, m.raw1D());
+            }
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+}
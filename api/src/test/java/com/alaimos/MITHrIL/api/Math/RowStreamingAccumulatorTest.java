@@ -0,0 +1,181 @@
+package com.alaimos.MITHrIL.api.Math;
+
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrix;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RowStreamingAccumulatorTest {
+
+    protected static final double DELTA = 1e-9;
+
+    @Test
+    void segments() {
+        assertArrayEquals(new int[]{0, 3, 4, 7}, RowStreamingAccumulator.segments(new int[]{2, 2, 2, 3, 4, 4, 4}));
+        assertArrayEquals(new int[]{0, 1}, RowStreamingAccumulator.segments(new int[]{5}));
+        assertArrayEquals(new int[]{0}, RowStreamingAccumulator.segments(new int[0]));
+    }
+
+    @Test
+    void accumulate() {
+        var rows = 5;
+        var random = new Random(42);
+        // Two batches: the second one continues the last group of the first one
+        var groups = new int[][]{{0, 0, 0, 1, 1, 2, 2, 2, 2}, {2, 2, 2, 3, 3, 3}};
+        var values = new double[4][][];
+        var statistics = new PerturbationStatistics[4];
+        for (var g = 0; g < 4; g++) {
+            statistics[g] = new PerturbationStatistics(rows, 0.5, true);
+        }
+        for (var columnToGroup : groups) {
+            var columns = columnToGroup.length;
+            var data = new double[rows * columns];
+            for (var i = 0; i < data.length; i++) data[i] = random.nextGaussian();
+            for (var j = 0; j < columns; j++) {
+                var g = columnToGroup[j];
+                var column = new double[rows];
+                for (var i = 0; i < rows; i++) column[i] = data[i * columns + j];
+                values[g] = append(values[g], column);
+            }
+            var segments = RowStreamingAccumulator.segments(columnToGroup);
+            var batchTargets = new PerturbationStatistics[segments.length - 1];
+            for (var k = 0; k < batchTargets.length; k++) {
+                batchTargets[k] = statistics[columnToGroup[segments[k]]];
+            }
+            RowStreamingAccumulator.accumulate(data, rows, columns, segments, batchTargets, 2);
+        }
+        for (var g = 0; g < 4; g++) {
+            var count = statistics[g].count();
+            var counters = statistics[g].counters();
+            assertEquals(values[g].length, count);
+            for (var i = 0; i < rows; i++) {
+                var sum = 0.0;
+                var activations = 0;
+                var inhibitions = 0;
+                for (var v : values[g]) {
+                    sum += v[i];
+                    if (v[i] > 0.5) activations++;
+                    if (v[i] < -0.5) inhibitions++;
+                }
+                var mean = sum / count;
+                var m2 = 0.0;
+                for (var v : values[g]) m2 += (v[i] - mean) * (v[i] - mean);
+                assertEquals(mean, statistics[g].mean()[i], DELTA);
+                assertEquals(Math.sqrt(m2 / (count - 1)), statistics[g].standardDeviation()[i], DELTA);
+                assertArrayEquals(new int[]{activations, inhibitions, count - activations - inhibitions}, counters[i]);
+            }
+        }
+        assertThrows(
+                IllegalStateException.class,
+                () -> RowStreamingAccumulator.accumulate(new double[rows], rows, 1, new int[]{0, 1},
+                                                         new PerturbationStatistics[]{statistics[0]}, 1)
+        );
+    }
+
+    @Test
+    void mergeMatchesSequentialWelford() {
+        var rows = 37;
+        var runs = 50;
+        var epsilon = 0.5;
+        var random = new Random(7);
+        // values[i][r] is the perturbation of element i in run r
+        var values = new double[rows][runs];
+        for (var i = 0; i < rows; i++) {
+            for (var r = 0; r < runs; r++) values[i][r] = random.nextGaussian() * (1 + i % 3) + i % 2;
+        }
+        // Single-threaded reference: one Welford update per run
+        var mean = new double[rows];
+        var m2 = new double[rows];
+        var counters = new int[rows][3];
+        for (var i = 0; i < rows; i++) {
+            for (var r = 0; r < runs; r++) {
+                var value = values[i][r];
+                var delta = value - mean[i];
+                mean[i] += delta / (r + 1);
+                m2[i] += delta * (value - mean[i]);
+                counters[i][value > epsilon ? 0 : (value < -epsilon ? 1 : 2)]++;
+            }
+        }
+        // The parallelism changes how the rows are partitioned, while the batch sizes change how many partial
+        // statistics are merged into the running ones
+        var batchSizes = new int[][]{{runs}, {1, 1, 48}, {7, 13, 1, 29}, {10, 10, 10, 10, 10}};
+        for (var parallelism : new int[]{1, 2, 3, 8, rows}) {
+            for (var sizes : batchSizes) {
+                var statistics = new PerturbationStatistics(rows, epsilon, true);
+                var first = 0;
+                for (var size : sizes) {
+                    var data = new double[rows * size];
+                    for (var i = 0; i < rows; i++) System.arraycopy(values[i], first, data, i * size, size);
+                    RowStreamingAccumulator.accumulate(
+                            data, rows, size, new int[]{0, size}, new PerturbationStatistics[]{statistics},
+                            parallelism
+                    );
+                    first += size;
+                }
+                assertEquals(runs, statistics.count());
+                var standardDeviation = statistics.standardDeviation();
+                for (var i = 0; i < rows; i++) {
+                    assertEquals(mean[i], statistics.mean()[i], DELTA);
+                    assertEquals(Math.sqrt(m2[i] / (runs - 1)), standardDeviation[i], DELTA);
+                }
+                assertArrayEquals(counters, statistics.counters());
+            }
+        }
+    }
+
+    @Test
+    void accumulateMatrix() {
+        var rows = 11;
+        var columns = 9;
+        var random = new Random(3);
+        var data = new double[rows * columns];
+        for (var i = 0; i < data.length; i++) data[i] = random.nextGaussian();
+        var segments = new int[]{0, 4, 9};
+        var expected = new PerturbationStatistics[]{
+                new PerturbationStatistics(rows, 0.5, true), new PerturbationStatistics(rows, 0.5, true)
+        };
+        var actual = new PerturbationStatistics[]{
+                new PerturbationStatistics(rows, 0.5, true), new PerturbationStatistics(rows, 0.5, true)
+        };
+        RowStreamingAccumulator.accumulate(data, rows, columns, segments, expected, 3);
+        try (var matrix = new SparseMatrix(data, rows, columns)) {
+            RowStreamingAccumulator.accumulate(matrix, segments, actual, 3);
+        }
+        for (var k = 0; k < 2; k++) {
+            assertEquals(expected[k].count(), actual[k].count());
+            assertArrayEquals(expected[k].mean(), actual[k].mean(), DELTA);
+            assertArrayEquals(expected[k].standardDeviation(), actual[k].standardDeviation(), DELTA);
+            assertArrayEquals(expected[k].counters(), actual[k].counters());
+        }
+    }
+
+    @Test
+    void activityScores() {
+        var statistics = new PerturbationStatistics(4, 0.1, true);
+        var data = new double[]{
+                1, 1, 1, 1, 1, 1, 1, 1, 1, -1,
+                -1, -1, -1, -1, -1, -1, -1, 0, 0, 0,
+                0, 0, 0, 0, 0, 0, 0, 0, 1, -1,
+                1, 1, 1, 1, -1, -1, -1, -1, 0, 0
+        };
+        RowStreamingAccumulator.accumulate(data, 4, 10, new int[]{0, 10}, new PerturbationStatistics[]{statistics}, 1);
+        var scores = statistics.activityScores();
+        var prior = 1d / (10 * 1000d);
+        var countTotal = Math.log(10 + 3 * prior);
+        var p9 = Math.log(9 + prior) - countTotal;
+        var p7 = Math.log(7 + prior) - countTotal;
+        assertEquals(p9 - Math.log1p(-1 - Math.expm1(p9)), scores[0], DELTA);
+        assertEquals(Math.log1p(-1 - Math.expm1(p7)) - p7, scores[1], DELTA);
+        assertEquals(0.0, scores[2]);
+        assertTrue(Double.isNaN(scores[3]));
+    }
+
+    private static double[][] append(double[][] array, double[] element) {
+        var result = new double[array == null ? 1 : array.length + 1][];
+        if (array != null) System.arraycopy(array, 0, result, 0, array.length);
+        result[result.length - 1] = element;
+        return result;
+    }
+}
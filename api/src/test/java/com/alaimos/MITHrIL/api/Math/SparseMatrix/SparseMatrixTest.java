@@ -0,0 +1,223 @@
+package com.alaimos.MITHrIL.api.Math.SparseMatrix;
+
+import com.alaimos.MITHrIL.api.Commons.Utils;
+import com.alaimos.MITHrIL.api.Data.Reader.BinaryReader;
+import com.alaimos.MITHrIL.api.Data.Writer.BinaryWriter;
+import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class SparseMatrixTest {
+
+    protected static final double DELTA = 1e-6;
+    protected static final double[] V1 = {4, 5, 6};
+    protected static final double[] V2 = {6, 7, 8, 9};
+    protected static final double[] M1 = {1, 2, 3, 4, 5, 6, 7, 8, 9};
+    protected static final double[] M2 = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12};
+    protected static final double[] S1 = {0, 2, 0, 0, 0, 0, 3, 0, 0, 0, 0, 1};
+    protected static final double[] M1_INV = {
+            -6.388889e-01, -1.666667e-01, 3.055556e-01,
+            -5.555556e-02, 5.504683e-17, 5.555556e-02,
+            5.277778e-01, 1.666667e-01, -1.944444e-01
+    };
+    protected static final double[] M1_TIMES_M2 = {38, 44, 50, 56, 83, 98, 113, 128, 128, 152, 176, 200};
+    protected static final double[] M1_TIMES_V1 = {32, 77, 122};
+    protected static final double[] V2_TIMES_T_M2 = {80, 200, 320};
+    protected static final double[] T_M2_TIMES_M1 = {
+            84, 99, 114, 96, 114, 132, 108, 129, 150, 120, 144, 168
+    };
+    protected static final double[] M1_TIMES_S1 = {0, 2, 6, 3, 0, 8, 15, 6, 0, 14, 24, 9};
+    protected SparseMatrixFactory factory = new SparseMatrixFactory();
+    protected SparseMatrix m1;
+    protected SparseMatrix m2;
+    protected SparseMatrix s1;
+
+    @BeforeEach
+    void setUp() {
+        m1 = factory.of(M1, 3, 3);
+        m2 = factory.of(M2, 3, 4);
+        s1 = factory.of(S1, 3, 4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        m1.close();
+        m2.close();
+        s1.close();
+    }
+
+    @Test
+    @Order(1)
+    void factoryTest() {
+        try (
+                var tm1 = factory.of(M1, 3, 3);
+                var tm2 = factory.of(new double[][]{{1, 2, 3}, {4, 5, 6}, {7, 8, 9}})
+        ) {
+            assertArrayEquals(M1, tm1.raw1D(), DELTA);
+            assertArrayEquals(M1, tm2.raw1D(), DELTA);
+        }
+        assertEquals(3, s1.nonZeros());
+        var triplets = SparseMatrix.fromTriplets(
+                3, 4, new int[]{2, 0, 1, 0}, new int[]{3, 1, 2, 1}, new double[]{1, 1, 3, 1}, 4
+        );
+        assertEquals(s1, triplets);
+        assertEquals(3, triplets.nonZeros());
+        // Unsorted rows with duplicates
+        var unsorted = SparseMatrix.fromTriplets(
+                2, 4, new int[]{1, 1, 0, 1, 1, 0}, new int[]{3, 0, 2, 2, 0, 1}, new double[]{1, 2, 5, 3, 4, 6}, 6
+        );
+        assertArrayEquals(new double[]{0, 6, 5, 0, 6, 0, 3, 1}, unsorted.raw1D(), DELTA);
+        assertEquals(5, unsorted.nonZeros());
+    }
+
+    @Order(2)
+    @Test
+    void raw2D() {
+        var expected = new double[][]{{1, 2, 3}, {4, 5, 6}, {7, 8, 9}};
+        var raw2D = m1.raw2D();
+        assertEquals(expected.length, raw2D.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i], raw2D[i], DELTA);
+        }
+    }
+
+    @Test
+    void raw2DByColumn() {
+        var raw2D = m2.raw2D(MatrixInterface.Direction.COLUMN);
+        assertEquals(4, raw2D.length);
+        assertArrayEquals(new double[]{1, 5, 9}, raw2D[0], DELTA);
+        assertArrayEquals(new double[]{4, 8, 12}, raw2D[3], DELTA);
+    }
+
+    @Order(3)
+    @Test
+    void raw1D() {
+        assertArrayEquals(M1, m1.raw1D(), DELTA);
+        assertArrayEquals(M2, m2.raw1D(), DELTA);
+        assertArrayEquals(S1, s1.raw1D(), DELTA);
+    }
+
+    @Test
+    void transpose() {
+        var m3 = m2.transpose();
+        assertEquals(4, m3.rows());
+        assertEquals(3, m3.columns());
+        assertArrayEquals(new double[]{1, 5, 9, 2, 6, 10, 3, 7, 11, 4, 8, 12}, m3.raw1D(), DELTA);
+        m3.close();
+        m3 = s1.transpose();
+        assertArrayEquals(new double[]{0, 0, 0, 2, 0, 0, 0, 3, 0, 0, 0, 1}, m3.raw1D(), DELTA);
+        m3.close();
+    }
+
+    @Test
+    void transposeInPlace() {
+        m2.transposeInPlace();
+        assertEquals(4, m2.rows());
+        assertEquals(3, m2.columns());
+        assertArrayEquals(new double[]{1, 5, 9, 2, 6, 10, 3, 7, 11, 4, 8, 12}, m2.raw1D(), DELTA);
+    }
+
+    @Test
+    void invert() {
+        var m3 = m1.invert();
+        assertEquals(3, m3.rows());
+        assertEquals(3, m3.columns());
+        assertArrayEquals(M1_INV, m3.raw1D(), DELTA);
+        m3.close();
+    }
+
+    @Test
+    void preMultiply() {
+        var tm2 = m2.transpose();
+        var m3 = m1.preMultiply(tm2);
+        var v3 = tm2.preMultiply(V2);
+        assertEquals(4, m3.rows());
+        assertEquals(3, m3.columns());
+        assertArrayEquals(T_M2_TIMES_M1, m3.raw1D(), DELTA);
+        assertEquals(3, v3.length);
+        assertArrayEquals(V2_TIMES_T_M2, v3, DELTA);
+        assertArrayEquals(M1_TIMES_S1, s1.preMultiplyRaw(M1, 3), DELTA);
+        m3.close();
+        tm2.close();
+    }
+
+    @Test
+    void postMultiply() {
+        var m3 = m1.postMultiply(m2);
+        var v3 = m1.postMultiply(V1);
+        assertEquals(3, m3.rows());
+        assertEquals(4, m3.columns());
+        assertArrayEquals(M1_TIMES_M2, m3.raw1D(), DELTA);
+        assertEquals(3, v3.length);
+        assertArrayEquals(M1_TIMES_V1, v3, DELTA);
+        assertArrayEquals(M1_TIMES_M2, m1.postMultiplyRaw(M2, 4), DELTA);
+        var destination = new double[][]{{1, 1, 1, 1}, {1, 1, 1, 1}, {1, 1, 1, 1}};
+        m1.postMultiplyRawInto(new double[][]{{1, 2, 3, 4}, {5, 6, 7, 8}, {9, 10, 11, 12}}, destination);
+        assertArrayEquals(M1_TIMES_M2, Arrays.stream(destination).flatMapToDouble(Arrays::stream).toArray(), DELTA);
+        assertThrows(IllegalArgumentException.class, () -> m1.postMultiplyRawInto(new double[2][4], destination));
+        m3.close();
+    }
+
+    @Test
+    void compactRows() {
+        try (var s2 = factory.of(new double[]{0, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1}, 3, 4)) {
+            var nonEmptyRows = s2.nonEmptyRows();
+            assertArrayEquals(new int[]{0, 2}, nonEmptyRows);
+            assertArrayEquals(new double[]{0, 2, 0, 0, 0, 0, 0, 1}, s2.compactRows(nonEmptyRows), DELTA);
+            var buffer = ByteBuffer.allocateDirect(8 * Double.BYTES).asDoubleBuffer();
+            s2.compactRowsInto(nonEmptyRows, buffer);
+            var compact = new double[8];
+            buffer.get(0, compact);
+            assertArrayEquals(new double[]{0, 2, 0, 0, 0, 0, 0, 1}, compact, DELTA);
+            var small = DoubleBuffer.allocate(7);
+            assertThrows(IllegalArgumentException.class, () -> s2.compactRowsInto(nonEmptyRows, small));
+            assertArrayEquals(new double[]{0, 2, 0, 3, 0, 8, 0, 6, 0, 14, 0, 9}, s2.preMultiplyRaw(M1, 3), DELTA);
+        }
+    }
+
+    @Test
+    void val() {
+        assertEquals(2, m1.val(0, 1), DELTA);
+        assertEquals(9, m1.val(2, 2), DELTA);
+        assertEquals(12, m2.val(2, 3), DELTA);
+        assertEquals(0, s1.val(0, 0), DELTA);
+        assertEquals(2, s1.val(0, 1), DELTA);
+        assertEquals(3, s1.val(1, 2), DELTA);
+        assertEquals(1, s1.val(2, 3), DELTA);
+    }
+
+    @Test
+    void row() {
+        assertArrayEquals(new double[]{7, 8, 9}, m1.row(2), DELTA);
+        assertArrayEquals(new double[]{1, 2, 3, 4}, m2.row(0), DELTA);
+        assertArrayEquals(new double[]{0, 0, 3, 0}, s1.row(1), DELTA);
+    }
+
+    @Test
+    void column() {
+        assertArrayEquals(new double[]{3, 6, 9}, m1.column(2), DELTA);
+        assertArrayEquals(new double[]{1, 5, 9}, m2.column(0), DELTA);
+        assertArrayEquals(new double[]{0, 3, 0}, s1.column(2), DELTA);
+    }
+
+    @Test
+    void serializeTest() throws IOException {
+        var file = "test-sparse.bin";
+        var writer = new BinaryWriter<SparseMatrix>();
+        writer.write(file, s1);
+        assertTrue(new File(Utils.getAppDir(), file).exists());
+        var reader = new BinaryReader<>(SparseMatrix.class);
+        try (var m3 = reader.read(file)) {
+            assertEquals(s1, m3);
+        }
+        new File(Utils.getAppDir(), file).delete();
+    }
+}
@@ -0,0 +1,7 @@
+@echo off
+rem Launch MITHrIL from the directory of the distribution. The jdk.incubator.vector module enables the Vector API
+rem kernels of the VectorMath plugin. Additional JVM options (for example, -Xmx) can be set in the JAVA_OPTS variable.
+setlocal
+set "APP_HOME=%~dp0"
+if defined JAVA_HOME (set "JAVA=%JAVA_HOME%\bin\java") else (set "JAVA=java")
+"%JAVA%" --add-modules jdk.incubator.vector %JAVA_OPTS% -jar "%APP_HOME%${project.build.finalName}.jar" %*
@@ -0,0 +1,281 @@
+package com.alaimos.MITHrIL.app.Algorithms;
+
+import com.alaimos.MITHrIL.api.Math.MatrixBufferPool;
+import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
+import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+import com.alaimos.MITHrIL.app.Data.Records.RepositoryMatrix;
+import com.alaimos.MITHrIL.app.Data.Records.RepositoryOperators;
+import it.unimi.dsi.logging.ProgressLogger;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Run MITHrIL on multiple samples at once. Instead of running each sample independently, the runs of several samples
+ * (the user input followed by its permutations) are packed into a single wide batch. Therefore, each multiplication by
+ * the metapathway matrix serves many samples, and the metapathway matrix is read from memory once for all of them. The
+ * results of each batch are then split among the samples, which update their own medians and p-value counts.
+ * <p>
+ * The samples are configured MITHrIL objects. Each sample draws its permutations from its own random number generator
+ * in the same order as {@link MITHrIL#run()}, so the results do not depend on how the runs are packed. A sample is
+ * initialized when its first run is packed, and it is closed after it is passed to the completion handler. Therefore,
+ * only the samples that have runs in the current batch are kept in memory.
+ */
+public class FusedMITHrIL implements Runnable, Closeable {
+
+    //region Constants
+    private static final Logger log = LoggerFactory.getLogger(FusedMITHrIL.class);
+    //endregion
+    //region Input Parameters
+    private Iterator<MITHrIL> samples;
+    private RepositoryMatrix repositoryMatrix;
+    private MatrixFactoryInterface<?> matrixFactory;
+    private int batchSize = 1000;
+    private Consumer<MITHrIL> completionHandler = sample -> {
+    };
+    //endregion
+    //region Internal state variables
+    private RepositoryOperators operators = null;
+    private MatrixInterface<?> repositoryMatrixTransposed = null;
+    private MatrixInterface<?> pathwayMatrix = null;
+    private MatrixInterface<?> accumulatorOperator = null;
+    private MatrixBufferPool buffers = null;
+    //endregion
+
+    //region Constructors and setters
+    public FusedMITHrIL() {
+    }
+
+    /**
+     * Set the samples. All the samples must use the repository matrix of this object.
+     *
+     * @param samples an iterator of configured MITHrIL objects
+     * @return this object for a fluent interface
+     */
+    public FusedMITHrIL samples(Iterator<MITHrIL> samples) {
+        this.samples = samples;
+        return this;
+    }
+
+    public FusedMITHrIL repositoryMatrix(RepositoryMatrix repositoryMatrix) {
+        this.repositoryMatrix = repositoryMatrix;
+        return this;
+    }
+
+    public FusedMITHrIL matrixFactory(MatrixFactoryInterface<?> matrixFactory) {
+        this.matrixFactory = matrixFactory;
+        return this;
+    }
+
+    /**
+     * Set the number of runs in a fused batch. The runs of a sample might be split among multiple batches.
+     *
+     * @param batchSize the number of columns of a fused batch
+     * @return this object for a fluent interface
+     */
+    public FusedMITHrIL batchSize(int batchSize) {
+        if (batchSize <= 0) throw new IllegalArgumentException("The batch size must be positive");
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Set the function called when a sample is completed. The sample is closed after the function returns.
+     *
+     * @param completionHandler the completion handler
+     * @return this object for a fluent interface
+     */
+    public FusedMITHrIL completionHandler(Consumer<MITHrIL> completionHandler) {
+        this.completionHandler = completionHandler;
+        return this;
+    }
+    //endregion
+
+    /**
+     * Run MITHrIL on all the samples
+     */
+    @Override
+    public void run() {
+        init();
+        var numberOfNodes = repositoryMatrix.pathwayMatrix().id2Index().size();
+        var active = new ArrayList<Sample>();
+        var slots = new ArrayList<Sample>();
+        var pl = new ProgressLogger(log, 1, TimeUnit.MINUTES, "iterations");
+        pl.start("Starting iterations");
+        while (true) {
+            slots.clear();
+            var columns = 0;
+            for (var sample : active) {
+                if (columns == batchSize) break;
+                columns = sample.allocate(columns, batchSize - columns);
+                slots.add(sample);
+            }
+            while (columns < batchSize && samples.hasNext()) {
+                var sample = new Sample(samples.next());
+                active.add(sample);
+                columns = sample.allocate(columns, batchSize - columns);
+                slots.add(sample);
+            }
+            if (columns == 0) break;
+            var batchData = buffers.array("batch", numberOfNodes * columns);
+            for (var sample : slots) {
+                sample.algorithm.fillBatch(batchData, columns, sample.offset, sample.columns, sample.lastBatchElement);
+            }
+            var batch = buffers.matrix("batch", numberOfNodes, columns);
+            batch.fill(batchData);
+            var batchNodePerturbations = computeBatchPerturbations(batch);
+            var batchRawPathwayAccumulators = computeBatchAccumulators(batchNodePerturbations, batch);
+            for (var sample : slots) {
+                sample.algorithm.consumeBatch(
+                        batch, batchNodePerturbations, batchRawPathwayAccumulators, sample.offset, sample.columns,
+                        sample.lastBatchElement
+                );
+                sample.lastBatchElement += sample.columns;
+                if (sample.isCompleted()) complete(sample);
+            }
+            active.removeIf(Sample::isCompleted);
+            pl.update(columns);
+        }
+        pl.done();
+    }
+
+    //region Utility methods
+
+    /**
+     * Free the resources used by the algorithm.
+     *
+     * @throws IOException this exception is never thrown, but it is required by the {@link AutoCloseable} interface.
+     */
+    @Override
+    public void close() throws IOException {
+        if (operators != null) {
+            operators.close();
+            operators                  = null;
+            repositoryMatrixTransposed = null;
+            pathwayMatrix              = null;
+            accumulatorOperator        = null;
+        }
+        if (buffers != null) {
+            buffers.close();
+            buffers = null;
+        }
+    }
+
+    /**
+     * Initializes the internal state of the algorithm. This method is called automatically by the {@link #run()}
+     * method.
+     */
+    private void init() {
+        if (operators == null) {
+            operators                  = repositoryMatrix.operators();
+            repositoryMatrixTransposed = operators.transposed(matrixFactory);
+            pathwayMatrix              = operators.pathwayMatrix(matrixFactory);
+            accumulatorOperator        = operators.accumulatorOperator(matrixFactory);
+        }
+        if (buffers == null) {
+            buffers = new MatrixBufferPool(matrixFactory);
+        }
+    }
+
+    /**
+     * Compute the final results of a sample, pass it to the completion handler, and close it
+     *
+     * @param sample the sample
+     */
+    private void complete(@NotNull Sample sample) {
+        sample.algorithm.finish();
+        try (var algorithm = sample.algorithm) {
+            completionHandler.accept(algorithm);
+        } catch (IOException e) {
+            log.error("Unable to release the resources of a sample", e);
+        }
+    }
+
+    /**
+     * Compute the perturbations of a fused batch as pathwayMatrix * batch (see {@link MITHrIL}).
+     *
+     * @param batch the batch of data
+     * @return the perturbations of the batch
+     */
+    private MatrixInterface<?> computeBatchPerturbations(@NotNull MatrixInterface<?> batch) {
+        var perturbations = buffers.matrix("perturbations", batch.rows(), batch.columns());
+        batch.preMultiplyInto(pathwayMatrix, perturbations);
+        return perturbations;
+    }
+
+    /**
+     * Compute the raw pathway accumulators of a fused batch as repositoryMatrix^T * (perturbation - run), or with the
+     * accumulator operator if it is available (see {@link MITHrIL}).
+     *
+     * @param batchPerturbation the perturbations of the batch
+     * @param batch             the batch of data
+     * @return the accumulators of the batch
+     */
+    private MatrixInterface<?> computeBatchAccumulators(
+            @NotNull MatrixInterface<?> batchPerturbation, @NotNull MatrixInterface<?> batch
+    ) {
+        var accumulators = buffers.matrix(
+                "pathwayAccumulators", repositoryMatrixTransposed.rows(), batch.columns()
+        );
+        if (accumulatorOperator != null) {
+            batch.preMultiplyInto(accumulatorOperator, accumulators);
+        } else {
+            var nodeAccumulators = buffers.matrix("nodeAccumulators", batch.rows(), batch.columns());
+            batchPerturbation.subtractInto(batch, nodeAccumulators);
+            nodeAccumulators.preMultiplyInto(repositoryMatrixTransposed, accumulators);
+        }
+        return accumulators;
+    }
+    //endregion
+
+    //region INNER CLASSES
+
+    /**
+     * The state of a sample: the number of runs already performed and the range of columns of the current batch
+     */
+    private static final class Sample {
+
+        private final MITHrIL algorithm;
+        private final int numberOfRuns;
+        private int lastBatchElement = 0;
+        private int offset = 0;
+        private int columns = 0;
+
+        private Sample(@NotNull MITHrIL algorithm) {
+            algorithm.init();
+            this.algorithm    = algorithm;
+            this.numberOfRuns = algorithm.numberOfRuns();
+        }
+
+        /**
+         * Check if all the runs of this sample are performed, or if the sample does not need other runs since all
+         * its pathways are decided
+         *
+         * @return true if the sample is completed
+         */
+        private boolean isCompleted() {
+            return lastBatchElement == numberOfRuns || algorithm.isDecided();
+        }
+
+        /**
+         * Allocate a range of columns of the current batch to this sample
+         *
+         * @param offset    the first free column of the batch
+         * @param available the number of free columns
+         * @return the first free column after the allocation
+         */
+        private int allocate(int offset, int available) {
+            this.offset  = offset;
+            this.columns = Math.min(available, numberOfRuns - lastBatchElement);
+            return offset + columns;
+        }
+    }
+    //endregion
+}
@@ -2,14 +2,20 @@ package com.alaimos.MITHrIL.app.Algorithms;
 
 import com.alaimos.MITHrIL.api.Data.Pathways.Enrichment.EnrichmentProbabilityComputationInterface;
 import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Repository;
+import com.alaimos.MITHrIL.api.Math.BatchPipeline;
+import com.alaimos.MITHrIL.api.Math.MatrixBufferPool;
 import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
 import com.alaimos.MITHrIL.api.Math.MatrixInterface;
 import com.alaimos.MITHrIL.api.Math.PValue.Adjusters.AdjusterInterface;
 import com.alaimos.MITHrIL.api.Math.PValue.Combiners.CombinerInterface;
 import com.alaimos.MITHrIL.api.Math.StreamMedian.StreamMedianComputationInterface;
+import com.alaimos.MITHrIL.app.Data.Generators.PermutationGenerator;
+import com.alaimos.MITHrIL.app.Data.Generators.RandomStreams;
 import com.alaimos.MITHrIL.app.Data.Records.ExpressionInput;
 import com.alaimos.MITHrIL.app.Data.Records.MITHrILOutput;
 import com.alaimos.MITHrIL.app.Data.Records.RepositoryMatrix;
+import com.alaimos.MITHrIL.app.Data.Records.RepositoryOperators;
+import it.unimi.dsi.fastutil.Pair;
 import it.unimi.dsi.logging.ProgressLogger;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
@@ -18,8 +24,10 @@ import org.slf4j.LoggerFactory;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
+import java.util.random.RandomGenerator;
 import java.util.stream.Stream;
 
 public class MITHrIL implements Runnable, Closeable {
@@ -33,7 +41,11 @@ public class MITHrIL implements Runnable, Closeable {
     private ExpressionInput input;
     private Repository repository;
     private RepositoryMatrix repositoryMatrix;
+    private RepositoryOperators operators = null;
     private MatrixInterface<?> repositoryMatrixTransposed = null;
+    private MatrixInterface<?> pathwayMatrix = null;
+    private MatrixInterface<?> accumulatorOperator = null;
+    private MatrixBufferPool buffers = null;
     private int numberOfRepetitions = 2001;
     private int batchSize = 1000;
     private EnrichmentProbabilityComputationInterface probabilityComputation;
@@ -42,9 +54,13 @@ public class MITHrIL implements Runnable, Closeable {
     private MatrixFactoryInterface<?> matrixFactory;
     private Supplier<StreamMedianComputationInterface> medianAlgorithmFactory;
     private boolean noPValue = false;
+    private double sequentialAlpha = 0.0;
+    private ExecutorService pipelineExecutor = null;
     //endregion
     //region Internal state variables
     private StreamMedianComputationInterface[] medians = null;
+    private PermutationGenerator permutations = null;
+    private RandomStreams streams = null;
     private double[] nodePerturbations = null;
     private double[] nodeAccumulators = null;
     private double[] pathwayAccumulators = null;
@@ -56,6 +72,11 @@ public class MITHrIL implements Runnable, Closeable {
     private double[] nodeAdjustedPValues = null;
     private double[] pathwayPValues = null;
     private double[] pathwayAdjustedPValues = null;
+    private int exceedanceLimit = 0;
+    private int[] nodeStops = null;
+    private int[] pathwayStops = null;
+    private int activePathways = 0;
+    private int performedPermutations = 0;
 
     //endregion
     //region Constructors and setters
@@ -68,29 +89,61 @@ public class MITHrIL implements Runnable, Closeable {
      * user input (absolute value). The absolute value is not explicitly computed to avoid the overhead of the
      * Math.abs.
      *
+     * If the sequential mode is enabled, an element is not considered anymore once its count reaches the exceedance
+     * limit, and the number of permutations performed up to that point is stored.
+     *
      * @param rawAccumulators the raw accumulators of a batch
      * @param first           the first column of the batch to consider
+     * @param last            the last column of the batch to consider (exclusive)
      * @param accumulators    the accumulators of the user input
      * @param pValues         the array containing the counts to update
+     * @param stops           for each element, the number of permutations performed when it was stopped (0 if it is
+     *                        still active); null if the sequential mode is disabled
+     * @param permutations    the number of permutations performed before this batch
+     * @param limit           the exceedance limit
      */
     private static void countPValueEvents(
-            @NotNull MatrixInterface<?> rawAccumulators, int first, double[] accumulators, double[] pValues
+            @NotNull MatrixInterface<?> rawAccumulators, int first, int last, double[] accumulators, double[] pValues,
+            int[] stops, int permutations, int limit
     ) {
         rawAccumulators.forEach(MatrixInterface.Direction.ROW, (v, i) -> {
+            if (stops != null && stops[i] != 0) return;
             var p = accumulators[i];
-            for (var j = first; j < v.length; j++) {
-                if ((p > 0 && v[j] >= p) || (p < 0 && v[j] <= p)) pValues[i] += 1.0;
+            for (var j = first; j < last; j++) {
+                if ((p > 0 && v[j] >= p) || (p < 0 && v[j] <= p)) {
+                    pValues[i] += 1.0;
+                    if (stops != null && pValues[i] >= limit) {
+                        stops[i] = permutations + j - first + 1;
+                        return;
+                    }
+                }
             }
         });
     }
 
+    /**
+     * Initialize the stopping state of the sequential mode. Elements whose value in the user input is zero can never
+     * be exceeded, so they are stopped immediately (their p-value is computed as in the non-sequential mode).
+     *
+     * @param accumulators the accumulators of the user input
+     * @return for each element, 0 if it is active, -1 if it is stopped
+     */
+    private static int @NotNull [] initStops(double @NotNull [] accumulators) {
+        var stops = new int[accumulators.length];
+        for (var i = 0; i < accumulators.length; i++) {
+            if (accumulators[i] == 0.0) stops[i] = -1;
+        }
+        return stops;
+    }
+
     public MITHrIL random(Random random) {
         this.random = random;
         return this;
     }
 
     public MITHrIL input(ExpressionInput input) {
-        this.input = input;
+        this.input        = input;
+        this.permutations = null;
         return this;
     }
 
@@ -143,59 +196,77 @@ public class MITHrIL implements Runnable, Closeable {
         this.noPValue = noPValue;
         return this;
     }
+
+    /**
+     * Enable sequential Monte Carlo p-values (Besag and Clifford, 1991). The permutations of an element stop as soon
+     * as the number of random values exceeding the observed one reaches h = floor(alpha * numberOfRepetitions) + 1.
+     * Its p-value is then estimated as h / l, where l is the number of permutations performed so far. Since at least h
+     * exceedances were observed, the p-value computed with all the permutations would be greater than alpha, so the
+     * decision at level alpha does not change. The iterations stop as soon as all the pathways are stopped. The
+     * p-values of the nodes that are still active are then estimated on the permutations performed so far.
+     *
+     * @param sequentialAlpha the target alpha (0 to disable the sequential mode)
+     * @return this object for a fluent interface
+     */
+    public MITHrIL sequentialAlpha(double sequentialAlpha) {
+        if (sequentialAlpha < 0 || sequentialAlpha >= 1) {
+            throw new IllegalArgumentException("The target alpha must be in [0, 1)");
+        }
+        this.sequentialAlpha = sequentialAlpha;
+        return this;
+    }
+
+    /**
+     * Set the executor that runs the stages of the batch pipeline. An executor shared by algorithms that run
+     * concurrently must be able to run two tasks for each of them (see {@link BatchPipeline#newExecutor()}). The
+     * executor is not shut down by the algorithm.
+     *
+     * @param pipelineExecutor the executor (null to use a new executor for each run)
+     * @return this object for a fluent interface
+     */
+    public MITHrIL pipelineExecutor(ExecutorService pipelineExecutor) {
+        this.pipelineExecutor = pipelineExecutor;
+        return this;
+    }
     //endregion
 
 
     /**
-     * Run the MITHrIL algorithm
+     * Run the MITHrIL algorithm. The batches are processed by a {@link BatchPipeline}, so the next batch is generated
+     * while the current one is multiplied, and the previous one is consumed.
      */
     @Override
     public void run() {
         init();
-        var lastBatchElement = 0;
+        var numberOfRuns = numberOfRuns();
         var pl = new ProgressLogger(log, 1, TimeUnit.MINUTES, "iterations");
         pl.start("Starting iterations");
-        do {
-            try (
-                    var batch = prepareBatch(lastBatchElement);
-                    var batchNodePerturbations = computeBatchPerturbations(batch);
-                    var batchNodeAccumulators = batchNodePerturbations.subtract(batch);
-                    var batchRawPathwayAccumulators = computeBatchAccumulators(batchNodeAccumulators)
-            ) {
-                var first = lastBatchElement == 0 ? 1 : 0;
-                if (lastBatchElement == 0) {
-                    nodePerturbations    = batchNodePerturbations.column(0);
-                    nodeAccumulators     = batchNodeAccumulators.column(0);
-                    pathwayAccumulators  = batchRawPathwayAccumulators.column(0);
-                    pathwayProbabilities = new double[pathwayAccumulators.length];
-                    if (!noPValue) {
-                        nodePValues                 = new double[nodePerturbations.length];
-                        pathwayPValues              = new double[pathwayAccumulators.length];
-                        pathwayNetworkProbabilities = new double[pathwayAccumulators.length];
-                        Arrays.fill(pathwayProbabilities, -1.0);
+        try (var pipeline = new BatchPipeline<MatrixInterface<?>, Pair<MatrixInterface<?>, MatrixInterface<?>>>(
+                    BatchPipeline.DEFAULT_SLOTS, pipelineExecutor,
+                    (index, slot) -> {
+                        var lastBatchElement = index * batchSize;
+                        if (lastBatchElement >= numberOfRuns) return null;
+                        var size = Math.min(batchSize, numberOfRuns - lastBatchElement);
+                        return prepareBatch(lastBatchElement, size, slot);
+                    },
+                    (batch, slot) -> {
+                        var batchNodePerturbations = computeBatchPerturbations(batch, slot);
+                        var batchRawPathwayAccumulators = computeBatchAccumulators(batchNodePerturbations, batch, slot);
+                        return Pair.of(batchNodePerturbations, batchRawPathwayAccumulators);
+                    },
+                    (index, batch, products) -> {
+                        consumeBatch(batch, products.left(), products.right(), 0, batch.columns(), index * batchSize);
+                        pl.update(batch.columns());
+                        return !isDecided();
                     }
-                }
-                if (numberOfRepetitions > 0) {
-                    batchRawPathwayAccumulators.forEach(
-                            MatrixInterface.Direction.ROW, (v, i) -> medians[i].addElements(v, first));
-                }
-                if (!noPValue) {
-                    countPValueEvents(batchNodePerturbations, first, this.nodePerturbations, nodePValues);
-                    countPValueEvents(batchRawPathwayAccumulators, first, pathwayAccumulators, pathwayPValues);
-                }
-                lastBatchElement += batch.columns();
-                pl.update(batch.columns());
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        } while (lastBatchElement < numberOfRepetitions);
+        )) {
+            pipeline.run();
+        }
         pl.done();
-        log.info("Applying distribution correction");
-        applyDistributionCorrection();
-        log.info("Computing p-values");
-        finalizePValues();
-        log.info("Computing impact factors");
-        computeImpactFactors();
+        if (performedPermutations + 1 < numberOfRuns) {
+            log.info("All pathways decided after {} permutations", performedPermutations);
+        }
+        finish();
     }
 
     /**
@@ -220,8 +291,16 @@ public class MITHrIL implements Runnable, Closeable {
      */
     @Override
     public void close() throws IOException {
-        if (repositoryMatrixTransposed != null) {
-            repositoryMatrixTransposed.close();
+        if (operators != null) {
+            operators.close();
+            operators                  = null;
+            repositoryMatrixTransposed = null;
+            pathwayMatrix              = null;
+            accumulatorOperator        = null;
+        }
+        if (buffers != null) {
+            buffers.close();
+            buffers = null;
         }
     }
 
@@ -229,10 +308,20 @@ public class MITHrIL implements Runnable, Closeable {
      * Initializes the internal state of the algorithm. This method is called automatically by the {@link #run()}
      * method.
      */
-    private void init() {
-        if (repositoryMatrixTransposed == null) {
-            repositoryMatrixTransposed = repositoryMatrix.matrix().transpose();
+    void init() {
+        if (operators == null) {
+            operators                  = repositoryMatrix.operators();
+            repositoryMatrixTransposed = operators.transposed(matrixFactory);
+            pathwayMatrix              = operators.pathwayMatrix(matrixFactory);
+            accumulatorOperator        = operators.accumulatorOperator(matrixFactory);
+        }
+        if (buffers == null) {
+            buffers = new MatrixBufferPool(matrixFactory);
+        }
+        if (permutations == null) {
+            permutations = new PermutationGenerator(input, repositoryMatrix.pathwayMatrix().id2Index());
         }
+        streams = RandomStreams.from(random);
         if (medians == null) {
             var numberOfPathways = repositoryMatrix.id2Index().size();
             medians = new StreamMedianComputationInterface[numberOfPathways];
@@ -243,28 +332,141 @@ public class MITHrIL implements Runnable, Closeable {
         }
     }
 
+    /**
+     * Compute the number of runs (the user input followed by its permutations) performed by the algorithm. The runs are
+     * performed in batches of batchSize elements until at least numberOfRepetitions runs are done.
+     *
+     * @return the number of runs
+     */
+    int numberOfRuns() {
+        var runs = 0;
+        do {
+            runs += Math.min(batchSize, (numberOfRepetitions + 1) - runs);
+        } while (runs < numberOfRepetitions);
+        return runs;
+    }
+
     /**
      * This method prepares the batch of data to be used in the next iteration. It returns a matrix where each row is a
      * gene, and each column is the input of a run. The first column of the first batch is the original input. The other
-     * columns are permutations of the original input.
+     * columns are permutations of the original input. The matrix is a reusable buffer of the pipeline slot, and it is
+     * overwritten by the next call with the same slot.
      *
      * @param lastBatchElement the last element of the previous batch
+     * @param batchSize        the number of runs in the batch
+     * @param slot             the pipeline slot of the batch
      * @return a matrix containing the batch of data
      */
-    private MatrixInterface<?> prepareBatch(int lastBatchElement) {
-        var id2index = repositoryMatrix.pathwayMatrix().id2Index();
-        int batchSize = Math.min(this.batchSize, (numberOfRepetitions + 1) - lastBatchElement);
-        var batchData = new double[id2index.size() * batchSize];
-        var i = 0;
-        for (var j = 0; j < batchSize; j++) {
-            var expressions = (lastBatchElement == 0 && j == 0) ? input.expressions() : input.permute(random);
-            for (var e : expressions.object2DoubleEntrySet()) {
-                i = id2index.getOrDefault(e.getKey(), -1);
-                if (i < 0) continue;
-                batchData[i * batchSize + j] = e.getDoubleValue();
+    private MatrixInterface<?> prepareBatch(int lastBatchElement, int batchSize, int slot) {
+        var numberOfNodes = repositoryMatrix.pathwayMatrix().id2Index().size();
+        var batchData = buffers.array("batch" + slot, numberOfNodes * batchSize);
+        fillBatch(batchData, batchSize, 0, batchSize, lastBatchElement);
+        var batch = buffers.matrix("batch" + slot, numberOfNodes, batchSize);
+        batch.fill(batchData);
+        return batch;
+    }
+
+    /**
+     * Write the inputs of the next runs into a batch, possibly shared with other samples. The batch is stored by rows,
+     * and the runs of this sample are written in a contiguous range of columns. Each permutation is drawn from the
+     * random stream of its run, so the permutations are generated in parallel and do not depend on the batch size.
+     *
+     * @param batchData        the data of the batch stored by rows
+     * @param stride           the number of columns of the batch
+     * @param offset           the first column of the range
+     * @param columns          the number of runs to write
+     * @param lastBatchElement the number of runs already performed
+     */
+    void fillBatch(double[] batchData, int stride, int offset, int columns, int lastBatchElement) {
+        var first = 0;
+        if (lastBatchElement == 0 && columns > 0) {
+            permutations.input(batchData, stride, offset);
+            first = 1;
+        }
+        var generators = new RandomGenerator[columns - first];
+        for (var j = first; j < columns; j++) {
+            generators[j - first] = streams.stream(lastBatchElement + j);
+        }
+        permutations.permute(batchData, stride, offset + first, generators);
+    }
+
+    /**
+     * Update the medians and the p-value counts with the results of a batch. Only the runs of this sample, stored in a
+     * contiguous range of columns, are considered.
+     *
+     * @param batch                       the batch of data
+     * @param batchNodePerturbations      the perturbations of the batch
+     * @param batchRawPathwayAccumulators the raw pathway accumulators of the batch
+     * @param offset                      the first column of the range
+     * @param columns                     the number of runs of this sample in the batch
+     * @param lastBatchElement            the number of runs already performed
+     */
+    void consumeBatch(
+            @NotNull MatrixInterface<?> batch, @NotNull MatrixInterface<?> batchNodePerturbations,
+            @NotNull MatrixInterface<?> batchRawPathwayAccumulators, int offset, int columns, int lastBatchElement
+    ) {
+        var first = offset + (lastBatchElement == 0 ? 1 : 0);
+        var last = offset + columns;
+        if (lastBatchElement == 0) {
+            nodePerturbations    = batchNodePerturbations.column(offset);
+            nodeAccumulators     = computeNodeAccumulators(nodePerturbations, batch.column(offset));
+            pathwayAccumulators  = batchRawPathwayAccumulators.column(offset);
+            pathwayProbabilities = new double[pathwayAccumulators.length];
+            if (!noPValue) {
+                nodePValues                 = new double[nodePerturbations.length];
+                pathwayPValues              = new double[pathwayAccumulators.length];
+                pathwayNetworkProbabilities = new double[pathwayAccumulators.length];
+                Arrays.fill(pathwayProbabilities, -1.0);
+                if (sequentialAlpha > 0 && numberOfRepetitions > 0) {
+                    exceedanceLimit = (int) Math.floor(sequentialAlpha * numberOfRepetitions) + 1;
+                    nodeStops       = initStops(nodePerturbations);
+                    pathwayStops    = initStops(pathwayAccumulators);
+                }
             }
+            performedPermutations = 0;
         }
-        return matrixFactory.of(batchData, id2index.size(), batchSize);
+        if (numberOfRepetitions > 0) {
+            batchRawPathwayAccumulators.forEach(
+                    MatrixInterface.Direction.ROW, (v, i) -> medians[i].addElements(v, first, last));
+        }
+        if (!noPValue) {
+            countPValueEvents(
+                    batchNodePerturbations, first, last, this.nodePerturbations, nodePValues, nodeStops,
+                    performedPermutations, exceedanceLimit
+            );
+            countPValueEvents(
+                    batchRawPathwayAccumulators, first, last, pathwayAccumulators, pathwayPValues, pathwayStops,
+                    performedPermutations, exceedanceLimit
+            );
+        }
+        performedPermutations += last - first;
+        if (pathwayStops != null) {
+            activePathways = 0;
+            for (var stop : pathwayStops) {
+                if (stop == 0) activePathways++;
+            }
+        }
+    }
+
+    /**
+     * Check if the sequential mode is enabled and all the pathways are stopped, so no other run is needed
+     *
+     * @return true if all the pathways are stopped
+     */
+    boolean isDecided() {
+        return pathwayStops != null && activePathways == 0;
+    }
+
+    /**
+     * Compute the final results once all the runs are performed
+     */
+    void finish() {
+        log.info("Applying distribution correction");
+        applyDistributionCorrection();
+        log.info("Computing p-values");
+        finalizePValues();
+        log.info("Computing impact factors");
+        computeImpactFactors();
     }
 
     /**
@@ -272,22 +474,57 @@ public class MITHrIL implements Runnable, Closeable {
      * computed as pathwayMatrix * run, where pathwayMatrix is computed as (I-W)^-1.
      *
      * @param batch the batch of data
+     * @param slot  the pipeline slot of the batch
      * @return the perturbations of the batch stored in a matrix, where each row is a gene, and each column is a run.
      */
-    private MatrixInterface<?> computeBatchPerturbations(@NotNull MatrixInterface<?> batch) {
-        return batch.preMultiply(repositoryMatrix.pathwayMatrix().matrix());
+    private MatrixInterface<?> computeBatchPerturbations(@NotNull MatrixInterface<?> batch, int slot) {
+        var perturbations = buffers.matrix("perturbations" + slot, batch.rows(), batch.columns());
+        batch.preMultiplyInto(pathwayMatrix, perturbations);
+        return perturbations;
     }
 
     /**
-     * Given a batch perturbations, this method computes the accumulators of the batch. Given a run, the accumulator is
-     * computed as repositoryMatrix^T * run, where ^T is the transpose operator. The repositoryMatrix is a matrix where
-     * each row is a gene, and each column is a pathway. Position (i,j) is 1 if gene i is in pathway j, 0 otherwise.
+     * Given the perturbations of a run and the run itself, this method computes the node accumulators of the run. The
+     * accumulator is computed as perturbation - run.
+     *
+     * @param perturbations the perturbations of a run
+     * @param run           the run
+     * @return the node accumulators
+     */
+    private static double @NotNull [] computeNodeAccumulators(double @NotNull [] perturbations, double[] run) {
+        var accumulators = new double[perturbations.length];
+        for (var i = 0; i < perturbations.length; i++) {
+            accumulators[i] = perturbations[i] - run[i];
+        }
+        return accumulators;
+    }
+
+    /**
+     * Given a batch of data and its perturbations, this method computes the accumulators of the batch. Given a run, the
+     * accumulator is computed as repositoryMatrix^T * (perturbation - run), where ^T is the transpose operator. The
+     * repositoryMatrix is a matrix where each row is a gene, and each column is a pathway. Position (i,j) is 1 if gene i
+     * is in pathway j, 0 otherwise. If the accumulator operator repositoryMatrix^T * (pathwayMatrix - I) is available,
+     * the accumulators are computed directly from the batch with a single multiplication.
      *
      * @param batchPerturbation the perturbations of a batch computed with computeBatchPerturbations
+     * @param batch             the batch of data
+     * @param slot              the pipeline slot of the batch
      * @return the accumulators of the batch stored in a matrix, where each row is a pathway, and each column is a run.
      */
-    private MatrixInterface<?> computeBatchAccumulators(@NotNull MatrixInterface<?> batchPerturbation) {
-        return batchPerturbation.preMultiply(repositoryMatrixTransposed);
+    private MatrixInterface<?> computeBatchAccumulators(
+            @NotNull MatrixInterface<?> batchPerturbation, @NotNull MatrixInterface<?> batch, int slot
+    ) {
+        var accumulators = buffers.matrix(
+                "pathwayAccumulators" + slot, repositoryMatrixTransposed.rows(), batch.columns()
+        );
+        if (accumulatorOperator != null) {
+            batch.preMultiplyInto(accumulatorOperator, accumulators);
+        } else {
+            var nodeAccumulators = buffers.matrix("nodeAccumulators", batch.rows(), batch.columns());
+            batchPerturbation.subtractInto(batch, nodeAccumulators);
+            nodeAccumulators.preMultiplyInto(repositoryMatrixTransposed, accumulators);
+        }
+        return accumulators;
     }
 
     /**
@@ -364,8 +601,8 @@ public class MITHrIL implements Runnable, Closeable {
      */
     private void finalizePValues() {
         if (!noPValue) {
-            finalizePValues(nodePValues);
-            finalizePValues(pathwayPValues);
+            finalizePValues(nodePValues, nodeStops);
+            finalizePValues(pathwayPValues, pathwayStops);
             System.arraycopy(pathwayPValues, 0, pathwayNetworkProbabilities, 0, pathwayPValues.length);
             for (var i = 0; i < pathwayPValues.length; i++) {
                 pathwayPValues[i] = pValueCombiner.combine(pathwayPValues[i], probability(i));
@@ -377,14 +614,24 @@ public class MITHrIL implements Runnable, Closeable {
 
     /**
      * Finalize the p-values by dividing the count of events by the number of repetitions. Then, the p-values are
-     * adjusted for multiple hypothesis testing.
+     * adjusted for multiple hypothesis testing. In sequential mode, the count of a stopped element is divided by the
+     * number of permutations performed when it was stopped, and, if the iterations stopped early, the count of an
+     * active element is divided by the number of permutations performed.
      *
      * @param pValues the array containing the counts to update
+     * @param stops   the number of permutations performed when each element was stopped, or null
      */
-    private void finalizePValues(double @NotNull [] pValues) {
+    private void finalizePValues(double @NotNull [] pValues, int[] stops) {
         var minPValue = 1.0 / (double) numberOfRepetitions / 100.0;
+        var stoppedEarly = stops != null && performedPermutations < numberOfRuns() - 1;
         for (var i = 0; i < pValues.length; i++) {
-            pValues[i] /= numberOfRepetitions;
+            if (stops != null && stops[i] > 0) {
+                pValues[i] /= stops[i];
+            } else if (stoppedEarly) {
+                pValues[i] /= performedPermutations;
+            } else {
+                pValues[i] /= numberOfRepetitions;
+            }
             if (pValues[i] <= minPValue) {
                 pValues[i] = minPValue;
             } else if (pValues[i] > 1) { //This should never happen!
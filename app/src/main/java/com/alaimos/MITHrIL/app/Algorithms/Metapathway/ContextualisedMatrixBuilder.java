@@ -5,18 +5,24 @@ import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Node;
 import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Repository;
 import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
 import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrix;
 import com.alaimos.MITHrIL.app.Data.Records.RepositoryMatrix;
 import it.unimi.dsi.fastutil.doubles.DoubleObjectPair;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
 import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Stack;
+import java.util.stream.IntStream;
 
 public class ContextualisedMatrixBuilder implements Runnable {
 
@@ -30,7 +36,10 @@ public class ContextualisedMatrixBuilder implements Runnable {
     private MatrixInterface<?> contextualisedMatrix = null;
     private final Int2DoubleMap absoluteWeights = new Int2DoubleOpenHashMap();
     private final Long2DoubleMap weights = new Long2DoubleOpenHashMap();
-    private double[] attenuationMatrix = null;
+    /**
+     * The rows of the attenuation matrix that differ from the identity matrix (row index -> column index -> value)
+     */
+    private final Int2ObjectMap<Int2DoubleOpenHashMap> attenuationRows = new Int2ObjectOpenHashMap<>();
     private boolean verbose = true;
 
     public ContextualisedMatrixBuilder(
@@ -44,7 +53,18 @@ public class ContextualisedMatrixBuilder implements Runnable {
         this.originalMatrix    = matrix;
         this.nonExpressedNodes = nonExpressedNodes;
         this.epsilon           = epsilon;
-        this.minWeight         = Math.pow(10, -Math.ceil(-Math.log10(epsilon)) - 1);
+        this.minWeight         = minWeight(epsilon);
+    }
+
+    /**
+     * Compute the smallest contribution that is propagated for a given epsilon. It is one order of magnitude smaller
+     * than epsilon (rounded to a power of ten).
+     *
+     * @param epsilon epsilon
+     * @return the smallest contribution
+     */
+    public static double minWeight(double epsilon) {
+        return Math.pow(10, -Math.ceil(-Math.log10(epsilon)) - 1);
     }
 
     public ContextualisedMatrixBuilder verbose(boolean verbose) {
@@ -86,6 +106,23 @@ public class ContextualisedMatrixBuilder implements Runnable {
         return builder.get();
     }
 
+    /**
+     * Build the attenuation matrix of a set of non-expressed nodes. Given a batch of runs X, the contextualised
+     * perturbations are A * (I - W)^-1 * X, where A is the attenuation matrix. This method is used when the
+     * perturbations are not computed with the inverted metapathway matrix (see {@link NeumannPropagator}).
+     *
+     * @param repository        repository
+     * @param matrix            repository matrix
+     * @param nonExpressedNodes the non-expressed nodes
+     * @param epsilon           epsilon
+     * @return the attenuation matrix or null if there are no non-expressed nodes
+     */
+    public static SparseMatrix attenuation(
+            Repository repository, RepositoryMatrix matrix, String[] nonExpressedNodes, double epsilon
+    ) {
+        return new ContextualisedMatrixBuilder(repository, matrix, null, nonExpressedNodes, epsilon).attenuation();
+    }
+
     /**
      * Given a pair of node indices, compute the key for the weight map. The key is a long value, where the first 32
      * bits are the source node index and the last 32 bits are the target node
@@ -139,7 +176,7 @@ public class ContextualisedMatrixBuilder implements Runnable {
 
     /**
      * Starting from a non-expressed node, compute the attenuation of all downstream nodes. The value is directly stored
-     * in the attenuation matrix.
+     * in the rows of the attenuation matrix.
      *
      * @param uId  node id
      * @param uIdx node index
@@ -149,7 +186,6 @@ public class ContextualisedMatrixBuilder implements Runnable {
         var u = g.node(uId);
         if (u == null) return;
         var id2Index = originalMatrix.pathwayMatrix().id2Index();
-        var n = id2Index.size();
         var stack = new Stack<DoubleObjectPair<Node>>();
         var visited = new IntOpenHashSet();
         var startIdx = uIdx;
@@ -166,7 +202,7 @@ public class ContextualisedMatrixBuilder implements Runnable {
             if (visited.contains(uIdx)) continue;
             w = tmp.leftDouble();
             visited.add(uIdx);
-            if (uIdx != startIdx) attenuationMatrix[uIdx * n + startIdx] += w; // Add the weight to the matrix in row uIdx and column startIdx
+            if (uIdx != startIdx) attenuationRow(uIdx).addTo(startIdx, w); // Add the weight to the matrix in row uIdx and column startIdx
             outgoing = g.outgoingEdges(u);
             for (var e : outgoing) {
                 v    = e.target();
@@ -181,9 +217,18 @@ public class ContextualisedMatrixBuilder implements Runnable {
     }
 
     /**
-     * Fill the attenuation matrix with the attenuation values for all non-expressed nodes The matrix is stored as a 1D
-     * array, where the value at position (i, j) is stored at position i * n + j where n is the number of nodes in the
-     * graph.
+     * Get a row of the attenuation matrix, creating it if needed
+     *
+     * @param i the row index
+     * @return the non-zero elements of the row
+     */
+    private Int2DoubleOpenHashMap attenuationRow(int i) {
+        return attenuationRows.computeIfAbsent(i, k -> new Int2DoubleOpenHashMap());
+    }
+
+    /**
+     * Fill the attenuation matrix with the attenuation values for all non-expressed nodes. Only the rows that differ
+     * from the identity matrix are stored, since the visits reach only the nodes downstream of the non-expressed ones.
      * <p>
      * If u is a non-expressed node, the value at position (u, u) is set to epsilon and all other values in the row are
      * set to 0. The other values are computed by the nonExpressedVisit method, directly as negated normalized weights.
@@ -192,35 +237,92 @@ public class ContextualisedMatrixBuilder implements Runnable {
      */
     private void fillAttenuationMatrix() {
         var id2Index = originalMatrix.pathwayMatrix().id2Index();
-        var n = id2Index.size();
-        attenuationMatrix = new double[n * n];
+        attenuationRows.clear();
         for (var uId : nonExpressedNodes) {
             var uIdx = id2Index.getInt(uId);
             nonExpressedVisit(uId, uIdx);
         }
         for (var uId : nonExpressedNodes) {
             var uIdx = id2Index.getInt(uId);
-            for (var i = 0; i < n; i++) {
-                attenuationMatrix[uIdx * n + i] = 0.0;
-            }
-            attenuationMatrix[uIdx * n + uIdx] = epsilon;
+            var row = attenuationRow(uIdx);
+            row.clear();
+            row.put(uIdx, epsilon);
         }
     }
 
     private void sumIdentityMatrix() {
-        var n = originalMatrix.pathwayMatrix().id2Index().size();
-        int idx;
-        for (var i = 0; i < n; i++) {
-            idx = i * n + i;
-            if (attenuationMatrix[idx] == 0.0) attenuationMatrix[idx] = 1.0;
+        for (var e : attenuationRows.int2ObjectEntrySet()) {
+            var i = e.getIntKey();
+            var row = e.getValue();
+            if (row.get(i) == 0.0) row.put(i, 1.0);
         }
     }
 
+    /**
+     * Build a sparse matrix containing a subset of the rows of the attenuation matrix
+     *
+     * @param rows the indices of the rows, or null to build the whole (n x n) attenuation matrix
+     * @param n    the number of nodes
+     * @return the sparse matrix, where row i is the row rows[i] of the attenuation matrix
+     */
+    private @NotNull SparseMatrix attenuationMatrix(int[] rows, int n) {
+        var size = rows == null ? n : 0;
+        for (var row : attenuationRows.values()) size += row.size();
+        var rowIndices = new int[size];
+        var columnIndices = new int[size];
+        var values = new double[size];
+        var k = 0;
+        if (rows == null) {
+            for (var i = 0; i < n; i++) {
+                if (attenuationRows.containsKey(i)) continue;
+                rowIndices[k]    = i;
+                columnIndices[k] = i;
+                values[k++]      = 1.0;
+            }
+        }
+        var count = rows == null ? n : rows.length;
+        for (var i = 0; i < count; i++) {
+            var row = attenuationRows.get(rows == null ? i : rows[i]);
+            if (row == null) continue;
+            for (var e : row.int2DoubleEntrySet()) {
+                rowIndices[k]    = i;
+                columnIndices[k] = e.getIntKey();
+                values[k++]      = e.getDoubleValue();
+            }
+        }
+        return SparseMatrix.fromTriplets(count, n, rowIndices, columnIndices, values, k);
+    }
+
+    /**
+     * Compute the contextualised matrix A * M, where A is the attenuation matrix and M is the metapathway matrix. Since
+     * the rows of A that are equal to the identity leave the corresponding rows of M unchanged, only the other rows are
+     * recomputed, from the rows of M they reference. M is copied once by the factory, in its precision, and the
+     * recomputed rows are then written in place into the copy. The cost is proportional to the number of rows reached
+     * by the non-expressed nodes, instead of a full product of two n x n matrices.
+     */
     private void computeContextualizedMatrix() {
         var n = originalMatrix.pathwayMatrix().id2Index().size();
-        var attenuationMatrixObject = matrixFactory.of(attenuationMatrix, n, n);
-        var originalMatrixObject = originalMatrix.pathwayMatrix().matrix();
-        contextualisedMatrix = originalMatrixObject.preMultiply(attenuationMatrixObject);
+        var rows = attenuationRows.keySet().toIntArray();
+        Arrays.sort(rows);
+        var original = originalMatrix.pathwayMatrix().matrix();
+        var updatedRows = new double[rows.length][];
+        IntStream.range(0, rows.length).parallel().forEach(i -> {
+            var row = new double[n];
+            var buffer = new double[n];
+            for (var e : attenuationRows.get(rows[i]).int2DoubleEntrySet()) {
+                var weight = e.getDoubleValue();
+                original.rowInto(e.getIntKey(), buffer);
+                for (var j = 0; j < n; j++) {
+                    row[j] += weight * buffer[j];
+                }
+            }
+            updatedRows[i] = row;
+        });
+        var matrix = matrixFactory.of(original);
+        for (var i = 0; i < rows.length; i++) {
+            matrix.fillRow(rows[i], updatedRows[i]);
+        }
+        contextualisedMatrix = matrix;
     }
 
     /**
@@ -238,13 +340,26 @@ public class ContextualisedMatrixBuilder implements Runnable {
                 if (verbose) log.info("Contextualized matrix ready");
             } else {
                 if (verbose) log.info("Skipping contextualization: no non-expressed nodes");
-                contextualisedMatrix = originalMatrix.pathwayMatrix().matrix();
+                contextualisedMatrix = matrixFactory.withPrecision(originalMatrix.pathwayMatrix().matrix());
             }
         } catch (Throwable e) {
             log.error("An error occurred while building the matrix representation", e);
         }
     }
 
+    /**
+     * Compute the attenuation matrix without building the contextualised matrix
+     *
+     * @return the attenuation matrix or null if there are no non-expressed nodes
+     */
+    public SparseMatrix attenuation() {
+        if (nonExpressedNodes.length == 0) return null;
+        var n = originalMatrix.pathwayMatrix().id2Index().size();
+        fillAttenuationMatrix();
+        sumIdentityMatrix();
+        return attenuationMatrix(null, n);
+    }
+
     /**
      * Returns the metapathway
      *
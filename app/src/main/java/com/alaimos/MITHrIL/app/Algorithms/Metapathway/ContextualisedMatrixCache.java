@@ -0,0 +1,330 @@
+package com.alaimos.MITHrIL.app.Algorithms.Metapathway;
+
+import com.alaimos.MITHrIL.api.Commons.IOUtils;
+import com.alaimos.MITHrIL.api.Commons.Utils;
+import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Repository;
+import com.alaimos.MITHrIL.api.Math.MappedMatrix;
+import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
+import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+import com.alaimos.MITHrIL.app.Data.Records.RepositoryMatrix;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of contextualised matrices. A contextualised matrix depends only on the repository, the set of non-expressed
+ * nodes, and epsilon. Therefore, all the simulations that share them (for example, the FastPHENSIM runs of a reverse
+ * PHENSIM analysis) can share a single matrix instead of building it from scratch.
+ * <p>
+ * Matrices are acquired and released by the algorithms. While a matrix is acquired, it is never closed, and it can be
+ * read concurrently by multiple threads. When a matrix is released by all the algorithms, it is kept in memory until
+ * it is evicted by the least recently used policy. Optionally, each algorithm can ask for its matrix to be also stored
+ * on disk next to the repository matrix cache, so that it can be reused by other processes.
+ * <p>
+ * A file of the disk cache starts with a header: magic number, version, number of nodes (n), precision, fingerprint of
+ * the metapathway matrix (see {@link RepositoryMatrix#fingerprint()}), epsilon, offset of the matrix, and the sorted
+ * non-expressed nodes. The n x n matrix follows as raw doubles at a page-aligned offset. A file is reused only if its
+ * header matches the requested matrix, otherwise the matrix is built again and the file is replaced.
+ */
+public final class ContextualisedMatrixCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ContextualisedMatrixCache.class);
+    private static final ContextualisedMatrixCache INSTANCE = new ContextualisedMatrixCache();
+    private static final int DEFAULT_CAPACITY = 2;
+    private static final long MAGIC = 0x58544D4358544E43L; // "CNTXCMTX"
+    private static final int VERSION = 1;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<MatrixInterface<?>, Entry> acquired = new IdentityHashMap<>();
+    private int capacity = DEFAULT_CAPACITY;
+
+    private ContextualisedMatrixCache() {
+    }
+
+    public static ContextualisedMatrixCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Set the maximum number of matrices kept in memory when they are not used
+     *
+     * @param capacity the number of matrices
+     * @return this object for a fluent interface
+     */
+    public synchronized ContextualisedMatrixCache capacity(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("The capacity must be non-negative");
+        this.capacity = capacity;
+        evict();
+        return this;
+    }
+
+    /**
+     * Get a contextualised matrix, building it if it is not in the cache. The matrix must be released with
+     * {@link #release(MatrixInterface)} instead of being closed.
+     *
+     * @param repository        the repository
+     * @param matrix            the repository matrix
+     * @param matrixFactory     the matrix factory
+     * @param nonExpressedNodes the non-expressed nodes
+     * @param epsilon           epsilon
+     * @param verbose           if true, the progress of the construction is logged
+     * @param diskCache         if true, the matrix is read from the disk cache, or stored there after being built
+     * @return the contextualised matrix, or null if an error occurred while building it
+     */
+    public @Nullable MatrixInterface<?> acquire(
+            @NotNull Repository repository, @NotNull RepositoryMatrix matrix,
+            @NotNull MatrixFactoryInterface<?> matrixFactory, String @NotNull [] nonExpressedNodes, double epsilon,
+            boolean verbose, boolean diskCache
+    ) {
+        var sortedNodes = nonExpressedNodes.clone();
+        Arrays.sort(sortedNodes);
+        var key = new Key(
+                repository.hashCode(), matrix, matrixFactory.getClass(), matrixFactory.singlePrecision(),
+                Arrays.asList(sortedNodes), epsilon
+        );
+        Entry entry;
+        synchronized (this) {
+            entry = entries.computeIfAbsent(key, k -> new Entry());
+            entry.references++;
+        }
+        MatrixInterface<?> result = null;
+        try {
+            synchronized (entry) {
+                if (entry.matrix == null) {
+                    entry.matrix = load(
+                            key, repository, matrix, matrixFactory, sortedNodes, epsilon, verbose, diskCache
+                    );
+                } else if (verbose) {
+                    log.info("Contextualized matrix found in cache");
+                }
+                result = entry.matrix;
+            }
+        } finally {
+            synchronized (this) {
+                if (result == null || result == matrix.pathwayMatrix().matrix()) {
+                    // The matrix could not be built, or it is the metapathway matrix, which is not owned by the cache
+                    entry.references--;
+                    if (entry.references == 0) entries.remove(key, entry);
+                } else {
+                    acquired.putIfAbsent(result, entry);
+                    evict();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Release a matrix acquired from this cache
+     *
+     * @param matrix the matrix
+     * @return true if the matrix is managed by the cache, false if the caller is responsible for closing it
+     */
+    public synchronized boolean release(@NotNull MatrixInterface<?> matrix) {
+        var entry = acquired.get(matrix);
+        if (entry == null) return false;
+        entry.references--;
+        evict();
+        return true;
+    }
+
+    /**
+     * Release all the matrices that are not used
+     */
+    public synchronized void clear() {
+        var oldCapacity = capacity;
+        capacity = 0;
+        evict();
+        capacity = oldCapacity;
+    }
+
+    /**
+     * Remove the least recently used entries that are not in use until the number of unused entries is at most equal
+     * to the capacity
+     */
+    private void evict() {
+        var unused = 0;
+        for (var entry : entries.values()) {
+            if (entry.references == 0) unused++;
+        }
+        Iterator<Entry> it = entries.values().iterator();
+        while (unused > capacity && it.hasNext()) {
+            var entry = it.next();
+            if (entry.references > 0) continue;
+            it.remove();
+            unused--;
+            if (entry.matrix != null) {
+                acquired.remove(entry.matrix);
+                closeQuietly(entry.matrix);
+            }
+        }
+    }
+
+    private static void closeQuietly(@NotNull MatrixInterface<?> matrix) {
+        try {
+            matrix.close();
+        } catch (IOException e) {
+            log.warn("Unable to release a contextualized matrix", e);
+        }
+    }
+
+    /**
+     * Load a matrix from the disk cache or build it
+     */
+    private static MatrixInterface<?> load(
+            @NotNull Key key, Repository repository, @NotNull RepositoryMatrix matrix,
+            MatrixFactoryInterface<?> matrixFactory, String @NotNull [] nonExpressedNodes, double epsilon,
+            boolean verbose, boolean useDiskCache
+    ) {
+        var diskCache = useDiskCache && MatrixBuilderFromMetapathway.USE_CACHE && nonExpressedNodes.length > 0;
+        var n = matrix.pathwayMatrix().id2Index().size();
+        var fingerprint = diskCache ? matrix.fingerprint() : 0L;
+        var file = key.file(fingerprint);
+        if (diskCache && file.exists()) {
+            try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                var header = header(n, key.singlePrecision, fingerprint, epsilon, nonExpressedNodes);
+                var stored = ByteBuffer.allocate(header.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+                while (stored.hasRemaining()) {
+                    if (channel.read(stored, stored.position()) < 0) break;
+                }
+                if (!stored.flip().equals(header)) throw new IOException("The matrix file does not match the input");
+                var dataOffset = MappedMatrix.align(header.remaining());
+                if (channel.size() != dataOffset + MappedMatrix.size(n, n)) {
+                    throw new IOException("Invalid matrix file");
+                }
+                if (verbose) log.info("Contextualized matrix found on disk, using it");
+                return matrixFactory.withPrecision(matrixFactory.of(MappedMatrix.map(channel, dataOffset, n, n)));
+            } catch (IOException e) {
+                log.debug("Unable to read the contextualized matrix", e);
+            }
+        }
+        var result = ContextualisedMatrixBuilder.build(
+                repository, matrix, matrixFactory, nonExpressedNodes, epsilon, verbose
+        );
+        if (diskCache && result != null) {
+            try {
+                write(file, header(n, key.singlePrecision, fingerprint, epsilon, nonExpressedNodes), result);
+            } catch (IOException e) {
+                log.warn("Unable to store the contextualized matrix", e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Build the header of a file of the disk cache
+     *
+     * @param n                 the number of nodes
+     * @param singlePrecision   true if the matrix was built in single precision
+     * @param fingerprint       the fingerprint of the metapathway matrix
+     * @param epsilon           epsilon
+     * @param nonExpressedNodes the sorted non-expressed nodes
+     * @return the header, ready to be read
+     */
+    private static @NotNull ByteBuffer header(
+            int n, boolean singlePrecision, long fingerprint, double epsilon, String @NotNull [] nonExpressedNodes
+    ) {
+        var nodes = new byte[nonExpressedNodes.length][];
+        var size = 3L * Long.BYTES + 4L * Integer.BYTES + Double.BYTES;
+        for (var i = 0; i < nodes.length; i++) {
+            nodes[i] = nonExpressedNodes[i].getBytes(StandardCharsets.UTF_8);
+            size += Integer.BYTES + nodes[i].length;
+        }
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("Too many non-expressed nodes");
+        var buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(MAGIC)
+              .putInt(VERSION)
+              .putInt(n)
+              .putInt(singlePrecision ? 1 : 0)
+              .putLong(fingerprint)
+              .putDouble(epsilon)
+              .putLong(MappedMatrix.align(size))
+              .putInt(nodes.length);
+        for (var node : nodes) buffer.putInt(node.length).put(node);
+        return buffer.flip();
+    }
+
+    /**
+     * Write a matrix to a temporary file and atomically move it in place
+     */
+    private static void write(
+            @NotNull File file, @NotNull ByteBuffer header, @NotNull MatrixInterface<?> matrix
+    ) throws IOException {
+        var dataOffset = MappedMatrix.align(header.remaining());
+        var tmp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+            try (var channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                var position = 0L;
+                while (header.hasRemaining()) {
+                    position += channel.write(header, position);
+                }
+                MappedMatrix.write(channel, dataOffset, matrix);
+                channel.force(false);
+            }
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * The key of a contextualised matrix. The repository matrix is compared by identity, since the same repository
+     * matrix is shared by all the algorithms of a run.
+     */
+    private record Key(
+            int repositoryHash, RepositoryMatrix matrix, Class<?> factory, boolean singlePrecision,
+            List<String> nonExpressedNodes, double epsilon
+    ) {
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key k)) return false;
+            return repositoryHash == k.repositoryHash && matrix == k.matrix && factory == k.factory &&
+                    singlePrecision == k.singlePrecision && Double.compare(epsilon, k.epsilon) == 0 &&
+                    nonExpressedNodes.equals(k.nonExpressedNodes);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * repositoryHash + System.identityHashCode(matrix)) + nonExpressedNodes.hashCode() +
+                    Double.hashCode(epsilon);
+        }
+
+        /**
+         * Get the file of the disk cache. The header of the file must still be checked, since the name is built from
+         * hash codes.
+         *
+         * @param fingerprint the fingerprint of the metapathway matrix
+         * @return the file
+         */
+        File file(long fingerprint) {
+            var filename = "contextualised-matrix-" + repositoryHash + "-" + Long.toHexString(fingerprint) + "-" +
+                    nonExpressedNodes.hashCode() + "-" + Double.hashCode(epsilon) + (singlePrecision ? "-single" : "") +
+                    ".mtx";
+            return new File(Utils.getAppDir(), IOUtils.sanitizeFilename(filename));
+        }
+    }
+
+    private static final class Entry {
+
+        private MatrixInterface<?> matrix = null;
+        private int references = 0;
+    }
+}
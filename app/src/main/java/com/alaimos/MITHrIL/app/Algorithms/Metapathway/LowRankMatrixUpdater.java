@@ -0,0 +1,303 @@
+package com.alaimos.MITHrIL.app.Algorithms.Metapathway;
+
+import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Edge;
+import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Graph;
+import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Repository;
+import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
+import com.alaimos.MITHrIL.app.Data.Pathways.RepositoryMatrixBuilder;
+import com.alaimos.MITHrIL.app.Data.Readers.RepositoryMatrixReader;
+import com.alaimos.MITHrIL.app.Data.Records.PathwayMatrix;
+import com.alaimos.MITHrIL.app.Data.Records.RepositoryMatrix;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleMaps;
+import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Update the cached inverse of a metapathway matrix after a small change of the metapathway (for example, when it is
+ * extended with a few custom edges, or when a few nodes are removed).
+ * <p>
+ * A snapshot of the normalized weights of the metapathway is taken before the change. After the change, the columns of
+ * the metapathway matrix M = I - W that differ from the snapshot are collected. Since each column of M depends only on
+ * the outgoing edges of a node, adding or removing an edge changes a single column, while removing a node changes its
+ * column and the columns of its predecessors. The k changed columns are a rank-k correction M' = M + D * S^T, where S
+ * selects the changed columns. Therefore, the inverse is updated with the Sherman-Morrison-Woodbury formula:
+ * <pre>
+ *     M'^-1 = M^-1 - (M^-1 * D) * (I + S^T * M^-1 * D)^-1 * (S^T * M^-1)
+ * </pre>
+ * which costs O(n^2 * k) instead of the O(n^3) of a full inversion. New nodes are handled by extending M with an
+ * identity block before the correction. A removed node is first disconnected from the rest of the graph, so its row and
+ * column can be dropped from the result.
+ */
+public class LowRankMatrixUpdater {
+
+    private static final Logger log = LoggerFactory.getLogger(LowRankMatrixUpdater.class);
+    /**
+     * The maximum number of changed columns, as a fraction of the number of nodes, for which the update is cheaper than
+     * a full inversion
+     */
+    private static final double DEFAULT_MAX_RANK_FRACTION = 0.1;
+    private final int repositoryHash;
+    private final Map<String, Object2DoubleMap<String>> columns;
+    private double maxRankFraction = DEFAULT_MAX_RANK_FRACTION;
+
+    private LowRankMatrixUpdater(int repositoryHash, Map<String, Object2DoubleMap<String>> columns) {
+        this.repositoryHash = repositoryHash;
+        this.columns        = columns;
+    }
+
+    /**
+     * Take a snapshot of a metapathway repository before it is changed
+     *
+     * @param repository a metapathway repository
+     * @return the updater
+     */
+    @Contract("_ -> new")
+    public static @NotNull LowRankMatrixUpdater snapshot(@NotNull Repository repository) {
+        return new LowRankMatrixUpdater(repository.hashCode(), columns(repository.get().graph()));
+    }
+
+    /**
+     * Set the maximum number of changed columns, as a fraction of the number of nodes. If more columns are changed, the
+     * update is not performed since a full inversion is cheaper.
+     *
+     * @param maxRankFraction the maximum fraction of changed columns
+     * @return this object for a fluent interface
+     */
+    public LowRankMatrixUpdater maxRankFraction(double maxRankFraction) {
+        this.maxRankFraction = maxRankFraction;
+        return this;
+    }
+
+    /**
+     * Compute the non-zero elements outside the diagonal of each column of the metapathway matrix. As in the
+     * PathwayMatrixBuilder, for each edge (u, v), M[v,u] = -w(u, v) / sum(|w(u, z)| for all nodes z outgoing from u).
+     *
+     * @param g a graph
+     * @return for each node with outgoing edges, a map from target nodes to elements of the column
+     */
+    private static @NotNull Map<String, Object2DoubleMap<String>> columns(@NotNull Graph g) {
+        var result = new HashMap<String, Object2DoubleMap<String>>();
+        for (var u : g.nodes().values()) {
+            var outgoing = g.outgoingEdges(u);
+            var wT = 0.0;
+            for (Edge e : outgoing) {
+                wT += Math.abs(e.weight());
+            }
+            var column = new Object2DoubleOpenHashMap<String>();
+            for (Edge e : outgoing) {
+                var v = e.target().id();
+                var w = -e.weight() / wT;
+                if (v.equals(u.id()) || !Double.isFinite(w) || w == 0.0) continue;
+                column.put(v, w);
+            }
+            if (!column.isEmpty()) result.put(u.id(), column);
+        }
+        return result;
+    }
+
+    /**
+     * Build the matrix representation of the changed repository starting from the cached matrix representation of the
+     * snapshot.
+     *
+     * @param repository    the changed repository
+     * @param matrixFactory the matrix factory
+     * @return the matrix representation or null if the cached matrix is not available or too many columns changed
+     */
+    public @Nullable RepositoryMatrix update(
+            @NotNull Repository repository, @NotNull MatrixFactoryInterface<?> matrixFactory
+    ) {
+        return update(repository, matrixFactory, false);
+    }
+
+    /**
+     * Build the matrix representation of the changed repository starting from the cached matrix representation of the
+     * snapshot, which was inverted with the given inversion mode.
+     *
+     * @param repository     the changed repository
+     * @param matrixFactory  the matrix factory
+     * @param blockInversion true if the cached matrix was inverted with the block-triangular inversion
+     * @return the matrix representation or null if the cached matrix is not available or too many columns changed
+     */
+    public @Nullable RepositoryMatrix update(
+            @NotNull Repository repository, @NotNull MatrixFactoryInterface<?> matrixFactory, boolean blockInversion
+    ) {
+        RepositoryMatrix base;
+        try {
+            base = new RepositoryMatrixReader(repositoryHash, matrixFactory, false, 0, blockInversion).read();
+        } catch (IOException e) {
+            log.debug("Matrix representation of the base metapathway not found", e);
+            return null;
+        }
+        var baseIndex = base.pathwayMatrix().id2Index();
+        var n0 = baseIndex.size();
+        var metapathway = repository.get();
+        var g = metapathway.graph();
+        var indexes = g.index();
+        var n1 = indexes.right().size();
+        // Map the nodes of both metapathways to a common index: the nodes of the base, followed by the new nodes
+        var union = new Object2IntOpenHashMap<String>(baseIndex);
+        var map = new int[n1];
+        for (var i = 0; i < n1; i++) {
+            var id = indexes.left().get(i);
+            if (!union.containsKey(id)) union.put(id, union.size());
+            map[i] = union.getInt(id);
+        }
+        var newColumns = columns(g);
+        var changed = new IntArrayList();
+        var differences = new ArrayList<Object2DoubleMap<String>>();
+        var ids = new HashSet<>(columns.keySet());
+        ids.addAll(newColumns.keySet());
+        for (var id : ids) {
+            var before = columns.getOrDefault(id, Object2DoubleMaps.emptyMap());
+            var after = newColumns.getOrDefault(id, Object2DoubleMaps.emptyMap());
+            if (before.equals(after)) continue;
+            var difference = new Object2DoubleOpenHashMap<>(after);
+            for (var e : before.object2DoubleEntrySet()) {
+                difference.addTo(e.getKey(), -e.getDoubleValue());
+            }
+            differences.add(difference);
+            changed.add(union.getInt(id));
+        }
+        var k = changed.size();
+        if (k > maxRankFraction * n1) {
+            log.debug("Too many changes ({} columns) for a low-rank update", k);
+            return null;
+        }
+        log.debug("Updating the base matrix with a rank-{} correction", k);
+        double[] inverse;
+        try (var baseMatrix = base.pathwayMatrix().matrix()) {
+            inverse = baseMatrix.raw1D();
+        } catch (IOException e) {
+            log.debug("Unable to read the base matrix", e);
+            return null;
+        }
+        var result = update(inverse, n0, union, map, changed.toIntArray(), differences, matrixFactory);
+        if (result == null) {
+            log.debug("The correction is singular");
+            return null;
+        }
+        var pathwayMatrix = PathwayMatrix.of(
+                metapathway, matrixFactory.of(result, n1, n1), indexes.left(), indexes.right());
+        return new RepositoryMatrixBuilder(matrixFactory).build(repository, pathwayMatrix);
+    }
+
+    /**
+     * Get an element of the base inverse extended with an identity block for the new nodes
+     */
+    private static double baseElement(double[] inverse, int n0, int i, int j) {
+        if (i < n0 && j < n0) return inverse[i * n0 + j];
+        return i == j ? 1.0 : 0.0;
+    }
+
+    /**
+     * Apply the Woodbury correction to the base inverse
+     *
+     * @param inverse     the base inverse (n0 x n0) stored by rows
+     * @param n0          the number of nodes of the base
+     * @param union       the common index of the nodes
+     * @param map         for each node of the result, its position in the common index
+     * @param changed     the positions in the common index of the changed columns
+     * @param differences for each changed column, the difference between the new and the old column
+     * @param factory     the matrix factory used to invert the capacitance matrix
+     * @return the new inverse stored by rows or null if the capacitance matrix is singular
+     */
+    private static double @Nullable [] update(
+            double[] inverse, int n0, @NotNull Object2IntOpenHashMap<String> union, int[] map, int[] changed,
+            @NotNull List<Object2DoubleMap<String>> differences, @NotNull MatrixFactoryInterface<?> factory
+    ) {
+        var k = changed.length;
+        var n = union.size();
+        var n1 = map.length;
+        var result = new double[n1 * n1];
+        if (k == 0) {
+            IntStream.range(0, n1).parallel().forEach(i -> {
+                for (var j = 0; j < n1; j++) {
+                    result[i * n1 + j] = baseElement(inverse, n0, map[i], map[j]);
+                }
+            });
+            return result;
+        }
+        var targets = new int[k][];
+        var values = new double[k][];
+        for (var a = 0; a < k; a++) {
+            var difference = differences.get(a);
+            targets[a] = new int[difference.size()];
+            values[a]  = new double[difference.size()];
+            var p = 0;
+            for (var e : difference.object2DoubleEntrySet()) {
+                targets[a][p]  = union.getInt(e.getKey());
+                values[a][p++] = e.getDoubleValue();
+            }
+        }
+        // Z = M^-1 * D (n x k)
+        var z = new double[n * k];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            for (var a = 0; a < k; a++) {
+                var sum = 0.0;
+                for (var p = 0; p < targets[a].length; p++) {
+                    sum += baseElement(inverse, n0, i, targets[a][p]) * values[a][p];
+                }
+                z[i * k + a] = sum;
+            }
+        });
+        // C = I + S^T * Z (k x k)
+        var capacitance = new double[k * k];
+        for (var a = 0; a < k; a++) {
+            System.arraycopy(z, changed[a] * k, capacitance, a * k, k);
+            capacitance[a * k + a] += 1.0;
+        }
+        double[] capacitanceInverse;
+        try (var c = factory.of(capacitance, k, k)) {
+            c.invertInPlace();
+            capacitanceInverse = c.raw1D();
+        } catch (IOException e) {
+            return null;
+        }
+        for (var v : capacitanceInverse) {
+            if (!Double.isFinite(v)) return null;
+        }
+        // Y = C^-1 * S^T * M^-1 (k x n)
+        var y = new double[k * n];
+        IntStream.range(0, k).parallel().forEach(a -> {
+            for (var b = 0; b < k; b++) {
+                var cab = capacitanceInverse[a * k + b];
+                if (cab == 0.0) continue;
+                for (var j = 0; j < n; j++) {
+                    y[a * n + j] += cab * baseElement(inverse, n0, changed[b], j);
+                }
+            }
+        });
+        // M'^-1 = M^-1 - Z * Y, restricted to the nodes of the changed metapathway
+        IntStream.range(0, n1).parallel().forEach(i -> {
+            var ui = map[i];
+            var row = i * n1;
+            for (var j = 0; j < n1; j++) {
+                result[row + j] = baseElement(inverse, n0, ui, map[j]);
+            }
+            for (var a = 0; a < k; a++) {
+                var za = z[ui * k + a];
+                if (za == 0.0) continue;
+                var ya = a * n;
+                for (var j = 0; j < n1; j++) {
+                    result[row + j] -= za * y[ya + map[j]];
+                }
+            }
+        });
+        return result;
+    }
+}
@@ -1,11 +1,15 @@
 package com.alaimos.MITHrIL.app.Algorithms.Metapathway;
 
 import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Repository;
+import com.alaimos.MITHrIL.api.Math.BlockTriangularInverter;
 import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
 import com.alaimos.MITHrIL.app.Data.Pathways.PathwayMatrixBuilder;
 import com.alaimos.MITHrIL.app.Data.Pathways.RepositoryMatrixBuilder;
+import com.alaimos.MITHrIL.app.Data.Readers.AccumulatorOperatorReader;
 import com.alaimos.MITHrIL.app.Data.Readers.RepositoryMatrixReader;
+import com.alaimos.MITHrIL.app.Data.Records.PathwayMatrix;
 import com.alaimos.MITHrIL.app.Data.Records.RepositoryMatrix;
+import com.alaimos.MITHrIL.app.Data.Writers.AccumulatorOperatorWriter;
 import com.alaimos.MITHrIL.app.Data.Writers.RepositoryMatrixWriter;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
@@ -23,6 +27,9 @@ public class MatrixBuilderFromMetapathway implements Runnable {
     private final MatrixFactoryInterface<?> matrixFactory;
     private final boolean customizeMatrixToInput;
     private final List<String> customizationNodes;
+    private boolean buildAccumulatorOperator = false;
+    private boolean blockInversion = false;
+    private LowRankMatrixUpdater baseMatrixUpdater = null;
     private RepositoryMatrix matrix = null;
 
     @Contract(pure = true)
@@ -59,6 +66,65 @@ public class MatrixBuilderFromMetapathway implements Runnable {
         return builder.get();
     }
 
+    /**
+     * Build the matrix representation of a repository that was changed after taking a snapshot (for example, by
+     * extending it or by removing nodes). If the matrix representation of the repository is not cached, but the one of
+     * the snapshot is, the cached inverse is updated instead of inverting the metapathway matrix again. The result is
+     * cached as the matrix representation of the changed repository.
+     *
+     * @param repository    repository
+     * @param matrixFactory matrix factory
+     * @param base          a snapshot of the repository before the changes (null to always build the matrix)
+     * @return the matrix representation
+     */
+    public static RepositoryMatrix build(
+            @NotNull Repository repository,
+            @NotNull MatrixFactoryInterface<?> matrixFactory,
+            LowRankMatrixUpdater base
+    ) {
+        var builder = new MatrixBuilderFromMetapathway(repository, matrixFactory);
+        builder.baseMatrixUpdater(base).run();
+        return builder.get();
+    }
+
+    /**
+     * Build the matrix representation of a repository without computing the metapathway matrix. The result contains
+     * the pathway membership matrix and the node indexes, but its pathway matrix is empty. It is used when the
+     * perturbations are computed without inverting the metapathway matrix (see {@link NeumannPropagator}). The result
+     * is not cached since it is cheap to build.
+     *
+     * @param repository    repository
+     * @param matrixFactory matrix factory
+     * @return the matrix representation
+     */
+    public static RepositoryMatrix buildWithoutInversion(
+            @NotNull Repository repository,
+            @NotNull MatrixFactoryInterface<?> matrixFactory
+    ) {
+        var metapathway = repository.get();
+        var indexes = metapathway.graph().index();
+        var pathwayMatrix = PathwayMatrix.of(metapathway, null, indexes.left(), indexes.right());
+        return new RepositoryMatrixBuilder(matrixFactory).build(repository, pathwayMatrix);
+    }
+
+    /**
+     * Build the matrix representation of a repository together with its accumulator operator
+     *
+     * @param repository               repository
+     * @param matrixFactory            matrix factory
+     * @param buildAccumulatorOperator if true, the accumulator operator is also built (or loaded from the cache)
+     * @return the matrix representation
+     */
+    public static RepositoryMatrix build(
+            @NotNull Repository repository,
+            @NotNull MatrixFactoryInterface<?> matrixFactory,
+            boolean buildAccumulatorOperator
+    ) {
+        var builder = new MatrixBuilderFromMetapathway(repository, matrixFactory);
+        builder.buildAccumulatorOperator(buildAccumulatorOperator).run();
+        return builder.get();
+    }
+
     /**
      * Build the matrix representation of a repository customized to a set of nodes. This method will build a matrix
      * representation of the metapathway, invert it, and then build the repository matrix. The matrix representation
@@ -75,12 +141,69 @@ public class MatrixBuilderFromMetapathway implements Runnable {
             @NotNull Repository repository,
             @NotNull MatrixFactoryInterface<?> matrixFactory,
             @NotNull List<String> customizationNodes
+    ) {
+        return build(repository, matrixFactory, customizationNodes, false);
+    }
+
+    /**
+     * Build the matrix representation of a repository customized to a set of nodes together with its accumulator
+     * operator
+     *
+     * @param repository               repository
+     * @param matrixFactory            matrix factory
+     * @param customizationNodes       a set of nodes for matrix customization
+     * @param buildAccumulatorOperator if true, the accumulator operator is also built (or loaded from the cache)
+     * @return the matrix representation
+     */
+    public static RepositoryMatrix build(
+            @NotNull Repository repository,
+            @NotNull MatrixFactoryInterface<?> matrixFactory,
+            @NotNull List<String> customizationNodes,
+            boolean buildAccumulatorOperator
     ) {
         var builder = new MatrixBuilderFromMetapathway(repository, matrixFactory, customizationNodes);
-        builder.run();
+        builder.buildAccumulatorOperator(buildAccumulatorOperator).run();
         return builder.get();
     }
 
+    /**
+     * Enable or disable the computation of the accumulator operator R^T * (M - I). The operator allows computing the
+     * pathway accumulators directly from the input with a single multiplication. It is stored in a separate cache file.
+     *
+     * @param buildAccumulatorOperator true to build the accumulator operator
+     * @return this object for a fluent interface
+     */
+    public MatrixBuilderFromMetapathway buildAccumulatorOperator(boolean buildAccumulatorOperator) {
+        this.buildAccumulatorOperator = buildAccumulatorOperator;
+        return this;
+    }
+
+    /**
+     * Enable or disable the inversion of the metapathway matrix with a {@link BlockTriangularInverter} instead of a
+     * dense inversion. The inversion mode is part of the name of the cache files, so the matrices built with the two
+     * modes are cached separately.
+     *
+     * @param blockInversion true to use the block-triangular inversion
+     * @return this object for a fluent interface
+     */
+    public MatrixBuilderFromMetapathway blockInversion(boolean blockInversion) {
+        this.blockInversion = blockInversion;
+        return this;
+    }
+
+    /**
+     * Set a snapshot of the repository before it was changed. If the matrix representation of the repository is not
+     * cached, it is computed by updating the cached matrix representation of the snapshot. This is not supported when
+     * the matrix is customized to the input.
+     *
+     * @param baseMatrixUpdater the snapshot (null to disable the update)
+     * @return this object for a fluent interface
+     */
+    public MatrixBuilderFromMetapathway baseMatrixUpdater(LowRankMatrixUpdater baseMatrixUpdater) {
+        this.baseMatrixUpdater = baseMatrixUpdater;
+        return this;
+    }
+
     /**
      * Runs this operation.
      */
@@ -88,11 +211,13 @@ public class MatrixBuilderFromMetapathway implements Runnable {
     public void run() {
         try {
             log.info("Looking for cached matrix representation of the metapathway");
+            var customizationHash = customizationNodes != null ? customizationNodes.hashCode() : 0;
             var reader = new RepositoryMatrixReader(
                     repository,
                     matrixFactory,
                     customizeMatrixToInput,
-                    customizationNodes != null ? customizationNodes.hashCode() : 0
+                    customizationHash,
+                    blockInversion
             );
             log.debug("The matrix representation is stored in {}", reader.file());
             try {
@@ -101,30 +226,95 @@ public class MatrixBuilderFromMetapathway implements Runnable {
                 log.info("Matrix representation found, using it");
             } catch (IOException e) {
                 log.debug("Matrix representation not found", e);
-                log.info("Matrix representation not found, building it");
-                log.info("Building metapathway matrix");
-                var metapathwayMatrix = new PathwayMatrixBuilder(matrixFactory).build(
-                        repository.get(),
-                        customizeMatrixToInput,
-                        customizationNodes
-                );
-                log.info("Inverting metapathway matrix");
-                metapathwayMatrix.matrix().invertInPlace();
-                log.info("Building repository matrix");
-                matrix = new RepositoryMatrixBuilder(matrixFactory).build(repository, metapathwayMatrix);
+                matrix = updateBaseMatrix();
+                if (matrix == null) {
+                    log.info("Matrix representation not found, building it");
+                    log.info("Building metapathway matrix");
+                    var metapathwayMatrix = new PathwayMatrixBuilder(matrixFactory).build(
+                            repository.get(),
+                            customizeMatrixToInput,
+                            customizationNodes
+                    );
+                    log.info("Inverting metapathway matrix");
+                    metapathwayMatrix = invert(metapathwayMatrix);
+                    log.info("Building repository matrix");
+                    matrix = new RepositoryMatrixBuilder(matrixFactory).build(repository, metapathwayMatrix);
+                }
                 log.info("Saving matrix representation");
-                new RepositoryMatrixWriter(
-                        repository,
-                        customizeMatrixToInput,
-                        customizationNodes != null ? customizationNodes.hashCode() : 0
-                ).write(matrix);
+                new RepositoryMatrixWriter(repository, customizeMatrixToInput, customizationHash, blockInversion)
+                        .write(matrix);
             }
+            if (buildAccumulatorOperator) loadAccumulatorOperator(customizationHash);
             log.info("Matrix representation ready");
         } catch (Throwable e) {
             log.error("An error occurred while building the matrix representation", e);
         }
     }
 
+    /**
+     * Build the matrix representation by updating the cached matrix representation of the base repository
+     *
+     * @return the matrix representation or null if the update is not possible
+     */
+    private RepositoryMatrix updateBaseMatrix() {
+        if (baseMatrixUpdater == null || customizeMatrixToInput || !USE_CACHE) return null;
+        log.info("Updating the matrix representation of the base metapathway");
+        var result = baseMatrixUpdater.update(repository, matrixFactory, blockInversion);
+        if (result == null) log.info("Unable to update the matrix representation of the base metapathway");
+        return result;
+    }
+
+    /**
+     * Invert the metapathway matrix. The dense inversion is performed in place, while the block-triangular inversion
+     * builds a new matrix and releases the original one.
+     *
+     * @param metapathwayMatrix the metapathway matrix
+     * @return the inverted metapathway matrix
+     * @throws IOException if an error occurs while releasing the original matrix
+     */
+    private PathwayMatrix invert(@NotNull PathwayMatrix metapathwayMatrix) throws IOException {
+        if (!blockInversion) {
+            metapathwayMatrix.matrix().invertInPlace();
+            return metapathwayMatrix;
+        }
+        log.debug("Using block-triangular inversion");
+        var inverse = new BlockTriangularInverter(matrixFactory).invert(metapathwayMatrix.matrix());
+        metapathwayMatrix.matrix().close();
+        return new PathwayMatrix(
+                metapathwayMatrix.pathwayId(), inverse, metapathwayMatrix.index2Id(), metapathwayMatrix.id2Index()
+        );
+    }
+
+    /**
+     * Load the accumulator operator from the cache or build it if it is not available
+     *
+     * @param customizationHash the hash of the customization nodes
+     * @throws IOException if an error occurs while writing the cache
+     */
+    private void loadAccumulatorOperator(int customizationHash) throws IOException {
+        if (matrix == null) return;
+        var reader = new AccumulatorOperatorReader(
+                repository,
+                matrixFactory,
+                customizeMatrixToInput,
+                customizationHash,
+                blockInversion
+        );
+        try {
+            if (!USE_CACHE) throw new IOException("Cache disabled");
+            matrix.accumulatorOperator(reader.read());
+            log.info("Accumulator operator found, using it");
+        } catch (IOException e) {
+            log.debug("Accumulator operator not found", e);
+            log.info("Building accumulator operator");
+            var operator = new RepositoryMatrixBuilder(matrixFactory).buildAccumulatorOperator(matrix);
+            matrix.accumulatorOperator(operator);
+            log.info("Saving accumulator operator");
+            new AccumulatorOperatorWriter(repository, customizeMatrixToInput, customizationHash, blockInversion)
+                    .write(operator);
+        }
+    }
+
     /**
      * Returns the metapathway
      *
@@ -0,0 +1,198 @@
+package com.alaimos.MITHrIL.app.Algorithms.Metapathway;
+
+import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Edge;
+import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Graph;
+import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrix;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * Compute the perturbations (I - W)^-1 * X without inverting the metapathway matrix. The normalized weight matrix W is
+ * compiled from the metapathway graph into a sparse matrix, and the perturbations are computed with the truncated
+ * Neumann series X + WX + W^2X + ... The series is truncated when the largest element of a term is below a tolerance
+ * derived from epsilon (the same used by {@link ContextualisedMatrixBuilder} to prune small contributions). All the
+ * columns of X (that is, all the runs of a batch) are propagated at once.
+ * <p>
+ * The propagator keeps track of the active rows of each term, that is, the nodes reached by the perturbations so far.
+ * The next term is computed by following only the edges that leave the active rows, and only its active rows are
+ * cleared and scanned. Therefore, the cost of a term is proportional to the edges reachable from the perturbed nodes
+ * times the number of runs, and the first terms are cheap even on a large metapathway. This is much cheaper than
+ * building and inverting the dense metapathway matrix when only a few simulations are needed. The series converges when the
+ * metapathway is acyclic (it stops after at most the length of the longest path) or when the cycles attenuate the
+ * perturbations. Otherwise, it is truncated after a maximum number of iterations.
+ */
+public class NeumannPropagator {
+
+    private static final Logger log = LoggerFactory.getLogger(NeumannPropagator.class);
+    private static final int DEFAULT_MAX_ITERATIONS = 1000;
+    /**
+     * The non-zero elements of W grouped by column: the edges leaving node u are stored from offsets[u] (inclusive) to
+     * offsets[u + 1] (exclusive), with their target node and their normalized weight
+     */
+    private final int[] offsets;
+    private final int[] targets;
+    private final double[] targetWeights;
+    private final double tolerance;
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+
+    /**
+     * Compile the normalized weight matrix of a graph. For each edge (u, v), W[v,u] = w(u, v) / sum(|w(u, z)| for all
+     * nodes z outgoing from u), as in the metapathway matrix built by the PathwayMatrixBuilder.
+     *
+     * @param graph    the metapathway graph
+     * @param id2Index a map of node id to matrix indexes
+     * @param epsilon  the epsilon used to compute the tolerance
+     */
+    public NeumannPropagator(@NotNull Graph graph, @NotNull Object2IntMap<String> id2Index, double epsilon) {
+        if (epsilon <= 0) throw new IllegalArgumentException("Epsilon must be positive");
+        if (epsilon >= 1) throw new IllegalArgumentException("Epsilon must be less than 1");
+        var n = id2Index.size();
+        var rows = new IntArrayList();
+        var columns = new IntArrayList();
+        var values = new DoubleArrayList();
+        for (var node : graph.nodes().values()) {
+            var u = id2Index.getInt(node.id());
+            var outgoing = graph.outgoingEdges(node);
+            var wT = 0.0;
+            for (Edge e : outgoing) {
+                wT += Math.abs(e.weight());
+            }
+            for (Edge e : outgoing) {
+                var v = id2Index.getInt(e.target().id());
+                var w = e.weight() / wT;
+                if (u == v || !Double.isFinite(w) || w == 0.0) continue;
+                rows.add(v);
+                columns.add(u);
+                values.add(w);
+            }
+        }
+        var size = values.size();
+        this.offsets       = new int[n + 1];
+        this.targets       = new int[size];
+        this.targetWeights = new double[size];
+        for (var k = 0; k < size; k++) {
+            offsets[columns.getInt(k) + 1]++;
+        }
+        for (var u = 0; u < n; u++) {
+            offsets[u + 1] += offsets[u];
+        }
+        var next = offsets.clone();
+        for (var k = 0; k < size; k++) {
+            var p = next[columns.getInt(k)]++;
+            targets[p]       = rows.getInt(k);
+            targetWeights[p] = values.getDouble(k);
+        }
+        this.tolerance = ContextualisedMatrixBuilder.minWeight(epsilon);
+    }
+
+    /**
+     * Set the maximum number of terms of the series
+     *
+     * @param maxIterations the maximum number of terms
+     * @return this object for a fluent interface
+     */
+    public NeumannPropagator maxIterations(int maxIterations) {
+        if (maxIterations <= 0) throw new IllegalArgumentException("The maximum number of iterations must be positive");
+        this.maxIterations = maxIterations;
+        return this;
+    }
+
+    /**
+     * Get the tolerance used to truncate the series
+     *
+     * @return the tolerance
+     */
+    public double tolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Compute (I - W)^-1 * X
+     *
+     * @param input   the matrix X stored by rows, where each row is a node, and each column is a run
+     * @param columns the number of columns of X
+     * @return the perturbations stored by rows
+     */
+    public double @NotNull [] propagate(double @NotNull [] input, int columns) {
+        var n = offsets.length - 1;
+        if (input.length != n * columns) throw new IllegalArgumentException("Incompatible matrix size");
+        var result = input.clone();
+        var active = new IntArrayList();
+        for (var i = 0; i < n; i++) {
+            for (int j = i * columns, end = j + columns; j < end; j++) {
+                if (input[j] != 0.0) {
+                    active.add(i);
+                    break;
+                }
+            }
+        }
+        var reached = new IntArrayList();
+        var marked = new boolean[n];
+        var first = new double[input.length];
+        var second = new double[input.length];
+        var term = input;
+        for (var k = 1; k <= maxIterations; k++) {
+            if (active.isEmpty()) return result;
+            var next = (term == first) ? second : first;
+            for (var a = 0; a < active.size(); a++) {
+                var u = active.getInt(a);
+                var source = u * columns;
+                for (var e = offsets[u]; e < offsets[u + 1]; e++) {
+                    var v = targets[e];
+                    var destination = v * columns;
+                    if (!marked[v]) {
+                        marked[v] = true;
+                        reached.add(v);
+                        Arrays.fill(next, destination, destination + columns, 0.0);
+                    }
+                    var w = targetWeights[e];
+                    for (var j = 0; j < columns; j++) {
+                        next[destination + j] += w * term[source + j];
+                    }
+                }
+            }
+            var max = 0.0;
+            for (var r = 0; r < reached.size(); r++) {
+                var v = reached.getInt(r);
+                marked[v] = false;
+                for (int j = v * columns, end = j + columns; j < end; j++) {
+                    result[j] += next[j];
+                    max = Math.max(max, Math.abs(next[j]));
+                }
+            }
+            if (max < tolerance) return result;
+            term = next;
+            var swap = active;
+            active  = reached;
+            reached = swap;
+            reached.clear();
+        }
+        log.warn("The propagation did not converge after {} iterations", maxIterations);
+        return result;
+    }
+
+    /**
+     * Compute A * (I - W)^-1 * X, storing the result in the destination matrix
+     *
+     * @param input       the matrix X, where each row is a node, and each column is a run
+     * @param attenuation the attenuation matrix A of the non-expressed nodes (null if there are none)
+     * @param destination the destination matrix
+     * @see ContextualisedMatrixBuilder#attenuation()
+     */
+    public void propagateInto(
+            @NotNull SparseMatrix input, @Nullable SparseMatrix attenuation, @NotNull MatrixInterface<?> destination
+    ) {
+        var columns = input.columns();
+        var result = propagate(input.raw1D(), columns);
+        if (attenuation != null) result = attenuation.postMultiplyRaw(result, columns);
+        destination.fill(result);
+    }
+}
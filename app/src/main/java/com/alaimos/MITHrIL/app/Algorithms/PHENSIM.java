@@ -1,15 +1,26 @@
 package com.alaimos.MITHrIL.app.Algorithms;
 
 import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Repository;
+import com.alaimos.MITHrIL.api.Math.BatchPipeline;
+import com.alaimos.MITHrIL.api.Math.MatrixBufferPool;
 import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
 import com.alaimos.MITHrIL.api.Math.MatrixInterface;
 import com.alaimos.MITHrIL.api.Math.PValue.Adjusters.AdjusterInterface;
+import com.alaimos.MITHrIL.api.Math.PerturbationStatistics;
+import com.alaimos.MITHrIL.api.Math.RowStreamingAccumulator;
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrix;
 import com.alaimos.MITHrIL.app.Algorithms.Metapathway.ContextualisedMatrixBuilder;
+import com.alaimos.MITHrIL.app.Algorithms.Metapathway.ContextualisedMatrixCache;
+import com.alaimos.MITHrIL.app.Algorithms.Metapathway.NeumannPropagator;
 import com.alaimos.MITHrIL.app.Data.Generators.RandomExpressionGenerator;
 import com.alaimos.MITHrIL.app.Data.Generators.RandomExpressionGenerator.ExpressionConstraint;
+import com.alaimos.MITHrIL.app.Data.Generators.RandomStreams;
 import com.alaimos.MITHrIL.app.Data.Generators.RandomSubsetGenerator;
 import com.alaimos.MITHrIL.app.Data.Records.RepositoryMatrix;
+import com.alaimos.MITHrIL.app.Data.Records.RepositoryOperators;
 import it.unimi.dsi.fastutil.Pair;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.logging.ProgressLogger;
 import org.apache.commons.math3.util.FastMath;
 import org.jetbrains.annotations.NotNull;
@@ -25,6 +36,7 @@ import java.util.Random;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
 import java.util.stream.IntStream;
 
 public class PHENSIM implements Runnable, Closeable {
@@ -38,22 +50,31 @@ public class PHENSIM implements Runnable, Closeable {
     private String[] nonExpressedNodes;
     private Repository repository;
     private RepositoryMatrix repositoryMatrix;
+    private RepositoryOperators operators = null;
     private MatrixInterface<?> repositoryMatrixTransposed = null;
     private int numberOfRepetitions = 1000;
     private int numberOfSimulations = 1000;
     private int batchSize = 1000;
     private int threads = 0;
     private double epsilon;
+    private boolean diskCacheContextualisedMatrix = false;
     private AdjusterInterface pValueAdjuster;
     private MatrixFactoryInterface<?> matrixFactory;
+    private NeumannPropagator propagator = null;
+    private boolean keepAllRuns = false;
 
     //endregion
     //region Internal state variables
     private MatrixInterface<?> contextualizedMatrix = null;
+    private SparseMatrix attenuationMatrix = null;
+    private MatrixBufferPool buffers = null;
     private PartialSimulationOutput[] runPartialOutputs = null;
     private RandomSubsetGenerator subsetGenerator;
     private RandomExpressionGenerator expressionGenerator;
-    private int currentSimulationNumber = -1;
+    private RandomStreams streams = null;
+    private int finalizedSimulations = 0;
+    private int[] nodePValueCounters;
+    private int[] pathwayPValueCounters;
     private double[] nodePValues;
     private double[] nodePValuesAdjusted;
     private double[] pathwayPValues;
@@ -109,6 +130,18 @@ public class PHENSIM implements Runnable, Closeable {
         return this;
     }
 
+    /**
+     * Store the contextualised matrix on disk, so that it can be reused by other processes
+     *
+     * @param diskCacheContextualisedMatrix if true, the contextualised matrix is stored on disk
+     * @return this object for a fluent interface
+     * @see ContextualisedMatrixCache
+     */
+    public PHENSIM diskCacheContextualisedMatrix(boolean diskCacheContextualisedMatrix) {
+        this.diskCacheContextualisedMatrix = diskCacheContextualisedMatrix;
+        return this;
+    }
+
     public PHENSIM pValueAdjuster(AdjusterInterface pValueAdjuster) {
         this.pValueAdjuster = pValueAdjuster;
         return this;
@@ -123,6 +156,32 @@ public class PHENSIM implements Runnable, Closeable {
         this.threads = threads;
         return this;
     }
+
+    /**
+     * Compute the perturbations with a truncated Neumann series instead of the inverted metapathway matrix. When a
+     * propagator is set, the pathway matrix of the repository matrix is never used, and it can be empty.
+     *
+     * @param propagator the propagator or null to use the metapathway matrix
+     * @return this object for a fluent interface
+     */
+    public PHENSIM propagator(NeumannPropagator propagator) {
+        this.propagator = propagator;
+        return this;
+    }
+
+    /**
+     * Keep the results of all the simulations until the end of the run, so that they can be included in the output.
+     * Otherwise, each random simulation is released as soon as it is completed, and only the results of the first one
+     * are available in the output.
+     *
+     * @param keepAllRuns if true, the results of all the simulations are kept
+     * @return this object for a fluent interface
+     * @see #output(boolean)
+     */
+    public PHENSIM keepAllRuns(boolean keepAllRuns) {
+        this.keepAllRuns = keepAllRuns;
+        return this;
+    }
     //endregion
 
     /**
@@ -131,51 +190,51 @@ public class PHENSIM implements Runnable, Closeable {
     @Override
     public void run() {
         init();
-        var lastBatchElement = 0;
         var totalBatchElements = (numberOfSimulations + 1) * numberOfRepetitions;
         var pl = new ProgressLogger(log, 1, TimeUnit.MINUTES, "iterations");
         pl.start("Starting iterations");
-        do {
-            var batchPair = prepareBatch(lastBatchElement, totalBatchElements);
-            var columnToSimulationMap = batchPair.right();
-            try (
-                    var batch = batchPair.left();
-                    var batchNodePerturbations = computeBatchPerturbations(batch);
-                    var batchPathwayPerturbations = computePathwayPerturbations(batchNodePerturbations)
-            ) {
-                batchNodePerturbations.column(0);
-                batchPathwayPerturbations.column(0);
-                if (threads > 0) {
-                    try (var pool = new ForkJoinPool(threads)) {
-                        pool.submit(() -> {
-                            IntStream.range(0, columnToSimulationMap.length).parallel().forEach(i -> {
-                                var resultsContainer = runPartialOutputs[columnToSimulationMap[i]];
-                                var nodePerturbations = batchNodePerturbations.column(i);
-                                var pathwayPerturbations = batchPathwayPerturbations.column(i);
-                                resultsContainer.append(nodePerturbations, pathwayPerturbations);
-                            });
-                        }).get();
-                    } catch (ExecutionException | InterruptedException e) {
-                        log.error("Error while running parallel computation of counters", e);
-                        throw new RuntimeException(e);
+        // The pool of the accumulation stage is shared by all the batches of the run
+        try (var pool = threads > 0 ? new ForkJoinPool(threads) : null;
+             var pipeline = new BatchPipeline<Pair<SparseMatrix, int[]>, Pair<MatrixInterface<?>, MatrixInterface<?>>>(
+                    (index, slot) -> {
+                        var lastBatchElement = index * batchSize;
+                        if (lastBatchElement >= totalBatchElements) return null;
+                        return prepareBatch(lastBatchElement, totalBatchElements);
+                    },
+                    (batchPair, slot) -> {
+                        var batchNodePerturbations = computeBatchPerturbations(batchPair.left(), slot);
+                        var batchPathwayPerturbations = computePathwayPerturbations(batchNodePerturbations, slot);
+                        return Pair.of(batchNodePerturbations, batchPathwayPerturbations);
+                    },
+                    (index, batchPair, perturbations) -> {
+                        var columnToSimulationMap = batchPair.right();
+                        var batchNodePerturbations = perturbations.left();
+                        var batchPathwayPerturbations = perturbations.right();
+                        if (pool != null) {
+                            try {
+                                pool.submit(() -> accumulateBatch(
+                                        columnToSimulationMap, batchNodePerturbations, batchPathwayPerturbations,
+                                        threads
+                                )).get();
+                            } catch (ExecutionException | InterruptedException e) {
+                                log.error("Error while running parallel computation of counters", e);
+                                throw new RuntimeException(e);
+                            }
+                        } else {
+                            accumulateBatch(
+                                    columnToSimulationMap, batchNodePerturbations, batchPathwayPerturbations,
+                                    ForkJoinPool.getCommonPoolParallelism()
+                            );
+                        }
+                        finalizeCompletedSimulations(
+                                (index * batchSize + columnToSimulationMap.length) / numberOfRepetitions);
+                        pl.update(columnToSimulationMap.length);
+                        return true;
                     }
-                } else {
-                    IntStream.range(0, columnToSimulationMap.length).parallel().forEach(i -> {
-                        var resultsContainer = runPartialOutputs[columnToSimulationMap[i]];
-                        var nodePerturbations = batchNodePerturbations.column(i);
-                        var pathwayPerturbations = batchPathwayPerturbations.column(i);
-                        resultsContainer.append(nodePerturbations, pathwayPerturbations);
-                    });
-                }
-                lastBatchElement += columnToSimulationMap.length;
-                pl.update(columnToSimulationMap.length);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        } while (lastBatchElement < totalBatchElements);
+        )) {
+            pipeline.run();
+        }
         pl.done();
-        log.info("Computing activity scores");
-        computeActivityScores();
         log.info("Computing p-values");
         computeNodePValues();
         computePathwayPValues();
@@ -185,10 +244,13 @@ public class PHENSIM implements Runnable, Closeable {
      * Get the output of the algorithm.
      *
      * @param appendAllRuns if true, all the runs will be appended to the output, otherwise only the first run will be
-     *                      returned
+     *                      returned. All the runs are available only if {@link #keepAllRuns(boolean)} was enabled.
      * @return the output of the algorithm.
      */
     public SimulationOutput output(boolean appendAllRuns) {
+        if (appendAllRuns && !keepAllRuns) {
+            throw new IllegalStateException("The results of the random simulations were not kept");
+        }
         return new SimulationOutput(
                 appendAllRuns ? runPartialOutputs : new PartialSimulationOutput[]{runPartialOutputs[0]},
                 nodePValues, nodePValuesAdjusted, pathwayPValues, pathwayPValuesAdjusted
@@ -201,60 +263,183 @@ public class PHENSIM implements Runnable, Closeable {
      * Initialize the matrices, generators, output containers, and other internal variables.
      */
     private void init() {
-        if (repositoryMatrixTransposed == null) {
-            repositoryMatrixTransposed = repositoryMatrix.matrix().transpose();
-        }
-        if (runPartialOutputs == null) {
-            runPartialOutputs = new PartialSimulationOutput[numberOfSimulations + 1];
-            for (var i = 0; i < runPartialOutputs.length; i++) {
-                runPartialOutputs[i] = new PartialSimulationOutput(epsilon);
-            }
+        if (operators == null) {
+            operators                  = repositoryMatrix.operators();
+            repositoryMatrixTransposed = operators.transposed(matrixFactory);
         }
-        var numberOfNodes = repositoryMatrix.pathwayMatrix().id2Index().size();
-        var numberOfPathways = repositoryMatrix.id2Index().size();
-        for (PartialSimulationOutput runPartialOutput : runPartialOutputs) {
-            runPartialOutput.init(numberOfNodes, numberOfPathways);
+        if (buffers == null) {
+            buffers = new MatrixBufferPool(matrixFactory);
         }
+        runPartialOutputs    = new PartialSimulationOutput[numberOfSimulations + 1];
+        finalizedSimulations = 0;
         initializeGenerators();
+        if (propagator != null) {
+            log.info("Building attenuation matrix");
+            attenuationMatrix = ContextualisedMatrixBuilder.attenuation(
+                    repository, repositoryMatrix, nonExpressedNodes, epsilon);
+            return;
+        }
         log.info("Building contextualized metapathway matrix");
-        contextualizedMatrix = ContextualisedMatrixBuilder.build(
-                repository, repositoryMatrix, matrixFactory, nonExpressedNodes, epsilon);
+        contextualizedMatrix = ContextualisedMatrixCache.getInstance().acquire(
+                repository, repositoryMatrix, matrixFactory, nonExpressedNodes, epsilon, true,
+                diskCacheContextualisedMatrix
+        );
+    }
+
+    /**
+     * Get the results of a simulation, allocating them when the simulation starts
+     *
+     * @param simulation the simulation
+     * @return the results of the simulation
+     */
+    private @NotNull PartialSimulationOutput partialOutput(int simulation) {
+        var output = runPartialOutputs[simulation];
+        if (output == null) {
+            output = new PartialSimulationOutput(epsilon);
+            output.init(repositoryMatrix.pathwayMatrix().id2Index().size(), repositoryMatrix.id2Index().size());
+            runPartialOutputs[simulation] = output;
+        }
+        return output;
+    }
+
+    /**
+     * Finalize the simulations completed by the last batch. Since the simulations are processed in order, the first
+     * one, which is used as reference for the p-values, is finalized before all the others. The activity scores of a
+     * random simulation are compared with the reference ones as soon as it is completed. Then, the simulation is
+     * released, unless all the runs must be kept. Therefore, only the simulations of the current batch are in memory.
+     *
+     * @param completedSimulations the number of simulations completed so far
+     */
+    private void finalizeCompletedSimulations(int completedSimulations) {
+        for (var s = finalizedSimulations; s < completedSimulations; s++) {
+            var run = runPartialOutputs[s];
+            run.finalizeComputation();
+            if (s == 0) {
+                nodePValueCounters    = new int[run.nodeResultsContainer.activityScores.length];
+                pathwayPValueCounters = new int[run.pathwayResultsContainer.activityScores.length];
+                continue;
+            }
+            var reference = runPartialOutputs[0];
+            countExtremeScores(
+                    reference.nodeResultsContainer.activityScores, run.nodeResultsContainer.activityScores,
+                    nodePValueCounters
+            );
+            countExtremeScores(
+                    reference.pathwayResultsContainer.activityScores, run.pathwayResultsContainer.activityScores,
+                    pathwayPValueCounters
+            );
+            if (!keepAllRuns) runPartialOutputs[s] = null;
+        }
+        finalizedSimulations = completedSimulations;
+    }
+
+    /**
+     * Count the activity scores of a random simulation that are at least as extreme as the reference ones
+     *
+     * @param reference the activity scores of the reference simulation
+     * @param scores    the activity scores of a random simulation
+     * @param counters  the counters of the p-values
+     */
+    private static void countExtremeScores(double @NotNull [] reference, double[] scores, int[] counters) {
+        double val, ref;
+        for (var i = 0; i < reference.length; i++) {
+            ref = reference[i];
+            val = scores[i];
+            if (Double.isNaN(ref) ||
+                    (ref < 0 && val <= ref) ||
+                    (ref > 0 && val >= ref) ||
+                    (ref == 0 && val == 0)) {
+                counters[i]++;
+            }
+        }
     }
 
     /**
-     * Prepares a matrix containing the input for a batch of runs.
+     * Accumulate the perturbations of a batch. The matrices are read by rows, and the ranges of rows are processed in
+     * parallel. Since the columns of a simulation are contiguous, each row is folded into the results of all the
+     * simulations of the batch in a single sequential pass.
+     *
+     * @param columnToSimulationMap the mapping between columns of the batch and simulations
+     * @param nodePerturbations     the node perturbations of the batch
+     * @param pathwayPerturbations  the pathway perturbations of the batch
+     * @param parallelism           the number of threads
+     */
+    private void accumulateBatch(
+            int @NotNull [] columnToSimulationMap, @NotNull MatrixInterface<?> nodePerturbations,
+            @NotNull MatrixInterface<?> pathwayPerturbations, int parallelism
+    ) {
+        var segments = RowStreamingAccumulator.segments(columnToSimulationMap);
+        var simulations = segments.length - 1;
+        var nodeTargets = new PerturbationStatistics[simulations];
+        var pathwayTargets = new PerturbationStatistics[simulations];
+        for (var k = 0; k < simulations; k++) {
+            var output = partialOutput(columnToSimulationMap[segments[k]]);
+            nodeTargets[k]    = output.nodeResultsContainer.statistics;
+            pathwayTargets[k] = output.pathwayResultsContainer.statistics;
+        }
+        RowStreamingAccumulator.accumulate(
+                nodePerturbations, segments, nodeTargets, parallelism
+        );
+        RowStreamingAccumulator.accumulate(
+                pathwayPerturbations, segments, pathwayTargets, parallelism
+        );
+    }
+
+    /**
+     * Prepares a matrix containing the input for a batch of runs. Each run draws its expression values from its own
+     * random stream, derived from the number of its simulation and its position in the simulation. Therefore, the
+     * columns of the batch are generated in parallel, and the results do not depend on the batch size or on the number
+     * of threads.
      *
      * @param lastBatchElement         the index of the first element of the batch
      * @param totalNumberOfRepetitions the total number of repetitions (runs)
      * @return a matrix containing the input for a batch of runs, and an array containing the mapping between matrix
      * columns and result containers.
      */
-    private @NotNull Pair<MatrixInterface<?>, int[]> prepareBatch(
+    private @NotNull Pair<SparseMatrix, int[]> prepareBatch(
             int lastBatchElement, int totalNumberOfRepetitions
     ) {
         var id2index = repositoryMatrix.pathwayMatrix().id2Index();
         var batchSize = FastMath.min(this.batchSize, totalNumberOfRepetitions - lastBatchElement);
-        var batchData = new double[id2index.size() * batchSize];
+        var firstSimulation = lastBatchElement / numberOfRepetitions;
+        var lastSimulation = (lastBatchElement + batchSize - 1) / numberOfRepetitions;
+        var batchConstraints = new ExpressionConstraint[lastSimulation - firstSimulation + 1][];
+        for (var s = firstSimulation; s <= lastSimulation; s++) {
+            batchConstraints[s - firstSimulation] = simulationConstraints(s);
+        }
         var batchToSimulation = new int[batchSize];
-        Pair<String[], double[]> expressionAssignments;
-        String[] nodes;
+        var batchValues = new double[batchSize][];
+        IntStream.range(0, batchSize).parallel().forEach(j -> {
+            var run = lastBatchElement + j;
+            var simulation = run / numberOfRepetitions;
+            batchToSimulation[j] = simulation;
+            batchValues[j]       = expressionGenerator.nextRandomExpression(
+                    batchConstraints[simulation - firstSimulation],
+                    streams.split(simulation).stream(run % numberOfRepetitions + 1)
+            );
+        });
+        var batchRows = new IntArrayList();
+        var batchColumns = new IntArrayList();
+        var batchData = new DoubleArrayList();
+        ExpressionConstraint[] nodes;
         double[] values;
-        int i, j = 0, currentSimulation;
-        while (j < batchSize) {
-            batchToSimulation[j] = currentSimulation = lastBatchElement / numberOfRepetitions;
-            fillExpressionGenerator(currentSimulation);
-            expressionAssignments = expressionGenerator.nextRandomExpression();
-            nodes                 = expressionAssignments.left();
-            values                = expressionAssignments.right();
+        int i;
+        for (var j = 0; j < batchSize; j++) {
+            nodes  = batchConstraints[batchToSimulation[j] - firstSimulation];
+            values = batchValues[j];
             for (var k = 0; k < nodes.length; k++) {
-                i = id2index.getOrDefault(nodes[k], -1);
+                i = id2index.getOrDefault(nodes[k].nodeId(), -1);
                 if (i < 0) continue;
-                batchData[i * batchSize + j] = values[k];
+                batchRows.add(i);
+                batchColumns.add(j);
+                batchData.add(values[k]);
             }
-            lastBatchElement++;
-            j++;
         }
-        return Pair.of(matrixFactory.of(batchData, id2index.size(), batchSize), batchToSimulation);
+        var batch = SparseMatrix.fromTriplets(
+                id2index.size(), batchSize, batchRows.elements(), batchColumns.elements(), batchData.elements(),
+                batchData.size()
+        );
+        return Pair.of(batch, batchToSimulation);
     }
 
     /**
@@ -262,11 +447,22 @@ public class PHENSIM implements Runnable, Closeable {
      * computed as contextualizedPathwayMatrix * run, where pathwayMatrix is computed as (I-W)^-1 and contextualized
      * using the non-expressed elements provided as input.
      *
+     * Since each run has non-zero values only for a few constrained nodes, the batch is sparse and the perturbations
+     * are computed by gathering only the corresponding columns of the contextualized matrix. If a propagator is set,
+     * the perturbations are computed by the truncated Neumann series, and then attenuated.
+     *
      * @param batch the batch of data
+     * @param slot  the pipeline slot of the batch
      * @return the perturbations of the batch stored in a matrix, where each row is a gene, and each column is a run.
      */
-    private MatrixInterface<?> computeBatchPerturbations(@NotNull MatrixInterface<?> batch) {
-        return batch.preMultiply(contextualizedMatrix);
+    private MatrixInterface<?> computeBatchPerturbations(@NotNull SparseMatrix batch, int slot) {
+        var perturbations = buffers.matrix("nodePerturbations" + slot, batch.rows(), batch.columns());
+        if (propagator != null) {
+            propagator.propagateInto(batch, attenuationMatrix, perturbations);
+        } else {
+            contextualizedMatrix.postMultiplySparseInto(batch, perturbations);
+        }
+        return perturbations;
     }
 
     /**
@@ -276,11 +472,16 @@ public class PHENSIM implements Runnable, Closeable {
      * i is in pathway j, 0 otherwise.
      *
      * @param batchPerturbation the perturbations of a batch computed with computeBatchPerturbations
+     * @param slot              the pipeline slot of the batch
      * @return the pathway perturbations of the batch stored in a matrix, where each row is a pathway, and each column
      * is a run.
      */
-    private MatrixInterface<?> computePathwayPerturbations(@NotNull MatrixInterface<?> batchPerturbation) {
-        return batchPerturbation.preMultiply(repositoryMatrixTransposed);
+    private MatrixInterface<?> computePathwayPerturbations(@NotNull MatrixInterface<?> batchPerturbation, int slot) {
+        var perturbations = buffers.matrix(
+                "pathwayPerturbations" + slot, repositoryMatrixTransposed.rows(), batchPerturbation.columns()
+        );
+        batchPerturbation.preMultiplyInto(repositoryMatrixTransposed, perturbations);
+        return perturbations;
     }
 
     /**
@@ -340,10 +541,11 @@ public class PHENSIM implements Runnable, Closeable {
     /**
      * Given the user input, this method computes a random set of constraints.
      *
+     * @param random the random number generator used to draw the nodes.
      * @return a random set of constraints.
      */
-    private ExpressionConstraint @NotNull [] buildRandomConstraints() {
-        var newSetOfIdentifiers = subsetGenerator.nextSubset(constraints.length);
+    private ExpressionConstraint @NotNull [] buildRandomConstraints(@NotNull RandomGenerator random) {
+        var newSetOfIdentifiers = subsetGenerator.nextSubset(constraints.length, random);
         var newConstraints = new ExpressionConstraint[newSetOfIdentifiers.length];
         for (int i = 0; i < newSetOfIdentifiers.length; i++) {
             newConstraints[i] = ExpressionConstraint.of(newSetOfIdentifiers[i], constraints[i]);
@@ -359,52 +561,29 @@ public class PHENSIM implements Runnable, Closeable {
         var compatibleNodes = gatherCompatibleNodes(minDegree);
         subsetGenerator     = new RandomSubsetGenerator(compatibleNodes, random);
         expressionGenerator = new RandomExpressionGenerator(random, epsilon);
+        streams             = RandomStreams.from(random);
     }
 
     /**
-     * This method fills the expression generator with the constraints of the next simulation. If the number of the next
-     * simulation is the same as the current one, this method does nothing. If the next simulation is the first one,
-     * this method fills the expression generator with the user constraints; otherwise it uses random constraints.
+     * This method computes the constraints of a simulation. The first simulation uses the user constraints, while the
+     * other ones use random constraints drawn from the first random stream of the simulation. Therefore, the
+     * constraints of a simulation are always the same, even if its runs are split among multiple batches.
      *
-     * @param simulationNumber the number of the next simulation.
+     * @param simulationNumber the number of the simulation.
+     * @return the constraints of the simulation.
      */
-    private void fillExpressionGenerator(int simulationNumber) {
-        if (currentSimulationNumber != simulationNumber) {
-            currentSimulationNumber = simulationNumber;
-            expressionGenerator.constraints(simulationNumber == 0 ? constraints : buildRandomConstraints());
-        }
-    }
-
-    /**
-     *
-     */
-    private void computeActivityScores() {
-        for (var run : runPartialOutputs) {
-            run.finalizeComputation();
-        }
+    private ExpressionConstraint @NotNull [] simulationConstraints(int simulationNumber) {
+        if (simulationNumber == 0) return constraints;
+        return buildRandomConstraints(streams.split(simulationNumber).stream(0));
     }
 
     /**
      * This method computes the p-values of the nodes in the network.
      */
     private void computeNodePValues() {
-        var reference = runPartialOutputs[0].nodeResultsContainer.activityScores;
-        nodePValues = new double[reference.length];
-        int counter;
-        double val, ref;
-        for (var node = 0; node < reference.length; node++) {
-            counter = 0;
-            ref     = reference[node];
-            for (var run = 1; run < runPartialOutputs.length; run++) {
-                val = runPartialOutputs[run].nodeResultsContainer.activityScores[node];
-                if (Double.isNaN(ref) ||
-                        (ref < 0 && val <= ref) ||
-                        (ref > 0 && val >= ref) ||
-                        (ref == 0 && val == 0)) {
-                    counter++;
-                }
-            }
-            nodePValues[node] = ((double) counter) / numberOfSimulations;
+        nodePValues = new double[nodePValueCounters.length];
+        for (var node = 0; node < nodePValues.length; node++) {
+            nodePValues[node] = ((double) nodePValueCounters[node]) / numberOfSimulations;
         }
         nodePValuesAdjusted = pValueAdjuster.adjust(nodePValues);
     }
@@ -413,23 +592,9 @@ public class PHENSIM implements Runnable, Closeable {
      * This method computes the p-values of the pathways.
      */
     private void computePathwayPValues() {
-        var reference = runPartialOutputs[0].pathwayResultsContainer.activityScores;
-        pathwayPValues = new double[reference.length];
-        int counter;
-        double val, ref;
-        for (var pathway = 0; pathway < reference.length; pathway++) {
-            counter = 0;
-            ref     = reference[pathway];
-            for (var run = 1; run < runPartialOutputs.length; run++) {
-                val = runPartialOutputs[run].pathwayResultsContainer.activityScores[pathway];
-                if (Double.isNaN(ref) ||
-                        (ref < 0 && val <= ref) ||
-                        (ref > 0 && val >= ref) ||
-                        (ref == 0 && val == 0)) {
-                    counter++;
-                }
-            }
-            pathwayPValues[pathway] = ((double) counter) / numberOfSimulations;
+        pathwayPValues = new double[pathwayPValueCounters.length];
+        for (var pathway = 0; pathway < pathwayPValues.length; pathway++) {
+            pathwayPValues[pathway] = ((double) pathwayPValueCounters[pathway]) / numberOfSimulations;
         }
         pathwayPValuesAdjusted = pValueAdjuster.adjust(pathwayPValues);
     }
@@ -441,11 +606,21 @@ public class PHENSIM implements Runnable, Closeable {
      */
     @Override
     public void close() throws IOException {
-        if (repositoryMatrixTransposed != null) {
-            repositoryMatrixTransposed.close();
-        }
-        if (contextualizedMatrix != null && contextualizedMatrix != repositoryMatrix.pathwayMatrix().matrix()) {
-            contextualizedMatrix.close();
+        if (operators != null) {
+            operators.close();
+            operators                  = null;
+            repositoryMatrixTransposed = null;
+        }
+        if (buffers != null) {
+            buffers.close();
+            buffers = null;
+        }
+        if (contextualizedMatrix != null) {
+            if (!ContextualisedMatrixCache.getInstance().release(contextualizedMatrix) &&
+                    contextualizedMatrix != repositoryMatrix.pathwayMatrix().matrix()) {
+                contextualizedMatrix.close();
+            }
+            contextualizedMatrix = null;
         }
     }
 
@@ -466,13 +641,8 @@ public class PHENSIM implements Runnable, Closeable {
             pathwayResultsContainer.init(numberOfPathways);
         }
 
-        public void append(double @NotNull [] nodePerturbations, double @NotNull [] pathwayPerturbations) {
-            nodeResultsContainer.append(nodePerturbations);
-            pathwayResultsContainer.append(pathwayPerturbations);
-        }
-
         public int numberOfRepetitions() {
-            return nodeResultsContainer.numberOfRepetitions;
+            return nodeResultsContainer.statistics.count();
         }
 
         public double[] nodePerturbationsAverage() {
@@ -505,12 +675,8 @@ public class PHENSIM implements Runnable, Closeable {
         }
 
         static class PartialResultContainer {
-            public static final double LOG_0_5 = -0.6931471805599453;
-            private double[] perturbationAvg = null;
-            private double[] perturbationSD = null;
-            private int[][] counters = null;
+            private PerturbationStatistics statistics = null;
             private double[] activityScores = null;
-            private int numberOfRepetitions = 0;
             private final double epsilon;
 
             public PartialResultContainer(double epsilon) {
@@ -518,44 +684,22 @@ public class PHENSIM implements Runnable, Closeable {
             }
 
             public void init(int size) {
-                perturbationAvg     = new double[size];
-                perturbationSD      = new double[size];
-                counters            = new int[size][3];
-                activityScores      = null;
-                numberOfRepetitions = 0;
-            }
-
-            public synchronized void append(double @NotNull [] partialResults) {
-                numberOfRepetitions++;
-                double delta, delta2, newValue;
-                for (var i = 0; i < partialResults.length; i++) {
-                    newValue = partialResults[i];
-                    delta    = newValue - perturbationAvg[i];
-                    perturbationAvg[i] += delta / numberOfRepetitions;
-                    delta2   = newValue - perturbationAvg[i];
-                    perturbationSD[i] += delta * delta2;
-                    if (newValue > epsilon) {
-                        counters[i][0]++;
-                    } else if (newValue < -epsilon) {
-                        counters[i][1]++;
-                    } else {
-                        counters[i][2]++;
-                    }
-                }
+                statistics     = new PerturbationStatistics(size, epsilon, true);
+                activityScores = null;
             }
 
             public double[] perturbationAverage() {
                 if (activityScores == null) {
                     finalizeComputation();
                 }
-                return perturbationAvg;
+                return statistics.mean();
             }
 
             public double[] perturbationStdDev() {
                 if (activityScores == null) {
                     finalizeComputation();
                 }
-                return perturbationSD;
+                return statistics.standardDeviation();
             }
 
             public double[] activityScores() {
@@ -566,26 +710,8 @@ public class PHENSIM implements Runnable, Closeable {
             }
 
             private void finalizeComputation() {
-                activityScores = new double[perturbationSD.length];
-                double probActivation, probInhibition, probNoChange;
-                var nm1 = numberOfRepetitions - 1;
-                var prior = 1d / (numberOfRepetitions * 1000d);
-                var countTotal = Math.log(numberOfRepetitions + 3 * prior);
-                for (var i = 0; i < perturbationSD.length; i++) {
-                    perturbationSD[i] = Math.sqrt(perturbationSD[i] / nm1);
-                    probActivation    = Math.log(counters[i][0] + prior) - countTotal;
-                    probInhibition    = Math.log(counters[i][1] + prior) - countTotal;
-                    probNoChange      = Math.log(counters[i][2] + prior) - countTotal;
-                    if (probActivation > LOG_0_5) {
-                        activityScores[i] = probActivation - Math.log1p(-1 - Math.expm1(probActivation));
-                    } else if (probInhibition > LOG_0_5) {
-                        activityScores[i] = Math.log1p(-1 - Math.expm1(probInhibition)) - probInhibition;
-                    } else if (probNoChange > LOG_0_5) {
-                        activityScores[i] = 0;
-                    } else {
-                        activityScores[i] = Double.NaN;
-                    }
-                }
+                statistics.standardDeviation();
+                activityScores = statistics.activityScores();
             }
         }
     }
@@ -623,11 +749,11 @@ public class PHENSIM implements Runnable, Closeable {
         }
 
         public int[][] nodeCounters() {
-            return runs[0].nodeResultsContainer.counters;
+            return runs[0].nodeResultsContainer.statistics.counters();
         }
 
         public int[][] pathwayCounters() {
-            return runs[0].pathwayResultsContainer.counters;
+            return runs[0].pathwayResultsContainer.statistics.counters();
         }
     }
     //endregion
@@ -1,17 +1,26 @@
 package com.alaimos.MITHrIL.app.Algorithms;
 
 import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Repository;
+import com.alaimos.MITHrIL.api.Math.BatchPipeline;
+import com.alaimos.MITHrIL.api.Math.MatrixBufferPool;
 import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
 import com.alaimos.MITHrIL.api.Math.MatrixInterface;
 import com.alaimos.MITHrIL.api.Math.PValue.Adjusters.AdjusterInterface;
 import com.alaimos.MITHrIL.api.Math.PValue.Combiners.Fisher;
-import com.alaimos.MITHrIL.app.Algorithms.Metapathway.ContextualisedMatrixBuilder;
+import com.alaimos.MITHrIL.api.Math.PerturbationStatistics;
+import com.alaimos.MITHrIL.api.Math.RowStreamingAccumulator;
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrix;
+import com.alaimos.MITHrIL.app.Algorithms.Metapathway.ContextualisedMatrixCache;
 import com.alaimos.MITHrIL.app.Algorithms.Metapathway.DistanceComputation;
 import com.alaimos.MITHrIL.app.Data.Generators.RandomExpressionGenerator;
 import com.alaimos.MITHrIL.app.Data.Generators.RandomExpressionGenerator.ExpressionConstraint;
+import com.alaimos.MITHrIL.app.Data.Generators.RandomStreams;
 import com.alaimos.MITHrIL.app.Data.Generators.RandomSubsetGenerator;
 import com.alaimos.MITHrIL.app.Data.Records.RepositoryMatrix;
+import com.alaimos.MITHrIL.app.Data.Records.RepositoryOperators;
 import it.unimi.dsi.fastutil.Pair;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.logging.ProgressLogger;
 import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.util.FastMath;
@@ -28,6 +37,7 @@ import java.util.Random;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
 import java.util.stream.IntStream;
 
 public class PHENSIMq implements Runnable, Closeable {
@@ -41,22 +51,25 @@ public class PHENSIMq implements Runnable, Closeable {
     private String[] nonExpressedNodes;
     private Repository repository;
     private RepositoryMatrix repositoryMatrix;
+    private RepositoryOperators operators = null;
     private MatrixInterface<?> repositoryMatrixTransposed = null;
     private int numberOfRepetitions = 1000;
     private int numberOfSimulations = 1000;
     private int batchSize = 1000;
     private int threads = 0;
     private double epsilon;
+    private boolean diskCacheContextualisedMatrix = false;
     private AdjusterInterface pValueAdjuster;
     private MatrixFactoryInterface<?> matrixFactory;
 
     //endregion
     //region Internal state variables
     private MatrixInterface<?> contextualizedMatrix = null;
+    private MatrixBufferPool buffers = null;
     private PartialSimulationOutput[] runPartialOutputs = null;
     private RandomSubsetGenerator subsetGenerator;
     private RandomExpressionGenerator expressionGenerator;
-    private int currentSimulationNumber = -1;
+    private RandomStreams streams = null;
     private double[] nodePExpected;
     private double[] nodePValues;
     private double[] nodePValuesAdjusted;
@@ -118,6 +131,18 @@ public class PHENSIMq implements Runnable, Closeable {
         return this;
     }
 
+    /**
+     * Store the contextualised matrix on disk, so that it can be reused by other processes
+     *
+     * @param diskCacheContextualisedMatrix if true, the contextualised matrix is stored on disk
+     * @return this object for a fluent interface
+     * @see ContextualisedMatrixCache
+     */
+    public PHENSIMq diskCacheContextualisedMatrix(boolean diskCacheContextualisedMatrix) {
+        this.diskCacheContextualisedMatrix = diskCacheContextualisedMatrix;
+        return this;
+    }
+
     public PHENSIMq pValueAdjuster(AdjusterInterface pValueAdjuster) {
         this.pValueAdjuster = pValueAdjuster;
         return this;
@@ -140,48 +165,48 @@ public class PHENSIMq implements Runnable, Closeable {
     @Override
     public void run() {
         init();
-        var lastBatchElement = 0;
         var totalBatchElements = (numberOfSimulations + 1) * numberOfRepetitions;
         var pl = new ProgressLogger(log, 1, TimeUnit.MINUTES, "iterations");
         pl.start("Starting iterations");
-        do {
-            var batchPair = prepareBatch(lastBatchElement, totalBatchElements);
-            var columnToSimulationMap = batchPair.right();
-            try (
-                    var batch = batchPair.left();
-                    var batchNodePerturbations = computeBatchPerturbations(batch);
-                    var batchPathwayPerturbations = computePathwayPerturbations(batchNodePerturbations)
-            ) {
-                batchNodePerturbations.column(0);
-                batchPathwayPerturbations.column(0);
-                if (threads > 0) {
-                    try (var pool = new ForkJoinPool(threads)) {
-                        pool.submit(() -> {
-                            IntStream.range(0, columnToSimulationMap.length).parallel().forEach(i -> {
-                                var resultsContainer = runPartialOutputs[columnToSimulationMap[i]];
-                                var nodePerturbations = batchNodePerturbations.column(i);
-                                var pathwayPerturbations = batchPathwayPerturbations.column(i);
-                                resultsContainer.append(nodePerturbations, pathwayPerturbations);
-                            });
-                        }).get();
-                    } catch (ExecutionException | InterruptedException e) {
-                        log.error("Error while running parallel computation of counters", e);
-                        throw new RuntimeException(e);
+        // The pool of the accumulation stage is shared by all the batches of the run
+        try (var pool = threads > 0 ? new ForkJoinPool(threads) : null;
+             var pipeline = new BatchPipeline<Pair<SparseMatrix, int[]>, Pair<MatrixInterface<?>, MatrixInterface<?>>>(
+                    (index, slot) -> {
+                        var lastBatchElement = index * batchSize;
+                        if (lastBatchElement >= totalBatchElements) return null;
+                        return prepareBatch(lastBatchElement, totalBatchElements);
+                    },
+                    (batchPair, slot) -> {
+                        var batchNodePerturbations = computeBatchPerturbations(batchPair.left(), slot);
+                        var batchPathwayPerturbations = computePathwayPerturbations(batchNodePerturbations, slot);
+                        return Pair.of(batchNodePerturbations, batchPathwayPerturbations);
+                    },
+                    (index, batchPair, perturbations) -> {
+                        var columnToSimulationMap = batchPair.right();
+                        var batchNodePerturbations = perturbations.left();
+                        var batchPathwayPerturbations = perturbations.right();
+                        if (pool != null) {
+                            try {
+                                pool.submit(() -> accumulateBatch(
+                                        columnToSimulationMap, batchNodePerturbations, batchPathwayPerturbations,
+                                        threads
+                                )).get();
+                            } catch (ExecutionException | InterruptedException e) {
+                                log.error("Error while running parallel computation of counters", e);
+                                throw new RuntimeException(e);
+                            }
+                        } else {
+                            accumulateBatch(
+                                    columnToSimulationMap, batchNodePerturbations, batchPathwayPerturbations,
+                                    ForkJoinPool.getCommonPoolParallelism()
+                            );
+                        }
+                        pl.update(columnToSimulationMap.length);
+                        return true;
                     }
-                } else {
-                    IntStream.range(0, columnToSimulationMap.length).parallel().forEach(i -> {
-                        var resultsContainer = runPartialOutputs[columnToSimulationMap[i]];
-                        var nodePerturbations = batchNodePerturbations.column(i);
-                        var pathwayPerturbations = batchPathwayPerturbations.column(i);
-                        resultsContainer.append(nodePerturbations, pathwayPerturbations);
-                    });
-                }
-                lastBatchElement += columnToSimulationMap.length;
-                pl.update(columnToSimulationMap.length);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        } while (lastBatchElement < totalBatchElements);
+        )) {
+            pipeline.run();
+        }
         pl.done();
         log.info("Finalizing computation of standard deviations");
         finalizeComputation();
@@ -213,8 +238,12 @@ public class PHENSIMq implements Runnable, Closeable {
      * Initialize the matrices, generators, output containers, and other internal variables.
      */
     private void init() {
-        if (repositoryMatrixTransposed == null) {
-            repositoryMatrixTransposed = repositoryMatrix.matrix().transpose();
+        if (operators == null) {
+            operators                  = repositoryMatrix.operators();
+            repositoryMatrixTransposed = operators.transposed(matrixFactory);
+        }
+        if (buffers == null) {
+            buffers = new MatrixBufferPool(matrixFactory);
         }
         if (runPartialOutputs == null) {
             runPartialOutputs = new PartialSimulationOutput[numberOfSimulations + 1];
@@ -229,8 +258,10 @@ public class PHENSIMq implements Runnable, Closeable {
         }
         initializeGenerators();
         log.info("Building contextualized metapathway matrix");
-        contextualizedMatrix = ContextualisedMatrixBuilder.build(
-                repository, repositoryMatrix, matrixFactory, nonExpressedNodes, epsilon);
+        contextualizedMatrix = ContextualisedMatrixCache.getInstance().acquire(
+                repository, repositoryMatrix, matrixFactory, nonExpressedNodes, epsilon, true,
+                diskCacheContextualisedMatrix
+        );
         log.info("Computing distance correction factors");
         var sources = Arrays.stream(constraints).map(ExpressionConstraint::nodeId).toArray(String[]::new);
         var distances = DistanceComputation.of(sources, repository, repositoryMatrix);
@@ -255,39 +286,91 @@ public class PHENSIMq implements Runnable, Closeable {
     }
 
     /**
-     * Prepares a matrix containing the input for a batch of runs.
+     * Accumulate the perturbations of a batch. The matrices are read by rows, and the ranges of rows are processed in
+     * parallel. Since the columns of a simulation are contiguous, each row is folded into the results of all the
+     * simulations of the batch in a single sequential pass.
+     *
+     * @param columnToSimulationMap the mapping between columns of the batch and simulations
+     * @param nodePerturbations     the node perturbations of the batch
+     * @param pathwayPerturbations  the pathway perturbations of the batch
+     * @param parallelism           the number of threads
+     */
+    private void accumulateBatch(
+            int @NotNull [] columnToSimulationMap, @NotNull MatrixInterface<?> nodePerturbations,
+            @NotNull MatrixInterface<?> pathwayPerturbations, int parallelism
+    ) {
+        var segments = RowStreamingAccumulator.segments(columnToSimulationMap);
+        var simulations = segments.length - 1;
+        var nodeTargets = new PerturbationStatistics[simulations];
+        var pathwayTargets = new PerturbationStatistics[simulations];
+        for (var k = 0; k < simulations; k++) {
+            var output = runPartialOutputs[columnToSimulationMap[segments[k]]];
+            nodeTargets[k]    = output.nodeResultsContainer.statistics;
+            pathwayTargets[k] = output.pathwayResultsContainer.statistics;
+        }
+        RowStreamingAccumulator.accumulate(
+                nodePerturbations, segments, nodeTargets, parallelism
+        );
+        RowStreamingAccumulator.accumulate(
+                pathwayPerturbations, segments, pathwayTargets, parallelism
+        );
+    }
+
+    /**
+     * Prepares a matrix containing the input for a batch of runs. Each run draws its expression values from its own
+     * random stream, derived from the number of its simulation and its position in the simulation. Therefore, the
+     * columns of the batch are generated in parallel, and the results do not depend on the batch size or on the number
+     * of threads.
      *
      * @param lastBatchElement         the index of the first element of the batch
      * @param totalNumberOfRepetitions the total number of repetitions (runs)
      * @return a matrix containing the input for a batch of runs, and an array containing the mapping between matrix
      * columns and result containers.
      */
-    private @NotNull Pair<MatrixInterface<?>, int[]> prepareBatch(
+    private @NotNull Pair<SparseMatrix, int[]> prepareBatch(
             int lastBatchElement, int totalNumberOfRepetitions
     ) {
         var id2index = repositoryMatrix.pathwayMatrix().id2Index();
         var batchSize = FastMath.min(this.batchSize, totalNumberOfRepetitions - lastBatchElement);
-        var batchData = new double[id2index.size() * batchSize];
+        var firstSimulation = lastBatchElement / numberOfRepetitions;
+        var lastSimulation = (lastBatchElement + batchSize - 1) / numberOfRepetitions;
+        var batchConstraints = new ExpressionConstraint[lastSimulation - firstSimulation + 1][];
+        for (var s = firstSimulation; s <= lastSimulation; s++) {
+            batchConstraints[s - firstSimulation] = simulationConstraints(s);
+        }
         var batchToSimulation = new int[batchSize];
-        Pair<String[], double[]> expressionAssignments;
-        String[] nodes;
+        var batchValues = new double[batchSize][];
+        IntStream.range(0, batchSize).parallel().forEach(j -> {
+            var run = lastBatchElement + j;
+            var simulation = run / numberOfRepetitions;
+            batchToSimulation[j] = simulation;
+            batchValues[j]       = expressionGenerator.nextRandomExpression(
+                    batchConstraints[simulation - firstSimulation],
+                    streams.split(simulation).stream(run % numberOfRepetitions + 1)
+            );
+        });
+        var batchRows = new IntArrayList();
+        var batchColumns = new IntArrayList();
+        var batchData = new DoubleArrayList();
+        ExpressionConstraint[] nodes;
         double[] values;
-        int i, j = 0, currentSimulation;
-        while (j < batchSize) {
-            batchToSimulation[j] = currentSimulation = lastBatchElement / numberOfRepetitions;
-            fillExpressionGenerator(currentSimulation);
-            expressionAssignments = expressionGenerator.nextRandomExpression();
-            nodes                 = expressionAssignments.left();
-            values                = expressionAssignments.right();
+        int i;
+        for (var j = 0; j < batchSize; j++) {
+            nodes  = batchConstraints[batchToSimulation[j] - firstSimulation];
+            values = batchValues[j];
             for (var k = 0; k < nodes.length; k++) {
-                i = id2index.getOrDefault(nodes[k], -1);
+                i = id2index.getOrDefault(nodes[k].nodeId(), -1);
                 if (i < 0) continue;
-                batchData[i * batchSize + j] = values[k];
+                batchRows.add(i);
+                batchColumns.add(j);
+                batchData.add(values[k]);
             }
-            lastBatchElement++;
-            j++;
         }
-        return Pair.of(matrixFactory.of(batchData, id2index.size(), batchSize), batchToSimulation);
+        var batch = SparseMatrix.fromTriplets(
+                id2index.size(), batchSize, batchRows.elements(), batchColumns.elements(), batchData.elements(),
+                batchData.size()
+        );
+        return Pair.of(batch, batchToSimulation);
     }
 
     /**
@@ -295,11 +378,17 @@ public class PHENSIMq implements Runnable, Closeable {
      * computed as contextualizedPathwayMatrix * run, where pathwayMatrix is computed as (I-W)^-1 and contextualized
      * using the non-expressed elements provided as input.
      *
+     * Since each run has non-zero values only for a few constrained nodes, the batch is sparse and the perturbations
+     * are computed by gathering only the corresponding columns of the contextualized matrix.
+     *
      * @param batch the batch of data
+     * @param slot  the pipeline slot of the batch
      * @return the perturbations of the batch stored in a matrix, where each row is a gene, and each column is a run.
      */
-    private MatrixInterface<?> computeBatchPerturbations(@NotNull MatrixInterface<?> batch) {
-        return batch.preMultiply(contextualizedMatrix);
+    private MatrixInterface<?> computeBatchPerturbations(@NotNull SparseMatrix batch, int slot) {
+        var perturbations = buffers.matrix("nodePerturbations" + slot, contextualizedMatrix.rows(), batch.columns());
+        contextualizedMatrix.postMultiplySparseInto(batch, perturbations);
+        return perturbations;
     }
 
     /**
@@ -309,11 +398,16 @@ public class PHENSIMq implements Runnable, Closeable {
      * i is in pathway j, 0 otherwise.
      *
      * @param batchPerturbation the perturbations of a batch computed with computeBatchPerturbations
+     * @param slot              the pipeline slot of the batch
      * @return the pathway perturbations of the batch stored in a matrix, where each row is a pathway, and each column
      * is a run.
      */
-    private MatrixInterface<?> computePathwayPerturbations(@NotNull MatrixInterface<?> batchPerturbation) {
-        return batchPerturbation.preMultiply(repositoryMatrixTransposed);
+    private MatrixInterface<?> computePathwayPerturbations(@NotNull MatrixInterface<?> batchPerturbation, int slot) {
+        var perturbations = buffers.matrix(
+                "pathwayPerturbations" + slot, repositoryMatrixTransposed.rows(), batchPerturbation.columns()
+        );
+        batchPerturbation.preMultiplyInto(repositoryMatrixTransposed, perturbations);
+        return perturbations;
     }
 
     /**
@@ -373,10 +467,11 @@ public class PHENSIMq implements Runnable, Closeable {
     /**
      * Given the user input, this method computes a random set of constraints.
      *
+     * @param random the random number generator used to draw the nodes.
      * @return a random set of constraints.
      */
-    private ExpressionConstraint @NotNull [] buildRandomConstraints() {
-        var newSetOfIdentifiers = subsetGenerator.nextSubset(constraints.length);
+    private ExpressionConstraint @NotNull [] buildRandomConstraints(@NotNull RandomGenerator random) {
+        var newSetOfIdentifiers = subsetGenerator.nextSubset(constraints.length, random);
         var newConstraints = new ExpressionConstraint[newSetOfIdentifiers.length];
         for (int i = 0; i < newSetOfIdentifiers.length; i++) {
             newConstraints[i] = ExpressionConstraint.of(newSetOfIdentifiers[i], constraints[i]);
@@ -392,20 +487,20 @@ public class PHENSIMq implements Runnable, Closeable {
         var compatibleNodes = gatherCompatibleNodes(minDegree);
         subsetGenerator     = new RandomSubsetGenerator(compatibleNodes, random);
         expressionGenerator = new RandomExpressionGenerator(random, epsilon);
+        streams             = RandomStreams.from(random);
     }
 
     /**
-     * This method fills the expression generator with the constraints of the next simulation. If the number of the next
-     * simulation is the same as the current one, this method does nothing. If the next simulation is the first one,
-     * this method fills the expression generator with the user constraints; otherwise it uses random constraints.
+     * This method computes the constraints of a simulation. The first simulation uses the user constraints, while the
+     * other ones use random constraints drawn from the first random stream of the simulation. Therefore, the
+     * constraints of a simulation are always the same, even if its runs are split among multiple batches.
      *
-     * @param simulationNumber the number of the next simulation.
+     * @param simulationNumber the number of the simulation.
+     * @return the constraints of the simulation.
      */
-    private void fillExpressionGenerator(int simulationNumber) {
-        if (currentSimulationNumber != simulationNumber) {
-            currentSimulationNumber = simulationNumber;
-            expressionGenerator.constraints(simulationNumber == 0 ? constraints : buildRandomConstraints());
-        }
+    private ExpressionConstraint @NotNull [] simulationConstraints(int simulationNumber) {
+        if (simulationNumber == 0) return constraints;
+        return buildRandomConstraints(streams.split(simulationNumber).stream(0));
     }
 
     /**
@@ -422,8 +517,8 @@ public class PHENSIMq implements Runnable, Closeable {
      */
     private void computeNodePValues() {
         var referenceActivity = runPartialOutputs[0].nodeResultsContainer.activityScores;
-        var referenceAvg = runPartialOutputs[0].nodeResultsContainer.perturbationAvg;
-        var referenceSD = runPartialOutputs[0].nodeResultsContainer.perturbationSD;
+        var referenceAvg = runPartialOutputs[0].nodeResultsContainer.statistics.mean();
+        var referenceSD = runPartialOutputs[0].nodeResultsContainer.statistics.standardDeviation();
         var runs = runPartialOutputs.length;
         var n = referenceAvg.length;
         nodePExpected = new double[n];
@@ -438,9 +533,10 @@ public class PHENSIMq implements Runnable, Closeable {
             var refVar = referenceSD[node] * referenceSD[node];
             for (var run = 1; run < runs; run++) {
                 // Y <- Random normal distribution
-                var randVar = runPartialOutputs[run].nodeResultsContainer.perturbationSD[node] * runPartialOutputs[run].nodeResultsContainer.perturbationSD[node];
+                var randSD = runPartialOutputs[run].nodeResultsContainer.statistics.standardDeviation()[node];
+                var randVar = randSD * randSD;
                 // D <- Y - X
-                var diffAvg = runPartialOutputs[run].nodeResultsContainer.perturbationAvg[node] - refAvg; // E[Z] = E[Y] - E[X]
+                var diffAvg = runPartialOutputs[run].nodeResultsContainer.statistics.mean()[node] - refAvg; // E[Z] = E[Y] - E[X]
                 var diffSD = FastMath.sqrt(randVar + refVar); // Var[Z] = Var[Y] + Var[X]
                 // If E[X] < 0 then P_i = P(D < 0) = 1 - P(Z < (0 - E[Z])/SD[Z])
                 partialProbabilities[run] = distribution.cumulativeProbability(-diffAvg / diffSD);
@@ -461,8 +557,8 @@ public class PHENSIMq implements Runnable, Closeable {
      * This method computes the p-values of the pathways.
      */
     private void computePathwayPValues() {
-        var referenceAvg = runPartialOutputs[0].pathwayResultsContainer.perturbationAvg;
-        var referenceSD = runPartialOutputs[0].pathwayResultsContainer.perturbationSD;
+        var referenceAvg = runPartialOutputs[0].pathwayResultsContainer.statistics.mean();
+        var referenceSD = runPartialOutputs[0].pathwayResultsContainer.statistics.standardDeviation();
         var runs = runPartialOutputs.length;
         var n = referenceAvg.length;
         pathwayPExpected = new double[n];
@@ -476,9 +572,10 @@ public class PHENSIMq implements Runnable, Closeable {
             var refVar = referenceSD[pathway] * referenceSD[pathway];
             for (var run = 1; run < runs; run++) {
                 // Y <- Random normal distribution
-                var randVar = runPartialOutputs[run].pathwayResultsContainer.perturbationSD[pathway] * runPartialOutputs[run].pathwayResultsContainer.perturbationSD[pathway];
+                var randSD = runPartialOutputs[run].pathwayResultsContainer.statistics.standardDeviation()[pathway];
+                var randVar = randSD * randSD;
                 // D <- Y - X
-                var diffAvg = runPartialOutputs[run].pathwayResultsContainer.perturbationAvg[pathway] - refAvg; // E[Z] = E[Y] - E[X]
+                var diffAvg = runPartialOutputs[run].pathwayResultsContainer.statistics.mean()[pathway] - refAvg; // E[Z] = E[Y] - E[X]
                 var diffSD = FastMath.sqrt(randVar + refVar); // Var[Z] = Var[Y] + Var[X]
                 // If E[X] < 0 then P_i = P(D < 0) = 1 - P(Z < (0 - E[Z])/SD[Z])
                 partialProbabilities[run] = distribution.cumulativeProbability(-diffAvg / diffSD);
@@ -497,9 +594,9 @@ public class PHENSIMq implements Runnable, Closeable {
         for (var i = 0; i < nodeCorrectionFactors.length; i++) {
             for (PartialSimulationOutput runPartialOutput : runPartialOutputs) {
                 if (nodeCorrectionFactors[i] == 0) {
-                    runPartialOutput.nodeResultsContainer.activityScores[i]  = 0;
-                    runPartialOutput.nodeResultsContainer.perturbationAvg[i] = 0;
-                    runPartialOutput.nodeResultsContainer.perturbationSD[i]  = 0;
+                    runPartialOutput.nodeResultsContainer.activityScores[i]                 = 0;
+                    runPartialOutput.nodeResultsContainer.statistics.mean()[i]              = 0;
+                    runPartialOutput.nodeResultsContainer.statistics.standardDeviation()[i] = 0;
                 }
 //                runPartialOutput.nodeResultsContainer.perturbationAvg[i] *= nodeCorrectionFactors[i];
 //                runPartialOutput.nodeResultsContainer.perturbationSD[i] *= nodeCorrectionFactors[i];
@@ -508,9 +605,9 @@ public class PHENSIMq implements Runnable, Closeable {
         for (var i = 0; i < pathwayCorrectionFactors.length; i++) {
             for (PartialSimulationOutput runPartialOutput : runPartialOutputs) {
                 if (pathwayCorrectionFactors[i] == 0) {
-                    runPartialOutput.pathwayResultsContainer.activityScores[i]  = 0;
-                    runPartialOutput.pathwayResultsContainer.perturbationAvg[i] = 0;
-                    runPartialOutput.pathwayResultsContainer.perturbationSD[i]  = 0;
+                    runPartialOutput.pathwayResultsContainer.activityScores[i]                 = 0;
+                    runPartialOutput.pathwayResultsContainer.statistics.mean()[i]              = 0;
+                    runPartialOutput.pathwayResultsContainer.statistics.standardDeviation()[i] = 0;
                 }
 //                runPartialOutput.pathwayResultsContainer.perturbationAvg[i] *= pathwayCorrectionFactors[i];
 //                runPartialOutput.pathwayResultsContainer.perturbationSD[i] *= pathwayCorrectionFactors[i];
@@ -525,11 +622,21 @@ public class PHENSIMq implements Runnable, Closeable {
      */
     @Override
     public void close() throws IOException {
-        if (repositoryMatrixTransposed != null) {
-            repositoryMatrixTransposed.close();
-        }
-        if (contextualizedMatrix != null && contextualizedMatrix != repositoryMatrix.pathwayMatrix().matrix()) {
-            contextualizedMatrix.close();
+        if (operators != null) {
+            operators.close();
+            operators                  = null;
+            repositoryMatrixTransposed = null;
+        }
+        if (buffers != null) {
+            buffers.close();
+            buffers = null;
+        }
+        if (contextualizedMatrix != null) {
+            if (!ContextualisedMatrixCache.getInstance().release(contextualizedMatrix) &&
+                    contextualizedMatrix != repositoryMatrix.pathwayMatrix().matrix()) {
+                contextualizedMatrix.close();
+            }
+            contextualizedMatrix = null;
         }
     }
 
@@ -550,13 +657,8 @@ public class PHENSIMq implements Runnable, Closeable {
             pathwayResultsContainer.init(numberOfPathways);
         }
 
-        public void append(double @NotNull [] nodePerturbations, double @NotNull [] pathwayPerturbations) {
-            nodeResultsContainer.append(nodePerturbations);
-            pathwayResultsContainer.append(pathwayPerturbations);
-        }
-
         public int numberOfRepetitions() {
-            return nodeResultsContainer.numberOfRepetitions;
+            return nodeResultsContainer.statistics.count();
         }
 
         public double[] nodePerturbationsAverage() {
@@ -589,39 +691,23 @@ public class PHENSIMq implements Runnable, Closeable {
         }
 
         static class PartialResultContainer {
-            private double[] perturbationAvg = null;
-            private double[] perturbationSD = null;
+            private PerturbationStatistics statistics = null;
             private double[] activityScores = null;
-            private int numberOfRepetitions = 0;
 
             public PartialResultContainer() {
             }
 
             public void init(int size) {
-                perturbationAvg     = new double[size];
-                perturbationSD      = new double[size];
-                activityScores      = null;
-                numberOfRepetitions = 0;
-            }
-
-            public synchronized void append(double @NotNull [] partialResults) {
-                numberOfRepetitions++;
-                double delta, delta2, newValue;
-                for (var i = 0; i < partialResults.length; i++) {
-                    newValue = partialResults[i];
-                    delta    = newValue - perturbationAvg[i];
-                    perturbationAvg[i] += delta / numberOfRepetitions;
-                    delta2   = newValue - perturbationAvg[i];
-                    perturbationSD[i] += delta * delta2;
-                }
+                statistics     = new PerturbationStatistics(size, 0.0, false);
+                activityScores = null;
             }
 
             public double[] perturbationAverage() {
-                return perturbationAvg;
+                return statistics.mean();
             }
 
             public double[] perturbationStdDev() {
-                return perturbationSD;
+                return statistics.standardDeviation();
             }
 
             public double[] activityScores() {
@@ -629,11 +715,11 @@ public class PHENSIMq implements Runnable, Closeable {
             }
 
             private void finalizeComputation() {
+                var perturbationAvg = statistics.mean();
+                var perturbationSD = statistics.standardDeviation();
                 activityScores = new double[perturbationAvg.length];
-                var nm1 = numberOfRepetitions - 1;
                 var dist = new NormalDistribution();
                 for (var i = 0; i < perturbationSD.length; i++) {
-                    perturbationSD[i] = Math.sqrt(perturbationSD[i] / nm1);
                     // p = P(X <= 0) = P(Z <= (0 - E[Z])/SD[Z])
                     var p = dist.cumulativeProbability(-perturbationAvg[i] / perturbationSD[i]);
                     var m1p = 1 - p;
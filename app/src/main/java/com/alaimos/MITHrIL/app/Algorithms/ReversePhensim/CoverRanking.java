@@ -31,6 +31,7 @@ public class CoverRanking implements Runnable {
     private int batchSize = 1000;
     private int threads = 0;
     private double epsilon;
+    private boolean diskCacheContextualisedMatrix = false;
     private MatrixFactoryInterface<?> matrixFactory;
     private Collection<ExpressionConstraint[]> coveringSets;
     private int[] universe;
@@ -79,6 +80,17 @@ public class CoverRanking implements Runnable {
         return this;
     }
 
+    /**
+     * Store the contextualised matrix of the simulations on disk, so that it can be reused by other processes
+     *
+     * @param diskCacheContextualisedMatrix if true, the contextualised matrix is stored on disk
+     * @return this object for a fluent interface
+     */
+    public CoverRanking diskCacheContextualisedMatrix(boolean diskCacheContextualisedMatrix) {
+        this.diskCacheContextualisedMatrix = diskCacheContextualisedMatrix;
+        return this;
+    }
+
     public CoverRanking matrixFactory(MatrixFactoryInterface<?> matrixFactory) {
         this.matrixFactory = matrixFactory;
         return this;
@@ -153,6 +165,7 @@ public class CoverRanking implements Runnable {
                    .numberOfSimulations(1)
                    .threads(1)
                    .epsilon(epsilon)
+                   .diskCacheContextualisedMatrix(diskCacheContextualisedMatrix)
                    .enablePValues(false)
                    .silent(true)
                    .run();
@@ -1,14 +1,22 @@
 package com.alaimos.MITHrIL.app.Algorithms.ReversePhensim;
 
 import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Repository;
+import com.alaimos.MITHrIL.api.Math.BatchPipeline;
+import com.alaimos.MITHrIL.api.Math.MatrixBufferPool;
 import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
 import com.alaimos.MITHrIL.api.Math.MatrixInterface;
-import com.alaimos.MITHrIL.app.Algorithms.Metapathway.ContextualisedMatrixBuilder;
+import com.alaimos.MITHrIL.api.Math.PerturbationStatistics;
+import com.alaimos.MITHrIL.api.Math.RowStreamingAccumulator;
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrix;
+import com.alaimos.MITHrIL.app.Algorithms.Metapathway.ContextualisedMatrixCache;
 import com.alaimos.MITHrIL.app.Data.Generators.RandomExpressionGenerator;
 import com.alaimos.MITHrIL.app.Data.Generators.RandomExpressionGenerator.ExpressionConstraint;
+import com.alaimos.MITHrIL.app.Data.Generators.RandomStreams;
 import com.alaimos.MITHrIL.app.Data.Generators.RandomSubsetGenerator;
 import com.alaimos.MITHrIL.app.Data.Records.RepositoryMatrix;
 import it.unimi.dsi.fastutil.Pair;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.logging.ProgressLogger;
 import org.apache.commons.math3.util.FastMath;
 import org.jetbrains.annotations.NotNull;
@@ -24,6 +32,7 @@ import java.util.Random;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
 import java.util.stream.IntStream;
 
 public class FastPHENSIM implements Runnable, Closeable {
@@ -42,6 +51,7 @@ public class FastPHENSIM implements Runnable, Closeable {
     private int batchSize = 1000;
     private int threads = 0;
     private double epsilon;
+    private boolean diskCacheContextualisedMatrix = false;
     private MatrixFactoryInterface<?> matrixFactory;
     private boolean enablePValues = true;
     private boolean verbose = true;
@@ -49,10 +59,11 @@ public class FastPHENSIM implements Runnable, Closeable {
     //endregion
     //region Internal state variables
     private MatrixInterface<?> contextualizedMatrix = null;
+    private MatrixBufferPool buffers = null;
     private PartialSimulationOutput[] runPartialOutputs = null;
     private RandomSubsetGenerator subsetGenerator;
     private RandomExpressionGenerator expressionGenerator;
-    private int currentSimulationNumber = -1;
+    private RandomStreams streams = null;
     private double[] nodePValues;
 
     //endregion
@@ -105,6 +116,18 @@ public class FastPHENSIM implements Runnable, Closeable {
         return this;
     }
 
+    /**
+     * Store the contextualised matrix on disk, so that it can be reused by other processes
+     *
+     * @param diskCacheContextualisedMatrix if true, the contextualised matrix is stored on disk
+     * @return this object for a fluent interface
+     * @see ContextualisedMatrixCache
+     */
+    public FastPHENSIM diskCacheContextualisedMatrix(boolean diskCacheContextualisedMatrix) {
+        this.diskCacheContextualisedMatrix = diskCacheContextualisedMatrix;
+        return this;
+    }
+
     public FastPHENSIM matrixFactory(MatrixFactoryInterface<?> matrixFactory) {
         this.matrixFactory = matrixFactory;
         return this;
@@ -135,44 +158,41 @@ public class FastPHENSIM implements Runnable, Closeable {
     @Override
     public void run() {
         init();
-        var lastBatchElement = 0;
         var totalBatchElements = (numberOfSimulations + 1) * numberOfRepetitions;
         var pl = new ProgressLogger(log, 1, TimeUnit.MINUTES, "iterations");
         if (verbose) pl.start("Starting iterations");
-        do {
-            var batchPair = prepareBatch(lastBatchElement, totalBatchElements);
-            var columnToSimulationMap = batchPair.right();
-            try (
-                    var batch = batchPair.left();
-                    var batchNodePerturbations = computeBatchPerturbations(batch);
-            ) {
-                batchNodePerturbations.column(0);
-                if (threads > 0) {
-                    try (var pool = new ForkJoinPool(threads)) {
-                        pool.submit(() -> {
-                            IntStream.range(0, columnToSimulationMap.length).parallel().forEach(i -> {
-                                var resultsContainer = runPartialOutputs[columnToSimulationMap[i]];
-                                var nodePerturbations = batchNodePerturbations.column(i);
-                                resultsContainer.append(nodePerturbations);
-                            });
-                        }).get();
-                    } catch (ExecutionException | InterruptedException e) {
-                        log.error("Error while running parallel computation of counters", e);
-                        throw new RuntimeException(e);
+        // The pool of the accumulation stage is shared by all the batches of the run
+        try (var pool = threads > 0 ? new ForkJoinPool(threads) : null;
+             var pipeline = new BatchPipeline<Pair<SparseMatrix, int[]>, MatrixInterface<?>>(
+                    (index, slot) -> {
+                        var lastBatchElement = index * batchSize;
+                        if (lastBatchElement >= totalBatchElements) return null;
+                        return prepareBatch(lastBatchElement, totalBatchElements);
+                    },
+                    (batchPair, slot) -> computeBatchPerturbations(batchPair.left(), slot),
+                    (index, batchPair, batchNodePerturbations) -> {
+                        var columnToSimulationMap = batchPair.right();
+                        if (pool != null) {
+                            try {
+                                pool.submit(
+                                        () -> accumulateBatch(columnToSimulationMap, batchNodePerturbations, threads)
+                                ).get();
+                            } catch (ExecutionException | InterruptedException e) {
+                                log.error("Error while running parallel computation of counters", e);
+                                throw new RuntimeException(e);
+                            }
+                        } else {
+                            accumulateBatch(
+                                    columnToSimulationMap, batchNodePerturbations,
+                                    ForkJoinPool.getCommonPoolParallelism()
+                            );
+                        }
+                        if (verbose) pl.update(columnToSimulationMap.length);
+                        return true;
                     }
-                } else {
-                    IntStream.range(0, columnToSimulationMap.length).parallel().forEach(i -> {
-                        var resultsContainer = runPartialOutputs[columnToSimulationMap[i]];
-                        var nodePerturbations = batchNodePerturbations.column(i);
-                        resultsContainer.append(nodePerturbations);
-                    });
-                }
-                lastBatchElement += columnToSimulationMap.length;
-                if (verbose) pl.update(columnToSimulationMap.length);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        } while (lastBatchElement < totalBatchElements);
+        )) {
+            pipeline.run();
+        }
         if (verbose) pl.done();
         if (verbose) log.info("Computing activity scores");
         computeActivityScores();
@@ -207,47 +227,95 @@ public class FastPHENSIM implements Runnable, Closeable {
         for (PartialSimulationOutput runPartialOutput : runPartialOutputs) {
             runPartialOutput.init(numberOfNodes);
         }
+        if (buffers == null) {
+            buffers = new MatrixBufferPool(matrixFactory);
+        }
         initializeGenerators();
         if (verbose) log.info("Building contextualized metapathway matrix");
-        contextualizedMatrix = ContextualisedMatrixBuilder.build(
-                repository, repositoryMatrix, matrixFactory, nonExpressedNodes, epsilon, verbose
+        contextualizedMatrix = ContextualisedMatrixCache.getInstance().acquire(
+                repository, repositoryMatrix, matrixFactory, nonExpressedNodes, epsilon, verbose,
+                diskCacheContextualisedMatrix
+        );
+    }
+
+    /**
+     * Accumulate the perturbations of a batch. The matrix is read by rows, and the ranges of rows are processed in
+     * parallel. Since the columns of a simulation are contiguous, each row is folded into the results of all the
+     * simulations of the batch in a single sequential pass.
+     *
+     * @param columnToSimulationMap the mapping between columns of the batch and simulations
+     * @param nodePerturbations     the node perturbations of the batch
+     * @param parallelism           the number of threads
+     */
+    private void accumulateBatch(
+            int @NotNull [] columnToSimulationMap, @NotNull MatrixInterface<?> nodePerturbations, int parallelism
+    ) {
+        var segments = RowStreamingAccumulator.segments(columnToSimulationMap);
+        var simulations = segments.length - 1;
+        var nodeTargets = new PerturbationStatistics[simulations];
+        for (var k = 0; k < simulations; k++) {
+            nodeTargets[k] = runPartialOutputs[columnToSimulationMap[segments[k]]].nodeResultsContainer.statistics;
+        }
+        RowStreamingAccumulator.accumulate(
+                nodePerturbations, segments, nodeTargets, parallelism
         );
     }
 
     /**
-     * Prepares a matrix containing the input for a batch of runs.
+     * Prepares a matrix containing the input for a batch of runs. Each run draws its expression values from its own
+     * random stream, derived from the number of its simulation and its position in the simulation. Therefore, the
+     * columns of the batch are generated in parallel, and the results do not depend on the batch size or on the number
+     * of threads.
      *
      * @param lastBatchElement         the index of the first element of the batch
      * @param totalNumberOfRepetitions the total number of repetitions (runs)
      * @return a matrix containing the input for a batch of runs, and an array containing the mapping between matrix
      * columns and result containers.
      */
-    private @NotNull Pair<MatrixInterface<?>, int[]> prepareBatch(
+    private @NotNull Pair<SparseMatrix, int[]> prepareBatch(
             int lastBatchElement, int totalNumberOfRepetitions
     ) {
         var id2index = repositoryMatrix.pathwayMatrix().id2Index();
         var batchSize = FastMath.min(this.batchSize, totalNumberOfRepetitions - lastBatchElement);
-        var batchData = new double[id2index.size() * batchSize];
+        var firstSimulation = lastBatchElement / numberOfRepetitions;
+        var lastSimulation = (lastBatchElement + batchSize - 1) / numberOfRepetitions;
+        var batchConstraints = new ExpressionConstraint[lastSimulation - firstSimulation + 1][];
+        for (var s = firstSimulation; s <= lastSimulation; s++) {
+            batchConstraints[s - firstSimulation] = simulationConstraints(s);
+        }
         var batchToSimulation = new int[batchSize];
-        Pair<String[], double[]> expressionAssignments;
-        String[] nodes;
+        var batchValues = new double[batchSize][];
+        IntStream.range(0, batchSize).parallel().forEach(j -> {
+            var run = lastBatchElement + j;
+            var simulation = run / numberOfRepetitions;
+            batchToSimulation[j] = simulation;
+            batchValues[j]       = expressionGenerator.nextRandomExpression(
+                    batchConstraints[simulation - firstSimulation],
+                    streams.split(simulation).stream(run % numberOfRepetitions + 1)
+            );
+        });
+        var batchRows = new IntArrayList();
+        var batchColumns = new IntArrayList();
+        var batchData = new DoubleArrayList();
+        ExpressionConstraint[] nodes;
         double[] values;
-        int i, j = 0, currentSimulation;
-        while (j < batchSize) {
-            batchToSimulation[j] = currentSimulation = lastBatchElement / numberOfRepetitions;
-            fillExpressionGenerator(currentSimulation);
-            expressionAssignments = expressionGenerator.nextRandomExpression();
-            nodes                 = expressionAssignments.left();
-            values                = expressionAssignments.right();
+        int i;
+        for (var j = 0; j < batchSize; j++) {
+            nodes  = batchConstraints[batchToSimulation[j] - firstSimulation];
+            values = batchValues[j];
             for (var k = 0; k < nodes.length; k++) {
-                i = id2index.getOrDefault(nodes[k], -1);
+                i = id2index.getOrDefault(nodes[k].nodeId(), -1);
                 if (i < 0) continue;
-                batchData[i * batchSize + j] = values[k];
+                batchRows.add(i);
+                batchColumns.add(j);
+                batchData.add(values[k]);
             }
-            lastBatchElement++;
-            j++;
         }
-        return Pair.of(matrixFactory.of(batchData, id2index.size(), batchSize), batchToSimulation);
+        var batch = SparseMatrix.fromTriplets(
+                id2index.size(), batchSize, batchRows.elements(), batchColumns.elements(), batchData.elements(),
+                batchData.size()
+        );
+        return Pair.of(batch, batchToSimulation);
     }
 
     /**
@@ -255,11 +323,17 @@ public class FastPHENSIM implements Runnable, Closeable {
      * computed as contextualizedPathwayMatrix * run, where pathwayMatrix is computed as (I-W)^-1 and contextualized
      * using the non-expressed elements provided as input.
      *
+     * Since each run has non-zero values only for a few constrained nodes, the batch is sparse and the perturbations
+     * are computed by gathering only the corresponding columns of the contextualized matrix.
+     *
      * @param batch the batch of data
+     * @param slot  the pipeline slot of the batch
      * @return the perturbations of the batch stored in a matrix, where each row is a gene, and each column is a run.
      */
-    private MatrixInterface<?> computeBatchPerturbations(@NotNull MatrixInterface<?> batch) {
-        return batch.preMultiply(contextualizedMatrix);
+    private MatrixInterface<?> computeBatchPerturbations(@NotNull SparseMatrix batch, int slot) {
+        var perturbations = buffers.matrix("nodePerturbations" + slot, contextualizedMatrix.rows(), batch.columns());
+        contextualizedMatrix.postMultiplySparseInto(batch, perturbations);
+        return perturbations;
     }
 
     /**
@@ -319,10 +393,11 @@ public class FastPHENSIM implements Runnable, Closeable {
     /**
      * Given the user input, this method computes a random set of constraints.
      *
+     * @param random the random number generator used to draw the nodes.
      * @return a random set of constraints.
      */
-    private ExpressionConstraint @NotNull [] buildRandomConstraints() {
-        var newSetOfIdentifiers = subsetGenerator.nextSubset(constraints.length);
+    private ExpressionConstraint @NotNull [] buildRandomConstraints(@NotNull RandomGenerator random) {
+        var newSetOfIdentifiers = subsetGenerator.nextSubset(constraints.length, random);
         var newConstraints = new ExpressionConstraint[newSetOfIdentifiers.length];
         for (int i = 0; i < newSetOfIdentifiers.length; i++) {
             newConstraints[i] = ExpressionConstraint.of(newSetOfIdentifiers[i], constraints[i]);
@@ -338,20 +413,20 @@ public class FastPHENSIM implements Runnable, Closeable {
         var compatibleNodes = gatherCompatibleNodes(minDegree);
         subsetGenerator     = new RandomSubsetGenerator(compatibleNodes, random);
         expressionGenerator = new RandomExpressionGenerator(random, epsilon);
+        streams             = RandomStreams.from(random);
     }
 
     /**
-     * This method fills the expression generator with the constraints of the next simulation. If the number of the next
-     * simulation is the same as the current one, this method does nothing. If the next simulation is the first one,
-     * this method fills the expression generator with the user constraints; otherwise it uses random constraints.
+     * This method computes the constraints of a simulation. The first simulation uses the user constraints, while the
+     * other ones use random constraints drawn from the first random stream of the simulation. Therefore, the
+     * constraints of a simulation are always the same, even if its runs are split among multiple batches.
      *
-     * @param simulationNumber the number of the next simulation.
+     * @param simulationNumber the number of the simulation.
+     * @return the constraints of the simulation.
      */
-    private void fillExpressionGenerator(int simulationNumber) {
-        if (currentSimulationNumber != simulationNumber) {
-            currentSimulationNumber = simulationNumber;
-            expressionGenerator.constraints(simulationNumber == 0 ? constraints : buildRandomConstraints());
-        }
+    private ExpressionConstraint @NotNull [] simulationConstraints(int simulationNumber) {
+        if (simulationNumber == 0) return constraints;
+        return buildRandomConstraints(streams.split(simulationNumber).stream(0));
     }
 
     /**
@@ -394,8 +469,16 @@ public class FastPHENSIM implements Runnable, Closeable {
      */
     @Override
     public void close() throws IOException {
-        if (contextualizedMatrix != null && contextualizedMatrix != repositoryMatrix.pathwayMatrix().matrix()) {
-            contextualizedMatrix.close();
+        if (buffers != null) {
+            buffers.close();
+            buffers = null;
+        }
+        if (contextualizedMatrix != null) {
+            if (!ContextualisedMatrixCache.getInstance().release(contextualizedMatrix) &&
+                    contextualizedMatrix != repositoryMatrix.pathwayMatrix().matrix()) {
+                contextualizedMatrix.close();
+            }
+            contextualizedMatrix = null;
         }
     }
 
@@ -413,12 +496,8 @@ public class FastPHENSIM implements Runnable, Closeable {
             nodeResultsContainer.init(numberOfNodes);
         }
 
-        public void append(double @NotNull [] nodePerturbations) {
-            nodeResultsContainer.append(nodePerturbations);
-        }
-
         public int numberOfRepetitions() {
-            return nodeResultsContainer.numberOfRepetitions;
+            return nodeResultsContainer.statistics.count();
         }
 
         public double[] nodePerturbationsAverage() {
@@ -438,12 +517,8 @@ public class FastPHENSIM implements Runnable, Closeable {
         }
 
         static class PartialResultContainer {
-            public static final double LOG_0_5 = -0.6931471805599453;
-            private double[] perturbationAvg = null;
-            private double[] perturbationSD = null;
-            private int[][] counters = null;
+            private PerturbationStatistics statistics = null;
             private double[] activityScores = null;
-            private int numberOfRepetitions = 0;
             private final double epsilon;
 
             public PartialResultContainer(double epsilon) {
@@ -451,44 +526,22 @@ public class FastPHENSIM implements Runnable, Closeable {
             }
 
             public void init(int size) {
-                perturbationAvg     = new double[size];
-                perturbationSD      = new double[size];
-                counters            = new int[size][3];
-                activityScores      = null;
-                numberOfRepetitions = 0;
-            }
-
-            public synchronized void append(double @NotNull [] partialResults) {
-                numberOfRepetitions++;
-                double delta, delta2, newValue;
-                for (var i = 0; i < partialResults.length; i++) {
-                    newValue = partialResults[i];
-                    delta    = newValue - perturbationAvg[i];
-                    perturbationAvg[i] += delta / numberOfRepetitions;
-                    delta2   = newValue - perturbationAvg[i];
-                    perturbationSD[i] += delta * delta2;
-                    if (newValue > epsilon) {
-                        counters[i][0]++;
-                    } else if (newValue < -epsilon) {
-                        counters[i][1]++;
-                    } else {
-                        counters[i][2]++;
-                    }
-                }
+                statistics     = new PerturbationStatistics(size, epsilon, true);
+                activityScores = null;
             }
 
             public double[] perturbationAverage() {
                 if (activityScores == null) {
                     finalizeComputation();
                 }
-                return perturbationAvg;
+                return statistics.mean();
             }
 
             public double[] perturbationStdDev() {
                 if (activityScores == null) {
                     finalizeComputation();
                 }
-                return perturbationSD;
+                return statistics.standardDeviation();
             }
 
             public double[] activityScores() {
@@ -499,26 +552,8 @@ public class FastPHENSIM implements Runnable, Closeable {
             }
 
             private void finalizeComputation() {
-                activityScores = new double[perturbationSD.length];
-                double probActivation, probInhibition, probNoChange;
-                var nm1 = numberOfRepetitions - 1;
-                var prior = 1d / (numberOfRepetitions * 1000d);
-                var countTotal = Math.log(numberOfRepetitions + 3 * prior);
-                for (var i = 0; i < perturbationSD.length; i++) {
-                    perturbationSD[i] = Math.sqrt(perturbationSD[i] / nm1);
-                    probActivation    = Math.log(counters[i][0] + prior) - countTotal;
-                    probInhibition    = Math.log(counters[i][1] + prior) - countTotal;
-                    probNoChange      = Math.log(counters[i][2] + prior) - countTotal;
-                    if (probActivation > LOG_0_5) {
-                        activityScores[i] = probActivation - Math.log1p(-1 - Math.expm1(probActivation));
-                    } else if (probInhibition > LOG_0_5) {
-                        activityScores[i] = Math.log1p(-1 - Math.expm1(probInhibition)) - probInhibition;
-                    } else if (probNoChange > LOG_0_5) {
-                        activityScores[i] = 0;
-                    } else {
-                        activityScores[i] = Double.NaN;
-                    }
-                }
+                statistics.standardDeviation();
+                activityScores = statistics.activityScores();
             }
         }
     }
@@ -541,7 +576,7 @@ public class FastPHENSIM implements Runnable, Closeable {
         }
 
         public int[][] nodeCounters() {
-            return runs[0].nodeResultsContainer.counters;
+            return runs[0].nodeResultsContainer.statistics.counters();
         }
     }
     //endregion
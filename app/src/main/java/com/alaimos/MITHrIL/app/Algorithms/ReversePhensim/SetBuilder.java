@@ -35,6 +35,7 @@ public class SetBuilder implements Runnable {
     private int batchSize = 1000;
     private int threads = 0;
     private double epsilon;
+    private boolean diskCacheContextualisedMatrix = false;
     private MatrixFactoryInterface<?> matrixFactory;
     //endregion
 
@@ -87,6 +88,17 @@ public class SetBuilder implements Runnable {
         return this;
     }
 
+    /**
+     * Store the contextualised matrix of the simulations on disk, so that it can be reused by other processes
+     *
+     * @param diskCacheContextualisedMatrix if true, the contextualised matrix is stored on disk
+     * @return this object for a fluent interface
+     */
+    public SetBuilder diskCacheContextualisedMatrix(boolean diskCacheContextualisedMatrix) {
+        this.diskCacheContextualisedMatrix = diskCacheContextualisedMatrix;
+        return this;
+    }
+
     public SetBuilder matrixFactory(MatrixFactoryInterface<?> matrixFactory) {
         this.matrixFactory = matrixFactory;
         return this;
@@ -187,6 +199,7 @@ public class SetBuilder implements Runnable {
                    .numberOfSimulations(1)
                    .threads(1)
                    .epsilon(epsilon)
+                   .diskCacheContextualisedMatrix(diskCacheContextualisedMatrix)
                    .enablePValues(false)
                    .silent(true)
                    .run();
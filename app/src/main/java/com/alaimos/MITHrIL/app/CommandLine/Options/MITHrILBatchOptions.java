@@ -28,5 +28,7 @@ public class MITHrILBatchOptions extends MITHrILCommonOptions {
     public boolean binaryOutput = false;
     @Option(name = "-threads-batch", usage = "the number of threads used to process batch in parallel.")
     public int batchThreads = 1;
+    @Option(name = "-fused-samples", usage = "the number of samples whose runs are packed in a single batch, so that each matrix multiplication serves all of them (0 to process each sample independently). When enabled, -threads-batch is ignored.")
+    public int fusedSamples = 0;
 
 }
\ No newline at end of file
@@ -24,13 +24,19 @@ public class MITHrILCommonOptions extends MetapathwayOptions {
     public boolean verbose = false;
     @Option(name = "-no-p-value", usage = "disables p-value computation.")
     public boolean noPValue = false;
+    @Option(name = "-sequential-alpha", usage = "enables sequential p-values with the given target alpha (0 to disable). The permutations of a pathway or node stop as soon as its p-value is certainly greater than alpha, and the iterations stop when all pathways are decided.")
+    public double sequentialAlpha = 0.0;
     @Option(name = "-inversion-factory", usage = "the matrix math library used to create and compute the metapathway matrix representation (see the list of \"matrix-math\" extensions for possible values).")
     public String inversionFactory = "default";
     @Option(name = "-multiplication-factory", usage = "the matrix math library used to perform the operations needed for the MITHrIL iteration (see the list of \"matrix-math\" extensions for possible values).")
     public String multiplicationFactory = "default";
+    @Option(name = "-single-precision", usage = "stores the matrices used by the multiplication factory in single precision (float32). It halves the memory and speeds up the iterations at the cost of precision. The metapathway matrix is always inverted in double precision. Only the vector matrix-math extension supports it: with any other factory, a warning is logged and double precision is used.")
+    public boolean singlePrecision = false;
     @Option(name = "-enrichment-probability", usage = "the algorithm used to compute the enrichment probability of the pathway (see the list of \"enrichment-probability\" extensions for possible values).")
     public String enrichmentProbability = "default";
     @Option(name = "-median-algorithm", usage = "the algorithm used to compute the median of a data stream (see the list of \"stream-median\" extensions for possible values).")
     public String medianAlgorithm = "exact";
+    @Option(name = "-accumulator-operator", usage = "precomputes (and caches) the operator used to compute pathway accumulators with a single multiplication. It speeds up the iterations at the cost of additional memory.")
+    public boolean accumulatorOperator = false;
 
 }
\ No newline at end of file
@@ -38,6 +38,8 @@ public class MetapathwayOptions extends AbstractOptions {
     public File excludePathways = null;
     @Option(name = "-customize-pathway-matrix", usage = "customize the matrix representation of the metapathway to the input data.")
     public boolean customizePathwayMatrix = false;
+    @Option(name = "-block-inversion", usage = "inverts the metapathway matrix by condensing its graph into strongly connected components and inverting only the diagonal blocks. It is much faster than a dense inversion for large metapathways.")
+    public boolean blockInversion = false;
 
     public String[] includeCategories = null;
     public String[] excludeCategories = new String[]{
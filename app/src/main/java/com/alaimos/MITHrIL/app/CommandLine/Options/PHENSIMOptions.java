@@ -45,6 +45,12 @@ public class PHENSIMOptions extends MetapathwayOptions {
     public String inversionFactory = "default";
     @Option(name = "-multiplication-factory", usage = "the matrix math library used to perform the operations needed for the MITHrIL iteration (see the list of \"matrix-math\" extensions for possible values).")
     public String multiplicationFactory = "default";
+    @Option(name = "-single-precision", usage = "stores the matrices used by the multiplication factory in single precision (float32). It halves the memory and speeds up the iterations at the cost of precision. The metapathway matrix is always inverted in double precision. Only the vector matrix-math extension supports it: with any other factory, a warning is logged and double precision is used.")
+    public boolean singlePrecision = false;
+    @Option(name = "-disk-cache-contextualised-matrix", usage = "stores the contextualized metapathway matrices on disk, next to the metapathway matrix cache, so that they can be reused by later runs with the same non-expressed nodes and epsilon.")
+    public boolean diskCacheContextualisedMatrix = false;
+    @Option(name = "-neumann-propagation", usage = "computes the perturbations with a truncated Neumann series on the sparse metapathway instead of inverting the metapathway matrix. It is faster and uses less memory on large metapathways, but the results are approximated within epsilon.", forbids = "-customize-pathway-matrix")
+    public boolean neumannPropagation = false;
     @Option(name = "-metapathway-extension-input-file", usage = "a tab-separated file to extend the metapathway with custom nodes and edges.")
     public File metapathwayExtensionInputFile = null;
     @Option(name = "-custom-node-type-input-file", usage = "a tab-separated file to define custom node types.")
@@ -6,10 +6,12 @@ import com.alaimos.MITHrIL.api.CommandLine.Interfaces.ServiceInterface;
 import com.alaimos.MITHrIL.api.Data.Pathways.Enrichment.EnrichmentProbabilityComputationInterface;
 import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Repository;
 import com.alaimos.MITHrIL.api.Data.Writer.BinaryWriter;
+import com.alaimos.MITHrIL.api.Math.BatchPipeline;
 import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
 import com.alaimos.MITHrIL.api.Math.PValue.Adjusters.AdjusterInterface;
 import com.alaimos.MITHrIL.api.Math.PValue.Combiners.CombinerInterface;
 import com.alaimos.MITHrIL.api.Math.StreamMedian.StreamMedianComputationInterface;
+import com.alaimos.MITHrIL.app.Algorithms.FusedMITHrIL;
 import com.alaimos.MITHrIL.app.Algorithms.MITHrIL;
 import com.alaimos.MITHrIL.app.Algorithms.Metapathway.MatrixBuilderFromMetapathway;
 import com.alaimos.MITHrIL.app.Algorithms.Metapathway.MetapathwayBuilderFromOptions;
@@ -30,10 +32,12 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 public class MITHrILBatchService implements ServiceInterface {
@@ -80,20 +84,51 @@ public class MITHrILBatchService implements ServiceInterface {
             log.info("Reading input file");
             var input = readInputFile();
             var metapathwayRepository = MetapathwayBuilderFromOptions.build(options, random);
-            var inversionMatrixFactory = matrixFactory(options.inversionFactory);
+            var inversionMatrixFactory = matrixFactory(options.inversionFactory, false);
             RepositoryMatrix metapathwayMatrix;
             if (options.customizePathwayMatrix) {
-                metapathwayMatrix = MatrixBuilderFromMetapathway.build(
+                metapathwayMatrix = new MatrixBuilderFromMetapathway(
                         metapathwayRepository,
                         inversionMatrixFactory,
                         extractCustomizationNodesFromInput(input, metapathwayRepository)
-                );
+                ).buildAccumulatorOperator(options.accumulatorOperator)
+                 .blockInversion(options.blockInversion)
+                 .get();
             } else {
-                metapathwayMatrix = MatrixBuilderFromMetapathway.build(metapathwayRepository, inversionMatrixFactory);
+                metapathwayMatrix = new MatrixBuilderFromMetapathway(metapathwayRepository, inversionMatrixFactory)
+                        .buildAccumulatorOperator(options.accumulatorOperator)
+                        .blockInversion(options.blockInversion)
+                        .get();
+            }
+            var multiplicationMatrixFactory = matrixFactory(options.multiplicationFactory, options.singlePrecision);
+            Function<ExpressionInput, MITHrIL> algorithmFactory = inputExpressionObject -> new MITHrIL()
+                    .input(inputExpressionObject)
+                    .repository(metapathwayRepository)
+                    .repositoryMatrix(metapathwayMatrix)
+                    .matrixFactory(multiplicationMatrixFactory)
+                    .random(randomGenerator.get())
+                    .batchSize(options.batchSize)
+                    .numberOfRepetitions(options.pValueIterations)
+                    .pValueCombiner(pValueCombiner)
+                    .pValueAdjuster(pValueAdjuster)
+                    .probabilityComputation(probabilityComputation)
+                    .medianAlgorithmFactory(medianAlgorithmFactory)
+                    .noPValue(options.noPValue)
+                    .sequentialAlpha(options.sequentialAlpha);
+            if (options.fusedSamples > 1) {
+                runFused(input, algorithmFactory, metapathwayRepository, metapathwayMatrix,
+                         multiplicationMatrixFactory);
+                log.info("MIThrIL completed on all samples");
+                return;
             }
-            var multiplicationMatrixFactory = matrixFactory(options.multiplicationFactory);
             log.info("Starting MITHrIL on {} samples (Thread pool size: {})", input.size(), options.batchThreads);
-            try (var pool = new ForkJoinPool(options.batchThreads)) {
+            // The operators derived from the metapathway matrix are computed once and shared by all the samples, and
+            // so are the threads that run the batch pipelines of the samples
+            try (
+                    var ignored = metapathwayMatrix.operators();
+                    var pipelineExecutor = BatchPipeline.newExecutor();
+                    var pool = new ForkJoinPool(options.batchThreads)
+            ) {
                 pool.submit(() -> {
                     input.entrySet().parallelStream().forEach((inputEntry) -> {
                         var threadLogger = LoggerFactory.getLogger(
@@ -102,20 +137,8 @@ public class MITHrILBatchService implements ServiceInterface {
                         var experimentName = inputEntry.getKey();
                         threadLogger.info("Running MITHrIL on {}", experimentName);
                         var inputExpressionObject = inputEntry.getValue();
-                        try (var mithril = new MITHrIL()) {
-                            mithril.input(inputExpressionObject)
-                                   .repository(metapathwayRepository)
-                                   .repositoryMatrix(metapathwayMatrix)
-                                   .matrixFactory(multiplicationMatrixFactory)
-                                   .random(randomGenerator.get())
-                                   .batchSize(options.batchSize)
-                                   .numberOfRepetitions(options.pValueIterations)
-                                   .pValueCombiner(pValueCombiner)
-                                   .pValueAdjuster(pValueAdjuster)
-                                   .probabilityComputation(probabilityComputation)
-                                   .medianAlgorithmFactory(medianAlgorithmFactory)
-                                   .noPValue(options.noPValue)
-                                   .run();
+                        try (var mithril = algorithmFactory.apply(inputExpressionObject)) {
+                            mithril.pipelineExecutor(pipelineExecutor).run();
                             threadLogger.info("Saving output for {}", experimentName);
                             saveOutput(experimentName, mithril.output(), metapathwayRepository, metapathwayMatrix);
                             threadLogger.info("Completed MITHrIL on {}", experimentName);
@@ -133,6 +156,42 @@ public class MITHrILBatchService implements ServiceInterface {
         }
     }
 
+    /**
+     * Run MITHrIL on all the samples in fused mode: the runs of several samples are packed in a single batch, so that
+     * each multiplication by the metapathway matrix serves all of them.
+     */
+    private void runFused(
+            @NotNull Map<String, ExpressionInput> input, Function<ExpressionInput, MITHrIL> algorithmFactory,
+            Repository metapathwayRepository, RepositoryMatrix metapathwayMatrix,
+            MatrixFactoryInterface<?> matrixFactory
+    ) throws IOException {
+        log.info("Starting MITHrIL on {} samples ({} samples per batch)", input.size(), options.fusedSamples);
+        var experimentNames = new IdentityHashMap<MITHrIL, String>();
+        var samples = input.entrySet().stream().map(inputEntry -> {
+            log.info("Running MITHrIL on {}", inputEntry.getKey());
+            var mithril = algorithmFactory.apply(inputEntry.getValue());
+            experimentNames.put(mithril, inputEntry.getKey());
+            return mithril;
+        }).iterator();
+        try (var fused = new FusedMITHrIL()) {
+            fused.samples(samples)
+                 .repositoryMatrix(metapathwayMatrix)
+                 .matrixFactory(matrixFactory)
+                 .batchSize(options.batchSize * options.fusedSamples)
+                 .completionHandler(mithril -> {
+                     var experimentName = experimentNames.remove(mithril);
+                     try {
+                         log.info("Saving output for {}", experimentName);
+                         saveOutput(experimentName, mithril.output(), metapathwayRepository, metapathwayMatrix);
+                         log.info("Completed MITHrIL on {}", experimentName);
+                     } catch (IOException e) {
+                         log.error("An error occurred on {}", experimentName, e);
+                     }
+                 })
+                 .run();
+        }
+    }
+
     private void validateOutputDirectory() {
         var f = options.output;
         if (f == null) {
@@ -192,7 +251,7 @@ public class MITHrILBatchService implements ServiceInterface {
         return options.randomSeed == null ? new Random() : new Random(options.randomSeed);
     }
 
-    private @NotNull MatrixFactoryInterface<?> matrixFactory(String name) {
+    private @NotNull MatrixFactoryInterface<?> matrixFactory(String name, boolean singlePrecision) {
         var extManager = ExtensionManager.INSTANCE;
         var factory = extManager.getExtension(MatrixFactoryInterface.class, name);
         if (factory == null) {
@@ -201,6 +260,10 @@ public class MITHrILBatchService implements ServiceInterface {
         if (options.threads > 0) {
             factory.setMaxThreads(options.threads);
         }
+        factory = factory.withSinglePrecision(singlePrecision);
+        if (singlePrecision && !factory.singlePrecision()) {
+            log.warn("The {} matrix factory does not support single precision. Using double precision.", name);
+        }
         return factory;
     }
 
@@ -67,18 +67,23 @@ public class MITHrILService implements ServiceInterface {
             log.info("Reading input file");
             var input = readInputFile();
             var metapathwayRepository = MetapathwayBuilderFromOptions.build(options, random);
-            var inversionMatrixFactory = matrixFactory(options.inversionFactory);
+            var inversionMatrixFactory = matrixFactory(options.inversionFactory, false);
             RepositoryMatrix metapathwayMatrix;
             if (options.customizePathwayMatrix) {
-                metapathwayMatrix = MatrixBuilderFromMetapathway.build(
+                metapathwayMatrix = new MatrixBuilderFromMetapathway(
                         metapathwayRepository,
                         inversionMatrixFactory,
                         extractCustomizationNodesFromInput(input, metapathwayRepository)
-                );
+                ).buildAccumulatorOperator(options.accumulatorOperator)
+                 .blockInversion(options.blockInversion)
+                 .get();
             } else {
-                metapathwayMatrix = MatrixBuilderFromMetapathway.build(metapathwayRepository, inversionMatrixFactory);
+                metapathwayMatrix = new MatrixBuilderFromMetapathway(metapathwayRepository, inversionMatrixFactory)
+                        .buildAccumulatorOperator(options.accumulatorOperator)
+                        .blockInversion(options.blockInversion)
+                        .get();
             }
-            var multiplicationMatrixFactory = matrixFactory(options.multiplicationFactory);
+            var multiplicationMatrixFactory = matrixFactory(options.multiplicationFactory, options.singlePrecision);
             log.info("Running MITHrIL");
             try (var mithril = new MITHrIL()) {
                 mithril.input(input)
@@ -101,6 +106,7 @@ public class MITHrILService implements ServiceInterface {
                                )
                        )
                        .noPValue(options.noPValue)
+                       .sequentialAlpha(options.sequentialAlpha)
                        .run();
                 var output = mithril.output();
                 if (options.output != null) {
@@ -166,7 +172,7 @@ public class MITHrILService implements ServiceInterface {
         return options.randomSeed == null ? new Random() : new Random(options.randomSeed);
     }
 
-    private @NotNull MatrixFactoryInterface<?> matrixFactory(String name) {
+    private @NotNull MatrixFactoryInterface<?> matrixFactory(String name, boolean singlePrecision) {
         var extManager = ExtensionManager.INSTANCE;
         var factory = extManager.getExtension(MatrixFactoryInterface.class, name);
         if (factory == null) {
@@ -175,6 +181,10 @@ public class MITHrILService implements ServiceInterface {
         if (options.threads > 0) {
             factory.setMaxThreads(options.threads);
         }
+        factory = factory.withSinglePrecision(singlePrecision);
+        if (singlePrecision && !factory.singlePrecision()) {
+            log.warn("The {} matrix factory does not support single precision. Using double precision.", name);
+        }
         return factory;
     }
 
@@ -8,8 +8,10 @@ import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Repository;
 import com.alaimos.MITHrIL.api.Data.Reader.DynamicTextFileReader;
 import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
 import com.alaimos.MITHrIL.api.Math.PValue.Adjusters.AdjusterInterface;
+import com.alaimos.MITHrIL.app.Algorithms.Metapathway.LowRankMatrixUpdater;
 import com.alaimos.MITHrIL.app.Algorithms.Metapathway.MatrixBuilderFromMetapathway;
 import com.alaimos.MITHrIL.app.Algorithms.Metapathway.MetapathwayBuilderFromOptions;
+import com.alaimos.MITHrIL.app.Algorithms.Metapathway.NeumannPropagator;
 import com.alaimos.MITHrIL.app.Algorithms.PHENSIM;
 import com.alaimos.MITHrIL.app.CommandLine.Options.PHENSIMOptions;
 import com.alaimos.MITHrIL.app.Data.Generators.RandomExpressionGenerator.ExpressionConstraint;
@@ -71,6 +73,8 @@ public class PHENSIMService implements ServiceInterface {
             log.info("Reading input file");
             var input = readInputFile();
             var metapathwayRepository = MetapathwayBuilderFromOptions.build(options, random);
+            var baseMatrix = (options.metapathwayExtensionInputFile != null || options.removeNodesFile != null) ?
+                    LowRankMatrixUpdater.snapshot(metapathwayRepository) : null;
             var extensionGraph = prepareExtensionGraph();
             if (extensionGraph != null) {
                 metapathwayRepository.extendWith(extensionGraph);
@@ -79,18 +83,29 @@ public class PHENSIMService implements ServiceInterface {
             for (var node : nodesToRemove) {
                 metapathwayRepository.removeNode(node);
             }
-            var inversionMatrixFactory = matrixFactory(options.inversionFactory);
+            var inversionMatrixFactory = matrixFactory(options.inversionFactory, false);
             RepositoryMatrix metapathwayMatrix;
-            if (options.customizePathwayMatrix) {
-                metapathwayMatrix = MatrixBuilderFromMetapathway.build(
+            NeumannPropagator propagator = null;
+            if (options.neumannPropagation) {
+                metapathwayMatrix = MatrixBuilderFromMetapathway.buildWithoutInversion(
+                        metapathwayRepository, inversionMatrixFactory);
+                propagator        = new NeumannPropagator(
+                        metapathwayRepository.get().graph(), metapathwayMatrix.pathwayMatrix().id2Index(),
+                        options.epsilon
+                );
+            } else if (options.customizePathwayMatrix) {
+                metapathwayMatrix = new MatrixBuilderFromMetapathway(
                         metapathwayRepository,
                         inversionMatrixFactory,
                         extractCustomizationNodesFromInput(input, metapathwayRepository)
-                );
+                ).blockInversion(options.blockInversion).get();
             } else {
-                metapathwayMatrix = MatrixBuilderFromMetapathway.build(metapathwayRepository, inversionMatrixFactory);
+                metapathwayMatrix = new MatrixBuilderFromMetapathway(metapathwayRepository, inversionMatrixFactory)
+                        .baseMatrixUpdater(baseMatrix)
+                        .blockInversion(options.blockInversion)
+                        .get();
             }
-            var multiplicationMatrixFactory = matrixFactory(options.multiplicationFactory);
+            var multiplicationMatrixFactory = matrixFactory(options.multiplicationFactory, options.singlePrecision);
             log.info("Running PHENSIM");
             try (var phensim = new PHENSIM()) {
                 phensim.constraints(input)
@@ -105,6 +120,9 @@ public class PHENSIMService implements ServiceInterface {
                        .threads(options.threads)
                        .pValueAdjuster(extManager.getExtension(AdjusterInterface.class, options.pValueAdjuster))
                        .epsilon(options.epsilon)
+                       .diskCacheContextualisedMatrix(options.diskCacheContextualisedMatrix)
+                       .propagator(propagator)
+                       .keepAllRuns(appendAllRunsToOutput())
                        .run();
                 var output = phensim.output(appendAllRunsToOutput());
                 log.info("Writing output file");
@@ -203,7 +221,7 @@ public class PHENSIMService implements ServiceInterface {
         return options.outputNodesMatrix != null || options.outputPathwayMatrix != null;
     }
 
-    private @NotNull MatrixFactoryInterface<?> matrixFactory(String name) {
+    private @NotNull MatrixFactoryInterface<?> matrixFactory(String name, boolean singlePrecision) {
         var extManager = ExtensionManager.INSTANCE;
         var factory = extManager.getExtension(MatrixFactoryInterface.class, name);
         if (factory == null) {
@@ -212,6 +230,10 @@ public class PHENSIMService implements ServiceInterface {
         if (options.threads > 0) {
             factory.setMaxThreads(options.threads);
         }
+        factory = factory.withSinglePrecision(singlePrecision);
+        if (singlePrecision && !factory.singlePrecision()) {
+            log.warn("The {} matrix factory does not support single precision. Using double precision.", name);
+        }
         return factory;
     }
 
@@ -70,9 +70,11 @@ public class PHENSIMqService implements ServiceInterface {
             for (var node : nodesToRemove) {
                 metapathwayRepository.removeNode(node);
             }
-            var inversionMatrixFactory = matrixFactory(options.inversionFactory);
-            var metapathwayMatrix = MatrixBuilderFromMetapathway.build(metapathwayRepository, inversionMatrixFactory);
-            var multiplicationMatrixFactory = matrixFactory(options.multiplicationFactory);
+            var inversionMatrixFactory = matrixFactory(options.inversionFactory, false);
+            var metapathwayMatrix = new MatrixBuilderFromMetapathway(metapathwayRepository, inversionMatrixFactory)
+                    .blockInversion(options.blockInversion)
+                    .get();
+            var multiplicationMatrixFactory = matrixFactory(options.multiplicationFactory, options.singlePrecision);
             log.info("Reading input file");
             var input = readInputFile();
             log.info("Running PHENSIM-quantum");
@@ -89,6 +91,7 @@ public class PHENSIMqService implements ServiceInterface {
                        .threads(options.threads)
                        .pValueAdjuster(extManager.getExtension(AdjusterInterface.class, options.pValueAdjuster))
                        .epsilon(options.epsilon)
+                       .diskCacheContextualisedMatrix(options.diskCacheContextualisedMatrix)
                        .run();
                 var output = phensim.output(appendAllRunsToOutput());
                 log.info("Writing output file");
@@ -187,7 +190,7 @@ public class PHENSIMqService implements ServiceInterface {
         return options.outputNodesMatrix != null || options.outputPathwayMatrix != null;
     }
 
-    private @NotNull MatrixFactoryInterface<?> matrixFactory(String name) {
+    private @NotNull MatrixFactoryInterface<?> matrixFactory(String name, boolean singlePrecision) {
         var extManager = ExtensionManager.INSTANCE;
         var factory = extManager.getExtension(MatrixFactoryInterface.class, name);
         if (factory == null) {
@@ -196,6 +199,10 @@ public class PHENSIMqService implements ServiceInterface {
         if (options.threads > 0) {
             factory.setMaxThreads(options.threads);
         }
+        factory = factory.withSinglePrecision(singlePrecision);
+        if (singlePrecision && !factory.singlePrecision()) {
+            log.warn("The {} matrix factory does not support single precision. Using double precision.", name);
+        }
         return factory;
     }
 }
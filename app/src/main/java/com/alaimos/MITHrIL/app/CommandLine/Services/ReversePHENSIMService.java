@@ -7,6 +7,7 @@ import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Graph;
 import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Repository;
 import com.alaimos.MITHrIL.api.Data.Reader.DynamicTextFileReader;
 import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
+import com.alaimos.MITHrIL.app.Algorithms.Metapathway.LowRankMatrixUpdater;
 import com.alaimos.MITHrIL.app.Algorithms.Metapathway.MatrixBuilderFromMetapathway;
 import com.alaimos.MITHrIL.app.Algorithms.Metapathway.MetapathwayBuilderFromOptions;
 import com.alaimos.MITHrIL.app.Algorithms.ReversePhensim.CoverRanking;
@@ -69,6 +70,9 @@ public class ReversePHENSIMService implements ServiceInterface {
             checkInputParameters();
             var random = random();
             var metapathwayRepository = MetapathwayBuilderFromOptions.build(options, random);
+            var changed = options.metapathwayExtensionInputFile != null || options.removeNodesFile != null;
+            var baseMatrix = changed ? LowRankMatrixUpdater.snapshot(metapathwayRepository) : null;
+            var invertedBaseMatrix = changed ? LowRankMatrixUpdater.snapshot(metapathwayRepository.inverted()) : null;
             var extensionGraph = prepareExtensionGraph();
             if (extensionGraph != null) {
                 metapathwayRepository.extendWith(extensionGraph);
@@ -77,14 +81,17 @@ public class ReversePHENSIMService implements ServiceInterface {
             for (var node : nodesToRemove) {
                 metapathwayRepository.removeNode(node);
             }
-            var inversionMatrixFactory = matrixFactory(options.inversionFactory);
-            var metapathwayMatrix = MatrixBuilderFromMetapathway.build(metapathwayRepository, inversionMatrixFactory);
+            var inversionMatrixFactory = matrixFactory(options.inversionFactory, false);
+            var metapathwayMatrix = new MatrixBuilderFromMetapathway(metapathwayRepository, inversionMatrixFactory)
+                    .baseMatrixUpdater(baseMatrix)
+                    .blockInversion(options.blockInversion)
+                    .get();
             log.info("Creating reversed metapathway matrix");
             var invertedMetapathwayRepository = metapathwayRepository.inverted();
-            var invertedMetapathwayMatrix = MatrixBuilderFromMetapathway.build(
+            var invertedMetapathwayMatrix = new MatrixBuilderFromMetapathway(
                     invertedMetapathwayRepository, inversionMatrixFactory
-            );
-            var multiplicationMatrixFactory = matrixFactory(options.multiplicationFactory);
+            ).baseMatrixUpdater(invertedBaseMatrix).blockInversion(options.blockInversion).get();
+            var multiplicationMatrixFactory = matrixFactory(options.multiplicationFactory, options.singlePrecision);
             log.info("Reading input files");
             var input = readInputFile();
             var nonExpressedNodes = readNonExpressedNodes();
@@ -106,6 +113,7 @@ public class ReversePHENSIMService implements ServiceInterface {
                        .numberOfSimulations(options.simulations)
                        .threads(options.threads)
                        .epsilon(options.epsilon)
+                       .diskCacheContextualisedMatrix(options.diskCacheContextualisedMatrix)
                        .run();
                 var reversePhensimOutput = phensim.output();
                 log.info("Filtering target nodes");
@@ -124,6 +132,7 @@ public class ReversePHENSIMService implements ServiceInterface {
                        .targetNodes(targetNodes)
                        .threads(options.threads)
                        .epsilon(options.epsilon)
+                       .diskCacheContextualisedMatrix(options.diskCacheContextualisedMatrix)
                        .matrixFactory(multiplicationMatrixFactory)
                        .run();
                 log.info("Computing set covering");
@@ -152,6 +161,7 @@ public class ReversePHENSIMService implements ServiceInterface {
                                 .batchSize(options.batchSize)
                                 .threads(options.threads)
                                 .epsilon(options.epsilon)
+                                .diskCacheContextualisedMatrix(options.diskCacheContextualisedMatrix)
                                 .coveringSets(constraintsSet)
                                 .matrixFactory(multiplicationMatrixFactory)
                                 .run();
@@ -303,7 +313,7 @@ public class ReversePHENSIMService implements ServiceInterface {
         return options.randomSeed == null ? new Random() : new Random(options.randomSeed);
     }
 
-    private @NotNull MatrixFactoryInterface<?> matrixFactory(String name) {
+    private @NotNull MatrixFactoryInterface<?> matrixFactory(String name, boolean singlePrecision) {
         var extManager = ExtensionManager.INSTANCE;
         var factory = extManager.getExtension(MatrixFactoryInterface.class, name);
         if (factory == null) {
@@ -312,6 +322,10 @@ public class ReversePHENSIMService implements ServiceInterface {
         if (options.threads > 0) {
             factory.setMaxThreads(options.threads);
         }
+        factory = factory.withSinglePrecision(singlePrecision);
+        if (singlePrecision && !factory.singlePrecision()) {
+            log.warn("The {} matrix factory does not support single precision. Using double precision.", name);
+        }
         return factory;
     }
 }
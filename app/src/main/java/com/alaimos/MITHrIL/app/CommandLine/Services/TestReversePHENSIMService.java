@@ -65,7 +65,7 @@ public class TestReversePHENSIMService implements ServiceInterface {
             outDir.mkdirs();
             var random = new Random(1234);
             var metapathwayRepository = MetapathwayBuilderFromOptions.build(new MetapathwayOptions(), random);
-            var inversionMatrixFactory = matrixFactory(options.inversionFactory);
+            var inversionMatrixFactory = matrixFactory(options.inversionFactory, false);
             var metapathwayMatrix = MatrixBuilderFromMetapathway.build(metapathwayRepository, inversionMatrixFactory);
             try (PrintStream ps = new PrintStream(new FileOutputStream(new File(outDir, "metapathway_map.txt")))) {
                 metapathwayMatrix.id2Index().forEach((k, v) -> ps.println(k + "\t" + v));
@@ -178,7 +178,7 @@ public class TestReversePHENSIMService implements ServiceInterface {
             @NotNull List<ExpressionConstraint[]> constraints, @NotNull Repository metapathway, @NotNull Random random,
             RepositoryMatrix metapathwayMatrix
     ) throws IOException {
-        var multiplicationMatrixFactory = matrixFactory(options.multiplicationFactory);
+        var multiplicationMatrixFactory = matrixFactory(options.multiplicationFactory, options.singlePrecision);
         var output = new ArrayList<double[]>(constraints.size());
         for (var i = 0; i < constraints.size(); i++) {
             log.info("Running simulation {}/{}", i + 1, constraints.size());
@@ -283,7 +283,7 @@ public class TestReversePHENSIMService implements ServiceInterface {
         return (value < 0) ? ExpressionDirection.UNDEREXPRESSION : ExpressionDirection.OVEREXPRESSION;
     }
 
-    private @NotNull MatrixFactoryInterface<?> matrixFactory(String name) {
+    private @NotNull MatrixFactoryInterface<?> matrixFactory(String name, boolean singlePrecision) {
         var extManager = ExtensionManager.INSTANCE;
         var factory = extManager.getExtension(MatrixFactoryInterface.class, name);
         if (factory == null) {
@@ -292,6 +292,10 @@ public class TestReversePHENSIMService implements ServiceInterface {
         if (options.threads > 0) {
             factory.setMaxThreads(options.threads);
         }
+        factory = factory.withSinglePrecision(singlePrecision);
+        if (singlePrecision && !factory.singlePrecision()) {
+            log.warn("The {} matrix factory does not support single precision. Using double precision.", name);
+        }
         return factory;
     }
 
@@ -308,6 +312,8 @@ public class TestReversePHENSIMService implements ServiceInterface {
         public String inversionFactory = "default";
         @Option(name = "-multiplication-factory", usage = "the matrix math library used to perform the operations needed for the MITHrIL iteration (see the list of \"matrix-math\" extensions for possible values).")
         public String multiplicationFactory = "default";
+        @Option(name = "-single-precision", usage = "stores the matrices used by the multiplication factory in single precision (float32). It halves the memory and speeds up the iterations at the cost of precision. The metapathway matrix is always inverted in double precision. Only the vector matrix-math extension supports it: with any other factory, a warning is logged and double precision is used.")
+        public boolean singlePrecision = false;
         @Option(name = "-o", aliases = "-out", usage = "output directory", required = true)
         public File output = null;
     }
@@ -0,0 +1,126 @@
+package com.alaimos.MITHrIL.app.Data.Generators;
+
+import com.alaimos.MITHrIL.app.Data.Records.ExpressionInput;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.ObjectLinkedOpenHashSet;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.random.RandomGenerator;
+import java.util.stream.IntStream;
+
+/**
+ * Generate random permutations of an expression input directly into the columns of a batch. A permutation assigns the
+ * expression values of the input to distinct nodes drawn uniformly at random from the nodes of the input, as done by
+ * {@link ExpressionInput#permute(java.util.Random)}. However, the values and the rows of the batch corresponding to
+ * each node are resolved once, and each permutation is drawn with a partial Fisher-Yates shuffle of the node positions.
+ * Therefore, no map is built and no string is hashed while the batch is filled.
+ * <p>
+ * The shuffle is performed on a per-thread array of positions, which is restored after each permutation. Therefore,
+ * each permutation depends only on its random number generator, and multiple columns can be generated in parallel
+ * with one generator for each column.
+ */
+public class PermutationGenerator {
+
+    private final double[] values;
+    private final int[] rows;
+    private final int[] inputRows;
+    private final double[] inputValues;
+    private final ThreadLocal<int[][]> scratch;
+
+    /**
+     * Create a permutation generator
+     *
+     * @param input    the expression input
+     * @param id2index the row of each node in the batch. Nodes that are not in the map are drawn but not written.
+     */
+    public PermutationGenerator(@NotNull ExpressionInput input, @NotNull Object2IntMap<String> id2index) {
+        var nodes = new ObjectLinkedOpenHashSet<>(input.nodes());
+        var expressions = input.expressions();
+        if (expressions.size() > nodes.size()) {
+            throw new IllegalArgumentException("The number of expressions is greater than the number of nodes");
+        }
+        values = expressions.values().toDoubleArray();
+        rows   = new int[nodes.size()];
+        var i = 0;
+        for (var node : nodes) {
+            rows[i++] = id2index.getOrDefault(node, -1);
+        }
+        var count = 0;
+        for (var id : expressions.keySet()) {
+            if (id2index.getOrDefault(id, -1) >= 0) count++;
+        }
+        inputRows   = new int[count];
+        inputValues = new double[count];
+        i           = 0;
+        for (var e : expressions.object2DoubleEntrySet()) {
+            var row = id2index.getOrDefault(e.getKey(), -1);
+            if (row < 0) continue;
+            inputRows[i]     = row;
+            inputValues[i++] = e.getDoubleValue();
+        }
+        var n = rows.length;
+        var k = values.length;
+        scratch = ThreadLocal.withInitial(() -> new int[][]{IntStream.range(0, n).toArray(), new int[k]});
+    }
+
+    /**
+     * Write the expression input into a column of a batch
+     *
+     * @param batch  the batch stored by rows
+     * @param stride the number of columns of the batch
+     * @param column the column
+     */
+    public void input(double @NotNull [] batch, int stride, int column) {
+        for (var i = 0; i < inputRows.length; i++) {
+            batch[inputRows[i] * stride + column] = inputValues[i];
+        }
+    }
+
+    /**
+     * Write a random permutation of the expression input into a column of a batch. The column must be filled with
+     * zeros.
+     *
+     * @param batch  the batch stored by rows
+     * @param stride the number of columns of the batch
+     * @param column the column
+     * @param random the random number generator
+     */
+    public void permute(double @NotNull [] batch, int stride, int column, @NotNull RandomGenerator random) {
+        var scratch = this.scratch.get();
+        var positions = scratch[0];
+        var swaps = scratch[1];
+        var n = positions.length;
+        int j, p, row;
+        for (var i = 0; i < values.length; i++) {
+            j            = i + random.nextInt(n - i);
+            swaps[i]     = j;
+            p            = positions[j];
+            positions[j] = positions[i];
+            positions[i] = p;
+            row          = rows[p];
+            if (row >= 0) batch[row * stride + column] = values[i];
+        }
+        // Undo the swaps in reverse order to restore the identity permutation
+        for (var i = values.length - 1; i >= 0; i--) {
+            j            = swaps[i];
+            p            = positions[j];
+            positions[j] = positions[i];
+            positions[i] = p;
+        }
+    }
+
+    /**
+     * Write random permutations of the expression input into a range of columns of a batch in parallel. The columns
+     * must be filled with zeros.
+     *
+     * @param batch      the batch stored by rows
+     * @param stride     the number of columns of the batch
+     * @param offset     the first column of the range
+     * @param generators the random number generator of each column of the range
+     */
+    public void permute(double @NotNull [] batch, int stride, int offset, RandomGenerator @NotNull [] generators) {
+        IntStream.range(0, generators.length)
+                 .parallel()
+                 .forEach(j -> permute(batch, stride, offset + j, generators[j]));
+    }
+}
@@ -6,6 +6,7 @@ import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Random;
+import java.util.random.RandomGenerator;
 
 public class RandomExpressionGenerator {
 
@@ -43,11 +44,29 @@ public class RandomExpressionGenerator {
         var expressions = new double[constraints.length];
         for (int i = 0; i < constraints.length; i++) {
             nodeIds[i]     = constraints[i].nodeId;
-            expressions[i] = nextRandomExpressionFromConstraint(constraints[i]);
+            expressions[i] = nextRandomExpressionFromConstraint(constraints[i], random);
         }
         return Pair.of(nodeIds, expressions);
     }
 
+    /**
+     * Generate random expressions for a set of constraints using a specific random number generator. This method does
+     * not use the state of this object, except for epsilon, so it can be called concurrently with different generators.
+     *
+     * @param constraints constraints
+     * @param random      the random number generator
+     * @return the expression values of the nodes in the constraints, in the same order
+     */
+    public double @NotNull [] nextRandomExpression(
+            ExpressionConstraint @NotNull [] constraints, @NotNull RandomGenerator random
+    ) {
+        var expressions = new double[constraints.length];
+        for (int i = 0; i < constraints.length; i++) {
+            expressions[i] = nextRandomExpressionFromConstraint(constraints[i], random);
+        }
+        return expressions;
+    }
+
     /**
      * Generate a normally distributed random number with a minimum value. The sign of the minimum value is used to
      * determine the direction of the distribution. If the minimum value is positive, the random number is taken from
@@ -59,9 +78,10 @@ public class RandomExpressionGenerator {
      * @param mean    mean of the distribution
      * @param sd      standard deviation of the distribution
      * @param epsilon the minimum value to return
+     * @param random  the random number generator
      * @return a random number
      */
-    private double nextGaussianRandomNumber(double mean, double sd, double epsilon) {
+    private double nextGaussianRandomNumber(double mean, double sd, double epsilon, @NotNull RandomGenerator random) {
         var r = Math.copySign(Math.abs(sd * random.nextGaussian() + mean), epsilon);
         return ((r < 0 && r > epsilon) || (r > 0 && r < epsilon)) ? epsilon : r;
     }
@@ -70,15 +90,20 @@ public class RandomExpressionGenerator {
     /**
      * Generate a random expression value
      *
-     * @param c an expression constraint
+     * @param c      an expression constraint
+     * @param random the random number generator
      * @return the expression value
      */
-    private double nextRandomExpressionFromConstraint(@NotNull ExpressionConstraint c) {
+    private double nextRandomExpressionFromConstraint(
+            @NotNull ExpressionConstraint c, @NotNull RandomGenerator random
+    ) {
         var direction = c.direction;
         if (c.distribution == null && Double.isNaN(c.baseLog2FoldChange)) {
             return switch (direction) {
-                case OVEREXPRESSION -> nextGaussianRandomNumber(UP_LOG_FC_MEAN, UP_DOWN_LOG_FC_STD_DEV, epsilon);
-                case UNDEREXPRESSION -> nextGaussianRandomNumber(DOWN_LOG_FC_MEAN, UP_DOWN_LOG_FC_STD_DEV, -epsilon);
+                case OVEREXPRESSION ->
+                        nextGaussianRandomNumber(UP_LOG_FC_MEAN, UP_DOWN_LOG_FC_STD_DEV, epsilon, random);
+                case UNDEREXPRESSION ->
+                        nextGaussianRandomNumber(DOWN_LOG_FC_MEAN, UP_DOWN_LOG_FC_STD_DEV, -epsilon, random);
                 default -> 0.0;
             };
         }
@@ -89,8 +114,8 @@ public class RandomExpressionGenerator {
             mean += c.baseLog2FoldChange;
         }
         return switch (direction) {
-            case OVEREXPRESSION -> nextGaussianRandomNumber(mean, sd, epsilon);
-            case UNDEREXPRESSION -> nextGaussianRandomNumber(mean, sd, -epsilon);
+            case OVEREXPRESSION -> nextGaussianRandomNumber(mean, sd, epsilon, random);
+            case UNDEREXPRESSION -> nextGaussianRandomNumber(mean, sd, -epsilon, random);
             default -> 0.0;
         };
     }
@@ -0,0 +1,94 @@
+package com.alaimos.MITHrIL.app.Data.Generators;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
+
+/**
+ * A family of independent random number generators derived from a single seed. Each stream is identified by an index
+ * (for example, the number of a run), and it is seeded by mixing the seed of the family with the index. Therefore, the
+ * numbers drawn from a stream depend only on the seed and on the index, and not on the order in which the streams are
+ * created or on the thread that uses them. This makes the results of a seeded computation reproducible even when its
+ * runs are generated in parallel or split among batches of different sizes.
+ * <p>
+ * The streams are instances of the L64X128MixRandom algorithm of the JDK, whose seeds are expanded with the SplitMix64
+ * mixing function, so that streams with consecutive indices are statistically independent. A stream can be further
+ * split into a child family with {@link #split(long)}, to derive streams from hierarchical indices.
+ */
+public final class RandomStreams {
+
+    private static final String ALGORITHM = "L64X128MixRandom";
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final RandomGeneratorFactory<RandomGenerator> FACTORY = RandomGeneratorFactory.of(ALGORITHM);
+
+    private final long seed;
+
+    /**
+     * Create a family of random streams
+     *
+     * @param seed the seed of the family
+     */
+    public RandomStreams(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Create a family of random streams whose seed is drawn from a random number generator. If the generator is
+     * seeded, the family is reproducible.
+     *
+     * @param random the random number generator
+     * @return the family of random streams
+     */
+    @Contract("_ -> new")
+    public static @NotNull RandomStreams from(@NotNull RandomGenerator random) {
+        return new RandomStreams(random.nextLong());
+    }
+
+    /**
+     * Get the seed of this family
+     *
+     * @return the seed
+     */
+    public long seed() {
+        return seed;
+    }
+
+    /**
+     * Create the random stream with an index. Each call returns a new generator, so two calls with the same index
+     * return two generators producing the same sequence of numbers.
+     *
+     * @param index the index of the stream
+     * @return the random number generator
+     */
+    public @NotNull RandomGenerator stream(long index) {
+        return FACTORY.create(mix(seed, index));
+    }
+
+    /**
+     * Create the child family of random streams with an index. The child family is independent of the streams of this
+     * family.
+     *
+     * @param index the index of the child family
+     * @return the child family
+     */
+    @Contract("_ -> new")
+    public @NotNull RandomStreams split(long index) {
+        return new RandomStreams(mix(~seed, index));
+    }
+
+    /**
+     * Mix a seed and an index with the SplitMix64 finalizer
+     *
+     * @param seed  the seed
+     * @param index the index
+     * @return the mixed seed
+     */
+    private static long mix(long seed, long index) {
+        var z = seed + (index + 1) * GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -2,6 +2,7 @@ package com.alaimos.MITHrIL.app.Data.Generators;
 
 import java.util.HashSet;
 import java.util.Random;
+import java.util.random.RandomGenerator;
 
 public class RandomSubsetGenerator {
 
@@ -20,6 +21,17 @@ public class RandomSubsetGenerator {
      * @return the random subset
      */
     public String[] nextSubset(int size) {
+        return nextSubset(size, random);
+    }
+
+    /**
+     * Generate a random subset of nodes using a specific random number generator
+     *
+     * @param size   the number of nodes in the subset
+     * @param random the random number generator
+     * @return the random subset
+     */
+    public String[] nextSubset(int size, RandomGenerator random) {
         HashSet<String> result = new HashSet<>();
         while (result.size() < size) {
             result.add(nodes[random.nextInt(nodes.length)]);
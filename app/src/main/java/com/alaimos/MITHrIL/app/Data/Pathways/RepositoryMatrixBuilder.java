@@ -2,6 +2,8 @@ package com.alaimos.MITHrIL.app.Data.Pathways;
 
 import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Repository;
 import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
+import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrix;
 import com.alaimos.MITHrIL.app.Data.Records.PathwayMatrix;
 import com.alaimos.MITHrIL.app.Data.Records.RepositoryMatrix;
 import org.jetbrains.annotations.NotNull;
@@ -14,6 +16,14 @@ public class RepositoryMatrixBuilder {
         this.factory = factory;
     }
 
+    /**
+     * Build the repository matrix. The matrix is stored in sparse format since each node belongs to only a few
+     * pathways.
+     *
+     * @param r  the repository
+     * @param pm the metapathway matrix
+     * @return the repository matrix
+     */
     public RepositoryMatrix build(@NotNull Repository r, @NotNull PathwayMatrix pm) {
         if (!r.contains("metapathway")) return null;
         if (!pm.pathwayId().equals("metapathway")) return null;
@@ -22,17 +32,45 @@ public class RepositoryMatrixBuilder {
         var nodeId2index = pm.id2Index();
         var rows = nodeId2index.size();
         var cols = pathwayId2Index.size();
-        var data = new double[rows * cols];
-        int i, j;
+        var size = 0;
+        for (var vp : r.virtualPathways()) {
+            size += vp.nodes().size();
+        }
+        var rowIndices = new int[size];
+        var columnIndices = new int[size];
+        var data = new double[size];
+        var k = 0;
+        int j;
         for (var vp : r.virtualPathways()) {
             j = pathwayId2Index.getInt(vp.id());
             for (var n : vp.nodes()) {
-                i                  = nodeId2index.getInt(n.id());
-                data[i * cols + j] = n.weight();
+                rowIndices[k]    = nodeId2index.getInt(n.id());
+                columnIndices[k] = j;
+                data[k++]        = n.weight();
             }
         }
-        var matrix = factory.of(data, rows, cols);
+        var matrix = SparseMatrix.fromTriplets(rows, cols, rowIndices, columnIndices, data, k);
         return RepositoryMatrix.of(matrix, repositoryIndexes.left(), pathwayId2Index, pm);
     }
 
+    /**
+     * Build the accumulator operator of a repository matrix. Given the repository matrix R and the metapathway matrix
+     * M, the operator is R^T * (M - I). Therefore, the pathway accumulators of a set of runs X can be computed with a
+     * single multiplication as (R^T * (M - I)) * X, instead of computing R^T * (M * X - X).
+     *
+     * @param rm the repository matrix
+     * @return the accumulator operator, where each row is a pathway, and each column is a node
+     */
+    public MatrixInterface<?> buildAccumulatorOperator(@NotNull RepositoryMatrix rm) {
+        var m = rm.pathwayMatrix().matrix();
+        var n = m.rows();
+        var shifted = m.raw1D().clone();
+        for (var i = 0; i < n; i++) {
+            shifted[i * n + i] -= 1.0;
+        }
+        try (var transposed = new SparseMatrix(rm.matrix()).transpose()) {
+            return factory.of(transposed.postMultiplyRaw(shifted, n), transposed.rows(), n);
+        }
+    }
+
 }
@@ -0,0 +1,84 @@
+package com.alaimos.MITHrIL.app.Data.Readers;
+
+import com.alaimos.MITHrIL.api.Commons.IOUtils;
+import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Repository;
+import com.alaimos.MITHrIL.api.Data.Reader.BinaryReader;
+import com.alaimos.MITHrIL.api.Data.Reader.DataReaderInterface;
+import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
+import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+
+public class AccumulatorOperatorReader implements DataReaderInterface<MatrixInterface<?>> {
+
+    @SuppressWarnings("rawtypes")
+    private final BinaryReader<MatrixInterface> reader = new BinaryReader<>(MatrixInterface.class);
+    private final MatrixFactoryInterface<?> matrixFactory;
+
+    public AccumulatorOperatorReader(
+            @NotNull Repository r,
+            @NotNull MatrixFactoryInterface<?> matrixFactory,
+            boolean useCustomizedMatrix,
+            int customizationHash
+    ) {
+        this(r, matrixFactory, useCustomizedMatrix, customizationHash, false);
+    }
+
+    public AccumulatorOperatorReader(
+            @NotNull Repository r,
+            @NotNull MatrixFactoryInterface<?> matrixFactory,
+            boolean useCustomizedMatrix,
+            int customizationHash,
+            boolean blockInversion
+    ) {
+        var filename = "repository-operator-" + r.hashCode() + (useCustomizedMatrix ? "-" + customizationHash : "") +
+                (blockInversion ? "-block" : "") + ".bin";
+        reader.file(IOUtils.sanitizeFilename(filename));
+        this.matrixFactory = matrixFactory;
+    }
+
+    /**
+     * Get the filename where data are stored
+     *
+     * @return the filename
+     */
+    @Override
+    public String file() {
+        return reader.file();
+    }
+
+    /**
+     * Set the filename where data are stored
+     *
+     * @param f the filename
+     * @return this object
+     */
+    @Override
+    public DataReaderInterface<MatrixInterface<?>> file(String f) {
+        return this;
+    }
+
+    /**
+     * Set the file where data are stored
+     *
+     * @param f the filename
+     * @return this object
+     */
+    @Override
+    public DataReaderInterface<MatrixInterface<?>> file(File f) {
+        return this;
+    }
+
+    /**
+     * Read data
+     *
+     * @return the result
+     * @throws IOException if something goes wrong
+     */
+    @Override
+    public MatrixInterface<?> read() throws IOException {
+        return matrixFactory.of(reader.read());
+    }
+}
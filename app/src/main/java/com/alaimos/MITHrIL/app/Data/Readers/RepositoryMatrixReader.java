@@ -1,19 +1,36 @@
 package com.alaimos.MITHrIL.app.Data.Readers;
 
 import com.alaimos.MITHrIL.api.Commons.IOUtils;
+import com.alaimos.MITHrIL.api.Commons.Utils;
 import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Repository;
-import com.alaimos.MITHrIL.api.Data.Reader.BinaryReader;
 import com.alaimos.MITHrIL.api.Data.Reader.DataReaderInterface;
+import com.alaimos.MITHrIL.api.Math.MappedMatrix;
 import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrix;
+import com.alaimos.MITHrIL.app.Data.Records.PathwayMatrix;
 import com.alaimos.MITHrIL.app.Data.Records.RepositoryMatrix;
+import com.alaimos.MITHrIL.app.Data.Writers.RepositoryMatrixWriter;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 
+/**
+ * Read a repository matrix written by {@link RepositoryMatrixWriter}. The metapathway matrix is memory-mapped and passed
+ * to the matrix factory, which can wrap it or copy it with bulk operations. No deserialization is performed.
+ */
 public class RepositoryMatrixReader implements DataReaderInterface<RepositoryMatrix> {
 
-    private final BinaryReader<RepositoryMatrix> reader = new BinaryReader<>(RepositoryMatrix.class);
+    private final File file;
     private final MatrixFactoryInterface<?> matrixFactory;
 
     public RepositoryMatrixReader(
@@ -22,8 +39,49 @@ public class RepositoryMatrixReader implements DataReaderInterface<RepositoryMat
             boolean useCustomizedMatrix,
             int customizationHash
     ) {
-        var filename = "repository-matrix-" + r.hashCode() + (useCustomizedMatrix ? "-" + customizationHash : "") + ".bin";
-        reader.file(IOUtils.sanitizeFilename(filename));
+        this(r.hashCode(), matrixFactory, useCustomizedMatrix, customizationHash, false);
+    }
+
+    /**
+     * Read the matrix representation of a repository
+     *
+     * @param r                   the repository
+     * @param matrixFactory       the matrix factory
+     * @param useCustomizedMatrix true if the matrix was customized to the input
+     * @param customizationHash   the hash of the customization nodes
+     * @param blockInversion      true if the metapathway matrix was inverted with the block-triangular inversion
+     */
+    public RepositoryMatrixReader(
+            @NotNull Repository r,
+            @NotNull MatrixFactoryInterface<?> matrixFactory,
+            boolean useCustomizedMatrix,
+            int customizationHash,
+            boolean blockInversion
+    ) {
+        this(r.hashCode(), matrixFactory, useCustomizedMatrix, customizationHash, blockInversion);
+    }
+
+    /**
+     * Read the matrix representation of a repository given its hash code. It is used to read the matrix of a repository
+     * that has been changed after the matrix was written.
+     *
+     * @param repositoryHash      the hash code of the repository
+     * @param matrixFactory       the matrix factory
+     * @param useCustomizedMatrix true if the matrix was customized to the input
+     * @param customizationHash   the hash of the customization nodes
+     * @param blockInversion      true if the metapathway matrix was inverted with the block-triangular inversion
+     */
+    public RepositoryMatrixReader(
+            int repositoryHash,
+            @NotNull MatrixFactoryInterface<?> matrixFactory,
+            boolean useCustomizedMatrix,
+            int customizationHash,
+            boolean blockInversion
+    ) {
+        var filename = RepositoryMatrixWriter.filename(
+                repositoryHash, useCustomizedMatrix, customizationHash, blockInversion
+        );
+        this.file          = new File(Utils.getAppDir(), IOUtils.sanitizeFilename(filename));
         this.matrixFactory = matrixFactory;
     }
 
@@ -34,7 +92,7 @@ public class RepositoryMatrixReader implements DataReaderInterface<RepositoryMat
      */
     @Override
     public String file() {
-        return reader.file();
+        return file.getAbsolutePath();
     }
 
     /**
@@ -59,6 +117,35 @@ public class RepositoryMatrixReader implements DataReaderInterface<RepositoryMat
         return this;
     }
 
+    private static void readFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            var read = channel.read(buffer, position);
+            if (read < 0) throw new IOException("The matrix file is truncated");
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    private static String string(@NotNull ByteBuffer buffer) {
+        var length = buffer.getInt();
+        if (length < 0) return null;
+        var bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void indices(
+            @NotNull ByteBuffer buffer, int size, @NotNull Int2ObjectMap<String> index2Id,
+            @NotNull Object2IntMap<String> id2Index
+    ) {
+        for (var i = 0; i < size; i++) {
+            var id = string(buffer);
+            index2Id.put(i, id);
+            id2Index.put(id, i);
+        }
+    }
+
     /**
      * Read data
      *
@@ -67,6 +154,42 @@ public class RepositoryMatrixReader implements DataReaderInterface<RepositoryMat
      */
     @Override
     public RepositoryMatrix read() throws IOException {
-        return RepositoryMatrix.of(reader.read(), matrixFactory);
+        if (!file.exists()) throw new IOException("Filename is not set or file does not exists.");
+        try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            var header = ByteBuffer.allocate(RepositoryMatrixWriter.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            if (header.getLong() != RepositoryMatrixWriter.MAGIC) throw new IOException("Invalid matrix file");
+            if (header.getInt() != RepositoryMatrixWriter.VERSION) throw new IOException("Unsupported matrix file");
+            var nodes = header.getInt();
+            var pathways = header.getInt();
+            var nonZeros = header.getInt();
+            var metadataOffset = header.getLong();
+            var metadataLength = header.getLong();
+            var dataOffset = header.getLong();
+            if (metadataLength > Integer.MAX_VALUE) throw new IOException("Invalid matrix file");
+            var metadata = ByteBuffer.allocate((int) metadataLength).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, metadata, metadataOffset);
+            var pathwayId = string(metadata);
+            var nodeIndex2Id = new Int2ObjectOpenHashMap<String>(nodes);
+            var nodeId2Index = new Object2IntOpenHashMap<String>(nodes);
+            indices(metadata, nodes, nodeIndex2Id, nodeId2Index);
+            var pathwayIndex2Id = new Int2ObjectOpenHashMap<String>(pathways);
+            var pathwayId2Index = new Object2IntOpenHashMap<String>(pathways);
+            indices(metadata, pathways, pathwayIndex2Id, pathwayId2Index);
+            var rows = new int[nonZeros];
+            var columns = new int[nonZeros];
+            var values = new double[nonZeros];
+            for (var k = 0; k < nonZeros; k++) {
+                rows[k]    = metadata.getInt();
+                columns[k] = metadata.getInt();
+                values[k]  = metadata.getDouble();
+            }
+            var mapped = MappedMatrix.map(channel, dataOffset, nodes, nodes);
+            var pathwayMatrix = new PathwayMatrix(pathwayId, matrixFactory.of(mapped), nodeIndex2Id, nodeId2Index);
+            return new RepositoryMatrix(
+                    SparseMatrix.fromTriplets(nodes, pathways, rows, columns, values, nonZeros),
+                    pathwayIndex2Id, pathwayId2Index, pathwayMatrix
+            );
+        }
     }
 }
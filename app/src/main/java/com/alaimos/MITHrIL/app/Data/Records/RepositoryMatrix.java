@@ -4,6 +4,7 @@ import com.alaimos.MITHrIL.api.Data.Encoders.Int2ObjectMapEncoder;
 import com.alaimos.MITHrIL.api.Data.Encoders.Object2IntMapEncoder;
 import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
 import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrix;
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import org.jetbrains.annotations.Contract;
@@ -22,6 +23,9 @@ public final class RepositoryMatrix implements Serializable {
     private final PathwayMatrix pathwayMatrix;
     private transient Int2ObjectMap<String> index2Id;
     private transient Object2IntMap<String> id2Index;
+    private transient MatrixInterface<?> accumulatorOperator = null;
+    private transient RepositoryOperators operators = null;
+    private transient Long fingerprint = null;
 
     public RepositoryMatrix(
             MatrixInterface<?> matrix,
@@ -42,13 +46,23 @@ public final class RepositoryMatrix implements Serializable {
         return new RepositoryMatrix(matrix, index2Id, id2Index, pathwayMatrix);
     }
 
+    /**
+     * Convert the metapathway matrix of a repository matrix to a different implementation. The repository matrix is
+     * always kept in sparse format since dense implementations can multiply by it directly.
+     *
+     * @param m             the repository matrix
+     * @param matrixFactory the matrix factory used for the metapathway matrix
+     * @return a new repository matrix
+     */
     public static @NotNull RepositoryMatrix of(
             @NotNull RepositoryMatrix m, @NotNull MatrixFactoryInterface<?> matrixFactory
     ) {
-        return new RepositoryMatrix(
-                matrixFactory.of(m.matrix()), m.index2Id(), m.id2Index(),
+        var result = new RepositoryMatrix(
+                new SparseMatrix(m.matrix()), m.index2Id(), m.id2Index(),
                 PathwayMatrix.of(m.pathwayMatrix(), matrixFactory)
         );
+        if (m.accumulatorOperator != null) result.accumulatorOperator = matrixFactory.of(m.accumulatorOperator);
+        return result;
     }
 
     public MatrixInterface<?> matrix() {
@@ -67,6 +81,70 @@ public final class RepositoryMatrix implements Serializable {
         return pathwayMatrix;
     }
 
+    /**
+     * Get the accumulator operator R^T * (M - I), where R is the repository matrix and M is the metapathway matrix. The
+     * operator is not serialized together with the repository matrix, since it is stored in a separate cache file.
+     *
+     * @return the accumulator operator or null if it was not computed
+     */
+    public MatrixInterface<?> accumulatorOperator() {
+        return accumulatorOperator;
+    }
+
+    /**
+     * Set the accumulator operator
+     *
+     * @param accumulatorOperator the accumulator operator
+     * @return this object
+     */
+    public RepositoryMatrix accumulatorOperator(MatrixInterface<?> accumulatorOperator) {
+        this.accumulatorOperator = accumulatorOperator;
+        return this;
+    }
+
+    /**
+     * Acquire a reference to the operators derived from this repository matrix. The operators are shared by all the
+     * algorithms that use this repository matrix, and the reference must be released with
+     * {@link RepositoryOperators#close()}.
+     *
+     * @return the operators
+     */
+    public synchronized RepositoryOperators operators() {
+        if (operators == null) operators = new RepositoryOperators(this);
+        return operators.acquire();
+    }
+
+    /**
+     * Get a fingerprint of the metapathway matrix: a 64-bit hash of its node identifiers and of its values. Unlike the
+     * hash code of the repository, the fingerprint also changes when the metapathway matrix is customized to an input.
+     * It is computed on the first call and then cached.
+     *
+     * @return the fingerprint
+     */
+    public synchronized long fingerprint() {
+        if (fingerprint == null) {
+            var index2Id = pathwayMatrix.index2Id();
+            var m = pathwayMatrix.matrix();
+            var h = mix(0L, m.rows());
+            h = mix(h, m.columns());
+            for (var i = 0; i < index2Id.size(); i++) {
+                h = mix(h, Objects.hashCode(index2Id.get(i)));
+            }
+            for (var i = 0; i < m.rows(); i++) {
+                for (var v : m.row(i)) {
+                    h = mix(h, Double.doubleToLongBits(v));
+                }
+            }
+            fingerprint = h;
+        }
+        return fingerprint;
+    }
+
+    private static long mix(long h, long value) {
+        h ^= value * 0xC2B2AE3D27D4EB4FL;
+        return Long.rotateLeft(h, 31) * 0x9E3779B97F4A7C15L;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == this) return true;
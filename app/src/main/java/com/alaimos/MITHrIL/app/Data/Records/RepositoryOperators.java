@@ -0,0 +1,181 @@
+package com.alaimos.MITHrIL.app.Data.Records;
+
+import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
+import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrix;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The operators derived from a repository matrix: the transposed repository matrix, its sparse version, the
+ * metapathway matrix, and the fused accumulator operator, converted to the precision of a matrix factory. All the
+ * algorithms that run on the same repository matrix (for example, the MITHrIL runs of a batch) use the same operators,
+ * so each operator is computed lazily once and then shared. The operators are read-only and can be used concurrently by
+ * multiple threads.
+ * <p>
+ * The registry is reference-counted. A reference is acquired with {@link RepositoryMatrix#operators()} and released
+ * with {@link #close()}. When the last reference is released, the operators are closed, and they will be computed again
+ * on the next acquisition. Therefore, a service that runs many algorithms can hold a reference for the whole run to
+ * keep the operators alive between them.
+ */
+public final class RepositoryOperators implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(RepositoryOperators.class);
+    private final RepositoryMatrix repositoryMatrix;
+    private final ConcurrentHashMap<Key, Operator> operators = new ConcurrentHashMap<>();
+    private int references = 0;
+
+    RepositoryOperators(RepositoryMatrix repositoryMatrix) {
+        this.repositoryMatrix = repositoryMatrix;
+    }
+
+    /**
+     * Acquire a reference to the registry
+     *
+     * @return this object
+     */
+    synchronized RepositoryOperators acquire() {
+        references++;
+        return this;
+    }
+
+    /**
+     * Get the number of references to the registry
+     *
+     * @return the number of references
+     */
+    public synchronized int references() {
+        return references;
+    }
+
+    /**
+     * Get the repository matrix in sparse format. If the repository matrix is already sparse, it is returned as is.
+     *
+     * @return the sparse repository matrix
+     */
+    public @NotNull SparseMatrix sparseMatrix() {
+        var matrix = repositoryMatrix.matrix();
+        if (matrix instanceof SparseMatrix sparse) return sparse;
+        return (SparseMatrix) get(new Key("sparse", null, false), () -> new SparseMatrix(matrix));
+    }
+
+    /**
+     * Get the transpose of the sparse repository matrix
+     *
+     * @return the transposed sparse repository matrix
+     */
+    public @NotNull SparseMatrix sparseTransposed() {
+        return (SparseMatrix) get(new Key("sparseTransposed", null, false), () -> sparseMatrix().transpose());
+    }
+
+    /**
+     * Get the transposed repository matrix converted to the precision of a matrix factory. If the repository matrix is
+     * sparse, the sparse transpose is returned as it is, whatever the precision of the factory.
+     *
+     * @param matrixFactory the matrix factory
+     * @return the transposed repository matrix
+     */
+    public @NotNull MatrixInterface<?> transposed(@NotNull MatrixFactoryInterface<?> matrixFactory) {
+        return get(key("transposed", matrixFactory), () -> {
+            var matrix = repositoryMatrix.matrix();
+            if (matrix instanceof SparseMatrix) return sparseTransposed();
+            var transposed = matrix.transpose();
+            var result = matrixFactory.withPrecision(transposed);
+            if (result != transposed) closeQuietly(transposed);
+            return result;
+        });
+    }
+
+    /**
+     * Get the metapathway matrix converted to the precision of a matrix factory
+     *
+     * @param matrixFactory the matrix factory
+     * @return the metapathway matrix
+     */
+    public @NotNull MatrixInterface<?> pathwayMatrix(@NotNull MatrixFactoryInterface<?> matrixFactory) {
+        return get(
+                key("pathwayMatrix", matrixFactory),
+                () -> matrixFactory.withPrecision(repositoryMatrix.pathwayMatrix().matrix())
+        );
+    }
+
+    /**
+     * Get the fused accumulator operator R^T * (M - I) converted to the precision of a matrix factory
+     *
+     * @param matrixFactory the matrix factory
+     * @return the accumulator operator or null if it was not computed
+     */
+    public @Nullable MatrixInterface<?> accumulatorOperator(@NotNull MatrixFactoryInterface<?> matrixFactory) {
+        var operator = repositoryMatrix.accumulatorOperator();
+        if (operator == null) return null;
+        return get(key("accumulatorOperator", matrixFactory), () -> matrixFactory.withPrecision(operator));
+    }
+
+    /**
+     * Release a reference to the registry. When the last reference is released, all the operators are closed.
+     */
+    @Override
+    public synchronized void close() {
+        if (references <= 0) throw new IllegalStateException("The operators were already released");
+        if (--references > 0) return;
+        var closed = Collections.newSetFromMap(new IdentityHashMap<MatrixInterface<?>, Boolean>());
+        for (var operator : operators.values()) {
+            var matrix = operator.matrix;
+            if (matrix == null || isOwnedByRepository(matrix) || !closed.add(matrix)) continue;
+            closeQuietly(matrix);
+        }
+        operators.clear();
+    }
+
+    /**
+     * Get an operator, computing it if it is not in the registry. Each operator is computed by a single thread, while
+     * the other threads that need it wait for the result.
+     */
+    private @NotNull MatrixInterface<?> get(@NotNull Key key, @NotNull Supplier<MatrixInterface<?>> supplier) {
+        synchronized (this) {
+            if (references <= 0) throw new IllegalStateException("The operators must be acquired before use");
+        }
+        var operator = operators.computeIfAbsent(key, k -> new Operator());
+        synchronized (operator) {
+            if (operator.matrix == null) operator.matrix = supplier.get();
+            return operator.matrix;
+        }
+    }
+
+    /**
+     * Check if a matrix is owned by the repository matrix, and therefore must not be closed by the registry
+     */
+    private boolean isOwnedByRepository(MatrixInterface<?> matrix) {
+        return matrix == repositoryMatrix.matrix() || matrix == repositoryMatrix.pathwayMatrix().matrix() ||
+                matrix == repositoryMatrix.accumulatorOperator();
+    }
+
+    private static void closeQuietly(@NotNull MatrixInterface<?> matrix) {
+        try {
+            matrix.close();
+        } catch (IOException e) {
+            log.warn("Unable to release a repository operator", e);
+        }
+    }
+
+    private static @NotNull Key key(String name, @NotNull MatrixFactoryInterface<?> matrixFactory) {
+        return new Key(name, matrixFactory.getClass(), matrixFactory.singlePrecision());
+    }
+
+    private record Key(String name, Class<?> factory, boolean singlePrecision) {
+    }
+
+    private static final class Operator {
+
+        private MatrixInterface<?> matrix = null;
+    }
+}
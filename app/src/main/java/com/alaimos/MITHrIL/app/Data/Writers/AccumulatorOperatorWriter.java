@@ -0,0 +1,69 @@
+package com.alaimos.MITHrIL.app.Data.Writers;
+
+import com.alaimos.MITHrIL.api.Commons.IOUtils;
+import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Repository;
+import com.alaimos.MITHrIL.api.Data.Writer.BinaryWriter;
+import com.alaimos.MITHrIL.api.Data.Writer.DataWriterInterface;
+import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+
+public class AccumulatorOperatorWriter implements DataWriterInterface<MatrixInterface<?>> {
+
+    private final BinaryWriter<MatrixInterface<?>> writer = new BinaryWriter<>();
+
+    public AccumulatorOperatorWriter(
+            @NotNull Repository r,
+            boolean useCustomizedMatrix,
+            int customizationHash
+    ) {
+        this(r, useCustomizedMatrix, customizationHash, false);
+    }
+
+    public AccumulatorOperatorWriter(
+            @NotNull Repository r,
+            boolean useCustomizedMatrix,
+            int customizationHash,
+            boolean blockInversion
+    ) {
+        var filename = "repository-operator-" + r.hashCode() + (useCustomizedMatrix ? "-" + customizationHash : "") +
+                (blockInversion ? "-block" : "") + ".bin";
+        writer.file(IOUtils.sanitizeFilename(filename));
+    }
+
+    /**
+     * Get the file where data are stored
+     *
+     * @return the file
+     */
+    @Override
+    public File file() {
+        return writer.file();
+    }
+
+    /**
+     * Set the filename where data are stored (the file will be created in any location)
+     *
+     * @param f the filename
+     * @return this object for a fluent interface
+     */
+    @Override
+    public DataWriterInterface<MatrixInterface<?>> file(File f) {
+        return this;
+    }
+
+    /**
+     * Write data
+     *
+     * @param data the data that will be written into a file
+     * @return this object for a fluent interface
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public DataWriterInterface<MatrixInterface<?>> write(MatrixInterface<?> data) throws IOException {
+        writer.write(data);
+        return this;
+    }
+}
@@ -1,26 +1,87 @@
 package com.alaimos.MITHrIL.app.Data.Writers;
 
 import com.alaimos.MITHrIL.api.Commons.IOUtils;
+import com.alaimos.MITHrIL.api.Commons.Utils;
 import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Repository;
-import com.alaimos.MITHrIL.api.Data.Writer.BinaryWriter;
 import com.alaimos.MITHrIL.api.Data.Writer.DataWriterInterface;
+import com.alaimos.MITHrIL.api.Math.MappedMatrix;
 import com.alaimos.MITHrIL.app.Data.Records.RepositoryMatrix;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
+/**
+ * Write a repository matrix in a raw format that can be memory-mapped. All numbers are stored in little-endian order.
+ * The file contains:
+ * <ul>
+ *     <li>a header of {@link #HEADER_SIZE} bytes: magic number, version, number of nodes (n), number of pathways
+ *     (p), number of non-zero elements of the repository matrix, offset and length of the metadata, offset of the
+ *     metapathway matrix;</li>
+ *     <li>the metadata: the identifier of the metapathway, the node identifiers and the pathway identifiers (sorted by
+ *     index), and the non-zero elements of the repository matrix as (row, column, value) triplets;</li>
+ *     <li>the n x n metapathway matrix as raw doubles, ordered by rows, starting at a page-aligned offset.</li>
+ * </ul>
+ * The file is first written to a temporary file and then atomically moved in place, so concurrent processes never map
+ * a partially written file.
+ */
 public class RepositoryMatrixWriter implements DataWriterInterface<RepositoryMatrix> {
 
-    private final BinaryWriter<RepositoryMatrix> writer = new BinaryWriter<>();
+    public static final long MAGIC = 0x58544D524854494DL; // "MITHRMTX"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+
+    private final File file;
 
     public RepositoryMatrixWriter(
             @NotNull Repository r,
             boolean useCustomizedMatrix,
             int customizationHash
     ) {
-        var filename = "repository-matrix-" + r.hashCode() + (useCustomizedMatrix ? "-" + customizationHash : "") + ".bin";
-        writer.file(IOUtils.sanitizeFilename(filename));
+        this(r, useCustomizedMatrix, customizationHash, false);
+    }
+
+    /**
+     * Write the matrix representation of a repository
+     *
+     * @param r                   the repository
+     * @param useCustomizedMatrix true if the matrix was customized to the input
+     * @param customizationHash   the hash of the customization nodes
+     * @param blockInversion      true if the metapathway matrix was inverted with the block-triangular inversion
+     */
+    public RepositoryMatrixWriter(
+            @NotNull Repository r,
+            boolean useCustomizedMatrix,
+            int customizationHash,
+            boolean blockInversion
+    ) {
+        var filename = filename(r.hashCode(), useCustomizedMatrix, customizationHash, blockInversion);
+        file = new File(Utils.getAppDir(), IOUtils.sanitizeFilename(filename));
+    }
+
+    /**
+     * Get the name of the file that contains the matrix representation of a repository. The inversion mode is part of
+     * the name, since the two inversions produce slightly different matrices.
+     *
+     * @param repositoryHash      the hash code of the repository
+     * @param useCustomizedMatrix true if the matrix was customized to the input
+     * @param customizationHash   the hash of the customization nodes
+     * @param blockInversion      true if the metapathway matrix was inverted with the block-triangular inversion
+     * @return the name of the file
+     */
+    public static @NotNull String filename(
+            int repositoryHash, boolean useCustomizedMatrix, int customizationHash, boolean blockInversion
+    ) {
+        return "repository-matrix-" + repositoryHash + (useCustomizedMatrix ? "-" + customizationHash : "") +
+                (blockInversion ? "-block" : "") + ".mtx";
     }
 
     /**
@@ -30,7 +91,7 @@ public class RepositoryMatrixWriter implements DataWriterInterface<RepositoryMat
      */
     @Override
     public File file() {
-        return writer.file();
+        return file;
     }
 
     /**
@@ -44,6 +105,73 @@ public class RepositoryMatrixWriter implements DataWriterInterface<RepositoryMat
         return this;
     }
 
+    private static byte @NotNull [][] encode(@NotNull Int2ObjectMap<String> index2Id) {
+        var result = new byte[index2Id.size()][];
+        for (var i = 0; i < result.length; i++) {
+            var id = index2Id.get(i);
+            if (id == null) throw new IllegalArgumentException("Index maps must contain all the indices");
+            result[i] = id.getBytes(StandardCharsets.UTF_8);
+        }
+        return result;
+    }
+
+    private static long size(byte @NotNull [][] strings) {
+        var size = 0L;
+        for (var s : strings) {
+            size += Integer.BYTES + s.length;
+        }
+        return size;
+    }
+
+    private static void put(@NotNull ByteBuffer buffer, byte[] string) {
+        if (string == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(string.length).put(string);
+        }
+    }
+
+    private static int nonZeros(@NotNull RepositoryMatrix data) {
+        var matrix = data.matrix();
+        var nonZeros = 0;
+        for (var i = 0; i < matrix.rows(); i++) {
+            for (var v : matrix.row(i)) {
+                if (v != 0.0) nonZeros++;
+            }
+        }
+        return nonZeros;
+    }
+
+    /**
+     * Build the metadata section of the file
+     *
+     * @param data     the repository matrix
+     * @param nonZeros the number of non-zero elements of the repository matrix
+     * @return the metadata
+     */
+    private static @NotNull ByteBuffer metadata(@NotNull RepositoryMatrix data, int nonZeros) {
+        var pathwayMatrix = data.pathwayMatrix();
+        var pathwayId = (pathwayMatrix.pathwayId() == null) ? null :
+                pathwayMatrix.pathwayId().getBytes(StandardCharsets.UTF_8);
+        var nodes = encode(pathwayMatrix.index2Id());
+        var pathways = encode(data.index2Id());
+        var matrix = data.matrix();
+        var size = Integer.BYTES + ((pathwayId == null) ? 0 : pathwayId.length) + size(nodes) + size(pathways) +
+                (long) nonZeros * (2 * Integer.BYTES + Double.BYTES);
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("Metadata too large");
+        var buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        put(buffer, pathwayId);
+        for (var n : nodes) put(buffer, n);
+        for (var p : pathways) put(buffer, p);
+        for (var i = 0; i < matrix.rows(); i++) {
+            var row = matrix.row(i);
+            for (var j = 0; j < row.length; j++) {
+                if (row[j] != 0.0) buffer.putInt(i).putInt(j).putDouble(row[j]);
+            }
+        }
+        return buffer.flip();
+    }
+
     /**
      * Write data
      *
@@ -52,8 +180,41 @@ public class RepositoryMatrixWriter implements DataWriterInterface<RepositoryMat
      * @throws IOException if an I/O error occurs
      */
     @Override
-    public DataWriterInterface<RepositoryMatrix> write(RepositoryMatrix data) throws IOException {
-        writer.write(data);
+    public DataWriterInterface<RepositoryMatrix> write(@NotNull RepositoryMatrix data) throws IOException {
+        var pathwayMatrix = data.pathwayMatrix().matrix();
+        var nonZeros = nonZeros(data);
+        var metadata = metadata(data, nonZeros);
+        var metadataLength = metadata.remaining();
+        var dataOffset = MappedMatrix.align(HEADER_SIZE + metadataLength);
+        var header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(MAGIC)
+              .putInt(VERSION)
+              .putInt(pathwayMatrix.rows())
+              .putInt(data.matrix().columns())
+              .putInt(nonZeros)
+              .putLong(HEADER_SIZE)
+              .putLong(metadataLength)
+              .putLong(dataOffset)
+              .flip();
+        var tmp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+            try (var channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(channel, header, 0);
+                writeFully(channel, metadata, HEADER_SIZE);
+                MappedMatrix.write(channel, dataOffset, pathwayMatrix);
+                channel.force(false);
+            }
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
         return this;
     }
+
+    private static void writeFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
 }
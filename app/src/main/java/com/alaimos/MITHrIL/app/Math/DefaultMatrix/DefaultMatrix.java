@@ -1,11 +1,15 @@
 package com.alaimos.MITHrIL.app.Math.DefaultMatrix;
 
 import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrix;
+import com.alaimos.MITHrIL.api.Math.SparseOperand;
 import org.jetbrains.annotations.NotNull;
+import org.ojalgo.function.constant.PrimitiveMath;
 import org.ojalgo.matrix.MatrixR064;
 import org.ojalgo.matrix.decomposition.QR;
 import org.ojalgo.matrix.decomposition.SingularValue;
 import org.ojalgo.matrix.store.RawStore;
+import org.ojalgo.structure.Access1D;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -22,10 +26,31 @@ public class DefaultMatrix implements MatrixInterface<DefaultMatrix> {
 
     private transient MatrixR064 internalMatrix;
 
+    /**
+     * The mutable storage wrapped by internalMatrix, if any. It is available only when this object owns its storage,
+     * and it is used by the destination-aware operations to write the results without allocating new matrices.
+     */
+    private transient RawStore store = null;
+
+    /**
+     * True if the storage is also used by another matrix, because one of the two was built from the other with the copy
+     * constructor. A shared storage is copied before it is modified in place, so that the two matrices never see each
+     * other's changes.
+     */
+    private transient boolean shared = false;
+
     private static MatrixR064 byRowMatrix(double[][] matrix) {
         return MatrixR064.FACTORY.makeWrapper(RawStore.wrap(matrix));
     }
 
+    private static double[][] byRowArray(double[] matrix, int rows, int columns) {
+        var tmpMatrix = new double[rows][columns];
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(matrix, i * columns, tmpMatrix[i], 0, columns);
+        }
+        return tmpMatrix;
+    }
+
     private static MatrixR064 byColumnMatrix(double[][] matrix) {
         return MatrixR064.FACTORY.makeWrapper(RawStore.wrap(matrix).transpose());
     }
@@ -34,33 +59,93 @@ public class DefaultMatrix implements MatrixInterface<DefaultMatrix> {
         internalMatrix = matrix;
     }
 
+    /**
+     * Build a matrix that uses a 2D array (array of rows) as its storage without copying it. It is used when the array
+     * has just been allocated, and nobody else holds a reference to it.
+     *
+     * @param matrix the 2D array
+     * @return a new matrix
+     */
+    static @NotNull DefaultMatrix wrapping(double[][] matrix) {
+        var result = new DefaultMatrix((MatrixR064) null);
+        result.wrap(matrix);
+        return result;
+    }
+
     public DefaultMatrix(double[][] matrix) {
         this(matrix, MatrixInterface.Direction.ROW);
     }
 
+    /**
+     * Build a matrix from a 2D array. The array is copied, so that in-place operations (i.e. {@link #fill(double[])})
+     * never modify the input of the caller.
+     *
+     * @param matrix    the 2D array
+     * @param direction the direction of the array (array of rows or array of columns)
+     */
     public DefaultMatrix(double[][] matrix, @NotNull MatrixInterface.Direction direction) {
-        internalMatrix = switch (direction) {
-            case ROW -> byRowMatrix(matrix);
-            case COLUMN -> byColumnMatrix(matrix);
-        };
+        switch (direction) {
+            case ROW -> wrap(Arrays.stream(matrix).map(double[]::clone).toArray(double[][]::new));
+            case COLUMN -> internalMatrix = byColumnMatrix(matrix);
+        }
     }
 
     public DefaultMatrix(double[] matrix, int rows, int columns) {
-        var tmpMatrix = new double[rows][columns];
-        for (int i = 0; i < rows; i++) {
-            System.arraycopy(matrix, i * columns, tmpMatrix[i], 0, columns);
-        }
-        internalMatrix = byRowMatrix(tmpMatrix);
+        wrap(byRowArray(matrix, rows, columns));
     }
 
+    /**
+     * Build a copy of a matrix. The storage of another {@link DefaultMatrix} is shared until one of the two matrices is
+     * modified in place, which copies it first (copy-on-write). Therefore, copies that are only read (for example, the
+     * repository matrices) do not double the memory, and in-place operations on the source never modify the new matrix
+     * (and vice versa). The elements of other implementations are always copied.
+     *
+     * @param matrix the matrix to copy
+     */
     public DefaultMatrix(@NotNull MatrixInterface<?> matrix) {
-        if (matrix instanceof DefaultMatrix dm) {
+        if (matrix instanceof DefaultMatrix dm && dm.internalMatrix != null) {
             internalMatrix = dm.internalMatrix;
+            store          = dm.store;
+            if (store != null) {
+                shared    = true;
+                dm.shared = true;
+            }
         } else {
-            internalMatrix = byRowMatrix(matrix.raw2D());
+            wrap(matrix.raw2D());
         }
     }
 
+    /**
+     * Use a 2D array (array of rows) as the mutable storage of this matrix
+     *
+     * @param matrix the 2D array
+     */
+    private void wrap(double[][] matrix) {
+        store          = RawStore.wrap(matrix);
+        internalMatrix = MatrixR064.FACTORY.makeWrapper(store);
+        shared         = false;
+    }
+
+    /**
+     * Get the mutable storage of this matrix before modifying it in place. If the storage is shared with another
+     * matrix, it is copied first.
+     *
+     * @return the mutable storage, or null if this matrix does not own one
+     */
+    private RawStore writableStore() {
+        if (shared) wrap(Arrays.stream(store.data).map(double[]::clone).toArray(double[][]::new));
+        return store;
+    }
+
+    /**
+     * Get the fastest accessor to the elements of this matrix
+     *
+     * @return the mutable storage if available, the internal matrix otherwise
+     */
+    private Access1D<Double> access() {
+        return (store != null) ? store : internalMatrix;
+    }
+
     /**
      * Transpose the matrix
      *
@@ -76,6 +161,8 @@ public class DefaultMatrix implements MatrixInterface<DefaultMatrix> {
      */
     @Override
     public void transposeInPlace() {
+        store          = null;
+        shared         = false;
         internalMatrix = internalMatrix.transpose();
     }
 
@@ -110,6 +197,8 @@ public class DefaultMatrix implements MatrixInterface<DefaultMatrix> {
      */
     @Override
     public void invertInPlace() {
+        store          = null;
+        shared         = false;
         internalMatrix = invertInternal();
     }
 
@@ -152,6 +241,9 @@ public class DefaultMatrix implements MatrixInterface<DefaultMatrix> {
     public DefaultMatrix preMultiply(MatrixInterface<?> matrix) {
         if (matrix instanceof DefaultMatrix dm) {
             return new DefaultMatrix(dm.internalMatrix.multiply(internalMatrix));
+        } else if (matrix instanceof SparseMatrix sm) {
+            var columns = columns();
+            return new DefaultMatrix(sm.postMultiplyRaw(raw1D(), columns), sm.rows(), columns);
         } else {
             return this.preMultiply(new DefaultMatrix(matrix));
         }
@@ -168,6 +260,27 @@ public class DefaultMatrix implements MatrixInterface<DefaultMatrix> {
         return MatrixR064.FACTORY.row(vector).multiply(internalMatrix).toRawCopy1D();
     }
 
+    /**
+     * Pre-multiply this matrix by another matrix, storing the result in the destination matrix. That is, the operation
+     * is performed as destination = matrix * this.
+     *
+     * @param matrix      the other matrix
+     * @param destination the destination matrix
+     */
+    @Override
+    public void preMultiplyInto(MatrixInterface<?> matrix, @NotNull MatrixInterface<?> destination) {
+        if (matrix instanceof SparseMatrix sm && store != null && destination instanceof DefaultMatrix dst &&
+            dst.store != null) {
+            sm.postMultiplyRawInto(store.data, dst.writableStore().data);
+        } else if (matrix instanceof SparseMatrix sm) {
+            destination.fill(sm.postMultiplyRaw(raw1D(), columns()));
+        } else if (matrix instanceof DefaultMatrix dm && destination instanceof DefaultMatrix dst && dst.store != null) {
+            dst.writableStore().fillByMultiplying(dm.access(), access());
+        } else {
+            MatrixInterface.super.preMultiplyInto(matrix, destination);
+        }
+    }
+
     /**
      * Post-multiply this matrix by another matrix. That is, the operation is performed as this * matrix.
      *
@@ -178,11 +291,78 @@ public class DefaultMatrix implements MatrixInterface<DefaultMatrix> {
     public DefaultMatrix postMultiply(MatrixInterface<?> matrix) {
         if (matrix instanceof DefaultMatrix dm) {
             return new DefaultMatrix(internalMatrix.multiply(dm.internalMatrix));
+        } else if (matrix instanceof SparseMatrix sm) {
+            return postMultiplySparse(sm);
         } else {
             return this.postMultiply(new DefaultMatrix(matrix));
         }
     }
 
+    /**
+     * Post-multiply this matrix by a sparse matrix. That is, the operation is performed as this * matrix. Only the
+     * columns of this matrix corresponding to the non-empty rows of the sparse matrix are gathered and multiplied by
+     * the compacted sparse matrix.
+     *
+     * @param matrix the sparse matrix
+     * @return a new matrix
+     */
+    @Override
+    public DefaultMatrix postMultiplySparse(@NotNull SparseOperand<?> matrix) {
+        var result = wrapping(new double[rows()][matrix.columns()]);
+        postMultiplySparseInto(matrix, result);
+        return result;
+    }
+
+    /**
+     * Post-multiply this matrix by a sparse matrix, storing the result in the destination matrix. That is, the operation
+     * is performed as destination = this * matrix. Only the columns of this matrix corresponding to the non-empty rows
+     * of the sparse matrix are gathered and multiplied by the compacted sparse matrix.
+     *
+     * @param matrix      the sparse matrix
+     * @param destination the destination matrix
+     */
+    @Override
+    public void postMultiplySparseInto(@NotNull SparseOperand<?> matrix, @NotNull MatrixInterface<?> destination) {
+        if (destination instanceof DefaultMatrix dst && dst.store != null) {
+            var nonEmptyRows = matrix.nonEmptyRows();
+            if (nonEmptyRows.length == 0) {
+                dst.writableStore().fillAll(0.0);
+                return;
+            }
+            var compact = RawStore.wrap(
+                    byRowArray(matrix.compactRows(nonEmptyRows), nonEmptyRows.length, matrix.columns())
+            );
+            dst.writableStore().fillByMultiplying(gatherColumns(nonEmptyRows), compact);
+        } else {
+            MatrixInterface.super.postMultiplySparseInto(matrix, destination);
+        }
+    }
+
+    /**
+     * Copy a subset of the columns of this matrix
+     *
+     * @param indices the indices of the columns
+     * @return a new (rows() x indices.length) store
+     */
+    private @NotNull RawStore gatherColumns(int @NotNull [] indices) {
+        var rows = rows();
+        var gathered = new double[rows][indices.length];
+        IntStream.range(0, rows).parallel().forEach(i -> {
+            var row = gathered[i];
+            if (store != null) {
+                var source = store.data[i];
+                for (var c = 0; c < indices.length; c++) {
+                    row[c] = source[indices[c]];
+                }
+            } else {
+                for (var c = 0; c < indices.length; c++) {
+                    row[c] = internalMatrix.doubleValue(i, indices[c]);
+                }
+            }
+        });
+        return RawStore.wrap(gathered);
+    }
+
     /**
      * Post-multiply this matrix by a vector.
      *
@@ -240,6 +420,76 @@ public class DefaultMatrix implements MatrixInterface<DefaultMatrix> {
         return new DefaultMatrix(internalMatrix.subtract(value));
     }
 
+    /**
+     * Subtract a matrix from this matrix, storing the result in the destination matrix. That is, the operation is
+     * performed as destination = this - matrix.
+     *
+     * @param matrix      the matrix
+     * @param destination the destination matrix
+     */
+    @Override
+    public void subtractInto(MatrixInterface<?> matrix, @NotNull MatrixInterface<?> destination) {
+        if (matrix instanceof DefaultMatrix dm && destination instanceof DefaultMatrix dst && dst.store != null) {
+            if (store != null && dm.store != null) {
+                var left = store.data;
+                var right = dm.store.data;
+                var result = dst.writableStore().data;
+                IntStream.range(0, result.length).parallel().forEach(i -> {
+                    for (var j = 0; j < result[i].length; j++) {
+                        result[i][j] = left[i][j] - right[i][j];
+                    }
+                });
+            } else {
+                dst.writableStore().fillMatching(access(), PrimitiveMath.SUBTRACT, dm.access());
+            }
+        } else {
+            MatrixInterface.super.subtractInto(matrix, destination);
+        }
+    }
+
+    /**
+     * Replace the content of this matrix with the values in the array. The array stores the matrix by rows.
+     *
+     * @param data the new content of the matrix
+     */
+    @Override
+    public void fill(double @NotNull [] data) {
+        var rows = rows();
+        var columns = columns();
+        if (data.length != rows * columns) throw new IllegalArgumentException("Incompatible matrix size");
+        if (store == null || shared) {
+            wrap(byRowArray(data, rows, columns));
+            return;
+        }
+        for (var i = 0; i < rows; i++) {
+            System.arraycopy(data, i * columns, store.data[i], 0, columns);
+        }
+    }
+
+    /**
+     * Replace the content of a row of this matrix with the values in the array
+     *
+     * @param i    the row number
+     * @param data the new content of the row
+     */
+    @Override
+    public void fillRow(int i, double @NotNull [] data) {
+        var columns = columns();
+        if (data.length != columns) throw new IllegalArgumentException("Incompatible row size");
+        if (store == null) wrap(raw2D());
+        System.arraycopy(data, 0, writableStore().data[i], 0, columns);
+    }
+
+    /**
+     * Check if the content of this matrix can be replaced in place with {@link #fill(double[])}
+     *
+     * @return always true
+     */
+    @Override
+    public boolean supportsFill() {
+        return true;
+    }
+
     /**
      * Get the value of a cell
      *
@@ -263,6 +513,18 @@ public class DefaultMatrix implements MatrixInterface<DefaultMatrix> {
         return internalMatrix.row(i).toRawCopy1D();
     }
 
+    @Override
+    public void rowInto(int i, double @NotNull [] destination) {
+        if (store != null) {
+            System.arraycopy(store.data[i], 0, destination, 0, columns());
+        } else {
+            var columns = columns();
+            for (var j = 0; j < columns; j++) {
+                destination[j] = internalMatrix.doubleValue(i, j);
+            }
+        }
+    }
+
     /**
      * Get a column of the matrix
      *
@@ -313,7 +575,7 @@ public class DefaultMatrix implements MatrixInterface<DefaultMatrix> {
         var rows = rows();
         var columns = columns();
         var receiver = new double[rows * columns];
-        var tmpMatrix = raw2D();
+        var tmpMatrix = (store != null) ? store.data : raw2D();
         for (int i = 0; i < rows; i++) {
             System.arraycopy(tmpMatrix[i], 0, receiver, i * columns, columns);
         }
@@ -340,7 +602,7 @@ public class DefaultMatrix implements MatrixInterface<DefaultMatrix> {
                                                       .mapToDouble(j -> function.apply(val(i, j), i, j))
                                                       .toArray())
                               .toArray(double[][]::new);
-        return new DefaultMatrix(result);
+        return wrapping(result);
     }
 
     @Override
@@ -363,7 +625,9 @@ public class DefaultMatrix implements MatrixInterface<DefaultMatrix> {
      */
     @Override
     public void close() {
+        store          = null;
         internalMatrix = null;
+        shared         = false;
     }
 
     @Serial
@@ -376,7 +640,7 @@ public class DefaultMatrix implements MatrixInterface<DefaultMatrix> {
     private void readObject(@NotNull ObjectInputStream ois) throws ClassNotFoundException, IOException {
         ois.defaultReadObject();
         double[][] raw = (double[][]) ois.readObject();
-        internalMatrix = byRowMatrix(raw);
+        wrap(raw);
     }
 
 }
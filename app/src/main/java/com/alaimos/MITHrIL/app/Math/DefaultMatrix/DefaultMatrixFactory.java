@@ -1,5 +1,6 @@
 package com.alaimos.MITHrIL.app.Math.DefaultMatrix;
 
+import com.alaimos.MITHrIL.api.Math.MappedMatrix;
 import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
 import com.alaimos.MITHrIL.api.Math.MatrixInterface;
 import org.ojalgo.OjAlgoUtils;
@@ -85,4 +86,16 @@ public class DefaultMatrixFactory implements MatrixFactoryInterface<DefaultMatri
     public DefaultMatrix of(MatrixInterface<?> matrix) {
         return new DefaultMatrix(matrix);
     }
+
+    /**
+     * Create a new matrix from a memory-mapped matrix file. The rows are copied in parallel into the arrays wrapped by
+     * the new matrix.
+     *
+     * @param matrix the mapped matrix
+     * @return a new matrix
+     */
+    @Override
+    public DefaultMatrix of(MappedMatrix matrix) {
+        return DefaultMatrix.wrapping(matrix.toArray2D());
+    }
 }
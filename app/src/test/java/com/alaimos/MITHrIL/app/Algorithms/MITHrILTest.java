@@ -7,23 +7,30 @@ import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Weights.DefaultNodeWeightComp
 import com.alaimos.MITHrIL.api.Math.PValue.Adjusters.None;
 import com.alaimos.MITHrIL.api.Math.PValue.Combiners.ProductOfP;
 import com.alaimos.MITHrIL.api.Math.StreamMedian.ExactMedianComputation;
+import com.alaimos.MITHrIL.app.Algorithms.Metapathway.DisableMatrixCacheExtension;
 import com.alaimos.MITHrIL.app.Algorithms.Metapathway.MatrixBuilderFromMetapathway;
+import com.alaimos.MITHrIL.app.Data.Readers.RepositoryMatrixReader;
 import com.alaimos.MITHrIL.app.Data.Records.ExpressionInput;
+import com.alaimos.MITHrIL.app.Data.Records.MITHrILOutput;
 import com.alaimos.MITHrIL.app.Data.Records.RepositoryMatrix;
+import com.alaimos.MITHrIL.app.Data.Writers.RepositoryMatrixWriter;
 import com.alaimos.MITHrIL.app.Math.DefaultMatrix.DefaultMatrixFactory;
 import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+@ExtendWith(DisableMatrixCacheExtension.class)
 class MITHrILTest {
 
     @Contract("_ -> new")
@@ -105,7 +112,6 @@ class MITHrILTest {
     @DisplayName("Repository Matrix Builder")
     @Test
     void testRepositoryMatrix() {
-        MatrixBuilderFromMetapathway.USE_CACHE = false;
         var r = generateTestRepository();
         var f = new DefaultMatrixFactory();
         var m = generateTestRepositoryMatrix(r, f);
@@ -144,10 +150,33 @@ class MITHrILTest {
         assertArrayEquals(new double[]{1d, 1d, 1d, 1d, 1d, 1d}, rMtx.column(0), 1e-10);
     }
 
+    @DisplayName("Repository Matrix Cache")
+    @Test
+    void testRepositoryMatrixCache() throws IOException {
+        var r = generateTestRepository();
+        var f = new DefaultMatrixFactory();
+        var m = generateTestRepositoryMatrix(r, f);
+        var writer = new RepositoryMatrixWriter(r, true, 42);
+        writer.write(m);
+        try {
+            var read = new RepositoryMatrixReader(r, f, true, 42).read();
+            assertEquals(m.pathwayMatrix().pathwayId(), read.pathwayMatrix().pathwayId());
+            assertEquals(m.pathwayMatrix().id2Index(), read.pathwayMatrix().id2Index());
+            assertEquals(m.pathwayMatrix().index2Id(), read.pathwayMatrix().index2Id());
+            assertEquals(m.id2Index(), read.id2Index());
+            assertEquals(m.index2Id(), read.index2Id());
+            assertArrayEquals(m.pathwayMatrix().matrix().raw1D(), read.pathwayMatrix().matrix().raw1D(), 0.0);
+            assertArrayEquals(m.matrix().raw1D(), read.matrix().raw1D(), 0.0);
+            // The matrices inverted with the two modes are cached separately
+            assertThrows(IOException.class, () -> new RepositoryMatrixReader(r, f, true, 42, true).read());
+        } finally {
+            assertTrue(writer.file().delete());
+        }
+    }
+
     @DisplayName("MITHrIL Algorithm")
     @Test
     void testRun() throws IOException {
-        MatrixBuilderFromMetapathway.USE_CACHE = false;
         var r = generateTestRepository();
         var f = new DefaultMatrixFactory();
         var m = generateTestRepositoryMatrix(r, f);
@@ -187,4 +216,124 @@ class MITHrILTest {
             assertTrue(o.pathwayPValues()[0] < 0.001);
         }
     }
-}
\ No newline at end of file
+
+    @NotNull
+    private MITHrILOutput runMITHrIL(@NotNull Repository r, RepositoryMatrix m, DefaultMatrixFactory f)
+            throws IOException {
+        try (var a = newMITHrIL(r, m, f, 123)) {
+            a.run();
+            return a.output();
+        }
+    }
+
+    @DisplayName("MITHrIL Algorithm with accumulator operator")
+    @Test
+    void testRunWithAccumulatorOperator() throws IOException {
+        var r = generateTestRepository();
+        var f = new DefaultMatrixFactory();
+        var m = generateTestRepositoryMatrix(r, f);
+        var mo = MatrixBuilderFromMetapathway.build(r, f, true);
+        assertNull(m.accumulatorOperator());
+        assertNotNull(mo.accumulatorOperator());
+        assertEquals(1, mo.accumulatorOperator().rows());
+        assertEquals(6, mo.accumulatorOperator().columns());
+        var expected = runMITHrIL(r, m, f);
+        var actual = runMITHrIL(r, mo, f);
+        assertArrayEquals(expected.nodePerturbations(), actual.nodePerturbations(), 1e-10);
+        assertArrayEquals(expected.nodeAccumulators(), actual.nodeAccumulators(), 1e-10);
+        assertArrayEquals(expected.pathwayAccumulators(), actual.pathwayAccumulators(), 1e-10);
+        assertArrayEquals(expected.pathwayCorrectedAccumulators(), actual.pathwayCorrectedAccumulators(), 1e-10);
+        assertArrayEquals(expected.pathwayPValues(), actual.pathwayPValues(), 1e-10);
+    }
+
+    private @NotNull MITHrIL newMITHrIL(@NotNull Repository r, RepositoryMatrix m, DefaultMatrixFactory f, long seed) {
+        return new MITHrIL().batchSize(300)
+                            .numberOfRepetitions(1000)
+                            .matrixFactory(f)
+                            .noPValue(false)
+                            .medianAlgorithmFactory(ExactMedianComputation::new)
+                            .probabilityComputation(new DefaultProbabilityComputation())
+                            .pValueAdjuster(new None())
+                            .pValueCombiner(new ProductOfP())
+                            .repository(r)
+                            .repositoryMatrix(m)
+                            .input(generateExpressions())
+                            .random(new Random(seed));
+    }
+
+    @DisplayName("MITHrIL Algorithm with sequential p-values")
+    @Test
+    void testSequentialPValues() throws IOException {
+        var r = generateTestRepository();
+        var f = new DefaultMatrixFactory();
+        var m = generateTestRepositoryMatrix(r, f);
+        // With 1000 repetitions, the exceedance limit is 6, so the nodes that are not significant stop early
+        var alpha = 0.005;
+        MITHrILOutput expected, actual;
+        try (var a = newMITHrIL(r, m, f, 123)) {
+            a.run();
+            expected = a.output();
+        }
+        try (var a = newMITHrIL(r, m, f, 123).sequentialAlpha(alpha)) {
+            a.run();
+            actual = a.output();
+        }
+        assertArrayEquals(expected.pathwayAccumulators(), actual.pathwayAccumulators(), 1e-10);
+        var stopped = 0;
+        for (var i = 0; i < expected.nodePValues().length; i++) {
+            var e = expected.nodePValues()[i];
+            var o = actual.nodePValues()[i];
+            // The decision at level alpha does not change
+            assertEquals(e <= alpha, o <= alpha);
+            if (e != o) stopped++;
+        }
+        assertTrue(stopped > 0);
+        for (var i = 0; i < expected.pathwayNetworkProbabilities().length; i++) {
+            var e = expected.pathwayNetworkProbabilities()[i];
+            var o = actual.pathwayNetworkProbabilities()[i];
+            assertEquals(e <= alpha, o <= alpha);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new MITHrIL().sequentialAlpha(1.0));
+    }
+
+    @DisplayName("MITHrIL Algorithm in fused mode")
+    @Test
+    void testFusedRun() throws IOException {
+        var r = generateTestRepository();
+        var f = new DefaultMatrixFactory();
+        var m = generateTestRepositoryMatrix(r, f);
+        var expected = new ArrayList<MITHrILOutput>();
+        for (var seed = 0; seed < 3; seed++) {
+            try (var a = newMITHrIL(r, m, f, seed)) {
+                a.run();
+                expected.add(a.output());
+            }
+        }
+        var actual = new ArrayList<MITHrILOutput>();
+        var samples = new ArrayList<MITHrIL>();
+        for (var seed = 0; seed < 3; seed++) {
+            samples.add(newMITHrIL(r, m, f, seed));
+        }
+        try (var fused = new FusedMITHrIL()) {
+            // The batch size is not a multiple of the runs of a sample, so the samples are split among batches
+            fused.samples(samples.iterator())
+                 .repositoryMatrix(m)
+                 .matrixFactory(f)
+                 .batchSize(700)
+                 .completionHandler(a -> actual.add(a.output()))
+                 .run();
+        }
+        assertEquals(3, actual.size());
+        for (var i = 0; i < 3; i++) {
+            var e = expected.get(i);
+            var o = actual.get(i);
+            assertArrayEquals(e.nodePerturbations(), o.nodePerturbations(), 1e-10);
+            assertArrayEquals(e.nodeAccumulators(), o.nodeAccumulators(), 1e-10);
+            assertArrayEquals(e.pathwayAccumulators(), o.pathwayAccumulators(), 1e-10);
+            assertArrayEquals(e.pathwayCorrectedAccumulators(), o.pathwayCorrectedAccumulators(), 1e-10);
+            assertArrayEquals(e.nodePValues(), o.nodePValues(), 1e-10);
+            assertArrayEquals(e.pathwayPValues(), o.pathwayPValues(), 1e-10);
+            assertArrayEquals(e.pathwayImpactFactors(), o.pathwayImpactFactors(), 1e-10);
+        }
+    }
+}
@@ -3,6 +3,8 @@ package com.alaimos.MITHrIL.app.Algorithms.Metapathway;
 import com.alaimos.MITHrIL.api.Data.Pathways.Graph.*;
 import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Weights.DefaultEdgeWeightComputationMethod;
 import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Weights.DefaultNodeWeightComputationMethod;
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrix;
+import com.alaimos.MITHrIL.app.Data.Records.PathwayMatrix;
 import com.alaimos.MITHrIL.app.Data.Records.RepositoryMatrix;
 import com.alaimos.MITHrIL.app.Math.DefaultMatrix.DefaultMatrixFactory;
 import org.jetbrains.annotations.Contract;
@@ -12,7 +14,7 @@ import org.junit.jupiter.api.Test;
 import java.util.Arrays;
 import java.util.List;
 
-import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 class ContextualisedMatrixBuilderTest {
 
@@ -81,5 +83,95 @@ class ContextualisedMatrixBuilderTest {
         var vec = new double[]{2.0, 0.0, 0.0, 0.0, 0.0, 0.0};
         var res = mtx.postMultiply(vec);
         assertArrayEquals(new double[]{2.0, 0.001, -1, -1, 0, 2}, res, 0.001);
+        var attenuation = ContextualisedMatrixBuilder.attenuation(
+                repository, repositoryMatrix, new String[]{"b"}, 0.001);
+        var expected = repositoryMatrix.pathwayMatrix().matrix().preMultiply(factory.of(attenuation));
+        assertArrayEquals(expected.raw1D(), mtx.raw1D(), 1e-12);
     }
-}
\ No newline at end of file
+
+    @Test
+    void neumannPropagation() {
+        var repository = generateTestRepository();
+        var factory = new DefaultMatrixFactory();
+        var repositoryMatrix = generateTestRepositoryMatrix(repository, factory);
+        var id2Index = repositoryMatrix.pathwayMatrix().id2Index();
+        var propagator = new NeumannPropagator(repository.get().graph(), id2Index, 0.001);
+        var batch = new SparseMatrix(new double[]{2, 0, 0, 1, 0, 0, 0, -1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0}, 6, 3);
+        for (var nonExpressedNodes : new String[][]{{}, {"b"}}) {
+            var expected = ContextualisedMatrixBuilder.build(
+                    repository, repositoryMatrix, factory, nonExpressedNodes, 0.001).postMultiply(batch);
+            var attenuation = ContextualisedMatrixBuilder.attenuation(
+                    repository, repositoryMatrix, nonExpressedNodes, 0.001);
+            var result = factory.of(new double[18], 6, 3);
+            propagator.propagateInto(batch, attenuation, result);
+            assertArrayEquals(expected.raw1D(), result.raw1D(), 1e-9);
+        }
+    }
+
+    @Test
+    void cache() {
+        var repository = generateTestRepository();
+        var factory = new DefaultMatrixFactory();
+        var repositoryMatrix = generateTestRepositoryMatrix(repository, factory);
+        var cache = ContextualisedMatrixCache.getInstance();
+        var expected = ContextualisedMatrixBuilder.build(
+                repository, repositoryMatrix, factory, new String[]{"b", "c"}, 0.001);
+        var first = cache.acquire(repository, repositoryMatrix, factory, new String[]{"c", "b"}, 0.001, false, false);
+        var second = cache.acquire(repository, repositoryMatrix, factory, new String[]{"b", "c"}, 0.001, false, false);
+        assertNotNull(first);
+        assertSame(first, second);
+        assertArrayEquals(expected.raw1D(), first.raw1D(), 1e-12);
+        var other = cache.acquire(repository, repositoryMatrix, factory, new String[]{"b"}, 0.001, false, false);
+        assertNotNull(other);
+        assertNotSame(first, other);
+        assertTrue(cache.release(other));
+        var original = cache.acquire(repository, repositoryMatrix, factory, new String[0], 0.001, false, false);
+        assertSame(repositoryMatrix.pathwayMatrix().matrix(), original);
+        assertFalse(cache.release(original));
+        assertTrue(cache.release(first));
+        assertTrue(cache.release(second));
+        cache.clear();
+        assertFalse(cache.release(first));
+    }
+
+    @Test
+    void diskCache() {
+        var repository = generateTestRepository();
+        var factory = new DefaultMatrixFactory();
+        var repositoryMatrix = generateTestRepositoryMatrix(repository, factory);
+        var pathwayMatrix = repositoryMatrix.pathwayMatrix();
+        var n = pathwayMatrix.matrix().rows();
+        var values = pathwayMatrix.matrix().raw1D().clone();
+        values[1] += 0.5;
+        // Same repository, but a different metapathway matrix, as for a matrix customized to the input
+        var customized = RepositoryMatrix.of(
+                repositoryMatrix.matrix(), repositoryMatrix.index2Id(), repositoryMatrix.id2Index(),
+                new PathwayMatrix(pathwayMatrix.pathwayId(), factory.of(values, n, n), pathwayMatrix.index2Id(),
+                                  pathwayMatrix.id2Index())
+        );
+        assertNotEquals(repositoryMatrix.fingerprint(), customized.fingerprint());
+        var nodes = new String[]{"b", "c"};
+        var expected = ContextualisedMatrixBuilder.build(repository, repositoryMatrix, factory, nodes, 0.001);
+        var expectedCustomized = ContextualisedMatrixBuilder.build(repository, customized, factory, nodes, 0.001);
+        var cache = ContextualisedMatrixCache.getInstance();
+        var useCache = MatrixBuilderFromMetapathway.USE_CACHE;
+        MatrixBuilderFromMetapathway.USE_CACHE = true;
+        try {
+            var built = cache.acquire(repository, repositoryMatrix, factory, nodes, 0.001, false, true);
+            assertNotNull(built);
+            assertTrue(cache.release(built));
+            cache.clear();
+            var stored = cache.acquire(repository, repositoryMatrix, factory, nodes, 0.001, false, true);
+            assertNotNull(stored);
+            assertArrayEquals(expected.raw1D(), stored.raw1D(), 1e-12);
+            var other = cache.acquire(repository, customized, factory, nodes, 0.001, false, true);
+            assertNotNull(other);
+            assertArrayEquals(expectedCustomized.raw1D(), other.raw1D(), 1e-12);
+            assertTrue(cache.release(stored));
+            assertTrue(cache.release(other));
+            cache.clear();
+        } finally {
+            MatrixBuilderFromMetapathway.USE_CACHE = useCache;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.alaimos.MITHrIL.app.Algorithms.Metapathway;
+
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+/**
+ * A JUnit extension that disables the cache of {@link MatrixBuilderFromMetapathway} during each test, so that the
+ * repository matrices are built in memory, without reading or writing the cache of the user. The previous setting is
+ * restored after the test.
+ */
+public class DisableMatrixCacheExtension implements BeforeEachCallback, AfterEachCallback {
+
+    private static final ExtensionContext.Namespace NAMESPACE = ExtensionContext.Namespace.create(
+            DisableMatrixCacheExtension.class
+    );
+    private static final String USE_CACHE = "useCache";
+
+    @Override
+    public void beforeEach(ExtensionContext context) {
+        context.getStore(NAMESPACE).put(USE_CACHE, MatrixBuilderFromMetapathway.USE_CACHE);
+        MatrixBuilderFromMetapathway.USE_CACHE = false;
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) {
+        MatrixBuilderFromMetapathway.USE_CACHE = context.getStore(NAMESPACE).remove(USE_CACHE, Boolean.class);
+    }
+}
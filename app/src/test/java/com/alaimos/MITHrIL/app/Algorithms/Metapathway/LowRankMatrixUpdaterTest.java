@@ -0,0 +1,89 @@
+package com.alaimos.MITHrIL.app.Algorithms.Metapathway;
+
+import com.alaimos.MITHrIL.api.Data.Pathways.Graph.*;
+import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Weights.DefaultEdgeWeightComputationMethod;
+import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Weights.DefaultNodeWeightComputationMethod;
+import com.alaimos.MITHrIL.app.Data.Pathways.PathwayMatrixBuilder;
+import com.alaimos.MITHrIL.app.Math.DefaultMatrix.DefaultMatrixFactory;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LowRankMatrixUpdaterTest {
+
+    @Contract("_ -> !null")
+    private @NotNull Node generateTestNode(String id) {
+        return new Node(id, "node name " + id, "GENE", List.of());
+    }
+
+    @Contract("_, _, _ -> !null")
+    private @NotNull Edge generateTestEdge(Node source, Node destination, String subtype) {
+        return new Edge(source, destination, new EdgeDetail("gerel", subtype));
+    }
+
+    @Contract(" -> new")
+    private @NotNull Graph generateTestGraph() {
+        var nodes = new Node[]{
+                generateTestNode("a"), generateTestNode("b"), generateTestNode("c"), generateTestNode("d"),
+                generateTestNode("e"), generateTestNode("f")
+        };
+        var edges = new Edge[]{
+                generateTestEdge(nodes[0], nodes[1], "expression"), generateTestEdge(nodes[0], nodes[2], "repression"),
+                generateTestEdge(nodes[2], nodes[3], "expression"), generateTestEdge(nodes[1], nodes[4], "expression"),
+                generateTestEdge(nodes[1], nodes[3], "repression"), generateTestEdge(nodes[3], nodes[5], "repression"),
+                generateTestEdge(nodes[5], nodes[1], "expression")
+        };
+        Graph g = new Graph();
+        for (var n : nodes) g.addNode(n);
+        for (var e : edges) g.addEdge(e);
+        g.setEndpoints(Arrays.asList("e", "f"));
+        return g;
+    }
+
+    @Contract(" -> new")
+    private Repository generateTestRepository() {
+        Edge.setWeightComputationMethod(new DefaultEdgeWeightComputationMethod());
+        Node.setWeightComputationMethod(new DefaultNodeWeightComputationMethod());
+        Repository r = new Repository();
+        r.add(new Pathway("testPathway", "pathwayName", generateTestGraph(), "category1; category2"));
+        return r.buildMetapathway(null, false, true);
+    }
+
+    @Contract(" -> new")
+    private @NotNull Graph generateExtensionGraph() {
+        var d = generateTestNode("d");
+        var e = generateTestNode("e");
+        var g = generateTestNode("g");
+        var extension = new Graph();
+        extension.addNode(d);
+        extension.addNode(e);
+        extension.addNode(g);
+        extension.addEdge(generateTestEdge(d, g, "expression"));
+        extension.addEdge(generateTestEdge(g, e, "repression"));
+        return extension;
+    }
+
+    @Test
+    void update() {
+        var factory = new DefaultMatrixFactory();
+        var repository = generateTestRepository();
+        assertNotNull(MatrixBuilderFromMetapathway.build(repository, factory));
+        var updater = LowRankMatrixUpdater.snapshot(repository).maxRankFraction(1.0);
+        repository.extendWith(generateExtensionGraph());
+        repository.removeNode("c");
+        var updated = updater.update(repository, factory);
+        assertNotNull(updated);
+        assertTrue(updated.pathwayMatrix().id2Index().containsKey("g"));
+        assertFalse(updated.pathwayMatrix().id2Index().containsKey("c"));
+        var expected = new PathwayMatrixBuilder(factory).build(repository.get(), false, null);
+        expected.matrix().invertInPlace();
+        assertEquals(expected.id2Index(), updated.pathwayMatrix().id2Index());
+        assertArrayEquals(expected.matrix().raw1D(), updated.pathwayMatrix().matrix().raw1D(), 1e-9);
+        assertNull(LowRankMatrixUpdater.snapshot(repository).maxRankFraction(1.0).update(repository, factory));
+    }
+}
@@ -0,0 +1,143 @@
+package com.alaimos.MITHrIL.app.Algorithms;
+
+import com.alaimos.MITHrIL.api.Data.Pathways.Graph.*;
+import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Weights.DefaultEdgeWeightComputationMethod;
+import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Weights.DefaultNodeWeightComputationMethod;
+import com.alaimos.MITHrIL.api.Math.PValue.Adjusters.None;
+import com.alaimos.MITHrIL.app.Algorithms.Metapathway.DisableMatrixCacheExtension;
+import com.alaimos.MITHrIL.app.Algorithms.Metapathway.MatrixBuilderFromMetapathway;
+import com.alaimos.MITHrIL.app.Data.Generators.RandomExpressionGenerator.ExpressionConstraint;
+import com.alaimos.MITHrIL.app.Data.Generators.RandomExpressionGenerator.ExpressionDirection;
+import com.alaimos.MITHrIL.app.Data.Records.RepositoryMatrix;
+import com.alaimos.MITHrIL.app.Math.DefaultMatrix.DefaultMatrixFactory;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(DisableMatrixCacheExtension.class)
+class PHENSIMTest {
+
+    @Contract("_ -> new")
+    private @NotNull Pathway generateTestPathway(Graph g) {
+        return new Pathway("testPathway", "pathwayName", g, "category1; category2");
+    }
+
+    @Contract("_ -> !null")
+    private @NotNull Node generateTestNode(String id) {
+        return new Node(id, "node name " + id, "GENE", List.of());
+    }
+
+    @Contract("_, _, _ -> !null")
+    private @NotNull Edge generateTestEdge(Node source, Node destination, String subtype) {
+        return new Edge(source, destination, new EdgeDetail("gerel", subtype));
+    }
+
+    @Contract(" -> new")
+    private @NotNull Graph generateTestGraph() {
+        var nodes = new Node[]{
+                generateTestNode("a"), generateTestNode("b"), generateTestNode("c"), generateTestNode("d"),
+                generateTestNode("e"), generateTestNode("f")
+        };
+        var edges = new Edge[]{
+                generateTestEdge(nodes[0], nodes[1], "expression"), generateTestEdge(nodes[0], nodes[2], "repression"),
+                generateTestEdge(nodes[2], nodes[3], "expression"), generateTestEdge(nodes[1], nodes[4], "expression"),
+                generateTestEdge(nodes[1], nodes[3], "repression"), generateTestEdge(nodes[3], nodes[5], "repression")
+        };
+        Graph g = new Graph();
+        for (var n : nodes) g.addNode(n);
+        for (var e : edges) g.addEdge(e);
+        g.setEndpoints(Arrays.asList("e", "f"));
+        return g;
+    }
+
+    @Contract(" -> new")
+    private Repository generateTestRepository() {
+        Edge.setWeightComputationMethod(new DefaultEdgeWeightComputationMethod());
+        Node.setWeightComputationMethod(new DefaultNodeWeightComputationMethod());
+        Repository r = new Repository();
+        r.add(generateTestPathway(generateTestGraph()));
+        return r.buildMetapathway(null, false, true);
+    }
+
+    private PHENSIM.SimulationOutput runPhensim(
+            Repository repository, RepositoryMatrix repositoryMatrix, boolean keepAllRuns
+    ) throws IOException {
+        return runPhensim(repository, repositoryMatrix, keepAllRuns, 7);
+    }
+
+    private PHENSIM.SimulationOutput runPhensim(
+            Repository repository, RepositoryMatrix repositoryMatrix, boolean keepAllRuns, int batchSize
+    ) throws IOException {
+        var constraints = new ExpressionConstraint[]{ExpressionConstraint.of("a", ExpressionDirection.OVEREXPRESSION)};
+        try (var phensim = new PHENSIM()) {
+            phensim.constraints(constraints)
+                   .nonExpressedNodes(new String[0])
+                   .repository(repository)
+                   .repositoryMatrix(repositoryMatrix)
+                   .matrixFactory(new DefaultMatrixFactory())
+                   .random(new Random(42))
+                   .batchSize(batchSize)
+                   .numberOfRepetitions(10)
+                   .numberOfSimulations(20)
+                   .pValueAdjuster(new None())
+                   .epsilon(0.001)
+                   .keepAllRuns(keepAllRuns)
+                   .run();
+            if (!keepAllRuns) assertThrows(IllegalStateException.class, () -> phensim.output(true));
+            return phensim.output(keepAllRuns);
+        }
+    }
+
+    @Test
+    void releaseCompletedSimulations() throws IOException {
+        var repository = generateTestRepository();
+        var repositoryMatrix = MatrixBuilderFromMetapathway.build(repository, new DefaultMatrixFactory());
+        var all = runPhensim(repository, repositoryMatrix, true);
+        var released = runPhensim(repository, repositoryMatrix, false);
+        assertEquals(21, all.runs().length);
+        for (var run : all.runs()) {
+            assertEquals(10, run.numberOfRepetitions());
+        }
+        assertEquals(1, released.runs().length);
+        assertArrayEquals(all.nodeActivityScores(), released.nodeActivityScores(), 1e-12);
+        assertArrayEquals(all.nodePValues(), released.nodePValues(), 1e-12);
+        assertArrayEquals(all.pathwayPValues(), released.pathwayPValues(), 1e-12);
+        assertTrue(Arrays.stream(all.nodePValues()).allMatch(p -> p >= 0 && p <= 1));
+    }
+
+    @Test
+    void reproducibleBatches() throws IOException {
+        var repository = generateTestRepository();
+        var repositoryMatrix = MatrixBuilderFromMetapathway.build(repository, new DefaultMatrixFactory());
+        var reference = runPhensim(repository, repositoryMatrix, true, 7);
+        // The matrix is built in memory, so a second build is independent of the first one and of any cached matrix
+        var rebuilt = runPhensim(
+                repository, MatrixBuilderFromMetapathway.build(repository, new DefaultMatrixFactory()), true, 7
+        );
+        assertFalse(MatrixBuilderFromMetapathway.USE_CACHE);
+        assertArrayEquals(reference.nodeActivityScores(), rebuilt.nodeActivityScores());
+        assertArrayEquals(reference.nodePValues(), rebuilt.nodePValues());
+        // Each run draws from its own random stream, so the results do not depend on how the runs are batched
+        for (var batchSize : new int[]{1, 10, 23, 1000}) {
+            var output = runPhensim(repository, repositoryMatrix, true, batchSize);
+            assertArrayEquals(reference.nodeActivityScores(), output.nodeActivityScores());
+            assertArrayEquals(reference.nodePValues(), output.nodePValues());
+            assertArrayEquals(reference.pathwayPValues(), output.pathwayPValues());
+            // The running means are updated batch by batch, so they might differ in the last digit
+            for (var i = 0; i < reference.runs().length; i++) {
+                assertArrayEquals(
+                        reference.runs()[i].nodePerturbationsAverage(), output.runs()[i].nodePerturbationsAverage(),
+                        1e-12
+                );
+            }
+        }
+    }
+}
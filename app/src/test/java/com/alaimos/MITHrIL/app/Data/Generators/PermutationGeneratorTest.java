@@ -0,0 +1,80 @@
+package com.alaimos.MITHrIL.app.Data.Generators;
+
+import com.alaimos.MITHrIL.app.Data.Records.ExpressionInput;
+import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PermutationGeneratorTest {
+
+    private static final String[] NODES = new String[]{"a", "b", "c", "d", "e", "f", "g", "h"};
+
+    private static ExpressionInput input() {
+        return new ExpressionInput(
+                NODES, new Object2DoubleOpenHashMap<>(new String[]{"a", "c", "h"}, new double[]{1.0, -2.0, 3.0}));
+    }
+
+    private static Object2IntOpenHashMap<String> index() {
+        // Node "h" is not in the batch
+        return new Object2IntOpenHashMap<>(new String[]{"a", "b", "c", "d", "e", "f", "g"},
+                                           new int[]{0, 1, 2, 3, 4, 5, 6});
+    }
+
+    private static double[] column(double[] batch, int stride, int column) {
+        var result = new double[batch.length / stride];
+        for (var i = 0; i < result.length; i++) result[i] = batch[i * stride + column];
+        return result;
+    }
+
+    @Test
+    void permute() {
+        var generator = new PermutationGenerator(input(), index());
+        var stride = 2000;
+        var batch = new double[7 * stride];
+        generator.input(batch, stride, 0);
+        assertArrayEquals(new double[]{1.0, 0.0, -2.0, 0.0, 0.0, 0.0, 0.0}, column(batch, stride, 0));
+        var random = new Random(42);
+        var counts = new int[7];
+        for (var j = 1; j < stride; j++) {
+            generator.permute(batch, stride, j, random);
+            var values = column(batch, stride, j);
+            var nonZero = Arrays.stream(values).filter(v -> v != 0.0).sorted().toArray();
+            // The values are written on distinct nodes, and the value drawn on the missing node is not written
+            assertTrue(nonZero.length == 3 || nonZero.length == 2);
+            for (var v : nonZero) assertTrue(v == 1.0 || v == -2.0 || v == 3.0);
+            assertEquals(nonZero.length, Arrays.stream(nonZero).distinct().count());
+            for (var i = 0; i < 7; i++) if (values[i] == 1.0) counts[i]++;
+        }
+        // Each node receives the first value with probability 1/8
+        for (var count : counts) assertEquals(stride / 8.0, count, stride / 16.0);
+    }
+
+    @Test
+    void parallelPermute() {
+        var generator = new PermutationGenerator(input(), index());
+        var columns = 100;
+        var sequential = new double[7 * columns];
+        var parallel = new double[7 * columns];
+        var seeds = new SplittableRandom(7);
+        var generators = new RandomGenerator[columns];
+        var copies = new RandomGenerator[columns];
+        for (var j = 0; j < columns; j++) {
+            var seed = seeds.nextLong();
+            generators[j] = new SplittableRandom(seed);
+            copies[j]     = new SplittableRandom(seed);
+        }
+        for (var j = 0; j < columns; j++) generator.permute(sequential, columns, j, generators[j]);
+        generator.permute(parallel, columns, 0, copies);
+        assertArrayEquals(sequential, parallel);
+        assertThrows(IllegalArgumentException.class, () -> new PermutationGenerator(
+                new ExpressionInput(new String[]{"a"}, new Object2DoubleOpenHashMap<>(
+                        new String[]{"a", "b"}, new double[]{1.0, 2.0})), index()));
+    }
+}
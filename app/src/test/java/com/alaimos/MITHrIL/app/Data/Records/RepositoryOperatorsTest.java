@@ -0,0 +1,133 @@
+package com.alaimos.MITHrIL.app.Data.Records;
+
+import com.alaimos.MITHrIL.api.Data.Pathways.Graph.*;
+import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Weights.DefaultEdgeWeightComputationMethod;
+import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Weights.DefaultNodeWeightComputationMethod;
+import com.alaimos.MITHrIL.api.Math.PValue.Adjusters.None;
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrix;
+import com.alaimos.MITHrIL.app.Algorithms.Metapathway.DisableMatrixCacheExtension;
+import com.alaimos.MITHrIL.app.Algorithms.Metapathway.MatrixBuilderFromMetapathway;
+import com.alaimos.MITHrIL.app.Algorithms.PHENSIM;
+import com.alaimos.MITHrIL.app.Data.Generators.RandomExpressionGenerator.ExpressionConstraint;
+import com.alaimos.MITHrIL.app.Data.Generators.RandomExpressionGenerator.ExpressionDirection;
+import com.alaimos.MITHrIL.app.Math.DefaultMatrix.DefaultMatrixFactory;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(DisableMatrixCacheExtension.class)
+class RepositoryOperatorsTest {
+
+    @Contract("_ -> !null")
+    private @NotNull Node generateTestNode(String id) {
+        return new Node(id, "node name " + id, "GENE", List.of());
+    }
+
+    @Contract("_, _, _ -> !null")
+    private @NotNull Edge generateTestEdge(Node source, Node destination, String subtype) {
+        return new Edge(source, destination, new EdgeDetail("gerel", subtype));
+    }
+
+    @Contract(" -> new")
+    private @NotNull Repository generateTestRepository() {
+        Edge.setWeightComputationMethod(new DefaultEdgeWeightComputationMethod());
+        Node.setWeightComputationMethod(new DefaultNodeWeightComputationMethod());
+        var nodes = new Node[]{
+                generateTestNode("a"), generateTestNode("b"), generateTestNode("c"), generateTestNode("d")
+        };
+        Graph g = new Graph();
+        for (var n : nodes) g.addNode(n);
+        g.addEdge(generateTestEdge(nodes[0], nodes[1], "expression"));
+        g.addEdge(generateTestEdge(nodes[0], nodes[2], "repression"));
+        g.addEdge(generateTestEdge(nodes[1], nodes[3], "expression"));
+        g.setEndpoints(Arrays.asList("c", "d"));
+        Repository r = new Repository();
+        r.add(new Pathway("testPathway", "pathwayName", g, "category1; category2"));
+        return r.buildMetapathway(null, false, true);
+    }
+
+    private PHENSIM.SimulationOutput runPhensim(Repository repository, RepositoryMatrix repositoryMatrix)
+            throws IOException {
+        var constraints = new ExpressionConstraint[]{ExpressionConstraint.of("a", ExpressionDirection.OVEREXPRESSION)};
+        try (var phensim = new PHENSIM()) {
+            phensim.constraints(constraints)
+                   .nonExpressedNodes(new String[0])
+                   .repository(repository)
+                   .repositoryMatrix(repositoryMatrix)
+                   .matrixFactory(new DefaultMatrixFactory())
+                   .random(new Random(42))
+                   .batchSize(7)
+                   .numberOfRepetitions(10)
+                   .numberOfSimulations(20)
+                   .pValueAdjuster(new None())
+                   .epsilon(0.001)
+                   .run();
+            return phensim.output(false);
+        }
+    }
+
+    @Test
+    void sharedOperators() throws IOException {
+        var repository = generateTestRepository();
+        var repositoryMatrix = MatrixBuilderFromMetapathway.build(repository, new DefaultMatrixFactory());
+        var factory = new DefaultMatrixFactory();
+        PHENSIM.SimulationOutput first, second;
+        try (var operators = repositoryMatrix.operators()) {
+            var transposed = operators.transposed(factory);
+            assertSame(transposed, operators.transposed(new DefaultMatrixFactory()));
+            assertEquals(repositoryMatrix.matrix().columns(), transposed.rows());
+            first  = runPhensim(repository, repositoryMatrix);
+            second = runPhensim(repository, repositoryMatrix);
+            assertEquals(1, operators.references());
+            assertSame(transposed, operators.transposed(factory));
+        }
+        assertArrayEquals(first.nodeActivityScores(), second.nodeActivityScores(), 1e-12);
+        var operators = repositoryMatrix.operators();
+        assertEquals(1, operators.references());
+        assertNotNull(operators.transposed(factory));
+        operators.close();
+        assertThrows(IllegalStateException.class, operators::close);
+        assertThrows(IllegalStateException.class, () -> operators.transposed(factory));
+    }
+
+    @Test
+    void repositoryOwnedOperators() throws IOException {
+        var repository = generateTestRepository();
+        var factory = new DefaultMatrixFactory();
+        var repositoryMatrix = MatrixBuilderFromMetapathway.build(repository, factory);
+        var pathwayMatrix = repositoryMatrix.pathwayMatrix().matrix();
+        var expected = pathwayMatrix.raw1D();
+        try (var operators = repositoryMatrix.operators()) {
+            // The matrices of the repository already have the precision of the factory, so they are not copied
+            assertSame(pathwayMatrix, operators.pathwayMatrix(factory));
+            assertNull(operators.accumulatorOperator(factory));
+            var sparse = operators.sparseMatrix();
+            assertSame(sparse, operators.sparseMatrix());
+            assertEquals(repositoryMatrix.matrix().rows(), sparse.rows());
+            assertEquals(sparse.rows(), operators.sparseTransposed().columns());
+            // The sparse transpose is never converted to a dense matrix, even by a single-precision factory
+            var singlePrecisionFactory = new DefaultMatrixFactory() {
+                @Override
+                public boolean singlePrecision() {
+                    return true;
+                }
+            };
+            assertSame(sparse, singlePrecisionFactory.withPrecision(sparse));
+            assertInstanceOf(SparseMatrix.class, repositoryMatrix.matrix());
+            assertSame(operators.sparseTransposed(), operators.transposed(singlePrecisionFactory));
+        }
+        // Releasing the operators does not close the matrices owned by the repository matrix
+        assertArrayEquals(expected, pathwayMatrix.raw1D());
+        try (var operators = repositoryMatrix.operators()) {
+            assertSame(pathwayMatrix, operators.pathwayMatrix(factory));
+        }
+    }
+}
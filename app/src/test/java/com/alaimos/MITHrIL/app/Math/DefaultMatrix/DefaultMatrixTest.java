@@ -3,6 +3,8 @@ package com.alaimos.MITHrIL.app.Math.DefaultMatrix;
 import com.alaimos.MITHrIL.api.Commons.Utils;
 import com.alaimos.MITHrIL.api.Data.Reader.BinaryReader;
 import com.alaimos.MITHrIL.api.Data.Writer.BinaryWriter;
+import com.alaimos.MITHrIL.api.Math.MatrixBufferPool;
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrix;
 import org.junit.jupiter.api.*;
 
 import java.io.File;
@@ -150,6 +152,81 @@ class DefaultMatrixTest {
         m3.close();
     }
 
+    @Test
+    void sparseMultiply() {
+        try (
+                var s2 = new SparseMatrix(M2, 3, 4);
+                var ts2 = s2.transpose();
+                var m3 = m1.postMultiply(s2);
+                var m4 = m1.preMultiply(ts2)
+        ) {
+            assertArrayEquals(M1_TIMES_M2, m3.raw1D(), DELTA);
+            assertArrayEquals(T_M2_TIMES_M1, m4.raw1D(), DELTA);
+        }
+        try (
+                var s1 = new SparseMatrix(new double[]{0, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1}, 3, 4);
+                var m3 = m1.postMultiplySparse(s1)
+        ) {
+            assertEquals(3, m3.rows());
+            assertEquals(4, m3.columns());
+            assertArrayEquals(new double[]{0, 2, 0, 3, 0, 8, 0, 6, 0, 14, 0, 9}, m3.raw1D(), DELTA);
+        }
+    }
+
+    @Test
+    void intoOperations() {
+        try (var buffers = new MatrixBufferPool(factory)) {
+            var tm2 = buffers.matrix("tm2", 4, 3);
+            tm2.fill(new double[]{1, 5, 9, 2, 6, 10, 3, 7, 11, 4, 8, 12});
+            var m3 = buffers.matrix("m3", 4, 3);
+            m1.preMultiplyInto(tm2, m3);
+            assertArrayEquals(T_M2_TIMES_M1, m3.raw1D(), DELTA);
+            assertSame(m3, buffers.matrix("m3", 4, 3));
+            var m4 = buffers.matrix("m4", 4, 3);
+            m3.subtractInto(tm2, m4);
+            assertArrayEquals(
+                    new double[]{83, 94, 105, 94, 108, 122, 105, 122, 139, 116, 136, 156}, m4.raw1D(), DELTA
+            );
+            var s1 = new SparseMatrix(new double[]{0, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1}, 3, 4);
+            var m5 = buffers.matrix("m5", 3, 4);
+            m1.postMultiplySparseInto(s1, m5);
+            assertArrayEquals(new double[]{0, 2, 0, 3, 0, 8, 0, 6, 0, 14, 0, 9}, m5.raw1D(), DELTA);
+            var m6 = buffers.matrix("m6", 3, 4);
+            m2.preMultiplyInto(new SparseMatrix(M1, 3, 3), m6);
+            assertArrayEquals(M1_TIMES_M2, m6.raw1D(), DELTA);
+            var array = buffers.array("a", 3);
+            array[0] = 1;
+            assertSame(array, buffers.array("a", 3));
+            assertArrayEquals(new double[]{0, 0, 0}, array, DELTA);
+        }
+    }
+
+    @Test
+    void fill() {
+        var data = new double[][]{{1, 2}, {3, 4}};
+        try (var m = factory.of(data)) {
+            m.fill(new double[]{5, 6, 7, 8});
+            assertArrayEquals(new double[]{5, 6, 7, 8}, m.raw1D(), DELTA);
+            // The input of the caller is copied on construction, so it is not modified by in-place operations
+            assertArrayEquals(new double[]{1, 2}, data[0], DELTA);
+            assertArrayEquals(new double[]{3, 4}, data[1], DELTA);
+            assertThrows(IllegalArgumentException.class, () -> m.fill(new double[3]));
+            // Copies do not share their storage with the source
+            try (var copy = factory.of(m)) {
+                m.fill(new double[]{1, 2, 3, 4});
+                assertArrayEquals(new double[]{5, 6, 7, 8}, copy.raw1D(), DELTA);
+            }
+            // ...in either direction, whatever the in-place operation
+            try (var copy = factory.of(m); var other = factory.of(m)) {
+                copy.fillRow(0, new double[]{9, 9});
+                assertArrayEquals(new double[]{9, 9, 3, 4}, copy.raw1D(), DELTA);
+                m.subtractInto(m, other);
+                assertArrayEquals(new double[]{0, 0, 0, 0}, other.raw1D(), DELTA);
+                assertArrayEquals(new double[]{1, 2, 3, 4}, m.raw1D(), DELTA);
+            }
+        }
+    }
+
     @Test
     void val() {
         assertEquals(1, m1.val(0, 0), DELTA);
@@ -179,6 +256,12 @@ class DefaultMatrixTest {
     void row() {
         assertArrayEquals(new double[]{7, 8, 9}, m1.row(2), DELTA);
         assertArrayEquals(new double[]{1, 2, 3, 4}, m2.row(0), DELTA);
+        var buffer = new double[4];
+        m2.rowInto(1, buffer);
+        assertArrayEquals(new double[]{5, 6, 7, 8}, buffer, DELTA);
+        m2.fillRow(1, new double[]{-1, -2, -3, -4});
+        assertArrayEquals(new double[]{1, 2, 3, 4, -1, -2, -3, -4, 9, 10, 11, 12}, m2.raw1D(), DELTA);
+        assertThrows(IllegalArgumentException.class, () -> m2.fillRow(0, new double[3]));
     }
 
     @Test
@@ -0,0 +1,131 @@
+package com.alaimos.MITHrIL.benchmarks;
+
+import com.alaimos.MITHrIL.api.Data.Pathways.Enrichment.DefaultProbabilityComputation;
+import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Repository;
+import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
+import com.alaimos.MITHrIL.api.Math.PValue.Adjusters.None;
+import com.alaimos.MITHrIL.api.Math.PValue.Combiners.ProductOfP;
+import com.alaimos.MITHrIL.api.Math.StreamMedian.ExactMedianComputation;
+import com.alaimos.MITHrIL.app.Algorithms.MITHrIL;
+import com.alaimos.MITHrIL.app.Algorithms.Metapathway.MatrixBuilderFromMetapathway;
+import com.alaimos.MITHrIL.app.Algorithms.PHENSIM;
+import com.alaimos.MITHrIL.app.Data.Generators.RandomExpressionGenerator.ExpressionConstraint;
+import com.alaimos.MITHrIL.app.Data.Generators.RandomExpressionGenerator.ExpressionDirection;
+import com.alaimos.MITHrIL.app.Data.Records.ExpressionInput;
+import com.alaimos.MITHrIL.app.Data.Records.RepositoryMatrix;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end runs of MITHrIL and PHENSIM on a synthetic metapathway (see {@link SyntheticMetapathway}). The matrix
+ * representation of the metapathway is built once per trial, so each invocation measures only the batch loops and the
+ * computation of the outputs. The factory parameter is filled by {@link BenchmarkRunner} with all the registered
+ * implementations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class AlgorithmBenchmark {
+
+    @Param({"default", "vector"})
+    public String factory;
+
+    @Param({"false"})
+    public boolean singlePrecision;
+
+    @Param({"2000"})
+    public int nodes;
+
+    @Param({"100"})
+    public int pathways;
+
+    @Param({"2.0"})
+    public double density;
+
+    @Param({"1000"})
+    public int batchSize;
+
+    @Param({"1000"})
+    public int repetitions;
+
+    @Param({"100"})
+    public int simulations;
+
+    private MatrixFactoryInterface<?> matrixFactory;
+    private Repository repository;
+    private RepositoryMatrix repositoryMatrix;
+    private ExpressionInput input;
+    private ExpressionConstraint[] constraints;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MatrixBuilderFromMetapathway.USE_CACHE = false;
+        var inversionFactory = MatrixFactories.get(factory);
+        repository       = SyntheticMetapathway.generate(nodes, pathways, density, 42);
+        repositoryMatrix = MatrixBuilderFromMetapathway.build(repository, inversionFactory, true);
+        matrixFactory    = inversionFactory.withSinglePrecision(singlePrecision);
+        input = SyntheticMetapathway.expressions(nodes, 0.05, 43);
+        var random = new Random(44);
+        var nodeIds = repositoryMatrix.pathwayMatrix().index2Id();
+        constraints = new ExpressionConstraint[10];
+        for (var i = 0; i < constraints.length; i++) {
+            var direction = random.nextBoolean() ? ExpressionDirection.OVEREXPRESSION :
+                    ExpressionDirection.UNDEREXPRESSION;
+            constraints[i] = ExpressionConstraint.of(nodeIds.get(random.nextInt(nodeIds.size())), direction);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        repositoryMatrix.pathwayMatrix().matrix().close();
+        repositoryMatrix.matrix().close();
+        if (repositoryMatrix.accumulatorOperator() != null) repositoryMatrix.accumulatorOperator().close();
+    }
+
+    @Benchmark
+    public void mithril(@NotNull Blackhole bh) throws IOException {
+        try (var algorithm = new MITHrIL()) {
+            algorithm.batchSize(batchSize)
+                     .numberOfRepetitions(repetitions)
+                     .matrixFactory(matrixFactory)
+                     .noPValue(false)
+                     .medianAlgorithmFactory(ExactMedianComputation::new)
+                     .probabilityComputation(new DefaultProbabilityComputation())
+                     .pValueAdjuster(new None())
+                     .pValueCombiner(new ProductOfP())
+                     .repository(repository)
+                     .repositoryMatrix(repositoryMatrix)
+                     .input(input)
+                     .random(new Random(123))
+                     .run();
+            bh.consume(algorithm.output());
+        }
+    }
+
+    @Benchmark
+    public void phensim(@NotNull Blackhole bh) throws IOException {
+        try (var algorithm = new PHENSIM()) {
+            algorithm.batchSize(batchSize)
+                     .numberOfRepetitions(repetitions)
+                     .numberOfSimulations(simulations)
+                     .epsilon(0.001)
+                     .matrixFactory(matrixFactory)
+                     .pValueAdjuster(new None())
+                     .constraints(constraints)
+                     .nonExpressedNodes(new String[0])
+                     .repository(repository)
+                     .repositoryMatrix(repositoryMatrix)
+                     .random(new Random(123))
+                     .run();
+            bh.consume(algorithm.output(false));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.alaimos.MITHrIL.benchmarks;
+
+import com.alaimos.MITHrIL.api.Commons.Utils;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Entry point of the benchmarks. It accepts the same options as the JMH command line, with two different defaults:
+ * <ul>
+ *     <li>if no "factory" parameter is given (-p factory=...), the benchmarks are run on all the registered matrix
+ *     factories;</li>
+ *     <li>results are written in JSON format to mithril-benchmarks-[version].json, so that they can be compared
+ *     between releases (use -rf and -rff to change the format and the file).</li>
+ * </ul>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+        var commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp()) {
+            commandLine.showHelp();
+            return;
+        }
+        var builder = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getParameter("factory").hasValue()) {
+            builder.param("factory", MatrixFactories.names().toArray(String[]::new));
+        }
+        if (!commandLine.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            builder.result("mithril-benchmarks-" + Utils.getCurrentVersion() + ".json");
+        }
+        var runner = new Runner(builder.build());
+        if (commandLine.shouldList()) {
+            runner.list();
+        } else {
+            runner.run();
+        }
+    }
+}
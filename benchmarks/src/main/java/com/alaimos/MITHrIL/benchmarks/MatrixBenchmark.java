@@ -0,0 +1,148 @@
+package com.alaimos.MITHrIL.benchmarks;
+
+import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
+import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matrix operations on the shapes used by MITHrIL and PHENSIM: an n x n metapathway operator multiplied by an n x b
+ * batch of inputs, subtraction and column extraction on the n x b results, transposition and inversion of the
+ * operator. The factory parameter is filled by {@link BenchmarkRunner} with all the registered implementations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class MatrixBenchmark {
+
+    @Param({"default", "vector"})
+    public String factory;
+
+    @Param({"false"})
+    public boolean singlePrecision;
+
+    @Param({"2000"})
+    public int n;
+
+    @Param({"1000"})
+    public int batchSize;
+
+    private MatrixFactoryInterface<?> matrixFactory;
+    private MatrixInterface<?> operator;
+    private MatrixInterface<?> batch;
+    private MatrixInterface<?> result;
+    private MatrixInterface<?> destination;
+
+    /**
+     * Build a random operator with the structure of (I - W), where W is sparse
+     */
+    static double @NotNull [] operator(@NotNull Random random, int n, double density) {
+        var data = new double[n * n];
+        for (var i = 0; i < n; i++) {
+            data[i * n + i] = 1.0;
+        }
+        var nonZeros = (long) (density * n);
+        for (var k = 0; k < nonZeros; k++) {
+            var i = random.nextInt(n);
+            var j = random.nextInt(n);
+            if (i != j) data[i * n + j] = -0.1 * random.nextDouble();
+        }
+        return data;
+    }
+
+    static double @NotNull [] batch(@NotNull Random random, int n, int batchSize) {
+        var data = new double[n * batchSize];
+        for (var i = 0; i < data.length; i++) {
+            data[i] = random.nextGaussian();
+        }
+        return data;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var random = new Random(42);
+        matrixFactory = MatrixFactories.get(factory).withSinglePrecision(singlePrecision);
+        operator    = matrixFactory.of(operator(random, n, 4.0), n, n);
+        batch       = matrixFactory.of(batch(random, n, batchSize), n, batchSize);
+        result      = batch.preMultiply(operator);
+        destination = matrixFactory.of(new double[n * batchSize], n, batchSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        operator.close();
+        batch.close();
+        result.close();
+        destination.close();
+    }
+
+    @Benchmark
+    public void preMultiply(@NotNull Blackhole bh) throws IOException {
+        try (var m = batch.preMultiply(operator)) {
+            bh.consume(m);
+        }
+    }
+
+    @Benchmark
+    public MatrixInterface<?> preMultiplyInto() {
+        batch.preMultiplyInto(operator, destination);
+        return destination;
+    }
+
+    @Benchmark
+    public void subtract(@NotNull Blackhole bh) throws IOException {
+        try (var m = result.subtract(batch)) {
+            bh.consume(m);
+        }
+    }
+
+    @Benchmark
+    public void column(@NotNull Blackhole bh) {
+        for (var j = 0; j < batchSize; j++) {
+            bh.consume(result.column(j));
+        }
+    }
+
+    @Benchmark
+    public void transpose(@NotNull Blackhole bh) throws IOException {
+        try (var m = operator.transpose()) {
+            bh.consume(m);
+        }
+    }
+
+    /**
+     * Inversion of a fresh copy of the operator at each invocation
+     */
+    @State(Scope.Thread)
+    public static class InversionState {
+
+        private MatrixInterface<?> copy;
+
+        @Setup(Level.Invocation)
+        public void copy(@NotNull MatrixBenchmark benchmark) {
+            copy = benchmark.matrixFactory.of(benchmark.operator);
+        }
+
+        @TearDown(Level.Invocation)
+        public void close() throws IOException {
+            copy.close();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public MatrixInterface<?> invertInPlace(@NotNull InversionState state) {
+        state.copy.invertInPlace();
+        return state.copy;
+    }
+}
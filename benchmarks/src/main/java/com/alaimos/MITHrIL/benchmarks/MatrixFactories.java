@@ -0,0 +1,58 @@
+package com.alaimos.MITHrIL.benchmarks;
+
+import com.alaimos.MITHrIL.api.CommandLine.Extensions.ExtensionManager;
+import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
+import com.alaimos.MITHrIL.app.Plugins.PluginManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Access to the matrix factories registered in the current JVM. Plugins are loaded as in the app, so the benchmarks
+ * see the same implementations that are available from the command line. Implementations on the classpath (such as the
+ * VectorMath plugin, which is a dependency of this module) are always available.
+ */
+public final class MatrixFactories {
+
+    private static boolean initialized = false;
+
+    private MatrixFactories() {
+    }
+
+    private static synchronized void init() {
+        if (initialized) return;
+        var pluginManager = PluginManager.INSTANCE;
+        pluginManager.loadPlugins();
+        pluginManager.startPlugins();
+        Runtime.getRuntime().addShutdownHook(new Thread(pluginManager::stopPlugins));
+        ExtensionManager.setDefaultPluginManager(pluginManager);
+        initialized = true;
+    }
+
+    /**
+     * Get the names of all the registered matrix factories
+     *
+     * @return a sorted set of names
+     */
+    public static @NotNull Set<String> names() {
+        init();
+        return new TreeSet<>(ExtensionManager.INSTANCE.getExtensions(MatrixFactoryInterface.class).keySet());
+    }
+
+    /**
+     * Get a matrix factory by name
+     *
+     * @param name the name of the factory
+     * @return the factory
+     * @throws IllegalArgumentException if the factory is not registered
+     */
+    public static @NotNull MatrixFactoryInterface<?> get(String name) {
+        init();
+        MatrixFactoryInterface<?> factory = ExtensionManager.INSTANCE.getExtension(MatrixFactoryInterface.class, name);
+        if (factory == null) {
+            throw new IllegalArgumentException("Matrix factory \"" + name + "\" is not registered. Available: " + names());
+        }
+        return factory;
+    }
+}
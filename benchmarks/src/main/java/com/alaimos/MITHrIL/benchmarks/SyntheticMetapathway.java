@@ -0,0 +1,102 @@
+package com.alaimos.MITHrIL.benchmarks;
+
+import com.alaimos.MITHrIL.api.Data.Pathways.Graph.*;
+import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Weights.DefaultEdgeWeightComputationMethod;
+import com.alaimos.MITHrIL.api.Data.Pathways.Graph.Weights.DefaultNodeWeightComputationMethod;
+import com.alaimos.MITHrIL.app.Data.Records.ExpressionInput;
+import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generator of random metapathways used by the benchmarks. Each pathway contains a random subset of the nodes, so that
+ * every node belongs on average to two pathways. Edges always go from a node with a lower index to a node with a higher
+ * index, so the metapathway is acyclic and (I - W) is always invertible.
+ */
+public final class SyntheticMetapathway {
+
+    private static final String[] SUBTYPES = {"expression", "repression"};
+
+    private SyntheticMetapathway() {
+    }
+
+    private static String nodeId(int i) {
+        return "n" + i;
+    }
+
+    /**
+     * Generate a metapathway
+     *
+     * @param nodes    the number of nodes
+     * @param pathways the number of pathways
+     * @param density  the average number of outgoing edges of a node within a pathway
+     * @param seed     the seed of the random number generator
+     * @return a repository containing the metapathway and a virtual pathway for each pathway
+     */
+    public static @NotNull Repository generate(int nodes, int pathways, double density, long seed) {
+        if (nodes < 2 || pathways < 1) throw new IllegalArgumentException("At least two nodes and one pathway required");
+        Edge.setWeightComputationMethod(new DefaultEdgeWeightComputationMethod());
+        Node.setWeightComputationMethod(new DefaultNodeWeightComputationMethod());
+        var random = new Random(seed);
+        var pathwaySize = Math.max(2, Math.min(nodes, (2 * nodes) / pathways));
+        var indices = new int[nodes];
+        Arrays.setAll(indices, i -> i);
+        var repository = new Repository();
+        for (var p = 0; p < pathways; p++) {
+            // Partial Fisher-Yates shuffle to select the nodes of the pathway
+            for (var i = 0; i < pathwaySize; i++) {
+                var j = i + random.nextInt(nodes - i);
+                var tmp = indices[i];
+                indices[i] = indices[j];
+                indices[j] = tmp;
+            }
+            var selected = Arrays.copyOf(indices, pathwaySize);
+            Arrays.sort(selected);
+            var graph = new Graph();
+            var pathwayNodes = new Node[pathwaySize];
+            for (var i = 0; i < pathwaySize; i++) {
+                pathwayNodes[i] = new Node(nodeId(selected[i]), "Node " + selected[i], "GENE", List.of());
+                graph.addNode(pathwayNodes[i]);
+            }
+            var numberOfEdges = Math.round(density * pathwaySize);
+            for (var e = 0; e < numberOfEdges; e++) {
+                var s = random.nextInt(pathwaySize - 1);
+                var t = s + 1 + random.nextInt(pathwaySize - s - 1);
+                var detail = new EdgeDetail("gerel", SUBTYPES[random.nextInt(SUBTYPES.length)]);
+                graph.addEdge(new Edge(pathwayNodes[s], pathwayNodes[t], detail));
+            }
+            var endpoints = new ArrayList<String>();
+            for (var n : pathwayNodes) {
+                if (graph.outDegree(n) == 0) endpoints.add(n.id());
+            }
+            graph.setEndpoints(endpoints);
+            repository.add(new Pathway("path:" + p, "Pathway " + p, graph, "synthetic"));
+        }
+        return repository.buildMetapathway(null, false, true);
+    }
+
+    /**
+     * Generate a random expression input. A fraction of the nodes of the metapathway is differentially expressed.
+     *
+     * @param nodes    the number of nodes used to generate the metapathway
+     * @param fraction the fraction of differentially expressed nodes
+     * @param seed     the seed of the random number generator
+     * @return the input
+     */
+    public static @NotNull ExpressionInput expressions(int nodes, double fraction, long seed) {
+        var random = new Random(seed);
+        var allNodes = new String[nodes];
+        var expressions = new Object2DoubleOpenHashMap<String>();
+        for (var i = 0; i < nodes; i++) {
+            allNodes[i] = nodeId(i);
+            if (random.nextDouble() < fraction) {
+                expressions.put(allNodes[i], random.nextGaussian() * 2.0);
+            }
+        }
+        return new ExpressionInput(allNodes, expressions);
+    }
+}
@@ -1,7 +1,11 @@
 package com.alaimos.MITHrIL.FastCPUMath.FastCPUMatrix;
 
+import com.alaimos.MITHrIL.api.Math.MappedMatrix;
 import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrix;
+import com.alaimos.MITHrIL.api.Math.SparseOperand;
 import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.Pointer;
 import org.bytedeco.pytorch.Scalar;
 import org.bytedeco.pytorch.Tensor;
 import org.bytedeco.pytorch.global.torch;
@@ -11,24 +15,46 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serial;
+import java.nio.DoubleBuffer;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.function.Function;
 import java.util.stream.IntStream;
 
 import static org.bytedeco.pytorch.global.torch.dtype;
+import static org.bytedeco.pytorch.global.torch.from_blob;
 import static org.bytedeco.pytorch.global.torch.zeros;
 
+/**
+ * A matrix backed by a pytorch tensor. Tensors built from Java arrays are created directly over native memory owned by
+ * the matrix (see {@link NativeTensor}), so no zero-filled tensor is allocated and then overwritten. Elements are read
+ * and written through a direct view of the tensor memory: rows, columns, and single values are copied straight from
+ * native memory, without materializing the whole matrix on the Java heap.
+ */
 public class CPUMatrix implements MatrixInterface<CPUMatrix> {
 
     @Serial
     private static final long serialVersionUID = -8761988017888622755L;
 
+    /**
+     * The number of rows copied by each task when all the columns are extracted at once
+     */
+    private static final int COLUMN_COPY_BLOCK = 256;
+
     private transient Tensor tensor;
 
+    /**
+     * The native memory backing the tensor when it was created from a Java array (null if the memory is owned by
+     * pytorch). It must stay alive as long as the tensor.
+     */
+    private transient DoublePointer blob = null;
+
     private transient DoublePointer pointer = null;
 
-    private transient double[] data = null;
+    /**
+     * A direct view of the elements of the tensor. No element is copied.
+     */
+    private transient volatile DoubleBuffer view = null;
 
     private int rows;
 
@@ -60,23 +86,66 @@ public class CPUMatrix implements MatrixInterface<CPUMatrix> {
     }
 
     public CPUMatrix(double[] matrix, int rows, int columns) {
-        tensor       = tensorFromArray(matrix, new long[]{rows, columns});
-        this.rows    = rows;
-        this.columns = columns;
+        this(new NativeTensor(matrix, new long[]{rows, columns}), rows, columns);
     }
 
     public CPUMatrix(@NotNull MatrixInterface<?> matrix) {
         if (matrix instanceof CPUMatrix dm) {
-            tensor  = dm.tensor;
+            tensor  = contiguousCopy(dm.tensor);
             rows    = dm.rows;
             columns = dm.columns;
         } else {
-            tensor  = tensorFromArray(matrix.raw1D(), new long[]{matrix.rows(), matrix.columns()});
-            rows    = matrix.rows();
-            columns = matrix.columns();
+            this.rows    = matrix.rows();
+            this.columns = matrix.columns();
+            var nt = new NativeTensor(matrix.raw1D(), new long[]{rows, columns});
+            tensor = nt.tensor;
+            blob   = nt.blob;
         }
     }
 
+    private CPUMatrix(@NotNull NativeTensor matrix, int rows, int columns) {
+        tensor       = matrix.tensor;
+        blob         = matrix.blob;
+        this.rows    = rows;
+        this.columns = columns;
+    }
+
+    /**
+     * Create a zero-filled matrix
+     *
+     * @param rows    the number of rows
+     * @param columns the number of columns
+     * @return a new matrix
+     */
+    static @NotNull CPUMatrix zeroMatrix(int rows, int columns) {
+        return new CPUMatrix(zeros(new long[]{rows, columns}, dtype(torch.ScalarType.Double)), rows, columns);
+    }
+
+    /**
+     * Create a matrix from a memory-mapped matrix. The mapped chunks are copied straight into native memory, without
+     * building an intermediate array on the Java heap.
+     *
+     * @param matrix the mapped matrix
+     * @return a new matrix
+     */
+    static @NotNull CPUMatrix fromMapped(@NotNull MappedMatrix matrix) {
+        var rows = matrix.rows();
+        var columns = matrix.columns();
+        var blob = new DoublePointer((long) rows * columns);
+        var offset = 0L;
+        for (var c = 0; c < matrix.chunks(); c++) {
+            var chunk = matrix.chunk(c);
+            try (var source = new DoublePointer(chunk)) {
+                Pointer.memcpy(blob.getPointer(offset), source, (long) chunk.remaining() * Double.BYTES);
+            }
+            offset += chunk.remaining();
+        }
+        var tensor = from_blob(blob, new long[]{rows, columns}, dtype(torch.ScalarType.Double));
+        var result = new CPUMatrix(tensor, rows, columns);
+        result.blob = blob;
+        return result;
+    }
+
     private static double @NotNull [] vectorFromMatrixByRow(double @NotNull [] @NotNull [] matrix) {
         var rows = matrix.length;
         var cols = matrix[0].length;
@@ -99,10 +168,45 @@ public class CPUMatrix implements MatrixInterface<CPUMatrix> {
         return data;
     }
 
-    private static Tensor tensorFromArray(double @NotNull [] array, long @NotNull [] shape) {
-        var tensor = zeros(shape, dtype(torch.ScalarType.Double));
-        try (var ptr = tensor.data_ptr_double()) {
-            ptr.put(array);
+    /**
+     * A tensor created over a copy of a Java array stored in native memory. The array is copied only once, and the
+     * tensor does not own its memory: closing this object releases both the tensor and the memory.
+     */
+    private static final class NativeTensor implements AutoCloseable {
+
+        private final DoublePointer blob;
+        private final Tensor tensor;
+
+        NativeTensor(double @NotNull [] array, long @NotNull [] shape) {
+            blob   = new DoublePointer(array);
+            tensor = from_blob(blob, shape, dtype(torch.ScalarType.Double));
+        }
+
+        @Override
+        public void close() {
+            tensor.close();
+            blob.close();
+        }
+    }
+
+    /**
+     * Get a contiguous copy of a tensor. Since {@link Tensor#contiguous()} returns the same storage when the tensor is
+     * already contiguous, the tensor is cloned in that case. A matrix never shares the memory of another one, which
+     * might be released when the other matrix is closed.
+     *
+     * @param tensor the tensor
+     * @return the copy
+     */
+    private static Tensor contiguousCopy(@NotNull Tensor tensor) {
+        return tensor.is_contiguous() ? tensor.clone() : tensor.contiguous();
+    }
+
+    private static Tensor indexTensor(int @NotNull [] indices) {
+        var tensor = zeros(new long[]{indices.length}, dtype(torch.ScalarType.Long));
+        try (var ptr = tensor.data_ptr_long()) {
+            for (var i = 0; i < indices.length; i++) {
+                ptr.put(i, indices[i]);
+            }
         }
         return tensor;
     }
@@ -123,7 +227,7 @@ public class CPUMatrix implements MatrixInterface<CPUMatrix> {
     @Override
     public CPUMatrix transpose() {
         try (var tmp = tensor.t()) {
-            return new CPUMatrix(tmp.contiguous(), columns, rows);
+            return new CPUMatrix(contiguousCopy(tmp), columns, rows);
         }
     }
 
@@ -135,7 +239,7 @@ public class CPUMatrix implements MatrixInterface<CPUMatrix> {
         closePointer();
         try (var tmp = tensor.t()) {
             tensor.close();
-            tensor = tmp.contiguous();
+            tensor = contiguousCopy(tmp);
         }
         swapSize();
     }
@@ -198,6 +302,8 @@ public class CPUMatrix implements MatrixInterface<CPUMatrix> {
         if (matrix instanceof CPUMatrix dm) {
             var rows = dm.rows();
             return new CPUMatrix(dm.tensor.matmul(tensor), rows, columns);
+        } else if (matrix instanceof SparseMatrix sm) {
+            return new CPUMatrix(sm.postMultiplyRaw(raw1D(), columns), sm.rows(), columns);
         } else {
             return this.preMultiply(new CPUMatrix(matrix));
         }
@@ -212,13 +318,32 @@ public class CPUMatrix implements MatrixInterface<CPUMatrix> {
     @Override
     public double[] preMultiply(double[] vector) {
         try (
-                var vectorTensor = tensorFromArray(vector, new long[]{1, vector.length});
-                var result = vectorTensor.matmul(tensor)
+                var vectorTensor = new NativeTensor(vector, new long[]{1, vector.length});
+                var result = vectorTensor.tensor.matmul(tensor)
         ) {
             return tensorToArray(result);
         }
     }
 
+    /**
+     * Pre-multiply this matrix by another matrix, storing the result in the destination matrix. That is, the operation
+     * is performed as destination = matrix * this.
+     *
+     * @param matrix      the other matrix
+     * @param destination the destination matrix
+     */
+    @Override
+    public void preMultiplyInto(MatrixInterface<?> matrix, @NotNull MatrixInterface<?> destination) {
+        if (matrix instanceof SparseMatrix sm) {
+            destination.fill(sm.postMultiplyRaw(raw1D(), columns));
+        } else if (matrix instanceof CPUMatrix dm && destination instanceof CPUMatrix dst) {
+            dst.closePointer();
+            torch.matmul_out(dst.tensor, dm.tensor, tensor);
+        } else {
+            MatrixInterface.super.preMultiplyInto(matrix, destination);
+        }
+    }
+
     /**
      * Post-multiply this matrix by another matrix. That is, the operation is performed as this * matrix.
      *
@@ -230,11 +355,61 @@ public class CPUMatrix implements MatrixInterface<CPUMatrix> {
         if (matrix instanceof CPUMatrix dm) {
             var columns = dm.columns();
             return new CPUMatrix(tensor.matmul(dm.tensor), rows, columns);
+        } else if (matrix instanceof SparseMatrix sm) {
+            return postMultiplySparse(sm);
         } else {
             return this.postMultiply(new CPUMatrix(matrix));
         }
     }
 
+    /**
+     * Post-multiply this matrix by a sparse matrix. That is, the operation is performed as this * matrix. Only the
+     * columns of this matrix corresponding to the non-empty rows of the sparse matrix are gathered and multiplied by
+     * the compacted sparse matrix.
+     *
+     * @param matrix the sparse matrix
+     * @return a new matrix
+     */
+    @Override
+    public CPUMatrix postMultiplySparse(@NotNull SparseOperand<?> matrix) {
+        var result = zeroMatrix(rows, matrix.columns());
+        postMultiplySparseInto(matrix, result);
+        return result;
+    }
+
+    /**
+     * Post-multiply this matrix by a sparse matrix, storing the result in the destination matrix. That is, the operation
+     * is performed as destination = this * matrix.
+     *
+     * @param matrix      the sparse matrix
+     * @param destination the destination matrix
+     */
+    @Override
+    public void postMultiplySparseInto(@NotNull SparseOperand<?> matrix, @NotNull MatrixInterface<?> destination) {
+        if (!(destination instanceof CPUMatrix dst)) {
+            MatrixInterface.super.postMultiplySparseInto(matrix, destination);
+            return;
+        }
+        dst.closePointer();
+        var nonEmptyRows = matrix.nonEmptyRows();
+        if (nonEmptyRows.length == 0) {
+            dst.tensor.zero_();
+            return;
+        }
+        try (
+                var index = indexTensor(nonEmptyRows);
+                var gathered = tensor.index_select(1, index);
+                var compact = zeros(new long[]{nonEmptyRows.length, matrix.columns()}, dtype(torch.ScalarType.Double))
+        ) {
+            // The non-zero elements of the batch are scattered straight into the memory of the tensor
+            try (var ptr = compact.data_ptr_double()) {
+                ptr.limit((long) nonEmptyRows.length * matrix.columns());
+                matrix.compactRowsInto(nonEmptyRows, ptr.asBuffer());
+            }
+            torch.matmul_out(dst.tensor, gathered, compact);
+        }
+    }
+
     /**
      * Post-multiply this matrix by a vector.
      *
@@ -244,8 +419,8 @@ public class CPUMatrix implements MatrixInterface<CPUMatrix> {
     @Override
     public double[] postMultiply(double[] vector) {
         try (
-                var vectorTensor = tensorFromArray(vector, new long[]{vector.length, 1});
-                var result = tensor.matmul(vectorTensor)
+                var vectorTensor = new NativeTensor(vector, new long[]{vector.length, 1});
+                var result = tensor.matmul(vectorTensor.tensor)
         ) {
             return tensorToArray(result);
         }
@@ -277,8 +452,8 @@ public class CPUMatrix implements MatrixInterface<CPUMatrix> {
     @Override
     public CPUMatrix subtract(double[] vector, Direction direction) {
         var vectorTensorSize = direction == Direction.ROW ? new long[]{1, vector.length} : new long[]{vector.length, 1};
-        try (var vectorTensor = tensorFromArray(vector, vectorTensorSize)) {
-            return new CPUMatrix(tensor.sub(vectorTensor), rows, columns);
+        try (var vectorTensor = new NativeTensor(vector, vectorTensorSize)) {
+            return new CPUMatrix(tensor.sub(vectorTensor.tensor), rows, columns);
         }
     }
 
@@ -295,6 +470,79 @@ public class CPUMatrix implements MatrixInterface<CPUMatrix> {
         }
     }
 
+    /**
+     * Subtract a matrix from this matrix, storing the result in the destination matrix. That is, the operation is
+     * performed as destination = this - matrix.
+     *
+     * @param matrix      the matrix
+     * @param destination the destination matrix
+     */
+    @Override
+    public void subtractInto(MatrixInterface<?> matrix, @NotNull MatrixInterface<?> destination) {
+        if (matrix instanceof CPUMatrix dm && destination instanceof CPUMatrix dst) {
+            dst.closePointer();
+            torch.sub_out(dst.tensor, tensor, dm.tensor);
+        } else {
+            MatrixInterface.super.subtractInto(matrix, destination);
+        }
+    }
+
+    /**
+     * Replace the content of this matrix with the values in the array. The array stores the matrix by rows. The values
+     * are written directly into the memory of the tensor.
+     *
+     * @param data the new content of the matrix
+     */
+    @Override
+    public void fill(double @NotNull [] data) {
+        if (data.length != rows * columns) throw new IllegalArgumentException("Incompatible matrix size");
+        openPointer().put(0, data);
+    }
+
+    /**
+     * Replace the content of a row of this matrix with the values in the array. The values are written directly into
+     * the memory of the tensor.
+     *
+     * @param i    the row number
+     * @param data the new content of the row
+     */
+    @Override
+    public void fillRow(int i, double @NotNull [] data) {
+        if (data.length != columns) throw new IllegalArgumentException("Incompatible row size");
+        openPointer().put(i * columns, data, 0, columns);
+    }
+
+    /**
+     * Check if the content of this matrix can be replaced in place with {@link #fill(double[])}
+     *
+     * @return always true
+     */
+    @Override
+    public boolean supportsFill() {
+        return true;
+    }
+
+    /**
+     * Get a read-only view of a row of the matrix. No element is copied. The view is invalidated by any operation that
+     * replaces the tensor (for example, {@link #transposeInPlace()}) and by {@link #close()}.
+     *
+     * @param i the row number
+     * @return the view
+     */
+    public DoubleBuffer rowView(int i) {
+        return openPointer().slice(i * columns, columns).asReadOnlyBuffer();
+    }
+
+    /**
+     * Get a read-only strided view of a column of the matrix. No element is copied.
+     *
+     * @param j the column number
+     * @return the view
+     */
+    public StridedView columnView(int j) {
+        return new StridedView(openPointer(), j, columns, rows);
+    }
+
     /**
      * Get the value of a cell
      *
@@ -304,8 +552,7 @@ public class CPUMatrix implements MatrixInterface<CPUMatrix> {
      */
     @Override
     public double val(int i, int j) {
-        openPointer();
-        return data[i * columns + j];
+        return openPointer().get(i * columns + j);
     }
 
     /**
@@ -316,9 +563,8 @@ public class CPUMatrix implements MatrixInterface<CPUMatrix> {
      */
     @Override
     public double[] row(int i) {
-        openPointer();
         var row = new double[columns];
-        System.arraycopy(data, i * columns, row, 0, columns);
+        openPointer().get(i * columns, row, 0, columns);
         return row;
     }
 
@@ -330,12 +576,7 @@ public class CPUMatrix implements MatrixInterface<CPUMatrix> {
      */
     @Override
     public double[] column(int j) {
-        openPointer();
-        var column = new double[rows];
-        for (var i = 0; i < rows; i++) {
-            column[i] = data[i * columns + j];
-        }
-        return column;
+        return columnView(j).toArray();
     }
 
     /**
@@ -365,14 +606,40 @@ public class CPUMatrix implements MatrixInterface<CPUMatrix> {
      */
     @Override
     public double[][] raw2D() {
-        openPointer();
+        var view = openPointer();
         var dataMatrix = new double[rows][columns];
         for (var i = 0; i < rows; i++) {
-            System.arraycopy(data, i * columns, dataMatrix[i], 0, columns);
+            view.get(i * columns, dataMatrix[i], 0, columns);
         }
         return dataMatrix;
     }
 
+    /**
+     * Get the raw matrix as a 2D array. If the direction is COLUMN, all the columns are copied in a single pass over
+     * the memory of the tensor. The rows are split in blocks processed in parallel.
+     *
+     * @param direction the direction of the result
+     * @return the raw matrix
+     */
+    @Override
+    public double[][] raw2D(@NotNull Direction direction) {
+        if (direction == Direction.ROW) return raw2D();
+        var view = openPointer();
+        var result = new double[columns][rows];
+        var blocks = (rows + COLUMN_COPY_BLOCK - 1) / COLUMN_COPY_BLOCK;
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            var row = new double[columns];
+            var last = Math.min(rows, (b + 1) * COLUMN_COPY_BLOCK);
+            for (var i = b * COLUMN_COPY_BLOCK; i < last; i++) {
+                view.get(i * columns, row, 0, columns);
+                for (var j = 0; j < columns; j++) {
+                    result[j][i] = row[j];
+                }
+            }
+        });
+        return result;
+    }
+
     /**
      * Get the raw matrix as a 1D array
      *
@@ -380,7 +647,8 @@ public class CPUMatrix implements MatrixInterface<CPUMatrix> {
      */
     @Override
     public double[] raw1D() {
-        openPointer();
+        var data = new double[rows * columns];
+        openPointer().get(0, data);
         return data;
     }
 
@@ -436,6 +704,10 @@ public class CPUMatrix implements MatrixInterface<CPUMatrix> {
     public void close() {
         closePointer();
         tensor.close();
+        if (blob != null) {
+            blob.close();
+            blob = null;
+        }
     }
 
     @Serial
@@ -448,26 +720,36 @@ public class CPUMatrix implements MatrixInterface<CPUMatrix> {
     private void readObject(@NotNull ObjectInputStream ois) throws ClassNotFoundException, IOException {
         ois.defaultReadObject();
         double[] raw = (double[]) ois.readObject();
-        tensor = tensorFromArray(raw, new long[]{rows, columns});
+        var nt = new NativeTensor(raw, new long[]{rows, columns});
+        tensor = nt.tensor;
+        blob   = nt.blob;
     }
 
     /**
-     * Open a pointer to the underlying pytorch tensor and preload the data into a double array
+     * Open a pointer to the underlying pytorch tensor and build a direct view of its memory. The view is shared by all
+     * the threads reading the matrix, so only absolute accesses must be used.
+     *
+     * @return the view
      */
-    private void openPointer() {
-        if (pointer == null) {
-            pointer = tensor.data_ptr_double();
-            data    = new double[rows * columns];
-            pointer.get(data);
+    private DoubleBuffer openPointer() {
+        var current = view;
+        if (current != null) return current;
+        synchronized (this) {
+            if (view == null) {
+                pointer = tensor.data_ptr_double();
+                pointer.limit((long) rows * columns);
+                view = pointer.asBuffer();
+            }
+            return view;
         }
     }
 
     /**
-     * Close the pointer to the underlying pytorch tensor and free the double array
+     * Close the pointer to the underlying pytorch tensor and drop the view of its memory
      */
-    private void closePointer() {
+    private synchronized void closePointer() {
         if (pointer != null) {
-            data = null;
+            view = null;
             pointer.close();
             pointer = null;
         }
@@ -482,4 +764,66 @@ public class CPUMatrix implements MatrixInterface<CPUMatrix> {
         rows    = columns;
         columns = tmp;
     }
+
+    /**
+     * A read-only view of equally spaced elements of the memory of a tensor, such as a column of a matrix stored by
+     * rows. The view is invalidated by the same operations that invalidate {@link #rowView(int)}.
+     */
+    public static final class StridedView {
+
+        private final DoubleBuffer buffer;
+        private final int offset;
+        private final int stride;
+        private final int length;
+
+        private StridedView(DoubleBuffer buffer, int offset, int stride, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.stride = stride;
+            this.length = length;
+        }
+
+        /**
+         * Get the number of elements of the view
+         *
+         * @return the number of elements
+         */
+        public int length() {
+            return length;
+        }
+
+        /**
+         * Get an element of the view
+         *
+         * @param k the index of the element
+         * @return the value
+         */
+        public double get(int k) {
+            if (k < 0 || k >= length) throw new IndexOutOfBoundsException(k);
+            return buffer.get(offset + k * stride);
+        }
+
+        /**
+         * Copy the elements of the view into an array
+         *
+         * @param destination the array
+         */
+        public void copyInto(double @NotNull [] destination) {
+            if (destination.length < length) throw new IllegalArgumentException("Incompatible array size");
+            for (var k = 0; k < length; k++) {
+                destination[k] = buffer.get(offset + k * stride);
+            }
+        }
+
+        /**
+         * Copy the elements of the view into a new array
+         *
+         * @return the array
+         */
+        public double @NotNull [] toArray() {
+            var result = new double[length];
+            copyInto(result);
+            return result;
+        }
+    }
 }
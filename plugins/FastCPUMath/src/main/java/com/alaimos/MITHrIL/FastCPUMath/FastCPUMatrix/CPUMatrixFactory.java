@@ -1,5 +1,6 @@
 package com.alaimos.MITHrIL.FastCPUMath.FastCPUMatrix;
 
+import com.alaimos.MITHrIL.api.Math.MappedMatrix;
 import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
 import com.alaimos.MITHrIL.api.Math.MatrixInterface;
 import org.pf4j.Extension;
@@ -86,4 +87,16 @@ public class CPUMatrixFactory implements MatrixFactoryInterface<CPUMatrix> {
     public CPUMatrix of(MatrixInterface<?> matrix) {
         return new CPUMatrix(matrix);
     }
+
+    /**
+     * Create a new matrix from a memory-mapped matrix file. The mapped elements are copied directly into the native
+     * memory of the tensor.
+     *
+     * @param matrix the mapped matrix
+     * @return a new matrix
+     */
+    @Override
+    public CPUMatrix of(MappedMatrix matrix) {
+        return CPUMatrix.fromMapped(matrix);
+    }
 }
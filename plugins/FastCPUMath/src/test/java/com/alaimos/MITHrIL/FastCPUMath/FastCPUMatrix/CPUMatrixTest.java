@@ -3,10 +3,13 @@ package com.alaimos.MITHrIL.FastCPUMath.FastCPUMatrix;
 import com.alaimos.MITHrIL.api.Commons.Utils;
 import com.alaimos.MITHrIL.api.Data.Reader.BinaryReader;
 import com.alaimos.MITHrIL.api.Data.Writer.BinaryWriter;
+import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrix;
 import org.junit.jupiter.api.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ReadOnlyBufferException;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -72,7 +75,48 @@ class CPUMatrixTest {
         }
     }
 
+    @Test
+    void raw2DByColumn() {
+        var raw2D = m2.raw2D(MatrixInterface.Direction.COLUMN);
+        assertEquals(4, raw2D.length);
+        for (var j = 0; j < 4; j++) {
+            assertArrayEquals(m2.column(j), raw2D[j], DELTA);
+        }
+        assertArrayEquals(new double[]{4, 8, 12}, raw2D[3], DELTA);
+    }
+
+    @Test
+    void nativeViews() {
+        assertEquals(7, m2.rowView(1).get(2), DELTA);
+        assertThrows(ReadOnlyBufferException.class, () -> m2.rowView(1).put(0, 42));
+        assertArrayEquals(new double[]{2, 6, 10}, m2.column(1), DELTA);
+        var columnView = m2.columnView(3);
+        assertEquals(3, columnView.length());
+        assertEquals(8, columnView.get(1), DELTA);
+        assertArrayEquals(new double[]{4, 8, 12}, columnView.toArray(), DELTA);
+        assertThrows(IndexOutOfBoundsException.class, () -> columnView.get(3));
+    }
+
+    @Test
+    void postMultiplySparseInto() {
+        var sparse = new SparseMatrix(new double[]{0, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1}, 3, 4);
+        try (var destination = factory.of(new double[12], 3, 4)) {
+            m1.postMultiplySparseInto(sparse, destination);
+            assertArrayEquals(new double[]{0, 2, 0, 3, 0, 8, 0, 6, 0, 14, 0, 9}, destination.raw1D(), DELTA);
+        }
+    }
+
     @Order(3)
+    @Test
+    void copy() {
+        var original = new CPUMatrix(M1, 3, 3);
+        var copy = new CPUMatrix(original);
+        original.close();
+        // The copy owns its memory, so it is still valid after the original is closed
+        assertArrayEquals(M1, copy.raw1D(), DELTA);
+        copy.close();
+    }
+
     @Test
     void raw1D() {
         assertArrayEquals(M1, m1.raw1D(), DELTA);
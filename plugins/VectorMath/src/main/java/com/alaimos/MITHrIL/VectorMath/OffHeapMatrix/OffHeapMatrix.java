@@ -0,0 +1,748 @@
+package com.alaimos.MITHrIL.VectorMath.OffHeapMatrix;
+
+import com.alaimos.MITHrIL.VectorMath.VectorMatrix.Kernels;
+import com.alaimos.MITHrIL.api.Math.MappedMatrix;
+import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrix;
+import com.alaimos.MITHrIL.api.Math.SparseOperand;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serial;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+/**
+ * A dense matrix stored by rows in native memory, outside the Java heap. Large operators (such as the metapathway
+ * matrix and its inverse) can be kept in this format, so that the heap only needs to hold the small buffers used for
+ * each batch.
+ * <p>
+ * All the operations stream the off-heap elements in panels of {@link #PANEL_ROWS} rows. Each panel is copied to the
+ * heap, processed by the kernels in {@link Kernels}, and the result is written back to native memory. Panels are
+ * processed in parallel. In a multiplication, the left operand is streamed, while the right operand is copied to the
+ * heap once per call. Therefore, large matrices should be used as the left operand (that is, batch.preMultiply(large)
+ * or large.postMultiply(batch)). Inversion, rank, and determinant temporarily copy the matrix to the heap.
+ * <p>
+ * New matrices are stored in memory mapped from a deleted temporary file, so they are limited neither by the heap size
+ * nor by -XX:MaxDirectMemorySize. The memory is released as soon as {@link #close()} is called. Matrices created from a
+ * {@link MappedMatrix} wrap the mapped region without copying it. Such matrices are read-only: filling them replaces
+ * the mapping with newly allocated memory. A matrix must not be used after it has been closed.
+ */
+public class OffHeapMatrix implements MatrixInterface<OffHeapMatrix> {
+
+    @Serial
+    private static final long serialVersionUID = 6143975108246381935L;
+    /**
+     * The number of rows processed by each task
+     */
+    private static final int PANEL_ROWS = 64;
+    private static final int COLUMN_BLOCK = 1024;
+    private int rows;
+    private int columns;
+    private transient OffHeapStorage storage;
+
+    private OffHeapMatrix(@NotNull OffHeapStorage storage) {
+        this.rows    = storage.rows();
+        this.columns = storage.columns();
+        this.storage = storage;
+    }
+
+    private OffHeapMatrix(int rows, int columns) {
+        this(OffHeapStorage.allocate(rows, columns));
+    }
+
+    public OffHeapMatrix(double @NotNull [][] matrix) {
+        this(matrix, Direction.ROW);
+    }
+
+    public OffHeapMatrix(double @NotNull [][] matrix, @NotNull Direction direction) {
+        this(
+                (direction == Direction.ROW) ? matrix.length : (matrix.length == 0 ? 0 : matrix[0].length),
+                (direction == Direction.ROW) ? (matrix.length == 0 ? 0 : matrix[0].length) : matrix.length
+        );
+        if (direction == Direction.ROW) {
+            for (var i = 0; i < rows; i++) {
+                storage.put(i, 0, matrix[i], 0, columns);
+            }
+        } else {
+            var row = new double[columns];
+            for (var i = 0; i < rows; i++) {
+                for (var j = 0; j < columns; j++) {
+                    row[j] = matrix[j][i];
+                }
+                storage.put(i, 0, row, 0, columns);
+            }
+        }
+    }
+
+    public OffHeapMatrix(double @NotNull [] matrix, int rows, int columns) {
+        this(rows, columns);
+        fill(matrix);
+    }
+
+    public OffHeapMatrix(@NotNull MatrixInterface<?> matrix) {
+        this(matrix.rows(), matrix.columns());
+        if (matrix instanceof OffHeapMatrix o) {
+            forEachPanel(rows, (i0, count) -> {
+                var panel = new double[count * columns];
+                o.storage.getRows(i0, count, panel, 0);
+                storage.putRows(i0, count, panel, 0);
+            });
+        } else {
+            fill(matrix.raw1D());
+        }
+    }
+
+    /**
+     * Create a matrix that wraps a memory-mapped matrix. No element is copied.
+     *
+     * @param matrix the mapped matrix
+     */
+    public OffHeapMatrix(@NotNull MappedMatrix matrix) {
+        this(OffHeapStorage.wrap(matrix));
+    }
+
+    //region Panel helpers
+
+    /**
+     * A consumer of blocks of consecutive rows
+     */
+    @FunctionalInterface
+    private interface PanelConsumer {
+        void accept(int firstRow, int count);
+    }
+
+    /**
+     * A function that transforms in place a block of consecutive rows
+     */
+    @FunctionalInterface
+    private interface PanelTransform {
+        void apply(int firstRow, int count, double[] panel);
+    }
+
+    /**
+     * A source that copies blocks of consecutive rows of a matrix into an array
+     */
+    @FunctionalInterface
+    private interface RowSource {
+        void rows(int firstRow, int count, double[] destination);
+    }
+
+    /**
+     * Split the rows in panels of {@link #PANEL_ROWS} rows and process them in parallel
+     *
+     * @param rows the number of rows
+     * @param body the body of the loop
+     */
+    private static void forEachPanel(int rows, @NotNull PanelConsumer body) {
+        var panels = (rows + PANEL_ROWS - 1) / PANEL_ROWS;
+        Kernels.parallelFor(panels, t -> {
+            var firstRow = t * PANEL_ROWS;
+            body.accept(firstRow, Math.min(PANEL_ROWS, rows - firstRow));
+        });
+    }
+
+    /**
+     * Build a row source for a matrix. Off-heap matrices are read directly from native memory; any other matrix is
+     * copied to the heap once.
+     *
+     * @param matrix the matrix
+     * @return the row source
+     */
+    private static @NotNull RowSource rowSource(@NotNull MatrixInterface<?> matrix) {
+        if (matrix instanceof OffHeapMatrix o) {
+            var storage = o.storage;
+            return (firstRow, count, destination) -> storage.getRows(firstRow, count, destination, 0);
+        }
+        var data = matrix.raw1D();
+        var columns = matrix.columns();
+        return (firstRow, count, destination) -> System.arraycopy(
+                data, firstRow * columns, destination, 0, count * columns);
+    }
+
+    /**
+     * Compute destination = left * right, streaming the rows of the left matrix
+     *
+     * @param left        the left matrix (m x k)
+     * @param right       the right matrix (k x n) stored by rows
+     * @param m           the number of rows of the left matrix
+     * @param k           the number of columns of the left matrix
+     * @param n           the number of columns of the right matrix
+     * @param destination the destination storage (m x n)
+     */
+    private static void multiply(
+            @NotNull RowSource left, double @NotNull [] right, int m, int k, int n, @NotNull OffHeapStorage destination
+    ) {
+        forEachPanel(m, (i0, count) -> {
+            var a = new double[count * k];
+            var c = new double[count * n];
+            left.rows(i0, count, a);
+            Kernels.gemmPanel(a, right, c, count, k, n);
+            destination.putRows(i0, count, c, 0);
+        });
+    }
+
+    /**
+     * Transform each panel of this matrix and store the result in a new matrix
+     *
+     * @param function a function that transforms in place a panel
+     * @return a new matrix
+     */
+    private @NotNull OffHeapMatrix transform(@NotNull PanelTransform function) {
+        var result = new OffHeapMatrix(rows, columns);
+        forEachPanel(rows, (i0, count) -> {
+            var panel = new double[count * columns];
+            storage.getRows(i0, count, panel, 0);
+            function.apply(i0, count, panel);
+            result.storage.putRows(i0, count, panel, 0);
+        });
+        return result;
+    }
+
+    private static void checkMultiplication(int leftColumns, int rightRows) {
+        if (leftColumns != rightRows) throw new IllegalArgumentException("Incompatible matrix size");
+    }
+
+    /**
+     * Get a writable storage of the given size that can be used to store the result of an operation. If the
+     * destination matrix is not an off-heap matrix, or it is one of the operands, null is returned.
+     */
+    private OffHeapStorage writableDestination(
+            @NotNull MatrixInterface<?> destination, MatrixInterface<?> operand, int rows, int columns
+    ) {
+        if (!(destination instanceof OffHeapMatrix dst) || dst == this || dst == operand) return null;
+        if (dst.rows != rows || dst.columns != columns) throw new IllegalArgumentException("Incompatible matrix size");
+        if (!dst.storage.writable()) dst.replaceStorage(OffHeapStorage.allocate(rows, columns));
+        return dst.storage;
+    }
+
+    private void replaceStorage(@NotNull OffHeapStorage newStorage) {
+        if (storage != null) storage.release();
+        storage = newStorage;
+        rows    = newStorage.rows();
+        columns = newStorage.columns();
+    }
+
+    //endregion
+
+    /**
+     * Transpose the matrix
+     *
+     * @return a new matrix
+     */
+    @Override
+    public OffHeapMatrix transpose() {
+        var result = new OffHeapMatrix(columns, rows);
+        forEachPanel(rows, (i0, count) -> {
+            var panel = new double[count * columns];
+            var column = new double[count];
+            storage.getRows(i0, count, panel, 0);
+            for (var j = 0; j < columns; j++) {
+                for (var i = 0; i < count; i++) {
+                    column[i] = panel[i * columns + j];
+                }
+                result.storage.put(j, i0, column, 0, count);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Transpose the matrix in place
+     */
+    @Override
+    public void transposeInPlace() {
+        var transposed = transpose();
+        replaceStorage(transposed.storage);
+    }
+
+    private double @NotNull [][] invertInternal() {
+        var matrix = new Array2DRowRealMatrix(raw2D(), false);
+        if (rows == columns) {
+            var solver = new LUDecomposition(matrix).getSolver();
+            if (solver.isNonSingular()) return solver.getInverse().getData();
+        }
+        return new SingularValueDecomposition(matrix).getSolver().getInverse().getData();
+    }
+
+    /**
+     * Invert the matrix. It uses the Moore-Penrose pseudo-inverse to invert the matrix if it is singular or not square.
+     * The inverse is computed on the heap and then copied to native memory.
+     *
+     * @return a new matrix
+     */
+    @Override
+    public OffHeapMatrix invert() {
+        return new OffHeapMatrix(invertInternal());
+    }
+
+    /**
+     * Invert the matrix in place. It uses the Moore-Penrose pseudo-inverse to invert the matrix if it is singular or
+     * not square. The inverse is computed on the heap and then copied to native memory.
+     */
+    @Override
+    public void invertInPlace() {
+        var inverse = invert();
+        replaceStorage(inverse.storage);
+    }
+
+    /**
+     * Get the rank of the matrix
+     *
+     * @return the rank
+     */
+    @Override
+    public int rank() {
+        return new SingularValueDecomposition(new Array2DRowRealMatrix(raw2D(), false)).getRank();
+    }
+
+    /**
+     * Get the determinant of the matrix
+     *
+     * @return the determinant
+     */
+    @Override
+    public double determinant() {
+        return new LUDecomposition(new Array2DRowRealMatrix(raw2D(), false)).getDeterminant();
+    }
+
+    /**
+     * Check if the matrix is invertible
+     *
+     * @return true if the matrix is invertible
+     */
+    @Override
+    public boolean invertible() {
+        return rank() == Math.min(rows, columns);
+    }
+
+    /**
+     * Pre-multiply this matrix by another matrix. That is, the operation is performed as matrix * this. The rows of the
+     * other matrix are streamed, while this matrix is copied to the heap.
+     *
+     * @param matrix the other matrix
+     * @return a new matrix
+     */
+    @Override
+    public OffHeapMatrix preMultiply(MatrixInterface<?> matrix) {
+        var result = new OffHeapMatrix(matrix.rows(), columns);
+        preMultiplyInto(matrix, result);
+        return result;
+    }
+
+    /**
+     * Pre-multiply this matrix by a vector. That is, the operation is performed as vector * this. The columns are split
+     * in blocks that are processed in parallel, and each row is read once.
+     *
+     * @param vector the vector
+     * @return a new vector
+     */
+    @Override
+    public double[] preMultiply(double @NotNull [] vector) {
+        checkMultiplication(vector.length, rows);
+        var result = new double[columns];
+        var blocks = (columns + COLUMN_BLOCK - 1) / COLUMN_BLOCK;
+        Kernels.parallelFor(blocks, t -> {
+            var j0 = t * COLUMN_BLOCK;
+            var j1 = Math.min(columns, j0 + COLUMN_BLOCK);
+            var segment = new double[j1 - j0];
+            for (var i = 0; i < rows; i++) {
+                var xi = vector[i];
+                if (xi == 0.0) continue;
+                storage.get(i, j0, j1, segment, 0);
+                Kernels.axpy(xi, segment, -j0, result, j0, j1);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Pre-multiply this matrix by another matrix, storing the result in the destination matrix. That is, the operation
+     * is performed as destination = matrix * this. The rows of the other matrix are streamed, while this matrix is
+     * copied to the heap.
+     *
+     * @param matrix      the other matrix
+     * @param destination the destination matrix
+     */
+    @Override
+    public void preMultiplyInto(MatrixInterface<?> matrix, @NotNull MatrixInterface<?> destination) {
+        if (matrix instanceof SparseMatrix sm) {
+            destination.fill(sm.postMultiplyRaw(raw1D(), columns));
+            return;
+        }
+        checkMultiplication(matrix.columns(), rows);
+        var dst = writableDestination(destination, matrix, matrix.rows(), columns);
+        if (dst == null) {
+            MatrixInterface.super.preMultiplyInto(matrix, destination);
+        } else {
+            multiply(rowSource(matrix), raw1D(), matrix.rows(), rows, columns, dst);
+        }
+    }
+
+    /**
+     * Post-multiply this matrix by another matrix. That is, the operation is performed as this * matrix. The rows of
+     * this matrix are streamed, while the other matrix is copied to the heap.
+     *
+     * @param matrix the other matrix
+     * @return a new matrix
+     */
+    @Override
+    public OffHeapMatrix postMultiply(MatrixInterface<?> matrix) {
+        if (matrix instanceof SparseMatrix sm) return postMultiplySparse(sm);
+        checkMultiplication(columns, matrix.rows());
+        var result = new OffHeapMatrix(rows, matrix.columns());
+        multiply(rowSource(this), matrix.raw1D(), rows, columns, matrix.columns(), result.storage);
+        return result;
+    }
+
+    /**
+     * Post-multiply this matrix by a sparse matrix. That is, the operation is performed as this * matrix. Only the
+     * columns of this matrix corresponding to the non-empty rows of the sparse matrix are read.
+     *
+     * @param matrix the sparse matrix
+     * @return a new matrix
+     */
+    @Override
+    public OffHeapMatrix postMultiplySparse(@NotNull SparseOperand<?> matrix) {
+        var result = new OffHeapMatrix(rows, matrix.columns());
+        postMultiplySparseInto(matrix, result);
+        return result;
+    }
+
+    /**
+     * Post-multiply this matrix by a sparse matrix, storing the result in the destination matrix. That is, the operation
+     * is performed as destination = this * matrix. Only the columns of this matrix corresponding to the non-empty rows
+     * of the sparse matrix are read, and they are multiplied by the compacted sparse matrix.
+     *
+     * @param matrix      the sparse matrix
+     * @param destination the destination matrix
+     */
+    @Override
+    public void postMultiplySparseInto(@NotNull SparseOperand<?> matrix, @NotNull MatrixInterface<?> destination) {
+        checkMultiplication(columns, matrix.rows());
+        var dst = writableDestination(destination, matrix, rows, matrix.columns());
+        if (dst == null) {
+            MatrixInterface.super.postMultiplySparseInto(matrix, destination);
+            return;
+        }
+        var n = matrix.columns();
+        var nonEmptyRows = matrix.nonEmptyRows();
+        var r = nonEmptyRows.length;
+        var compact = matrix.compactRows(nonEmptyRows);
+        forEachPanel(rows, (i0, count) -> {
+            var gathered = new double[count * r];
+            var c = new double[count * n];
+            for (var i = 0; i < count; i++) {
+                for (var p = 0; p < r; p++) {
+                    gathered[i * r + p] = storage.get(i0 + i, nonEmptyRows[p]);
+                }
+            }
+            Kernels.gemmPanel(gathered, compact, c, count, r, n);
+            dst.putRows(i0, count, c, 0);
+        });
+    }
+
+    /**
+     * Post-multiply this matrix by a vector.
+     *
+     * @param vector the vector
+     * @return a new vector
+     */
+    @Override
+    public double[] postMultiply(double @NotNull [] vector) {
+        checkMultiplication(columns, vector.length);
+        var result = new double[rows];
+        forEachPanel(rows, (i0, count) -> {
+            var panel = new double[count * columns];
+            storage.getRows(i0, count, panel, 0);
+            for (var i = 0; i < count; i++) {
+                result[i0 + i] = Kernels.dot(panel, i * columns, vector, columns);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Subtract a matrix from this matrix
+     *
+     * @param matrix the matrix
+     * @return a new matrix
+     */
+    @Override
+    public OffHeapMatrix subtract(MatrixInterface<?> matrix) {
+        var result = new OffHeapMatrix(rows, columns);
+        subtractInto(matrix, result);
+        return result;
+    }
+
+    /**
+     * Given a vector, it returns a new matrix obtained by subtracting the vector from each row or column of the matrix.
+     * The direction parameter specifies if the vector is subtracted from rows or columns.
+     *
+     * @param vector    the vector
+     * @param direction the direction
+     * @return a new matrix
+     */
+    @Override
+    public OffHeapMatrix subtract(double @NotNull [] vector, @NotNull Direction direction) {
+        return switch (direction) {
+            case ROW -> {
+                if (vector.length != columns) throw new IllegalArgumentException("Incompatible vector size");
+                yield transform((i0, count, panel) -> {
+                    for (var k = 0; k < count * columns; k++) {
+                        panel[k] -= vector[k % columns];
+                    }
+                });
+            }
+            case COLUMN -> {
+                if (vector.length != rows) throw new IllegalArgumentException("Incompatible vector size");
+                yield transform((i0, count, panel) -> {
+                    for (var i = 0; i < count; i++) {
+                        var v = vector[i0 + i];
+                        for (var k = i * columns; k < (i + 1) * columns; k++) {
+                            panel[k] -= v;
+                        }
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Subtract a value from each element of the matrix
+     *
+     * @param value the value
+     * @return a new matrix
+     */
+    @Override
+    public OffHeapMatrix subtract(double value) {
+        return transform((i0, count, panel) -> {
+            for (var k = 0; k < count * columns; k++) {
+                panel[k] -= value;
+            }
+        });
+    }
+
+    /**
+     * Subtract a matrix from this matrix, storing the result in the destination matrix. That is, the operation is
+     * performed as destination = this - matrix.
+     *
+     * @param matrix      the matrix
+     * @param destination the destination matrix
+     */
+    @Override
+    public void subtractInto(MatrixInterface<?> matrix, @NotNull MatrixInterface<?> destination) {
+        if (matrix.rows() != rows || matrix.columns() != columns) {
+            throw new IllegalArgumentException("Incompatible matrix size");
+        }
+        if (!(destination instanceof OffHeapMatrix dst)) {
+            MatrixInterface.super.subtractInto(matrix, destination);
+            return;
+        }
+        if (dst.rows != rows || dst.columns != columns) throw new IllegalArgumentException("Incompatible matrix size");
+        // Each panel is read from both operands before it is written, so the destination can be one of the operands
+        var target = dst.storage.writable() ? dst.storage : OffHeapStorage.allocate(rows, columns);
+        var right = rowSource(matrix);
+        forEachPanel(rows, (i0, count) -> {
+            var a = new double[count * columns];
+            var b = new double[count * columns];
+            storage.getRows(i0, count, a, 0);
+            right.rows(i0, count, b);
+            for (var k = 0; k < count * columns; k++) {
+                a[k] -= b[k];
+            }
+            target.putRows(i0, count, a, 0);
+        });
+        if (target != dst.storage) dst.replaceStorage(target);
+    }
+
+    /**
+     * Replace the content of this matrix with the values in the array. The array stores the matrix by rows. If this
+     * matrix wraps a read-only mapped matrix, new native memory is allocated.
+     *
+     * @param data the new content of the matrix
+     */
+    @Override
+    public void fill(double @NotNull [] data) {
+        if (data.length != rows * columns) throw new IllegalArgumentException("Incompatible matrix size");
+        if (!storage.writable()) replaceStorage(OffHeapStorage.allocate(rows, columns));
+        forEachPanel(rows, (i0, count) -> storage.putRows(i0, count, data, i0 * columns));
+    }
+
+    /**
+     * Replace the content of a row of this matrix with the values in the array. If this matrix wraps a read-only
+     * mapped matrix, it is first copied into new native memory.
+     *
+     * @param i    the row number
+     * @param data the new content of the row
+     */
+    @Override
+    public void fillRow(int i, double @NotNull [] data) {
+        if (data.length != columns) throw new IllegalArgumentException("Incompatible row size");
+        if (!storage.writable()) fill(raw1D());
+        storage.put(i, 0, data, 0, columns);
+    }
+
+    /**
+     * Check if the content of this matrix can be replaced in place with {@link #fill(double[])}
+     *
+     * @return always true
+     */
+    @Override
+    public boolean supportsFill() {
+        return true;
+    }
+
+    /**
+     * Get the value of a cell
+     *
+     * @param i the row
+     * @param j the column
+     * @return the value
+     */
+    @Override
+    public double val(int i, int j) {
+        return storage.get(i, j);
+    }
+
+    /**
+     * Get a row of the matrix
+     *
+     * @param i the row number
+     * @return the row
+     */
+    @Override
+    public double[] row(int i) {
+        var row = new double[columns];
+        storage.get(i, 0, columns, row, 0);
+        return row;
+    }
+
+    @Override
+    public void rowInto(int i, double @NotNull [] destination) {
+        storage.get(i, 0, columns, destination, 0);
+    }
+
+    /**
+     * Get a column of the matrix
+     *
+     * @param j the column number
+     * @return the column
+     */
+    @Override
+    public double[] column(int j) {
+        var column = new double[rows];
+        for (var i = 0; i < rows; i++) {
+            column[i] = storage.get(i, j);
+        }
+        return column;
+    }
+
+    /**
+     * Get the number of rows
+     *
+     * @return the number of rows
+     */
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Get the number of columns
+     *
+     * @return the number of columns
+     */
+    @Override
+    public int columns() {
+        return columns;
+    }
+
+    /**
+     * Get a copy of the matrix as a 2D array
+     *
+     * @return the raw matrix
+     */
+    @Override
+    public double[][] raw2D() {
+        var result = new double[rows][];
+        IntStream.range(0, rows).parallel().forEach(i -> result[i] = row(i));
+        return result;
+    }
+
+    /**
+     * Get a copy of the matrix as a 1D array
+     *
+     * @return the raw matrix
+     */
+    @Override
+    public double[] raw1D() {
+        var result = new double[rows * columns];
+        forEachPanel(rows, (i0, count) -> storage.getRows(i0, count, result, i0 * columns));
+        return result;
+    }
+
+    @Override
+    public double[] applyFunction(VectorToScalarFunction function, Direction direction) {
+        var size = direction == Direction.ROW ? rows : columns;
+        return IntStream.range(0, size)
+                        .parallel()
+                        .mapToDouble(i -> function.apply(direction == Direction.ROW ? row(i) : column(i), i))
+                        .toArray();
+    }
+
+    @Override
+    public MatrixInterface<?> applyFunction(ElementwiseFunction function) {
+        return transform((i0, count, panel) -> {
+            for (var i = 0; i < count; i++) {
+                var offset = i * columns;
+                for (var j = 0; j < columns; j++) {
+                    panel[offset + j] = function.apply(panel[offset + j], i0 + i, j);
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o instanceof MatrixInterface<?> mi)
+            return rows() == mi.rows() && columns() == mi.columns() && Arrays.equals(raw1D(), mi.raw1D());
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        Object tmp = raw1D();
+        return Objects.hash(tmp, rows(), columns());
+    }
+
+    @Serial
+    private void writeObject(@NotNull ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(raw1D());
+    }
+
+    @Serial
+    private void readObject(@NotNull ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        var data = (double[]) in.readObject();
+        storage = OffHeapStorage.allocate(rows, columns);
+        storage.putRows(0, rows, data, 0);
+    }
+
+    /**
+     * Releases the native memory associated with this matrix. The memory is freed immediately, so the matrix must not
+     * be used (or closed) concurrently with other operations.
+     */
+    @Override
+    public void close() {
+        if (storage != null) storage.release();
+    }
+}
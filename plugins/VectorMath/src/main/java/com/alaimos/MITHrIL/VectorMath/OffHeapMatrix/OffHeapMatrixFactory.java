@@ -0,0 +1,98 @@
+package com.alaimos.MITHrIL.VectorMath.OffHeapMatrix;
+
+import com.alaimos.MITHrIL.VectorMath.VectorMatrix.Kernels;
+import com.alaimos.MITHrIL.api.Math.MappedMatrix;
+import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
+import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+import org.pf4j.Extension;
+
+@Extension
+public class OffHeapMatrixFactory implements MatrixFactoryInterface<OffHeapMatrix> {
+
+    /**
+     * Get the name of the matrix implementation
+     *
+     * @return the name
+     */
+    @Override
+    public String name() {
+        return "offheap";
+    }
+
+    @Override
+    public String description() {
+        return "A dense matrix implementation that stores the elements in native memory, outside the Java heap. The memory is released as soon as a matrix is closed, and cached matrices are memory-mapped without copying them. New matrices are mapped from deleted temporary files, so they are not limited by -Xmx or -XX:MaxDirectMemorySize.";
+    }
+
+    /**
+     * Set the maximum number of threads to use for the operations. The operation is SUPPORTED by this implementation.
+     * The limit is shared with the "vector" implementation.
+     *
+     * @param maxThreads the maximum number of threads
+     */
+    @Override
+    public void setMaxThreads(int maxThreads) {
+        Kernels.setMaxThreads(maxThreads);
+    }
+
+    /**
+     * Create a new matrix from a 2D array
+     *
+     * @param matrix the 2D array (array of rows that is the first index is the row number)
+     * @return a new matrix
+     */
+    @Override
+    public OffHeapMatrix of(double[][] matrix) {
+        return new OffHeapMatrix(matrix);
+    }
+
+    /**
+     * Create a new matrix from a 1D array. The array stores the matrix by rows. That is, given the element (i,j) of the
+     * matrix, the corresponding element in the array is matrix[i * columns + j].
+     *
+     * @param matrix  the 1D array
+     * @param rows    the number of rows
+     * @param columns the number of columns
+     * @return a new matrix
+     */
+    @Override
+    public OffHeapMatrix of(double[] matrix, int rows, int columns) {
+        return new OffHeapMatrix(matrix, rows, columns);
+    }
+
+    /**
+     * Create a new matrix from a 2D array.
+     *
+     * @param matrix    the 2D array
+     * @param direction the direction of the array (ROW: the array stores the matrix by rows, COLUMN: the array stores
+     *                  the matrix by columns)
+     * @return a new matrix
+     */
+    @Override
+    public OffHeapMatrix of(double[][] matrix, MatrixInterface.Direction direction) {
+        return new OffHeapMatrix(matrix, direction);
+    }
+
+    /**
+     * Create a new matrix from a matrix of another type. This operation is useful to convert a matrix of a different
+     * implementation to a matrix of this implementation. The content of the matrix is always copied.
+     *
+     * @param matrix the matrix to convert
+     * @return a new matrix
+     */
+    @Override
+    public OffHeapMatrix of(MatrixInterface<?> matrix) {
+        return new OffHeapMatrix(matrix);
+    }
+
+    /**
+     * Create a new matrix from a memory-mapped matrix file. The mapped region is wrapped without copying it.
+     *
+     * @param matrix the mapped matrix
+     * @return a new matrix
+     */
+    @Override
+    public OffHeapMatrix of(MappedMatrix matrix) {
+        return new OffHeapMatrix(matrix);
+    }
+}
@@ -0,0 +1,253 @@
+package com.alaimos.MITHrIL.VectorMath.OffHeapMatrix;
+
+import com.alaimos.MITHrIL.api.Math.MappedMatrix;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The native memory holding the elements of an {@link OffHeapMatrix}. Elements are stored by rows as little-endian
+ * doubles. Since a single buffer cannot exceed 2GB, the matrix is split into chunks made of whole rows, following the
+ * same layout as {@link MappedMatrix}. All the accesses use absolute positions, so a storage can be read and written
+ * concurrently by multiple threads working on different rows.
+ * <p>
+ * The storage either owns its buffers or wraps the read-only chunks of a {@link MappedMatrix}. Owned buffers are
+ * read-write mappings of an anonymous temporary file, which is deleted as soon as it is mapped. Unlike the buffers
+ * allocated by {@link ByteBuffer#allocateDirect(int)}, mappings are not limited by -XX:MaxDirectMemorySize (equal to
+ * -Xmx by default), so large matrices can be stored with a small heap, and their pages can be written back to disk by
+ * the operating system under memory pressure.
+ * <p>
+ * Owned buffers are unmapped by {@link #release()} as soon as a matrix is closed. If the JVM does not allow unmapping
+ * them explicitly, a warning is logged once, and they are unmapped by the garbage collector instead. The chunks of a
+ * {@link MappedMatrix} are always unmapped when the mapped matrix is no longer referenced.
+ */
+final class OffHeapStorage {
+
+    private static final Logger log = LoggerFactory.getLogger(OffHeapStorage.class);
+    private static final long MAX_CHUNK_SIZE = Integer.MAX_VALUE;
+    private static final MethodHandle INVOKE_CLEANER = invokeCleaner();
+
+    private final int rows;
+    private final int columns;
+    private final int rowsPerChunk;
+    private DoubleBuffer[] chunks;
+    /**
+     * The buffers allocated by this storage (null if the storage wraps a mapped matrix)
+     */
+    private ByteBuffer[] owned;
+
+    private OffHeapStorage(int rows, int columns, int rowsPerChunk, DoubleBuffer[] chunks, ByteBuffer[] owned) {
+        this.rows         = rows;
+        this.columns      = columns;
+        this.rowsPerChunk = rowsPerChunk;
+        this.chunks       = chunks;
+        this.owned        = owned;
+    }
+
+    /**
+     * Find the method used to unmap a buffer immediately
+     *
+     * @return the method handle or null if it is not available
+     */
+    private static MethodHandle invokeCleaner() {
+        try {
+            var unsafeClass = Class.forName("sun.misc.Unsafe");
+            var field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                                .findVirtual(
+                                        unsafeClass, "invokeCleaner",
+                                        MethodType.methodType(void.class, ByteBuffer.class)
+                                )
+                                .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Off-heap matrices cannot be released explicitly, their memory will be released by the garbage " +
+                     "collector", e);
+            return null;
+        }
+    }
+
+    private static int rowsPerChunk(int columns) {
+        if (columns == 0) return Integer.MAX_VALUE;
+        return (int) Math.max(1, MAX_CHUNK_SIZE / ((long) columns * Double.BYTES));
+    }
+
+    /**
+     * Allocate a new zero-filled storage. The chunks are mapped from a temporary file that is deleted as soon as the
+     * mapping is complete.
+     *
+     * @param rows    the number of rows
+     * @param columns the number of columns
+     * @return the storage
+     */
+    static @NotNull OffHeapStorage allocate(int rows, int columns) {
+        if (rows < 0 || columns < 0) throw new IllegalArgumentException("Invalid matrix size");
+        var rowsPerChunk = rowsPerChunk(columns);
+        var numberOfChunks = (rows == 0) ? 0 : (int) ((rows + (long) rowsPerChunk - 1) / rowsPerChunk);
+        var chunks = new DoubleBuffer[numberOfChunks];
+        var owned = new ByteBuffer[numberOfChunks];
+        if (numberOfChunks > 0) {
+            try (var channel = FileChannel.open(
+                    Files.createTempFile("mithril-offheap-", ".mtx"), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE
+            )) {
+                var position = 0L;
+                for (var c = 0; c < numberOfChunks; c++) {
+                    var size = (long) Math.min(rowsPerChunk, rows - c * rowsPerChunk) * columns * Double.BYTES;
+                    owned[c]  = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+                    chunks[c] = owned[c].order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+                    position += size;
+                }
+            } catch (IOException e) {
+                release(owned);
+                throw new UncheckedIOException("Unable to allocate the storage of an off-heap matrix", e);
+            }
+        }
+        return new OffHeapStorage(rows, columns, rowsPerChunk, chunks, owned);
+    }
+
+    /**
+     * Wrap the chunks of a mapped matrix. No element is copied.
+     *
+     * @param matrix the mapped matrix
+     * @return the storage
+     */
+    static @NotNull OffHeapStorage wrap(@NotNull MappedMatrix matrix) {
+        var chunks = new DoubleBuffer[matrix.chunks()];
+        for (var c = 0; c < chunks.length; c++) {
+            chunks[c] = matrix.chunk(c);
+        }
+        return new OffHeapStorage(matrix.rows(), matrix.columns(), matrix.rowsPerChunk(), chunks, null);
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    int columns() {
+        return columns;
+    }
+
+    /**
+     * Check if the elements can be modified (that is, if the storage does not wrap a read-only mapped matrix)
+     *
+     * @return true if the storage is writable
+     */
+    boolean writable() {
+        return owned != null;
+    }
+
+    private DoubleBuffer chunks(int c) {
+        if (chunks == null) throw new IllegalStateException("The matrix has been closed");
+        return chunks[c];
+    }
+
+    double get(int i, int j) {
+        return chunks(i / rowsPerChunk).get((i % rowsPerChunk) * columns + j);
+    }
+
+    /**
+     * Copy a range of elements of a row into an array
+     *
+     * @param i           the row
+     * @param from        the first column (inclusive)
+     * @param to          the last column (exclusive)
+     * @param destination the destination array
+     * @param offset      the position of the first element in the destination array
+     */
+    void get(int i, int from, int to, double @NotNull [] destination, int offset) {
+        chunks(i / rowsPerChunk).get((i % rowsPerChunk) * columns + from, destination, offset, to - from);
+    }
+
+    /**
+     * Copy an array into a range of elements of a row
+     *
+     * @param i      the row
+     * @param from   the first column
+     * @param source the source array
+     * @param offset the position of the first element in the source array
+     * @param length the number of elements
+     */
+    void put(int i, int from, double @NotNull [] source, int offset, int length) {
+        chunks(i / rowsPerChunk).put((i % rowsPerChunk) * columns + from, source, offset, length);
+    }
+
+    /**
+     * Copy a block of consecutive rows into an array ordered by rows
+     *
+     * @param firstRow    the first row
+     * @param count       the number of rows
+     * @param destination the destination array
+     * @param offset      the position of the first element in the destination array
+     */
+    void getRows(int firstRow, int count, double @NotNull [] destination, int offset) {
+        while (count > 0) {
+            var local = firstRow % rowsPerChunk;
+            var n = Math.min(count, rowsPerChunk - local);
+            chunks(firstRow / rowsPerChunk).get(local * columns, destination, offset, n * columns);
+            offset += n * columns;
+            firstRow += n;
+            count -= n;
+        }
+    }
+
+    /**
+     * Copy an array ordered by rows into a block of consecutive rows
+     *
+     * @param firstRow the first row
+     * @param count    the number of rows
+     * @param source   the source array
+     * @param offset   the position of the first element in the source array
+     */
+    void putRows(int firstRow, int count, double @NotNull [] source, int offset) {
+        while (count > 0) {
+            var local = firstRow % rowsPerChunk;
+            var n = Math.min(count, rowsPerChunk - local);
+            chunks(firstRow / rowsPerChunk).put(local * columns, source, offset, n * columns);
+            offset += n * columns;
+            firstRow += n;
+            count -= n;
+        }
+    }
+
+    /**
+     * Free the native memory. Buffers owned by this storage are unmapped immediately, so no other thread may be using
+     * the storage when this method is called. The algorithms guarantee it by waiting for all the stages of their batch
+     * pipeline before closing their matrices. The storage cannot be used after this call.
+     */
+    void release() {
+        var buffers = owned;
+        chunks = null;
+        owned  = null;
+        release(buffers);
+    }
+
+    /**
+     * Unmap a set of owned buffers
+     *
+     * @param buffers the buffers (null elements are skipped)
+     */
+    private static void release(ByteBuffer[] buffers) {
+        if (buffers == null || INVOKE_CLEANER == null) return;
+        for (var buffer : buffers) {
+            if (buffer == null) continue;
+            try {
+                INVOKE_CLEANER.invokeExact(buffer);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Unable to free the native memory of the matrix", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.alaimos.MITHrIL.VectorMath;
+
+import com.alaimos.MITHrIL.VectorMath.VectorMatrix.Kernels;
+import com.alaimos.MITHrIL.api.Plugins.AbstractPlugin;
+import com.alaimos.MITHrIL.api.Plugins.PluginContext;
+import org.apache.commons.lang3.StringUtils;
+import org.pf4j.RuntimeMode;
+
+public class VectorMathPlugin extends AbstractPlugin {
+    public VectorMathPlugin(PluginContext context) {
+        super(context);
+    }
+
+    @Override
+    public void start() {
+        log.info("VectorMathPlugin.start()");
+        if (RuntimeMode.DEVELOPMENT.equals(context.getRuntimeMode())) {
+            log.info(StringUtils.upperCase("VectorMathPlugin"));
+        }
+        log.info("The vector matrix implementation uses {}", Kernels.description());
+        if (!Kernels.isVectorized()) {
+            log.warn("The jdk.incubator.vector module is not available. The vector matrix implementation will use " +
+                             "scalar operations. Start the JVM with \"--add-modules jdk.incubator.vector\" (as the " +
+                             "mithril launcher script does) to enable it.");
+        }
+    }
+
+    @Override
+    public void stop() {
+        log.info("VectorMathPlugin.stop()");
+    }
+
+}
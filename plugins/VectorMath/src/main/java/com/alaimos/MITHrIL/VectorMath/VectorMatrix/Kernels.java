@@ -0,0 +1,512 @@
+package com.alaimos.MITHrIL.VectorMath.VectorMatrix;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Cache-blocked and multithreaded kernels for row-major dense matrices. When the jdk.incubator.vector module is
+ * available, the innermost loops are delegated to {@link SimdKernels}. Otherwise, scalar loops are used. The check is
+ * performed once, since classes using the Vector API cannot be loaded if the module is not part of the boot layer.
+ */
+public final class Kernels {
+
+    /**
+     * Number of rows of the left matrix processed by a single task
+     */
+    static final int ROW_BLOCK = 64;
+    /**
+     * Number of columns of the right matrix processed by a single task
+     */
+    static final int COLUMN_BLOCK = 256;
+    /**
+     * Depth of a block of the inner product (a panel of DEPTH_BLOCK x COLUMN_BLOCK elements of the right matrix is
+     * reused by all the rows of a task)
+     */
+    static final int DEPTH_BLOCK = 128;
+    /**
+     * Number of elements processed by a single task in element-wise operations
+     */
+    static final int ELEMENT_BLOCK = 1 << 15;
+
+    private static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    private static volatile ForkJoinPool pool = null;
+
+    private Kernels() {
+    }
+
+    /**
+     * Check if the kernels use the Vector API
+     *
+     * @return true if the jdk.incubator.vector module is available
+     */
+    public static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    /**
+     * Describe the kernels in use, for example to log them when the plugin is started
+     *
+     * @return a short description of the kernels
+     */
+    public static @NotNull String description() {
+        if (!VECTORIZED) return "scalar kernels";
+        return "Vector API kernels (" + SimdKernels.vectorBitSize() + "-bit vectors)";
+    }
+
+    /**
+     * Set the maximum number of threads used by the kernels
+     *
+     * @param maxThreads the maximum number of threads (negative or zero to use the common fork-join pool)
+     */
+    public static synchronized void setMaxThreads(int maxThreads) {
+        var old = pool;
+        pool = (maxThreads > 0) ? new ForkJoinPool(maxThreads) : null;
+        if (old != null) old.shutdown();
+    }
+
+    /**
+     * Run a loop in parallel
+     *
+     * @param n    the number of iterations
+     * @param body the body of the loop
+     */
+    public static void parallelFor(int n, IntConsumer body) {
+        if (n <= 1) {
+            for (var i = 0; i < n; i++) body.accept(i);
+            return;
+        }
+        var p = pool;
+        if (p == null) {
+            IntStream.range(0, n).parallel().forEach(body);
+        } else {
+            p.submit(() -> IntStream.range(0, n).parallel().forEach(body)).join();
+        }
+    }
+
+    private static int blocks(int size, int blockSize) {
+        return (size + blockSize - 1) / blockSize;
+    }
+
+    /**
+     * Compute c = a * b, where a is a (m x k) matrix, b is a (k x n) matrix, and c is a (m x n) matrix. All matrices
+     * are stored by rows. The content of c is overwritten. The array c must not be the same as a or b.
+     *
+     * @param a the left matrix
+     * @param b the right matrix
+     * @param c the result
+     * @param m the number of rows of a
+     * @param k the number of columns of a (and rows of b)
+     * @param n the number of columns of b
+     */
+    static void gemm(double @NotNull [] a, double @NotNull [] b, double @NotNull [] c, int m, int k, int n) {
+        var rowBlocks = blocks(m, ROW_BLOCK);
+        var columnBlocks = blocks(n, COLUMN_BLOCK);
+        parallelFor(rowBlocks * columnBlocks, t -> {
+            var i0 = (t / columnBlocks) * ROW_BLOCK;
+            var i1 = Math.min(m, i0 + ROW_BLOCK);
+            var j0 = (t % columnBlocks) * COLUMN_BLOCK;
+            var j1 = Math.min(n, j0 + COLUMN_BLOCK);
+            for (var i = i0; i < i1; i++) {
+                Arrays.fill(c, i * n + j0, i * n + j1, 0.0);
+            }
+            for (var p0 = 0; p0 < k; p0 += DEPTH_BLOCK) {
+                var p1 = Math.min(k, p0 + DEPTH_BLOCK);
+                if (VECTORIZED) {
+                    SimdKernels.gemmBlock(a, b, c, k, n, i0, i1, p0, p1, j0, j1);
+                } else {
+                    gemmBlock(a, b, c, k, n, i0, i1, p0, p1, j0, j1);
+                }
+            }
+        });
+    }
+
+    /**
+     * Compute c = a * b in the calling thread, where a is a (m x k) matrix, b is a (k x n) matrix, and c is a (m x n)
+     * matrix. All matrices are stored by rows, and the arrays can be larger than needed. This kernel is meant for
+     * panels of a few rows processed by the tasks of an outer parallel loop.
+     *
+     * @param a the left matrix
+     * @param b the right matrix
+     * @param c the result
+     * @param m the number of rows of a
+     * @param k the number of columns of a (and rows of b)
+     * @param n the number of columns of b
+     */
+    public static void gemmPanel(double @NotNull [] a, double @NotNull [] b, double @NotNull [] c, int m, int k, int n) {
+        Arrays.fill(c, 0, m * n, 0.0);
+        for (var j0 = 0; j0 < n; j0 += COLUMN_BLOCK) {
+            var j1 = Math.min(n, j0 + COLUMN_BLOCK);
+            for (var p0 = 0; p0 < k; p0 += DEPTH_BLOCK) {
+                var p1 = Math.min(k, p0 + DEPTH_BLOCK);
+                if (VECTORIZED) {
+                    SimdKernels.gemmBlock(a, b, c, k, n, 0, m, p0, p1, j0, j1);
+                } else {
+                    gemmBlock(a, b, c, k, n, 0, m, p0, p1, j0, j1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Accumulate c[i0:i1, j0:j1] += a[i0:i1, p0:p1] * b[p0:p1, j0:j1] using scalar operations
+     */
+    private static void gemmBlock(
+            double[] a, double[] b, double[] c, int k, int n, int i0, int i1, int p0, int p1, int j0, int j1
+    ) {
+        for (var i = i0; i < i1; i++) {
+            var aOffset = i * k;
+            var cOffset = i * n;
+            for (var p = p0; p < p1; p++) {
+                var aip = a[aOffset + p];
+                if (aip == 0.0) continue;
+                var bOffset = p * n;
+                for (var j = j0; j < j1; j++) {
+                    c[cOffset + j] += aip * b[bOffset + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute y = a * x, where a is a (m x n) matrix stored by rows, and x is a vector of size n.
+     *
+     * @param a the matrix
+     * @param x the vector
+     * @param m the number of rows of a
+     * @param n the number of columns of a
+     * @return the result
+     */
+    static double @NotNull [] gemv(double @NotNull [] a, double @NotNull [] x, int m, int n) {
+        var y = new double[m];
+        parallelFor(blocks(m, ROW_BLOCK), t -> {
+            var i1 = Math.min(m, (t + 1) * ROW_BLOCK);
+            for (var i = t * ROW_BLOCK; i < i1; i++) {
+                y[i] = dot(a, i * n, x, n);
+            }
+        });
+        return y;
+    }
+
+    /**
+     * Compute the dot product between a[aOffset:aOffset+n] and x[0:n]
+     *
+     * @param a       the first array
+     * @param aOffset the position of the first element in a
+     * @param x       the second array
+     * @param n       the number of elements
+     * @return the dot product
+     */
+    public static double dot(double @NotNull [] a, int aOffset, double @NotNull [] x, int n) {
+        return VECTORIZED ? SimdKernels.dot(a, aOffset, x, n) : scalarDot(a, aOffset, x, n);
+    }
+
+    private static double scalarDot(double[] a, int aOffset, double[] x, int n) {
+        var sum = 0.0;
+        for (var j = 0; j < n; j++) {
+            sum += a[aOffset + j] * x[j];
+        }
+        return sum;
+    }
+
+    /**
+     * Compute y = x * a, where a is a (m x n) matrix stored by rows, and x is a vector of size m.
+     *
+     * @param x the vector
+     * @param a the matrix
+     * @param m the number of rows of a
+     * @param n the number of columns of a
+     * @return the result
+     */
+    static double @NotNull [] gevm(double @NotNull [] x, double @NotNull [] a, int m, int n) {
+        var y = new double[n];
+        parallelFor(blocks(n, COLUMN_BLOCK), t -> {
+            var j0 = t * COLUMN_BLOCK;
+            var j1 = Math.min(n, j0 + COLUMN_BLOCK);
+            for (var i = 0; i < m; i++) {
+                var xi = x[i];
+                if (xi == 0.0) continue;
+                axpy(xi, a, i * n, y, j0, j1);
+            }
+        });
+        return y;
+    }
+
+    /**
+     * Compute y[j] += alpha * x[xOffset + j] for each j in [from, to)
+     *
+     * @param alpha   the scalar
+     * @param x       the source array
+     * @param xOffset the offset of the source array
+     * @param y       the destination array
+     * @param from    the first index (inclusive)
+     * @param to      the last index (exclusive)
+     */
+    public static void axpy(double alpha, double @NotNull [] x, int xOffset, double @NotNull [] y, int from, int to) {
+        if (VECTORIZED) {
+            SimdKernels.axpy(alpha, x, xOffset, y, from, to);
+        } else {
+            for (var j = from; j < to; j++) {
+                y[j] += alpha * x[xOffset + j];
+            }
+        }
+    }
+
+    /**
+     * Compute c = a - b element-wise. The array c can be the same as a or b.
+     *
+     * @param a      the left operand
+     * @param b      the right operand
+     * @param c      the result
+     * @param length the number of elements
+     */
+    static void subtract(double @NotNull [] a, double @NotNull [] b, double @NotNull [] c, int length) {
+        parallelFor(blocks(length, ELEMENT_BLOCK), t -> {
+            var from = t * ELEMENT_BLOCK;
+            var to = Math.min(length, from + ELEMENT_BLOCK);
+            if (VECTORIZED) {
+                SimdKernels.subtract(a, b, c, from, to);
+            } else {
+                for (var i = from; i < to; i++) {
+                    c[i] = a[i] - b[i];
+                }
+            }
+        });
+    }
+
+    /**
+     * Transpose a (m x n) matrix stored by rows
+     *
+     * @param a the matrix
+     * @param m the number of rows
+     * @param n the number of columns
+     * @return the transposed (n x m) matrix stored by rows
+     */
+    static double @NotNull [] transpose(double @NotNull [] a, int m, int n) {
+        var t = new double[a.length];
+        var tile = 32;
+        parallelFor(blocks(m, tile), b -> {
+            var i0 = b * tile;
+            var i1 = Math.min(m, i0 + tile);
+            for (var j0 = 0; j0 < n; j0 += tile) {
+                var j1 = Math.min(n, j0 + tile);
+                for (var i = i0; i < i1; i++) {
+                    for (var j = j0; j < j1; j++) {
+                        t[j * m + i] = a[i * n + j];
+                    }
+                }
+            }
+        });
+        return t;
+    }
+
+    /**
+     * Copy a subset of the columns of a (m x n) matrix stored by rows
+     *
+     * @param a       the matrix
+     * @param m       the number of rows
+     * @param n       the number of columns
+     * @param indices the indices of the columns
+     * @return a (m x indices.length) matrix stored by rows
+     */
+    static double @NotNull [] gatherColumns(double @NotNull [] a, int m, int n, int @NotNull [] indices) {
+        var c = indices.length;
+        var gathered = new double[m * c];
+        parallelFor(blocks(m, ROW_BLOCK), t -> {
+            var i1 = Math.min(m, (t + 1) * ROW_BLOCK);
+            for (var i = t * ROW_BLOCK; i < i1; i++) {
+                var source = i * n;
+                var destination = i * c;
+                for (var q = 0; q < c; q++) {
+                    gathered[destination + q] = a[source + indices[q]];
+                }
+            }
+        });
+        return gathered;
+    }
+
+    //region Single precision kernels
+
+    /**
+     * Convert an array to single precision
+     *
+     * @param a the array
+     * @return a new array
+     */
+    static float @NotNull [] toFloat(double @NotNull [] a) {
+        var result = new float[a.length];
+        for (var i = 0; i < a.length; i++) {
+            result[i] = (float) a[i];
+        }
+        return result;
+    }
+
+    /**
+     * Convert an array to double precision
+     *
+     * @param a the array
+     * @return a new array
+     */
+    static double @NotNull [] toDouble(float @NotNull [] a) {
+        var result = new double[a.length];
+        for (var i = 0; i < a.length; i++) {
+            result[i] = a[i];
+        }
+        return result;
+    }
+
+    /**
+     * Compute c = a * b in single precision. See {@link #gemm(double[], double[], double[], int, int, int)}.
+     */
+    static void gemm(float @NotNull [] a, float @NotNull [] b, float @NotNull [] c, int m, int k, int n) {
+        var rowBlocks = blocks(m, ROW_BLOCK);
+        var columnBlocks = blocks(n, COLUMN_BLOCK);
+        parallelFor(rowBlocks * columnBlocks, t -> {
+            var i0 = (t / columnBlocks) * ROW_BLOCK;
+            var i1 = Math.min(m, i0 + ROW_BLOCK);
+            var j0 = (t % columnBlocks) * COLUMN_BLOCK;
+            var j1 = Math.min(n, j0 + COLUMN_BLOCK);
+            for (var i = i0; i < i1; i++) {
+                Arrays.fill(c, i * n + j0, i * n + j1, 0.0f);
+            }
+            for (var p0 = 0; p0 < k; p0 += DEPTH_BLOCK) {
+                var p1 = Math.min(k, p0 + DEPTH_BLOCK);
+                if (VECTORIZED) {
+                    SimdKernels.gemmBlock(a, b, c, k, n, i0, i1, p0, p1, j0, j1);
+                } else {
+                    gemmBlock(a, b, c, k, n, i0, i1, p0, p1, j0, j1);
+                }
+            }
+        });
+    }
+
+    /**
+     * Accumulate c[i0:i1, j0:j1] += a[i0:i1, p0:p1] * b[p0:p1, j0:j1] using scalar operations in single precision
+     */
+    private static void gemmBlock(
+            float[] a, float[] b, float[] c, int k, int n, int i0, int i1, int p0, int p1, int j0, int j1
+    ) {
+        for (var i = i0; i < i1; i++) {
+            var aOffset = i * k;
+            var cOffset = i * n;
+            for (var p = p0; p < p1; p++) {
+                var aip = a[aOffset + p];
+                if (aip == 0.0f) continue;
+                var bOffset = p * n;
+                for (var j = j0; j < j1; j++) {
+                    c[cOffset + j] += aip * b[bOffset + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute y = a * x, where a is a (m x n) matrix stored by rows in single precision. The vector is converted to
+     * single precision, while the result is returned in double precision.
+     */
+    static double @NotNull [] gemv(float @NotNull [] a, double @NotNull [] x, int m, int n) {
+        var y = new double[m];
+        var xf = toFloat(x);
+        parallelFor(blocks(m, ROW_BLOCK), t -> {
+            var i1 = Math.min(m, (t + 1) * ROW_BLOCK);
+            for (var i = t * ROW_BLOCK; i < i1; i++) {
+                if (VECTORIZED) {
+                    y[i] = SimdKernels.dot(a, i * n, xf, n);
+                } else {
+                    var sum = 0.0f;
+                    for (int j = 0, offset = i * n; j < n; j++) {
+                        sum += a[offset + j] * xf[j];
+                    }
+                    y[i] = sum;
+                }
+            }
+        });
+        return y;
+    }
+
+    /**
+     * Compute y = x * a, where a is a (m x n) matrix stored by rows in single precision. The vector is converted to
+     * single precision, while the result is returned in double precision.
+     */
+    static double @NotNull [] gevm(double @NotNull [] x, float @NotNull [] a, int m, int n) {
+        var y = new float[n];
+        parallelFor(blocks(n, COLUMN_BLOCK), t -> {
+            var j0 = t * COLUMN_BLOCK;
+            var j1 = Math.min(n, j0 + COLUMN_BLOCK);
+            for (var i = 0; i < m; i++) {
+                var xi = (float) x[i];
+                if (xi == 0.0f) continue;
+                if (VECTORIZED) {
+                    SimdKernels.axpy(xi, a, i * n, y, j0, j1);
+                } else {
+                    var offset = i * n;
+                    for (var j = j0; j < j1; j++) {
+                        y[j] += xi * a[offset + j];
+                    }
+                }
+            }
+        });
+        return toDouble(y);
+    }
+
+    /**
+     * Compute c = a - b element-wise in single precision. The array c can be the same as a or b.
+     */
+    static void subtract(float @NotNull [] a, float @NotNull [] b, float @NotNull [] c, int length) {
+        parallelFor(blocks(length, ELEMENT_BLOCK), t -> {
+            var from = t * ELEMENT_BLOCK;
+            var to = Math.min(length, from + ELEMENT_BLOCK);
+            if (VECTORIZED) {
+                SimdKernels.subtract(a, b, c, from, to);
+            } else {
+                for (var i = from; i < to; i++) {
+                    c[i] = a[i] - b[i];
+                }
+            }
+        });
+    }
+
+    /**
+     * Transpose a (m x n) matrix stored by rows in single precision
+     */
+    static float @NotNull [] transpose(float @NotNull [] a, int m, int n) {
+        var t = new float[a.length];
+        var tile = 32;
+        parallelFor(blocks(m, tile), b -> {
+            var i0 = b * tile;
+            var i1 = Math.min(m, i0 + tile);
+            for (var j0 = 0; j0 < n; j0 += tile) {
+                var j1 = Math.min(n, j0 + tile);
+                for (var i = i0; i < i1; i++) {
+                    for (var j = j0; j < j1; j++) {
+                        t[j * m + i] = a[i * n + j];
+                    }
+                }
+            }
+        });
+        return t;
+    }
+
+    /**
+     * Copy a subset of the columns of a (m x n) matrix stored by rows in single precision
+     */
+    static float @NotNull [] gatherColumns(float @NotNull [] a, int m, int n, int @NotNull [] indices) {
+        var c = indices.length;
+        var gathered = new float[m * c];
+        parallelFor(blocks(m, ROW_BLOCK), t -> {
+            var i1 = Math.min(m, (t + 1) * ROW_BLOCK);
+            for (var i = t * ROW_BLOCK; i < i1; i++) {
+                var source = i * n;
+                var destination = i * c;
+                for (var q = 0; q < c; q++) {
+                    gathered[destination + q] = a[source + indices[q]];
+                }
+            }
+        });
+        return gathered;
+    }
+    //endregion
+}
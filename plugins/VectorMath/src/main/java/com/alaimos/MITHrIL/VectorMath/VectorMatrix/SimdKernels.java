@@ -0,0 +1,294 @@
+package com.alaimos.MITHrIL.VectorMath.VectorMatrix;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Innermost loops of the {@link Kernels} implemented with the Vector API. This class must be loaded only if the
+ * jdk.incubator.vector module is available.
+ */
+final class SimdKernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final int FLOAT_LANES = FLOAT_SPECIES.length();
+
+    private SimdKernels() {
+    }
+
+    /**
+     * Get the size of the vectors used by the kernels
+     *
+     * @return the number of bits of a vector
+     */
+    static int vectorBitSize() {
+        return SPECIES.vectorBitSize();
+    }
+
+    /**
+     * Accumulate c[i0:i1, j0:j1] += a[i0:i1, p0:p1] * b[p0:p1, j0:j1]. Rows are processed four at a time, so that each
+     * vector of b is loaded once and used for four fused multiply-add operations. Partial sums are kept in registers
+     * for the whole depth of the block.
+     */
+    static void gemmBlock(
+            double[] a, double[] b, double[] c, int k, int n, int i0, int i1, int p0, int p1, int j0, int j1
+    ) {
+        var i = i0;
+        for (; i + 4 <= i1; i += 4) {
+            gemmRows4(a, b, c, k, n, i, p0, p1, j0, j1);
+        }
+        for (; i < i1; i++) {
+            gemmRow(a, b, c, k, n, i, p0, p1, j0, j1);
+        }
+    }
+
+    private static void gemmRows4(
+            double[] a, double[] b, double[] c, int k, int n, int i, int p0, int p1, int j0, int j1
+    ) {
+        var a0 = i * k;
+        var a1 = a0 + k;
+        var a2 = a1 + k;
+        var a3 = a2 + k;
+        var c0 = i * n;
+        var c1 = c0 + n;
+        var c2 = c1 + n;
+        var c3 = c2 + n;
+        var j = j0;
+        var bound = j0 + SPECIES.loopBound(j1 - j0);
+        for (; j < bound; j += LANES) {
+            var s0 = DoubleVector.zero(SPECIES);
+            var s1 = DoubleVector.zero(SPECIES);
+            var s2 = DoubleVector.zero(SPECIES);
+            var s3 = DoubleVector.zero(SPECIES);
+            for (var p = p0; p < p1; p++) {
+                var bv = DoubleVector.fromArray(SPECIES, b, p * n + j);
+                s0 = bv.fma(DoubleVector.broadcast(SPECIES, a[a0 + p]), s0);
+                s1 = bv.fma(DoubleVector.broadcast(SPECIES, a[a1 + p]), s1);
+                s2 = bv.fma(DoubleVector.broadcast(SPECIES, a[a2 + p]), s2);
+                s3 = bv.fma(DoubleVector.broadcast(SPECIES, a[a3 + p]), s3);
+            }
+            DoubleVector.fromArray(SPECIES, c, c0 + j).add(s0).intoArray(c, c0 + j);
+            DoubleVector.fromArray(SPECIES, c, c1 + j).add(s1).intoArray(c, c1 + j);
+            DoubleVector.fromArray(SPECIES, c, c2 + j).add(s2).intoArray(c, c2 + j);
+            DoubleVector.fromArray(SPECIES, c, c3 + j).add(s3).intoArray(c, c3 + j);
+        }
+        for (; j < j1; j++) {
+            double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            for (var p = p0; p < p1; p++) {
+                var bv = b[p * n + j];
+                s0 += a[a0 + p] * bv;
+                s1 += a[a1 + p] * bv;
+                s2 += a[a2 + p] * bv;
+                s3 += a[a3 + p] * bv;
+            }
+            c[c0 + j] += s0;
+            c[c1 + j] += s1;
+            c[c2 + j] += s2;
+            c[c3 + j] += s3;
+        }
+    }
+
+    private static void gemmRow(
+            double[] a, double[] b, double[] c, int k, int n, int i, int p0, int p1, int j0, int j1
+    ) {
+        var aOffset = i * k;
+        var cOffset = i * n;
+        for (var p = p0; p < p1; p++) {
+            var aip = a[aOffset + p];
+            if (aip == 0.0) continue;
+            axpy(aip, b, p * n, c, cOffset + j0, cOffset + j1, j0);
+        }
+    }
+
+    /**
+     * Compute y[from:to] += alpha * x[xOffset + from : xOffset + to]
+     */
+    static void axpy(double alpha, double[] x, int xOffset, double[] y, int from, int to) {
+        axpy(alpha, x, xOffset, y, from, to, from);
+    }
+
+    /**
+     * Compute y[from:to] += alpha * x[xOffset + xFrom : ...], where xFrom is the index of x corresponding to y[from]
+     */
+    private static void axpy(double alpha, double[] x, int xOffset, double[] y, int from, int to, int xFrom) {
+        var shift = xOffset + xFrom - from;
+        var vAlpha = DoubleVector.broadcast(SPECIES, alpha);
+        var i = from;
+        var bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += LANES) {
+            DoubleVector.fromArray(SPECIES, x, shift + i)
+                        .fma(vAlpha, DoubleVector.fromArray(SPECIES, y, i))
+                        .intoArray(y, i);
+        }
+        for (; i < to; i++) {
+            y[i] += alpha * x[shift + i];
+        }
+    }
+
+    /**
+     * Compute the dot product of a[aOffset : aOffset + n] and x[0 : n]
+     */
+    static double dot(double[] a, int aOffset, double[] x, int n) {
+        var sum = DoubleVector.zero(SPECIES);
+        var j = 0;
+        var bound = SPECIES.loopBound(n);
+        for (; j < bound; j += LANES) {
+            sum = DoubleVector.fromArray(SPECIES, a, aOffset + j).fma(DoubleVector.fromArray(SPECIES, x, j), sum);
+        }
+        var result = sum.reduceLanes(VectorOperators.ADD);
+        for (; j < n; j++) {
+            result += a[aOffset + j] * x[j];
+        }
+        return result;
+    }
+
+    /**
+     * Compute c[from:to] = a[from:to] - b[from:to]
+     */
+    static void subtract(double[] a, double[] b, double[] c, int from, int to) {
+        var i = from;
+        var bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += LANES) {
+            DoubleVector.fromArray(SPECIES, a, i).sub(DoubleVector.fromArray(SPECIES, b, i)).intoArray(c, i);
+        }
+        for (; i < to; i++) {
+            c[i] = a[i] - b[i];
+        }
+    }
+
+    //region Single precision kernels
+
+    /**
+     * Accumulate c[i0:i1, j0:j1] += a[i0:i1, p0:p1] * b[p0:p1, j0:j1] in single precision. Each vector holds twice
+     * as many elements as in double precision.
+     */
+    static void gemmBlock(
+            float[] a, float[] b, float[] c, int k, int n, int i0, int i1, int p0, int p1, int j0, int j1
+    ) {
+        var i = i0;
+        for (; i + 4 <= i1; i += 4) {
+            gemmRows4(a, b, c, k, n, i, p0, p1, j0, j1);
+        }
+        for (; i < i1; i++) {
+            gemmRow(a, b, c, k, n, i, p0, p1, j0, j1);
+        }
+    }
+
+    private static void gemmRows4(
+            float[] a, float[] b, float[] c, int k, int n, int i, int p0, int p1, int j0, int j1
+    ) {
+        var a0 = i * k;
+        var a1 = a0 + k;
+        var a2 = a1 + k;
+        var a3 = a2 + k;
+        var c0 = i * n;
+        var c1 = c0 + n;
+        var c2 = c1 + n;
+        var c3 = c2 + n;
+        var j = j0;
+        var bound = j0 + FLOAT_SPECIES.loopBound(j1 - j0);
+        for (; j < bound; j += FLOAT_LANES) {
+            var s0 = FloatVector.zero(FLOAT_SPECIES);
+            var s1 = FloatVector.zero(FLOAT_SPECIES);
+            var s2 = FloatVector.zero(FLOAT_SPECIES);
+            var s3 = FloatVector.zero(FLOAT_SPECIES);
+            for (var p = p0; p < p1; p++) {
+                var bv = FloatVector.fromArray(FLOAT_SPECIES, b, p * n + j);
+                s0 = bv.fma(FloatVector.broadcast(FLOAT_SPECIES, a[a0 + p]), s0);
+                s1 = bv.fma(FloatVector.broadcast(FLOAT_SPECIES, a[a1 + p]), s1);
+                s2 = bv.fma(FloatVector.broadcast(FLOAT_SPECIES, a[a2 + p]), s2);
+                s3 = bv.fma(FloatVector.broadcast(FLOAT_SPECIES, a[a3 + p]), s3);
+            }
+            FloatVector.fromArray(FLOAT_SPECIES, c, c0 + j).add(s0).intoArray(c, c0 + j);
+            FloatVector.fromArray(FLOAT_SPECIES, c, c1 + j).add(s1).intoArray(c, c1 + j);
+            FloatVector.fromArray(FLOAT_SPECIES, c, c2 + j).add(s2).intoArray(c, c2 + j);
+            FloatVector.fromArray(FLOAT_SPECIES, c, c3 + j).add(s3).intoArray(c, c3 + j);
+        }
+        for (; j < j1; j++) {
+            float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            for (var p = p0; p < p1; p++) {
+                var bv = b[p * n + j];
+                s0 += a[a0 + p] * bv;
+                s1 += a[a1 + p] * bv;
+                s2 += a[a2 + p] * bv;
+                s3 += a[a3 + p] * bv;
+            }
+            c[c0 + j] += s0;
+            c[c1 + j] += s1;
+            c[c2 + j] += s2;
+            c[c3 + j] += s3;
+        }
+    }
+
+    private static void gemmRow(
+            float[] a, float[] b, float[] c, int k, int n, int i, int p0, int p1, int j0, int j1
+    ) {
+        var aOffset = i * k;
+        var cOffset = i * n;
+        for (var p = p0; p < p1; p++) {
+            var aip = a[aOffset + p];
+            if (aip == 0.0f) continue;
+            axpy(aip, b, p * n, c, cOffset + j0, cOffset + j1, j0);
+        }
+    }
+
+    /**
+     * Compute y[from:to] += alpha * x[xOffset + from : xOffset + to]
+     */
+    static void axpy(float alpha, float[] x, int xOffset, float[] y, int from, int to) {
+        axpy(alpha, x, xOffset, y, from, to, from);
+    }
+
+    /**
+     * Compute y[from:to] += alpha * x[xOffset + xFrom : ...], where xFrom is the index of x corresponding to y[from]
+     */
+    private static void axpy(float alpha, float[] x, int xOffset, float[] y, int from, int to, int xFrom) {
+        var shift = xOffset + xFrom - from;
+        var vAlpha = FloatVector.broadcast(FLOAT_SPECIES, alpha);
+        var i = from;
+        var bound = from + FLOAT_SPECIES.loopBound(to - from);
+        for (; i < bound; i += FLOAT_LANES) {
+            FloatVector.fromArray(FLOAT_SPECIES, x, shift + i)
+                        .fma(vAlpha, FloatVector.fromArray(FLOAT_SPECIES, y, i))
+                        .intoArray(y, i);
+        }
+        for (; i < to; i++) {
+            y[i] += alpha * x[shift + i];
+        }
+    }
+
+    /**
+     * Compute the dot product of a[aOffset : aOffset + n] and x[0 : n]
+     */
+    static float dot(float[] a, int aOffset, float[] x, int n) {
+        var sum = FloatVector.zero(FLOAT_SPECIES);
+        var j = 0;
+        var bound = FLOAT_SPECIES.loopBound(n);
+        for (; j < bound; j += FLOAT_LANES) {
+            sum = FloatVector.fromArray(FLOAT_SPECIES, a, aOffset + j).fma(FloatVector.fromArray(FLOAT_SPECIES, x, j), sum);
+        }
+        var result = sum.reduceLanes(VectorOperators.ADD);
+        for (; j < n; j++) {
+            result += a[aOffset + j] * x[j];
+        }
+        return result;
+    }
+
+    /**
+     * Compute c[from:to] = a[from:to] - b[from:to]
+     */
+    static void subtract(float[] a, float[] b, float[] c, int from, int to) {
+        var i = from;
+        var bound = from + FLOAT_SPECIES.loopBound(to - from);
+        for (; i < bound; i += FLOAT_LANES) {
+            FloatVector.fromArray(FLOAT_SPECIES, a, i).sub(FloatVector.fromArray(FLOAT_SPECIES, b, i)).intoArray(c, i);
+        }
+        for (; i < to; i++) {
+            c[i] = a[i] - b[i];
+        }
+    }
+    //endregion
+}
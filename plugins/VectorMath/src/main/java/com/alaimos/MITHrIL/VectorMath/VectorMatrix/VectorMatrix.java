@@ -0,0 +1,721 @@
+package com.alaimos.MITHrIL.VectorMath.VectorMatrix;
+
+import com.alaimos.MITHrIL.api.Math.MappedMatrix;
+import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrix;
+import com.alaimos.MITHrIL.api.Math.SparseOperand;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Serial;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+/**
+ * A dense matrix stored by rows in a single array. All the multiplications are performed by the cache-blocked and
+ * multithreaded kernels in {@link Kernels}, which use the Vector API when it is available. The elements are stored
+ * either in double precision or in single precision (float32). Single precision halves the memory footprint and
+ * doubles the number of elements processed by each vector instruction. Inversion, rank, and determinant are always
+ * computed in double precision.
+ */
+public class VectorMatrix implements MatrixInterface<VectorMatrix> {
+
+    @Serial
+    private static final long serialVersionUID = 2947581093762217013L;
+    private int rows;
+    private int columns;
+    /**
+     * The elements of the matrix in double precision (null if the matrix uses single precision)
+     */
+    private double[] data;
+    /**
+     * The elements of the matrix in single precision (null if the matrix uses double precision)
+     */
+    private float[] single;
+
+    private VectorMatrix(int rows, int columns, double[] data) {
+        this.rows    = rows;
+        this.columns = columns;
+        this.data    = data;
+        this.single  = null;
+    }
+
+    private VectorMatrix(int rows, int columns, float[] single) {
+        this.rows    = rows;
+        this.columns = columns;
+        this.data    = null;
+        this.single  = single;
+    }
+
+    public VectorMatrix(double @NotNull [][] matrix) {
+        this(matrix, Direction.ROW, false);
+    }
+
+    public VectorMatrix(double @NotNull [][] matrix, @NotNull Direction direction) {
+        this(matrix, direction, false);
+    }
+
+    public VectorMatrix(double @NotNull [][] matrix, @NotNull Direction direction, boolean singlePrecision) {
+        var outer = matrix.length;
+        var inner = (outer == 0) ? 0 : matrix[0].length;
+        var tmp = new double[outer * inner];
+        for (var i = 0; i < outer; i++) {
+            System.arraycopy(matrix[i], 0, tmp, i * inner, inner);
+        }
+        switch (direction) {
+            case ROW -> {
+                rows    = outer;
+                columns = inner;
+            }
+            case COLUMN -> {
+                rows    = inner;
+                columns = outer;
+                tmp     = Kernels.transpose(tmp, outer, inner);
+            }
+        }
+        if (singlePrecision) {
+            single = Kernels.toFloat(tmp);
+        } else {
+            data = tmp;
+        }
+    }
+
+    public VectorMatrix(double @NotNull [] matrix, int rows, int columns) {
+        this(matrix, rows, columns, false);
+    }
+
+    public VectorMatrix(double @NotNull [] matrix, int rows, int columns, boolean singlePrecision) {
+        if (matrix.length != rows * columns) throw new IllegalArgumentException("Incompatible matrix size");
+        this.rows    = rows;
+        this.columns = columns;
+        if (singlePrecision) {
+            single = Kernels.toFloat(matrix);
+        } else {
+            data = matrix.clone();
+        }
+    }
+
+    public VectorMatrix(@NotNull MatrixInterface<?> matrix) {
+        this(matrix, matrix.singlePrecision());
+    }
+
+    public VectorMatrix(@NotNull MatrixInterface<?> matrix, boolean singlePrecision) {
+        this.rows    = matrix.rows();
+        this.columns = matrix.columns();
+        if (matrix instanceof VectorMatrix vm && vm.single != null) {
+            if (singlePrecision) {
+                single = vm.single.clone();
+            } else {
+                data = Kernels.toDouble(vm.single);
+            }
+        } else if (singlePrecision) {
+            single = Kernels.toFloat((matrix instanceof VectorMatrix vm) ? vm.data : matrix.raw1D());
+        } else {
+            data = (matrix instanceof VectorMatrix vm) ? vm.data.clone() : matrix.raw1D();
+        }
+    }
+
+    /**
+     * Create a matrix from a memory-mapped matrix file. The mapped rows are copied in parallel directly into the
+     * storage of the new matrix.
+     *
+     * @param matrix          the mapped matrix
+     * @param singlePrecision true if the matrix uses single precision
+     */
+    public VectorMatrix(@NotNull MappedMatrix matrix, boolean singlePrecision) {
+        this.rows    = matrix.rows();
+        this.columns = matrix.columns();
+        if (singlePrecision) {
+            single = new float[rows * columns];
+            matrix.copyTo(single);
+        } else {
+            data = matrix.toArray();
+        }
+    }
+
+    /**
+     * Wrap an array computed by an operation into a matrix with the given precision
+     *
+     * @param raw             the array (it is not copied if the matrix uses double precision)
+     * @param rows            the number of rows
+     * @param columns         the number of columns
+     * @param singlePrecision true if the matrix uses single precision
+     * @return the matrix
+     */
+    private static @NotNull VectorMatrix wrap(double[] raw, int rows, int columns, boolean singlePrecision) {
+        return singlePrecision ? new VectorMatrix(rows, columns, Kernels.toFloat(raw)) :
+                new VectorMatrix(rows, columns, raw);
+    }
+
+    /**
+     * Convert a matrix to this implementation with the given precision, avoiding the copy if it is already a vector
+     * matrix with the same precision
+     *
+     * @param matrix          the matrix
+     * @param singlePrecision the precision
+     * @return the matrix itself or a converted copy
+     */
+    private static VectorMatrix of(MatrixInterface<?> matrix, boolean singlePrecision) {
+        if (matrix instanceof VectorMatrix vm && vm.singlePrecision() == singlePrecision) return vm;
+        return new VectorMatrix(matrix, singlePrecision);
+    }
+
+    private static void checkMultiplication(int leftColumns, int rightRows) {
+        if (leftColumns != rightRows) throw new IllegalArgumentException("Incompatible matrix size");
+    }
+
+    /**
+     * Get the elements of this matrix in double precision. If the matrix uses double precision, the internal storage
+     * is returned, and it must not be modified.
+     *
+     * @return the elements of the matrix
+     */
+    private double[] doubles() {
+        return (single != null) ? Kernels.toDouble(single) : data;
+    }
+
+    /**
+     * Check if the elements of this matrix are stored in single precision (float32)
+     *
+     * @return true if the matrix uses single precision
+     */
+    @Override
+    public boolean singlePrecision() {
+        return single != null;
+    }
+
+    /**
+     * Transpose the matrix
+     *
+     * @return a new matrix
+     */
+    @Override
+    public VectorMatrix transpose() {
+        if (single != null) return new VectorMatrix(columns, rows, Kernels.transpose(single, rows, columns));
+        return new VectorMatrix(columns, rows, Kernels.transpose(data, rows, columns));
+    }
+
+    /**
+     * Transpose the matrix in place
+     */
+    @Override
+    public void transposeInPlace() {
+        if (single != null) {
+            single = Kernels.transpose(single, rows, columns);
+        } else {
+            data = Kernels.transpose(data, rows, columns);
+        }
+        var tmp = rows;
+        rows    = columns;
+        columns = tmp;
+    }
+
+    private double @NotNull [][] invertInternal() {
+        var matrix = new Array2DRowRealMatrix(raw2D(), false);
+        if (rows == columns) {
+            var solver = new LUDecomposition(matrix).getSolver();
+            if (solver.isNonSingular()) return solver.getInverse().getData();
+        }
+        return new SingularValueDecomposition(matrix).getSolver().getInverse().getData();
+    }
+
+    /**
+     * Invert the matrix. It uses the Moore-Penrose pseudo-inverse to invert the matrix if it is singular or not square.
+     * The inverse is always computed in double precision.
+     *
+     * @return a new matrix
+     */
+    @Override
+    public VectorMatrix invert() {
+        return new VectorMatrix(invertInternal(), Direction.ROW, singlePrecision());
+    }
+
+    /**
+     * Invert the matrix in place. It uses the Moore-Penrose pseudo-inverse to invert the matrix if it is singular or
+     * not square. The inverse is always computed in double precision.
+     */
+    @Override
+    public void invertInPlace() {
+        var inverse = invert();
+        rows    = inverse.rows;
+        columns = inverse.columns;
+        data    = inverse.data;
+        single  = inverse.single;
+    }
+
+    /**
+     * Get the rank of the matrix
+     *
+     * @return the rank
+     */
+    @Override
+    public int rank() {
+        return new SingularValueDecomposition(new Array2DRowRealMatrix(raw2D(), false)).getRank();
+    }
+
+    /**
+     * Get the determinant of the matrix
+     *
+     * @return the determinant
+     */
+    @Override
+    public double determinant() {
+        return new LUDecomposition(new Array2DRowRealMatrix(raw2D(), false)).getDeterminant();
+    }
+
+    /**
+     * Check if the matrix is invertible
+     *
+     * @return true if the matrix is invertible
+     */
+    @Override
+    public boolean invertible() {
+        return rank() == Math.min(rows, columns);
+    }
+
+    /**
+     * Pre-multiply this matrix by another matrix. That is, the operation is performed as matrix * this. The
+     * operation is performed with the precision of this matrix.
+     *
+     * @param matrix the other matrix
+     * @return a new matrix
+     */
+    @Override
+    public VectorMatrix preMultiply(MatrixInterface<?> matrix) {
+        if (matrix instanceof SparseMatrix sm) {
+            return wrap(sm.postMultiplyRaw(doubles(), columns), sm.rows(), columns, singlePrecision());
+        }
+        var left = of(matrix, singlePrecision());
+        checkMultiplication(left.columns, rows);
+        if (single != null) {
+            var result = new float[left.rows * columns];
+            Kernels.gemm(left.single, single, result, left.rows, rows, columns);
+            return new VectorMatrix(left.rows, columns, result);
+        }
+        var result = new double[left.rows * columns];
+        Kernels.gemm(left.data, data, result, left.rows, rows, columns);
+        return new VectorMatrix(left.rows, columns, result);
+    }
+
+    /**
+     * Pre-multiply this matrix by a vector. That is, the operation is performed as vector * this.
+     *
+     * @param vector the vector
+     * @return a new vector
+     */
+    @Override
+    public double[] preMultiply(double @NotNull [] vector) {
+        checkMultiplication(vector.length, rows);
+        if (single != null) return Kernels.gevm(vector, single, rows, columns);
+        return Kernels.gevm(vector, data, rows, columns);
+    }
+
+    /**
+     * Pre-multiply this matrix by another matrix, storing the result in the destination matrix. That is, the operation
+     * is performed as destination = matrix * this.
+     *
+     * @param matrix      the other matrix
+     * @param destination the destination matrix
+     */
+    @Override
+    public void preMultiplyInto(MatrixInterface<?> matrix, @NotNull MatrixInterface<?> destination) {
+        if (matrix instanceof SparseMatrix sm) {
+            destination.fill(sm.postMultiplyRaw(doubles(), columns));
+        } else if (destination instanceof VectorMatrix dst && dst != this && dst != matrix &&
+                dst.singlePrecision() == singlePrecision()) {
+            var left = of(matrix, singlePrecision());
+            checkMultiplication(left.columns, rows);
+            if (dst.rows != left.rows || dst.columns != columns) {
+                throw new IllegalArgumentException("Incompatible matrix size");
+            }
+            if (single != null) {
+                Kernels.gemm(left.single, single, dst.single, left.rows, rows, columns);
+            } else {
+                Kernels.gemm(left.data, data, dst.data, left.rows, rows, columns);
+            }
+        } else {
+            MatrixInterface.super.preMultiplyInto(matrix, destination);
+        }
+    }
+
+    /**
+     * Post-multiply this matrix by another matrix. That is, the operation is performed as this * matrix. The
+     * operation is performed with the precision of this matrix.
+     *
+     * @param matrix the other matrix
+     * @return a new matrix
+     */
+    @Override
+    public VectorMatrix postMultiply(MatrixInterface<?> matrix) {
+        if (matrix instanceof SparseMatrix sm) return postMultiplySparse(sm);
+        var right = of(matrix, singlePrecision());
+        checkMultiplication(columns, right.rows);
+        if (single != null) {
+            var result = new float[rows * right.columns];
+            Kernels.gemm(single, right.single, result, rows, columns, right.columns);
+            return new VectorMatrix(rows, right.columns, result);
+        }
+        var result = new double[rows * right.columns];
+        Kernels.gemm(data, right.data, result, rows, columns, right.columns);
+        return new VectorMatrix(rows, right.columns, result);
+    }
+
+    /**
+     * Post-multiply this matrix by a sparse matrix. That is, the operation is performed as this * matrix. Only the
+     * columns of this matrix corresponding to the non-empty rows of the sparse matrix are gathered and multiplied by
+     * the compacted sparse matrix.
+     *
+     * @param matrix the sparse matrix
+     * @return a new matrix
+     */
+    @Override
+    public VectorMatrix postMultiplySparse(@NotNull SparseOperand<?> matrix) {
+        var size = rows * matrix.columns();
+        var result = (single != null) ? new VectorMatrix(rows, matrix.columns(), new float[size]) :
+                new VectorMatrix(rows, matrix.columns(), new double[size]);
+        postMultiplySparseInto(matrix, result);
+        return result;
+    }
+
+    /**
+     * Post-multiply this matrix by a sparse matrix, storing the result in the destination matrix. That is, the operation
+     * is performed as destination = this * matrix. Only the columns of this matrix corresponding to the non-empty rows
+     * of the sparse matrix are gathered and multiplied by the compacted sparse matrix.
+     *
+     * @param matrix      the sparse matrix
+     * @param destination the destination matrix
+     */
+    @Override
+    public void postMultiplySparseInto(@NotNull SparseOperand<?> matrix, @NotNull MatrixInterface<?> destination) {
+        checkMultiplication(columns, matrix.rows());
+        if (destination instanceof VectorMatrix dst && dst != this && dst.singlePrecision() == singlePrecision()) {
+            if (dst.rows != rows || dst.columns != matrix.columns()) {
+                throw new IllegalArgumentException("Incompatible matrix size");
+            }
+            var nonEmptyRows = matrix.nonEmptyRows();
+            if (nonEmptyRows.length == 0) {
+                if (single != null) {
+                    Arrays.fill(dst.single, 0.0f);
+                } else {
+                    Arrays.fill(dst.data, 0.0);
+                }
+                return;
+            }
+            var compact = matrix.compactRows(nonEmptyRows);
+            if (single != null) {
+                var gathered = Kernels.gatherColumns(single, rows, columns, nonEmptyRows);
+                Kernels.gemm(
+                        gathered, Kernels.toFloat(compact), dst.single, rows, nonEmptyRows.length, matrix.columns()
+                );
+            } else {
+                var gathered = Kernels.gatherColumns(data, rows, columns, nonEmptyRows);
+                Kernels.gemm(gathered, compact, dst.data, rows, nonEmptyRows.length, matrix.columns());
+            }
+        } else {
+            MatrixInterface.super.postMultiplySparseInto(matrix, destination);
+        }
+    }
+
+    /**
+     * Post-multiply this matrix by a vector.
+     *
+     * @param vector the vector
+     * @return a new vector
+     */
+    @Override
+    public double[] postMultiply(double @NotNull [] vector) {
+        checkMultiplication(columns, vector.length);
+        if (single != null) return Kernels.gemv(single, vector, rows, columns);
+        return Kernels.gemv(data, vector, rows, columns);
+    }
+
+    /**
+     * Subtract a matrix from this matrix
+     *
+     * @param matrix the matrix
+     * @return a new matrix
+     */
+    @Override
+    public VectorMatrix subtract(MatrixInterface<?> matrix) {
+        var size = rows * columns;
+        var result = (single != null) ? new VectorMatrix(rows, columns, new float[size]) :
+                new VectorMatrix(rows, columns, new double[size]);
+        subtractInto(matrix, result);
+        return result;
+    }
+
+    /**
+     * Given a vector, it returns a new matrix obtained by subtracting the vector from each row or column of the matrix.
+     * The direction parameter specifies if the vector is subtracted from rows or columns.
+     *
+     * @param vector    the vector
+     * @param direction the direction
+     * @return a new matrix
+     */
+    @Override
+    public VectorMatrix subtract(double @NotNull [] vector, @NotNull Direction direction) {
+        var source = doubles();
+        var result = new double[rows * columns];
+        switch (direction) {
+            case ROW -> {
+                if (vector.length != columns) throw new IllegalArgumentException("Incompatible vector size");
+                IntStream.range(0, rows).parallel().forEach(i -> {
+                    var offset = i * columns;
+                    for (var j = 0; j < columns; j++) {
+                        result[offset + j] = source[offset + j] - vector[j];
+                    }
+                });
+            }
+            case COLUMN -> {
+                if (vector.length != rows) throw new IllegalArgumentException("Incompatible vector size");
+                IntStream.range(0, rows).parallel().forEach(i -> {
+                    var offset = i * columns;
+                    var v = vector[i];
+                    for (var j = 0; j < columns; j++) {
+                        result[offset + j] = source[offset + j] - v;
+                    }
+                });
+            }
+        }
+        return wrap(result, rows, columns, singlePrecision());
+    }
+
+    /**
+     * Subtract a value from each element of the matrix
+     *
+     * @param value the value
+     * @return a new matrix
+     */
+    @Override
+    public VectorMatrix subtract(double value) {
+        var source = doubles();
+        var result = new double[source.length];
+        Arrays.parallelSetAll(result, i -> source[i] - value);
+        return wrap(result, rows, columns, singlePrecision());
+    }
+
+    /**
+     * Subtract a matrix from this matrix, storing the result in the destination matrix. That is, the operation is
+     * performed as destination = this - matrix.
+     *
+     * @param matrix      the matrix
+     * @param destination the destination matrix
+     */
+    @Override
+    public void subtractInto(MatrixInterface<?> matrix, @NotNull MatrixInterface<?> destination) {
+        if (matrix.rows() != rows || matrix.columns() != columns) {
+            throw new IllegalArgumentException("Incompatible matrix size");
+        }
+        if (destination instanceof VectorMatrix dst && dst.singlePrecision() == singlePrecision()) {
+            if (dst.rows != rows || dst.columns != columns) {
+                throw new IllegalArgumentException("Incompatible matrix size");
+            }
+            var right = of(matrix, singlePrecision());
+            if (single != null) {
+                Kernels.subtract(single, right.single, dst.single, single.length);
+            } else {
+                Kernels.subtract(data, right.data, dst.data, data.length);
+            }
+        } else {
+            MatrixInterface.super.subtractInto(matrix, destination);
+        }
+    }
+
+    /**
+     * Replace the content of this matrix with the values in the array. The array stores the matrix by rows.
+     *
+     * @param data the new content of the matrix
+     */
+    @Override
+    public void fill(double @NotNull [] data) {
+        if (data.length != rows * columns) throw new IllegalArgumentException("Incompatible matrix size");
+        if (single != null) {
+            for (var i = 0; i < data.length; i++) {
+                single[i] = (float) data[i];
+            }
+        } else {
+            System.arraycopy(data, 0, this.data, 0, data.length);
+        }
+    }
+
+    /**
+     * Replace the content of a row of this matrix with the values in the array
+     *
+     * @param i    the row number
+     * @param data the new content of the row
+     */
+    @Override
+    public void fillRow(int i, double @NotNull [] data) {
+        if (data.length != columns) throw new IllegalArgumentException("Incompatible row size");
+        if (single != null) {
+            for (int j = 0, k = i * columns; j < columns; j++, k++) {
+                single[k] = (float) data[j];
+            }
+        } else {
+            System.arraycopy(data, 0, this.data, i * columns, columns);
+        }
+    }
+
+    /**
+     * Check if the content of this matrix can be replaced in place with {@link #fill(double[])}
+     *
+     * @return always true
+     */
+    @Override
+    public boolean supportsFill() {
+        return true;
+    }
+
+    /**
+     * Get the value of a cell
+     *
+     * @param i the row
+     * @param j the column
+     * @return the value
+     */
+    @Override
+    public double val(int i, int j) {
+        return (single != null) ? single[i * columns + j] : data[i * columns + j];
+    }
+
+    /**
+     * Get a row of the matrix
+     *
+     * @param i the row number
+     * @return the row
+     */
+    @Override
+    public double[] row(int i) {
+        if (single == null) return Arrays.copyOfRange(data, i * columns, (i + 1) * columns);
+        var row = new double[columns];
+        for (int j = 0, k = i * columns; j < columns; j++, k++) {
+            row[j] = single[k];
+        }
+        return row;
+    }
+
+    @Override
+    public void rowInto(int i, double @NotNull [] destination) {
+        if (single == null) {
+            System.arraycopy(data, i * columns, destination, 0, columns);
+            return;
+        }
+        for (int j = 0, k = i * columns; j < columns; j++, k++) {
+            destination[j] = single[k];
+        }
+    }
+
+    /**
+     * Get a column of the matrix
+     *
+     * @param j the column number
+     * @return the column
+     */
+    @Override
+    public double[] column(int j) {
+        var column = new double[rows];
+        if (single != null) {
+            for (int i = 0, k = j; i < rows; i++, k += columns) {
+                column[i] = single[k];
+            }
+        } else {
+            for (int i = 0, k = j; i < rows; i++, k += columns) {
+                column[i] = data[k];
+            }
+        }
+        return column;
+    }
+
+    /**
+     * Get the number of rows
+     *
+     * @return the number of rows
+     */
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Get the number of columns
+     *
+     * @return the number of columns
+     */
+    @Override
+    public int columns() {
+        return columns;
+    }
+
+    /**
+     * Get the raw matrix as a 2D array
+     *
+     * @return the raw matrix
+     */
+    @Override
+    public double[][] raw2D() {
+        var result = new double[rows][];
+        for (var i = 0; i < rows; i++) {
+            result[i] = row(i);
+        }
+        return result;
+    }
+
+    /**
+     * Get the raw matrix as a 1D array
+     *
+     * @return the raw matrix
+     */
+    @Override
+    public double[] raw1D() {
+        return (single != null) ? Kernels.toDouble(single) : data.clone();
+    }
+
+    @Override
+    public double[] applyFunction(VectorToScalarFunction function, Direction direction) {
+        var size = direction == Direction.ROW ? rows : columns;
+        return IntStream.range(0, size)
+                        .parallel()
+                        .mapToDouble(i -> function.apply(direction == Direction.ROW ? row(i) : column(i), i))
+                        .toArray();
+    }
+
+    @Override
+    public MatrixInterface<?> applyFunction(ElementwiseFunction function) {
+        var source = doubles();
+        var result = new double[source.length];
+        IntStream.range(0, rows).parallel().forEach(i -> {
+            var offset = i * columns;
+            for (var j = 0; j < columns; j++) {
+                result[offset + j] = function.apply(source[offset + j], i, j);
+            }
+        });
+        return wrap(result, rows, columns, singlePrecision());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o instanceof MatrixInterface<?> mi)
+            return rows() == mi.rows() && columns() == mi.columns() && Arrays.equals(raw1D(), mi.raw1D());
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        Object tmp = raw1D();
+        return Objects.hash(tmp, rows(), columns());
+    }
+
+    /**
+     * Releases all resources associated with this matrix. For this implementation, it is not necessary to call this
+     * method.
+     */
+    @Override
+    public void close() {
+        data   = null;
+        single = null;
+    }
+}
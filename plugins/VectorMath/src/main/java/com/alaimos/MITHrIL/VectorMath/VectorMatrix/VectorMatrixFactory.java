@@ -0,0 +1,130 @@
+package com.alaimos.MITHrIL.VectorMath.VectorMatrix;
+
+import com.alaimos.MITHrIL.api.Math.MappedMatrix;
+import com.alaimos.MITHrIL.api.Math.MatrixFactoryInterface;
+import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+import org.pf4j.Extension;
+
+@Extension
+public class VectorMatrixFactory implements MatrixFactoryInterface<VectorMatrix> {
+
+    private final boolean singlePrecision;
+
+    public VectorMatrixFactory() {
+        this(false);
+    }
+
+    private VectorMatrixFactory(boolean singlePrecision) {
+        this.singlePrecision = singlePrecision;
+    }
+
+    /**
+     * Get the name of the matrix implementation
+     *
+     * @return the name
+     */
+    @Override
+    public String name() {
+        return "vector";
+    }
+
+    @Override
+    public String description() {
+        return "A pure Java matrix implementation based on the Vector API. It runs on any JVM, but it is faster when the jdk.incubator.vector module is enabled (--add-modules jdk.incubator.vector).";
+    }
+
+    /**
+     * Set the maximum number of threads to use for the operations. The operation is SUPPORTED by this implementation.
+     *
+     * @param maxThreads the maximum number of threads
+     */
+    @Override
+    public void setMaxThreads(int maxThreads) {
+        Kernels.setMaxThreads(maxThreads);
+    }
+
+    /**
+     * Get a factory that enables or disables the single precision (float32) mode. The operation is SUPPORTED by this
+     * implementation. The thread limit is shared by all the copies of the factory.
+     *
+     * @param singlePrecision true to enable the single precision mode
+     * @return this factory if its precision matches, a new factory otherwise
+     */
+    @Override
+    public VectorMatrixFactory withSinglePrecision(boolean singlePrecision) {
+        if (singlePrecision == this.singlePrecision) return this;
+        return new VectorMatrixFactory(singlePrecision);
+    }
+
+    /**
+     * Check if the single precision mode is enabled
+     *
+     * @return true if the matrices created by this factory use single precision
+     */
+    @Override
+    public boolean singlePrecision() {
+        return singlePrecision;
+    }
+
+    /**
+     * Create a new matrix from a 2D array
+     *
+     * @param matrix the 2D array (array of rows that is the first index is the row number)
+     * @return a new matrix
+     */
+    @Override
+    public VectorMatrix of(double[][] matrix) {
+        return new VectorMatrix(matrix, MatrixInterface.Direction.ROW, singlePrecision);
+    }
+
+    /**
+     * Create a new matrix from a 1D array. The array stores the matrix by rows. That is, given the element (i,j) of the
+     * matrix, the corresponding element in the array is matrix[i * columns + j].
+     *
+     * @param matrix  the 1D array
+     * @param rows    the number of rows
+     * @param columns the number of columns
+     * @return a new matrix
+     */
+    @Override
+    public VectorMatrix of(double[] matrix, int rows, int columns) {
+        return new VectorMatrix(matrix, rows, columns, singlePrecision);
+    }
+
+    /**
+     * Create a new matrix from a 2D array.
+     *
+     * @param matrix    the 2D array
+     * @param direction the direction of the array (ROW: the array stores the matrix by rows, COLUMN: the array stores
+     *                  the matrix by columns)
+     * @return a new matrix
+     */
+    @Override
+    public VectorMatrix of(double[][] matrix, MatrixInterface.Direction direction) {
+        return new VectorMatrix(matrix, direction, singlePrecision);
+    }
+
+    /**
+     * Create a new matrix from a matrix of another type. This operation is useful to convert a matrix of a different
+     * implementation to a matrix of this implementation. The content of the matrix is always copied.
+     *
+     * @param matrix the matrix to convert
+     * @return a new matrix
+     */
+    @Override
+    public VectorMatrix of(MatrixInterface<?> matrix) {
+        return new VectorMatrix(matrix, singlePrecision);
+    }
+
+    /**
+     * Create a new matrix from a memory-mapped matrix file. The mapped rows are copied in parallel directly into the
+     * storage of the new matrix, converting them to single precision if needed.
+     *
+     * @param matrix the mapped matrix
+     * @return a new matrix
+     */
+    @Override
+    public VectorMatrix of(MappedMatrix matrix) {
+        return new VectorMatrix(matrix, singlePrecision);
+    }
+}
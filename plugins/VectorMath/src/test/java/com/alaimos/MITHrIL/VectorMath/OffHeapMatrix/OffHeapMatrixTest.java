@@ -0,0 +1,239 @@
+package com.alaimos.MITHrIL.VectorMath.OffHeapMatrix;
+
+import com.alaimos.MITHrIL.api.Commons.Utils;
+import com.alaimos.MITHrIL.api.Data.Reader.BinaryReader;
+import com.alaimos.MITHrIL.api.Data.Writer.BinaryWriter;
+import com.alaimos.MITHrIL.api.Math.MappedMatrix;
+import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrix;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapMatrixTest {
+
+    protected static final double DELTA = 1e-6;
+    protected static final double[] V1 = {4, 5, 6};
+    protected static final double[] V2 = {6, 7, 8, 9};
+    protected static final double[] M1 = {1, 2, 3, 4, 5, 6, 7, 8, 9};
+    protected static final double[] M2 = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12};
+    protected static final double[] M2_INV = {
+            -0.37500000, -0.10000000, 0.17500000,
+            -0.14583333, -0.03333333, 0.07916667,
+            0.08333333, 0.03333333, -0.01666667,
+            0.31250000, 0.10000000, -0.11250000
+    };
+    protected static final double[] M1_TIMES_M2 = {38, 44, 50, 56, 83, 98, 113, 128, 128, 152, 176, 200};
+    protected static final double[] M1_TIMES_V1 = {32, 77, 122};
+    protected static final double[] V2_TIMES_T_M2 = {80, 200, 320};
+    protected static final double[] T_M2_TIMES_M1 = {84, 99, 114, 96, 114, 132, 108, 129, 150, 120, 144, 168};
+    protected static final double[] M1_TIMES_S1 = {0, 2, 6, 3, 0, 8, 15, 6, 0, 14, 24, 9};
+    protected OffHeapMatrixFactory factory = new OffHeapMatrixFactory();
+    protected OffHeapMatrix m1;
+    protected OffHeapMatrix m2;
+
+    @BeforeEach
+    void setUp() {
+        m1 = factory.of(M1, 3, 3);
+        m2 = factory.of(M2, 3, 4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        m1.close();
+        m2.close();
+    }
+
+    @Test
+    void factoryTest() {
+        try (
+                var tm1 = factory.of(new double[][]{{1, 2, 3}, {4, 5, 6}, {7, 8, 9}});
+                var tm2 = factory.of(new double[][]{{1, 4, 7}, {2, 5, 8}, {3, 6, 9}}, MatrixInterface.Direction.COLUMN);
+                var tm3 = factory.of(m2)
+        ) {
+            assertArrayEquals(M1, tm1.raw1D(), DELTA);
+            assertArrayEquals(M1, tm2.raw1D(), DELTA);
+            assertArrayEquals(M2, tm3.raw1D(), DELTA);
+            assertArrayEquals(new double[]{7, 8, 9}, tm1.row(2), DELTA);
+            assertArrayEquals(new double[]{1, 5, 9}, tm3.column(0), DELTA);
+            assertEquals(10, tm3.val(2, 1), DELTA);
+        }
+    }
+
+    @Test
+    void close() {
+        var m3 = factory.of(M1, 3, 3);
+        m3.close();
+        assertThrows(IllegalStateException.class, () -> m3.val(0, 0));
+        m3.close();
+    }
+
+    @Test
+    void transpose() {
+        try (var m3 = m2.transpose()) {
+            assertEquals(4, m3.rows());
+            assertEquals(3, m3.columns());
+            assertArrayEquals(new double[]{1, 5, 9, 2, 6, 10, 3, 7, 11, 4, 8, 12}, m3.raw1D(), DELTA);
+        }
+        m2.transposeInPlace();
+        assertArrayEquals(new double[]{1, 5, 9, 2, 6, 10, 3, 7, 11, 4, 8, 12}, m2.raw1D(), DELTA);
+    }
+
+    @Test
+    void invert() {
+        try (var m3 = m2.invert()) {
+            assertEquals(4, m3.rows());
+            assertEquals(3, m3.columns());
+            assertArrayEquals(M2_INV, m3.raw1D(), DELTA);
+        }
+        try (var mtx = factory.of(new double[]{1, 1, 2, 1, 2, 0, 1, 3, 1}, 3, 3)) {
+            assertEquals(3, mtx.determinant(), DELTA);
+            assertEquals(3, mtx.rank());
+        }
+    }
+
+    @Test
+    void multiply() {
+        try (var tm2 = m2.transpose(); var m3 = m1.preMultiply(tm2); var m4 = m1.postMultiply(m2)) {
+            assertArrayEquals(T_M2_TIMES_M1, m3.raw1D(), DELTA);
+            assertArrayEquals(V2_TIMES_T_M2, tm2.preMultiply(V2), DELTA);
+            assertArrayEquals(M1_TIMES_M2, m4.raw1D(), DELTA);
+            assertArrayEquals(M1_TIMES_V1, m1.postMultiply(V1), DELTA);
+        }
+    }
+
+    private static double @NotNull [] naiveMultiply(double[] a, double[] b, int m, int k, int n) {
+        var c = new double[m * n];
+        for (var i = 0; i < m; i++) {
+            for (var j = 0; j < n; j++) {
+                var sum = 0.0;
+                for (var p = 0; p < k; p++) {
+                    sum += a[i * k + p] * b[p * n + j];
+                }
+                c[i * n + j] = sum;
+            }
+        }
+        return c;
+    }
+
+    private static double @NotNull [] randomArray(@NotNull Random random, int size) {
+        var result = new double[size];
+        for (var i = 0; i < size; i++) {
+            result[i] = random.nextDouble() - 0.5;
+        }
+        return result;
+    }
+
+    @Test
+    void streamedMultiply() {
+        var random = new Random(42);
+        int m = 131, k = 1263, n = 301;
+        var a = randomArray(random, m * k);
+        var b = randomArray(random, k * n);
+        var x = randomArray(random, k);
+        var y = randomArray(random, m);
+        try (var ma = factory.of(a, m, k); var mb = factory.of(b, k, n)) {
+            var expected = naiveMultiply(a, b, m, k, n);
+            try (var mc = ma.postMultiply(mb)) {
+                assertArrayEquals(expected, mc.raw1D(), 1e-10);
+            }
+            try (var mc = mb.preMultiply(ma)) {
+                assertArrayEquals(expected, mc.raw1D(), 1e-10);
+            }
+            try (var mt = ma.transpose(); var mtt = mt.transpose()) {
+                assertEquals(ma, mtt);
+            }
+            assertArrayEquals(naiveMultiply(a, x, m, k, 1), ma.postMultiply(x), 1e-10);
+            assertArrayEquals(naiveMultiply(y, a, 1, m, k), ma.preMultiply(y), 1e-10);
+        }
+    }
+
+    @Test
+    void sparseMultiply() {
+        var s1 = new SparseMatrix(new double[]{0, 2, 0, 0, 0, 0, 3, 0, 0, 0, 0, 1}, 3, 4);
+        try (var m3 = m1.postMultiply(s1); var m4 = m1.postMultiplySparse(s1)) {
+            assertArrayEquals(M1_TIMES_S1, m3.raw1D(), DELTA);
+            assertArrayEquals(M1_TIMES_S1, m4.raw1D(), DELTA);
+        }
+        try (var m3 = m2.preMultiply(new SparseMatrix(M1, 3, 3))) {
+            assertArrayEquals(M1_TIMES_M2, m3.raw1D(), DELTA);
+        }
+    }
+
+    @Test
+    void intoOperations() {
+        try (var destination = factory.of(new double[12], 3, 4)) {
+            m2.preMultiplyInto(m1, destination);
+            assertArrayEquals(M1_TIMES_M2, destination.raw1D(), DELTA);
+            m1.postMultiplySparseInto(new SparseMatrix(M2, 3, 4), destination);
+            assertArrayEquals(M1_TIMES_M2, destination.raw1D(), DELTA);
+            m2.subtractInto(m2, destination);
+            assertArrayEquals(new double[12], destination.raw1D(), DELTA);
+        }
+    }
+
+    @Test
+    void subtract() {
+        try (var tm1 = m1.transpose(); var m3 = m1.subtract(tm1); var m4 = m1.subtract(1.0)) {
+            assertArrayEquals(new double[]{0, -2, -4, 2, 0, -2, 4, 2, 0}, m3.raw1D(), DELTA);
+            assertArrayEquals(new double[]{0, 1, 2, 3, 4, 5, 6, 7, 8}, m4.raw1D(), DELTA);
+        }
+        try (var m3 = m1.subtract(new double[]{1, 2, 3}, MatrixInterface.Direction.ROW)) {
+            assertArrayEquals(new double[]{0, 0, 0, 3, 3, 3, 6, 6, 6}, m3.raw1D(), DELTA);
+        }
+        try (var m3 = m1.subtract(new double[]{1, 2, 3}, MatrixInterface.Direction.COLUMN)) {
+            assertArrayEquals(new double[]{0, 1, 2, 2, 3, 4, 4, 5, 6}, m3.raw1D(), DELTA);
+        }
+    }
+
+    @Test
+    void mappedMatrix() throws IOException {
+        var file = new File(Utils.getAppDir(), "test-offheap.mtx");
+        try {
+            try (var channel = FileChannel.open(
+                    file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE
+            )) {
+                MappedMatrix.write(channel, 0, m2);
+            }
+            try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                try (var mapped = factory.of(MappedMatrix.map(channel, 0, 3, 4))) {
+                    assertArrayEquals(M2, mapped.raw1D(), DELTA);
+                    try (var m3 = mapped.preMultiply(m1)) {
+                        assertArrayEquals(M1_TIMES_M2, m3.raw1D(), DELTA);
+                    }
+                    mapped.fillRow(1, new double[]{-1, -2, -3, -4});
+                    assertArrayEquals(
+                            new double[]{1, 2, 3, 4, -1, -2, -3, -4, 9, 10, 11, 12}, mapped.raw1D(), DELTA
+                    );
+                    mapped.fill(new double[12]);
+                    assertArrayEquals(new double[12], mapped.raw1D(), DELTA);
+                }
+            }
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    void serializeTest() throws IOException {
+        var file = "test-offheap.bin";
+        var writer = new BinaryWriter<OffHeapMatrix>();
+        writer.write(file, m1);
+        assertTrue(new File(Utils.getAppDir(), file).exists());
+        var reader = new BinaryReader<>(OffHeapMatrix.class);
+        try (var m3 = reader.read(file)) {
+            assertEquals(m1, m3);
+        }
+        new File(Utils.getAppDir(), file).delete();
+    }
+}
@@ -0,0 +1,350 @@
+package com.alaimos.MITHrIL.VectorMath.VectorMatrix;
+
+import com.alaimos.MITHrIL.api.Commons.Utils;
+import com.alaimos.MITHrIL.api.Data.Reader.BinaryReader;
+import com.alaimos.MITHrIL.api.Data.Writer.BinaryWriter;
+import com.alaimos.MITHrIL.api.Math.MatrixInterface;
+import com.alaimos.MITHrIL.api.Math.SparseMatrix.SparseMatrix;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class VectorMatrixTest {
+
+    protected static final double DELTA = 1e-6;
+    protected static final double[] V1 = {4, 5, 6};
+    protected static final double[] V2 = {6, 7, 8, 9};
+    protected static final double[] M1 = {1, 2, 3, 4, 5, 6, 7, 8, 9};
+    protected static final double[] M2 = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12};
+    protected static final double[] M1_INV = {
+            -6.388889e-01, -1.666667e-01, 3.055556e-01,
+            -5.555556e-02, 5.504683e-17, 5.555556e-02,
+            5.277778e-01, 1.666667e-01, -1.944444e-01
+    };
+    protected static final double[] M2_INV = {
+            -0.37500000, -0.10000000, 0.17500000,
+            -0.14583333, -0.03333333, 0.07916667,
+            0.08333333, 0.03333333, -0.01666667,
+            0.31250000, 0.10000000, -0.11250000
+    };
+    protected static final double[] M1_TIMES_M2 = {38, 44, 50, 56, 83, 98, 113, 128, 128, 152, 176, 200};
+    protected static final double[] M1_TIMES_V1 = {32, 77, 122};
+    protected static final double[] V2_TIMES_T_M2 = {80, 200, 320};
+    protected static final double[] T_M2_TIMES_M1 = {84, 99, 114, 96, 114, 132, 108, 129, 150, 120, 144, 168};
+    protected static final double[] M1_TIMES_S1 = {0, 2, 6, 3, 0, 8, 15, 6, 0, 14, 24, 9};
+    protected VectorMatrixFactory factory = new VectorMatrixFactory();
+    protected VectorMatrix m1;
+    protected VectorMatrix m2;
+
+    @BeforeEach
+    void setUp() {
+        m1 = factory.of(M1, 3, 3);
+        m2 = factory.of(M2, 3, 4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        m1.close();
+        m2.close();
+    }
+
+    @Test
+    @Order(1)
+    void factoryTest() {
+        try (
+                var tm1 = factory.of(M1, 3, 3);
+                var tm2 = factory.of(new double[][]{{1, 2, 3}, {4, 5, 6}, {7, 8, 9}})
+        ) {
+            assertArrayEquals(M1, tm1.raw1D(), DELTA);
+            assertArrayEquals(M1, tm2.raw1D(), DELTA);
+        }
+    }
+
+    @Order(2)
+    @Test
+    void raw2D() {
+        var expected = new double[][]{{1, 2, 3}, {4, 5, 6}, {7, 8, 9}};
+        var raw2D = m1.raw2D();
+        assertEquals(expected.length, raw2D.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i], raw2D[i], DELTA);
+        }
+    }
+
+    @Order(3)
+    @Test
+    void raw1D() {
+        assertArrayEquals(M1, m1.raw1D(), DELTA);
+        assertArrayEquals(M2, m2.raw1D(), DELTA);
+    }
+
+    @Test
+    void transpose() {
+        var m3 = m2.transpose();
+        assertEquals(4, m3.rows());
+        assertEquals(3, m3.columns());
+        assertArrayEquals(new double[]{1, 5, 9, 2, 6, 10, 3, 7, 11, 4, 8, 12}, m3.raw1D(), DELTA);
+        m3.close();
+    }
+
+    @Test
+    void transposeInPlace() {
+        m2.transposeInPlace();
+        assertArrayEquals(new double[]{1, 5, 9, 2, 6, 10, 3, 7, 11, 4, 8, 12}, m2.raw1D(), DELTA);
+    }
+
+    @Test
+    void invert() {
+        var m3 = m1.invert();
+        assertEquals(3, m3.rows());
+        assertEquals(3, m3.columns());
+        assertArrayEquals(M1_INV, m3.raw1D(), DELTA);
+        m3.close();
+        m3 = m2.invert();
+        assertEquals(4, m3.rows());
+        assertEquals(3, m3.columns());
+        assertArrayEquals(M2_INV, m3.raw1D(), DELTA);
+        m3.close();
+    }
+
+    @Test
+    void invertInPlace() {
+        m1.invertInPlace();
+        assertEquals(3, m1.rows());
+        assertEquals(3, m1.columns());
+        assertArrayEquals(M1_INV, m1.raw1D(), DELTA);
+        m2.invertInPlace();
+        assertEquals(4, m2.rows());
+        assertEquals(3, m2.columns());
+        assertArrayEquals(M2_INV, m2.raw1D(), DELTA);
+    }
+
+    @Test
+    void preMultiply() {
+        var tm2 = m2.transpose();
+        var m3 = m1.preMultiply(tm2);
+        var v3 = tm2.preMultiply(V2);
+        assertEquals(4, m3.rows());
+        assertEquals(3, m3.columns());
+        assertArrayEquals(T_M2_TIMES_M1, m3.raw1D(), DELTA);
+        assertEquals(3, v3.length);
+        assertArrayEquals(V2_TIMES_T_M2, v3, DELTA);
+        m3.close();
+        tm2.close();
+    }
+
+    @Test
+    void postMultiply() {
+        var m3 = m1.postMultiply(m2);
+        var v3 = m1.postMultiply(V1);
+        assertEquals(3, m3.rows());
+        assertEquals(4, m3.columns());
+        assertArrayEquals(M1_TIMES_M2, m3.raw1D(), DELTA);
+        assertEquals(3, v3.length);
+        assertArrayEquals(M1_TIMES_V1, v3, DELTA);
+        m3.close();
+    }
+
+    @Test
+    void val() {
+        assertEquals(1, m1.val(0, 0), DELTA);
+        assertEquals(2, m1.val(0, 1), DELTA);
+        assertEquals(3, m1.val(0, 2), DELTA);
+        assertEquals(4, m1.val(1, 0), DELTA);
+        assertEquals(5, m1.val(1, 1), DELTA);
+        assertEquals(6, m1.val(1, 2), DELTA);
+        assertEquals(7, m1.val(2, 0), DELTA);
+        assertEquals(8, m1.val(2, 1), DELTA);
+        assertEquals(9, m1.val(2, 2), DELTA);
+        assertEquals(1, m2.val(0, 0), DELTA);
+        assertEquals(2, m2.val(0, 1), DELTA);
+        assertEquals(3, m2.val(0, 2), DELTA);
+        assertEquals(4, m2.val(0, 3), DELTA);
+        assertEquals(5, m2.val(1, 0), DELTA);
+        assertEquals(6, m2.val(1, 1), DELTA);
+        assertEquals(7, m2.val(1, 2), DELTA);
+        assertEquals(8, m2.val(1, 3), DELTA);
+        assertEquals(9, m2.val(2, 0), DELTA);
+        assertEquals(10, m2.val(2, 1), DELTA);
+        assertEquals(11, m2.val(2, 2), DELTA);
+        assertEquals(12, m2.val(2, 3), DELTA);
+    }
+
+    @Test
+    void row() {
+        assertArrayEquals(new double[]{7, 8, 9}, m1.row(2), DELTA);
+        assertArrayEquals(new double[]{1, 2, 3, 4}, m2.row(0), DELTA);
+        var buffer = new double[4];
+        m2.rowInto(1, buffer);
+        assertArrayEquals(new double[]{5, 6, 7, 8}, buffer, DELTA);
+        m2.fillRow(1, new double[]{-1, -2, -3, -4});
+        assertArrayEquals(new double[]{1, 2, 3, 4, -1, -2, -3, -4, 9, 10, 11, 12}, m2.raw1D(), DELTA);
+        assertThrows(IllegalArgumentException.class, () -> m2.fillRow(0, new double[3]));
+    }
+
+    @Test
+    void column() {
+        assertArrayEquals(new double[]{3, 6, 9}, m1.column(2), DELTA);
+        assertArrayEquals(new double[]{1, 5, 9}, m2.column(0), DELTA);
+    }
+
+    @Test
+    void serializeTest() throws IOException {
+        var file = "test-vector.bin";
+        var writer = new BinaryWriter<VectorMatrix>();
+        writer.write(file, m1);
+        assertTrue(new File(Utils.getAppDir(), file).exists());
+        var reader = new BinaryReader<>(VectorMatrix.class);
+        try (var m3 = reader.read(file)) {
+            assertEquals(m1, m3);
+        }
+        new File(Utils.getAppDir(), file).delete();
+    }
+
+    @Test
+    void determinant() throws IOException {
+        try (var mtx = factory.of(new double[]{1, 3, 2, 4}, 2, 2)) {
+            assertEquals(-2, mtx.determinant(), DELTA);
+        }
+        try (var mtx = factory.of(new double[]{1, 1, 2, 1, 2, 0, 1, 3, 1}, 3, 3)) {
+            assertEquals(3, mtx.determinant(), DELTA);
+        }
+    }
+
+    @Test
+    void rank() throws IOException {
+        try (var mtx = factory.of(new double[]{1, 3, 2, 4}, 2, 2)) {
+            assertEquals(2, mtx.rank(), DELTA);
+        }
+        try (var mtx = factory.of(new double[]{1, 1, 2, 1, 2, 0, 1, 3, 1}, 3, 3)) {
+            assertEquals(3, mtx.rank(), DELTA);
+        }
+    }
+
+    private static double @NotNull [] naiveMultiply(double[] a, double[] b, int m, int k, int n) {
+        var c = new double[m * n];
+        for (var i = 0; i < m; i++) {
+            for (var j = 0; j < n; j++) {
+                var sum = 0.0;
+                for (var p = 0; p < k; p++) {
+                    sum += a[i * k + p] * b[p * n + j];
+                }
+                c[i * n + j] = sum;
+            }
+        }
+        return c;
+    }
+
+    private static double @NotNull [] randomArray(@NotNull Random random, int size) {
+        var result = new double[size];
+        for (var i = 0; i < size; i++) {
+            result[i] = random.nextDouble() - 0.5;
+        }
+        return result;
+    }
+
+    @Test
+    void blockedMultiply() {
+        var random = new Random(42);
+        int m = 131, k = 263, n = 301;
+        var a = randomArray(random, m * k);
+        var b = randomArray(random, k * n);
+        var x = randomArray(random, k);
+        var y = randomArray(random, m);
+        try (var ma = factory.of(a, m, k); var mb = factory.of(b, k, n)) {
+            var expected = naiveMultiply(a, b, m, k, n);
+            try (var mc = ma.postMultiply(mb)) {
+                assertArrayEquals(expected, mc.raw1D(), 1e-10);
+            }
+            try (var mc = mb.preMultiply(ma)) {
+                assertArrayEquals(expected, mc.raw1D(), 1e-10);
+            }
+            assertArrayEquals(naiveMultiply(a, x, m, k, 1), ma.postMultiply(x), 1e-10);
+            assertArrayEquals(naiveMultiply(y, a, 1, m, k), ma.preMultiply(y), 1e-10);
+        }
+    }
+
+    @Test
+    void sparseMultiply() {
+        var s1 = new SparseMatrix(new double[]{0, 2, 0, 0, 0, 0, 3, 0, 0, 0, 0, 1}, 3, 4);
+        try (var m3 = m1.postMultiply(s1); var m4 = m1.postMultiplySparse(s1)) {
+            assertArrayEquals(M1_TIMES_S1, m3.raw1D(), DELTA);
+            assertArrayEquals(M1_TIMES_S1, m4.raw1D(), DELTA);
+        }
+        try (var m3 = m2.preMultiply(new SparseMatrix(M1, 3, 3))) {
+            assertArrayEquals(M1_TIMES_M2, m3.raw1D(), DELTA);
+        }
+    }
+
+    @Test
+    void intoOperations() {
+        try (var destination = factory.of(new double[12], 3, 4)) {
+            m2.preMultiplyInto(m1, destination);
+            assertArrayEquals(M1_TIMES_M2, destination.raw1D(), DELTA);
+            m1.postMultiplySparseInto(new SparseMatrix(M2, 3, 4), destination);
+            assertArrayEquals(M1_TIMES_M2, destination.raw1D(), DELTA);
+            m2.subtractInto(m2, destination);
+            assertArrayEquals(new double[12], destination.raw1D(), DELTA);
+        }
+    }
+
+    @Test
+    void subtract() {
+        try (var m3 = m1.subtract(m1.transpose()); var m4 = m1.subtract(1.0)) {
+            assertArrayEquals(new double[]{0, -2, -4, 2, 0, -2, 4, 2, 0}, m3.raw1D(), DELTA);
+            assertArrayEquals(new double[]{0, 1, 2, 3, 4, 5, 6, 7, 8}, m4.raw1D(), DELTA);
+        }
+        try (var m3 = m1.subtract(new double[]{1, 2, 3}, MatrixInterface.Direction.ROW)) {
+            assertArrayEquals(new double[]{0, 0, 0, 3, 3, 3, 6, 6, 6}, m3.raw1D(), DELTA);
+        }
+        try (var m3 = m1.subtract(new double[]{1, 2, 3}, MatrixInterface.Direction.COLUMN)) {
+            assertArrayEquals(new double[]{0, 1, 2, 2, 3, 4, 4, 5, 6}, m3.raw1D(), DELTA);
+        }
+    }
+
+    @Test
+    void singlePrecision() throws IOException {
+        var singleFactory = new VectorMatrixFactory().withSinglePrecision(true);
+        assertTrue(singleFactory.singlePrecision());
+        var random = new Random(42);
+        int m = 67, k = 131, n = 93;
+        var a = randomArray(random, m * k);
+        var b = randomArray(random, k * n);
+        var x = randomArray(random, k);
+        try (var ma = singleFactory.of(a, m, k); var mb = singleFactory.of(b, k, n)) {
+            assertTrue(ma.singlePrecision());
+            var expected = naiveMultiply(a, b, m, k, n);
+            try (var mc = ma.postMultiply(mb)) {
+                assertTrue(mc.singlePrecision());
+                assertArrayEquals(expected, mc.raw1D(), 1e-4);
+            }
+            try (var destination = singleFactory.of(new double[m * n], m, n)) {
+                mb.preMultiplyInto(ma, destination);
+                assertArrayEquals(expected, destination.raw1D(), 1e-4);
+            }
+            try (var mc = ma.postMultiply(factory.of(b, k, n))) {
+                assertTrue(mc.singlePrecision());
+                assertArrayEquals(expected, mc.raw1D(), 1e-4);
+            }
+            assertArrayEquals(naiveMultiply(a, x, m, k, 1), ma.postMultiply(x), 1e-4);
+        }
+        try (var ms = singleFactory.of(M2, 3, 4); var mt = ms.transpose(); var mi = ms.invert()) {
+            assertTrue(mi.singlePrecision());
+            assertArrayEquals(M2_INV, mi.raw1D(), 1e-6);
+            assertArrayEquals(T_M2_TIMES_M1, mt.postMultiply(m1).raw1D(), 1e-4);
+            assertArrayEquals(M1_TIMES_S1, singleFactory.of(m1).postMultiplySparse(
+                    new SparseMatrix(new double[]{0, 2, 0, 0, 0, 0, 3, 0, 0, 0, 0, 1}, 3, 4)
+            ).raw1D(), 1e-4);
+        }
+        try (var md = factory.of(singleFactory.of(M1, 3, 3))) {
+            assertFalse(md.singlePrecision());
+            assertArrayEquals(M1, md.raw1D(), DELTA);
+        }
+    }
+}